@@ -0,0 +1,320 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newHashSet;
+
+/**
+ * Runs tasks on an underlying {@link Executor} while limiting both the total number of concurrently running tasks and
+ * the number of concurrently running tasks per key (e.g., per device type). Tasks that cannot run yet are queued
+ * without occupying a thread and are started as soon as their limits allow it, so that one saturated key does not
+ * block tasks of other keys.
+ * <p/>
+ * Queued tasks are started in order of their priority and in submission order among tasks of equal priority. To keep
+ * one key from monopolizing the executor, keys that run fewer than their fair share of tasks (the total limit divided
+ * by the number of keys with running or queued tasks) are served before keys that run more. Keys may exceed their
+ * fair share as long as no other key has runnable tasks.
+ */
+public class BoundedExecutor {
+
+	public static final int DEFAULT_PRIORITY = 0;
+
+	private final Executor executor;
+
+	private final int maxConcurrentTasks;
+
+	private final int maxConcurrentTasksPerKey;
+
+	private final TreeSet<BoundedTask<?>> queue = new TreeSet<BoundedTask<?>>(new Comparator<BoundedTask<?>>() {
+		@Override
+		public int compare(final BoundedTask<?> task1, final BoundedTask<?> task2) {
+			if (task1.priority != task2.priority) {
+				return task1.priority > task2.priority ? -1 : 1;
+			}
+			return task1.sequence < task2.sequence ? -1 : (task1.sequence == task2.sequence ? 0 : 1);
+		}
+	}
+	);
+
+	private long nextSequence;
+
+	private final Map<String, Integer> runningPerKey = newHashMap();
+
+	private int running;
+
+	private boolean dispatching;
+
+	private boolean redispatch;
+
+	public BoundedExecutor(final Executor executor, final int maxConcurrentTasks, final int maxConcurrentTasksPerKey) {
+
+		checkArgument(maxConcurrentTasks > 0, "The maximum number of concurrent tasks must be positive");
+		checkArgument(maxConcurrentTasksPerKey > 0, "The maximum number of concurrent tasks per key must be positive");
+
+		this.executor = checkNotNull(executor);
+		this.maxConcurrentTasks = maxConcurrentTasks;
+		this.maxConcurrentTasksPerKey = maxConcurrentTasksPerKey;
+	}
+
+	/**
+	 * Same as calling {@code submit(key, DEFAULT_PRIORITY, task)}.
+	 */
+	public <T> ListenableFuture<T> submit(final String key, final Callable<T> task) {
+		return submit(key, DEFAULT_PRIORITY, task);
+	}
+
+	/**
+	 * Submits a task to be run as soon as the limits allow it. Cancelling the returned future before the task started
+	 * removes it from the queue.
+	 *
+	 * @param key
+	 * 		the key whose limit applies to the task
+	 * @param priority
+	 * 		the priority of the task, queued tasks with higher priority are started first
+	 * @param task
+	 * 		the task to run
+	 * @param <T>
+	 * 		the result type of the task
+	 *
+	 * @return a future holding the task's result
+	 */
+	public <T> ListenableFuture<T> submit(final String key, final int priority, final Callable<T> task) {
+
+		final BoundedTask<T> boundedTask;
+
+		synchronized (this) {
+			boundedTask = new BoundedTask<T>(checkNotNull(key), priority, nextSequence++, checkNotNull(task));
+			queue.add(boundedTask);
+		}
+
+		dispatch();
+		return boundedTask.future;
+	}
+
+	/**
+	 * Changes the priority of a task that is still queued.
+	 *
+	 * @param future
+	 * 		the future returned when the task was submitted
+	 * @param priority
+	 * 		the new priority
+	 *
+	 * @return {@code true} if the task was still queued, {@code false} if it already started or is unknown
+	 */
+	public boolean setPriority(final Future<?> future, final int priority) {
+
+		synchronized (this) {
+
+			BoundedTask<?> task = null;
+			for (BoundedTask<?> queuedTask : queue) {
+				if (queuedTask.future == future) {
+					task = queuedTask;
+					break;
+				}
+			}
+
+			if (task == null) {
+				return false;
+			}
+
+			queue.remove(task);
+			queue.add(task.withPriority(priority));
+		}
+
+		dispatch();
+		return true;
+	}
+
+	public synchronized int getRunningCount() {
+		return running;
+	}
+
+	public synchronized int getQueuedCount() {
+		return queue.size();
+	}
+
+	private void dispatch() {
+
+		synchronized (this) {
+			if (dispatching) {
+				// another thread (or an outer frame of this thread if the executor runs tasks inline) is dispatching
+				redispatch = true;
+				return;
+			}
+			dispatching = true;
+		}
+
+		while (true) {
+
+			final BoundedTask<?> task;
+
+			synchronized (this) {
+				task = pollRunnableTask();
+				if (task == null) {
+					if (redispatch) {
+						redispatch = false;
+						continue;
+					}
+					dispatching = false;
+					return;
+				}
+			}
+
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				task.future.setException(e);
+				release(task.key);
+			}
+		}
+	}
+
+	private BoundedTask<?> pollRunnableTask() {
+
+		if (running >= maxConcurrentTasks) {
+			return null;
+		}
+
+		final int fairShare = getFairShare();
+		final BoundedTask<?> task = pollRunnableTask(Math.min(fairShare, maxConcurrentTasksPerKey));
+		if (task != null || fairShare >= maxConcurrentTasksPerKey) {
+			return task;
+		}
+
+		// no key below its fair share has a runnable task, so let the others use the idle capacity
+		return pollRunnableTask(maxConcurrentTasksPerKey);
+	}
+
+	private BoundedTask<?> pollRunnableTask(final int maxRunningForKey) {
+
+		for (Iterator<BoundedTask<?>> iterator = queue.iterator(); iterator.hasNext(); ) {
+
+			final BoundedTask<?> task = iterator.next();
+
+			if (task.future.isCancelled()) {
+				iterator.remove();
+				continue;
+			}
+
+			final int runningForKey = getRunningCount(task.key);
+			if (runningForKey < maxRunningForKey) {
+				iterator.remove();
+				running++;
+				runningPerKey.put(task.key, runningForKey + 1);
+				return task;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return the number of tasks each key with running or queued tasks may run if all of them have enough tasks
+	 */
+	private int getFairShare() {
+		final Set<String> activeKeys = newHashSet(runningPerKey.keySet());
+		for (BoundedTask<?> task : queue) {
+			activeKeys.add(task.key);
+		}
+		if (activeKeys.isEmpty()) {
+			return maxConcurrentTasks;
+		}
+		return (maxConcurrentTasks + activeKeys.size() - 1) / activeKeys.size();
+	}
+
+	private synchronized void release(final String key) {
+		running--;
+		final int runningForKey = getRunningCount(key) - 1;
+		if (runningForKey == 0) {
+			runningPerKey.remove(key);
+		} else {
+			runningPerKey.put(key, runningForKey);
+		}
+	}
+
+	private int getRunningCount(final String key) {
+		final Integer runningForKey = runningPerKey.get(key);
+		return runningForKey == null ? 0 : runningForKey;
+	}
+
+	private class BoundedTask<T> implements Runnable {
+
+		private final String key;
+
+		private final int priority;
+
+		private final long sequence;
+
+		private final Callable<T> callable;
+
+		private final SettableFuture<T> future;
+
+		private BoundedTask(final String key, final int priority, final long sequence, final Callable<T> callable) {
+			this(key, priority, sequence, callable, SettableFuture.<T>create());
+		}
+
+		private BoundedTask(final String key, final int priority, final long sequence, final Callable<T> callable,
+							final SettableFuture<T> future) {
+			this.key = key;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.callable = callable;
+			this.future = future;
+		}
+
+		private BoundedTask<T> withPriority(final int priority) {
+			return new BoundedTask<T>(key, priority, sequence, callable, future);
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (!future.isCancelled()) {
+					future.set(callable.call());
+				}
+			} catch (Throwable t) {
+				future.setException(t);
+			} finally {
+				release(key);
+				dispatch();
+			}
+		}
+	}
+}
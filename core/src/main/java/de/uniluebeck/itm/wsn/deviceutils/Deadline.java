@@ -0,0 +1,94 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A point in time by which a composed operation (e.g., connecting to a device, reading its MAC address and closing the
+ * connection) has to be done. Every step is given the time that is left, capped by its own timeout.
+ */
+public class Deadline {
+
+	private final Ticker ticker;
+
+	private final long deadlineNanos;
+
+	private Deadline(final Ticker ticker, final long deadlineNanos) {
+		this.ticker = ticker;
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	public static Deadline after(final long timeoutMillis) {
+		return after(timeoutMillis, Ticker.systemTicker());
+	}
+
+	public static Deadline after(final long timeoutMillis, final Ticker ticker) {
+		return new Deadline(checkNotNull(ticker), ticker.read() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+	}
+
+	/**
+	 * @return the time left until the deadline, 0 if it passed already
+	 */
+	public long getRemainingMillis() {
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - ticker.read()));
+	}
+
+	public boolean isExpired() {
+		return deadlineNanos - ticker.read() <= 0;
+	}
+
+	/**
+	 * Returns the timeout for the next step of the composed operation.
+	 *
+	 * @param stepTimeoutMillis
+	 * 		the timeout of the step on its own
+	 * @param step
+	 * 		the name of the step for the exception message
+	 *
+	 * @return the smaller one of {@code stepTimeoutMillis} and the time left until the deadline
+	 *
+	 * @throws TimeoutException
+	 * 		if the deadline passed already
+	 */
+	public long getTimeoutMillis(final long stepTimeoutMillis, final String step) throws TimeoutException {
+		final long remainingMillis = getRemainingMillis();
+		if (remainingMillis == 0) {
+			throw new TimeoutException("Deadline passed before " + step);
+		}
+		return Math.min(stepTimeoutMillis, remainingMillis);
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline{" +
+				"remainingMillis=" + getRemainingMillis() +
+				'}';
+	}
+}
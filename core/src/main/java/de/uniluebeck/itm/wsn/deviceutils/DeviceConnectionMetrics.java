@@ -0,0 +1,98 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+/**
+ * A snapshot of the connection metrics of a device type, see {@link DeviceConnectionStrategy#getMetrics()}.
+ */
+public class DeviceConnectionMetrics {
+
+	private final long connectionCount;
+
+	private final long failedConnectionCount;
+
+	private final long attemptCount;
+
+	private final long totalTimeToConnectMillis;
+
+	private final long maxTimeToConnectMillis;
+
+	public DeviceConnectionMetrics(final long connectionCount,
+								   final long failedConnectionCount,
+								   final long attemptCount,
+								   final long totalTimeToConnectMillis,
+								   final long maxTimeToConnectMillis) {
+		this.connectionCount = connectionCount;
+		this.failedConnectionCount = failedConnectionCount;
+		this.attemptCount = attemptCount;
+		this.totalTimeToConnectMillis = totalTimeToConnectMillis;
+		this.maxTimeToConnectMillis = maxTimeToConnectMillis;
+	}
+
+	/**
+	 * @return the number of connections established
+	 */
+	public long getConnectionCount() {
+		return connectionCount;
+	}
+
+	/**
+	 * @return the number of connections that could not be established
+	 */
+	public long getFailedConnectionCount() {
+		return failedConnectionCount;
+	}
+
+	/**
+	 * @return the number of attempts made to establish both the successful and the failed connections
+	 */
+	public long getAttemptCount() {
+		return attemptCount;
+	}
+
+	/**
+	 * @return the average time it took to establish a connection, including retries
+	 */
+	public long getAverageTimeToConnectMillis() {
+		return connectionCount == 0 ? 0 : totalTimeToConnectMillis / connectionCount;
+	}
+
+	/**
+	 * @return the maximum time it took to establish a connection, including retries
+	 */
+	public long getMaxTimeToConnectMillis() {
+		return maxTimeToConnectMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceConnectionMetrics{" +
+				"connectionCount=" + connectionCount +
+				", failedConnectionCount=" + failedConnectionCount +
+				", attemptCount=" + attemptCount +
+				", averageTimeToConnectMillis=" + getAverageTimeToConnectMillis() +
+				", maxTimeToConnectMillis=" + maxTimeToConnectMillis +
+				'}';
+	}
+}
@@ -0,0 +1,469 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Closeables;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceEvent;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserverListener;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * Keeps connections to devices open between operations so that, e.g., reading the MAC address of a device, flashing
+ * it and reading the MAC address again only connects once (and only goes through the bootloader handshake once).
+ * <p/>
+ * There is at most one connection per port. It is leased exclusively for the duration of an operation by
+ * {@link #lease(String, DeviceType, java.util.Map, long)}, other callers wait until it is returned. Before a
+ * connection is handed out it is checked to still be connected and reconnected otherwise. Connections that were not
+ * leased for longer than the maximum idle time are closed by the next call to the pool or by {@link #evictIdle()}.
+ * Registered as a {@link DeviceObserverListener}, the pool closes the connection to a port as soon as the device is
+ * reported to be removed, even if it is leased.
+ */
+public class DeviceConnectionPool implements DeviceObserverListener, Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceConnectionPool.class);
+
+	public static final long DEFAULT_MAX_IDLE_MILLIS = 30000;
+
+	private final DeviceFactory deviceFactory;
+
+	private final ExecutorService executorService;
+
+	private final DeviceConnectionStrategy connectionStrategy;
+
+	private final long maxIdleNanos;
+
+	private final Ticker ticker;
+
+	private final Map<String, PooledConnection> connections = newHashMap();
+
+	private boolean closed;
+
+	private long connectCount;
+
+	private long leaseCount;
+
+	private long evictionCount;
+
+	private long totalLeaseWaitNanos;
+
+	private long maxLeaseWaitNanos;
+
+	public DeviceConnectionPool(final DeviceFactory deviceFactory, final ExecutorService executorService) {
+		this(deviceFactory, executorService, new DeviceConnectionStrategy(), DEFAULT_MAX_IDLE_MILLIS,
+				Ticker.systemTicker()
+		);
+	}
+
+	public DeviceConnectionPool(final DeviceFactory deviceFactory,
+								final ExecutorService executorService,
+								final DeviceConnectionStrategy connectionStrategy,
+								final long maxIdleMillis,
+								final Ticker ticker) {
+
+		checkArgument(maxIdleMillis >= 0, "The maximum idle time must not be negative");
+
+		this.deviceFactory = checkNotNull(deviceFactory);
+		this.executorService = checkNotNull(executorService);
+		this.connectionStrategy = checkNotNull(connectionStrategy);
+		this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+		this.ticker = checkNotNull(ticker);
+	}
+
+	/**
+	 * Leases the connection to the device at the given port, connecting to it if there is no open connection of the
+	 * same device type and configuration. The lease must be closed when the operation is done.
+	 *
+	 * @param port
+	 * 		the port the device is attached to
+	 * @param deviceType
+	 * 		the type of the device
+	 * @param configuration
+	 * 		arbitrary configuration parameters to be passed {@link DeviceFactory}
+	 * @param timeoutMillis
+	 * 		the time to wait for the connection to be returned if it is leased by someone else and to connect
+	 *
+	 * @return the lease of the connection
+	 *
+	 * @throws TimeoutException
+	 * 		if the connection was not returned in time
+	 * @throws IOException
+	 * 		if the device was removed while connecting to it
+	 * @throws Exception
+	 * 		if connecting to the device failed
+	 */
+	public DeviceLease lease(final String port,
+							 final DeviceType deviceType,
+							 @Nullable final Map<String, String> configuration,
+							 final long timeoutMillis) throws Exception {
+
+		checkNotNull(port);
+		checkNotNull(deviceType);
+
+		final long start = ticker.read();
+		final long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		final PooledConnection connection;
+
+		synchronized (this) {
+
+			while (true) {
+
+				checkState(!closed, "The connection pool has been closed");
+
+				final PooledConnection existing = connections.get(port);
+				if (existing == null) {
+					connection = new PooledConnection(port);
+					connections.put(port, connection);
+					break;
+				} else if (!existing.leased) {
+					connection = existing;
+					break;
+				}
+
+				final long remaining = deadline - ticker.read();
+				if (remaining <= 0) {
+					throw new TimeoutException("The connection to port \"" + port + "\" was not returned within " +
+							timeoutMillis + " ms"
+					);
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+
+			connection.leased = true;
+
+			final long waitNanos = ticker.read() - start;
+			leaseCount++;
+			totalLeaseWaitNanos += waitNanos;
+			maxLeaseWaitNanos = Math.max(maxLeaseWaitNanos, waitNanos);
+		}
+
+		final ImmutableMap<String, String> configurationCopy =
+				configuration == null ? null : ImmutableMap.copyOf(configuration);
+		Device device;
+
+		synchronized (this) {
+			device = connection.device;
+		}
+
+		try {
+
+			if (device != null && !connection.isHealthyFor(device, deviceType, configurationCopy)) {
+				log.debug("Reconnecting to device at port {}", port);
+				Closeables.closeQuietly(device);
+				device = null;
+			}
+
+			if (device == null) {
+				final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - ticker.read());
+				if (remainingMillis <= 0) {
+					throw new TimeoutException("No time left to connect to port \"" + port + "\"");
+				}
+				device = connect(port, deviceType, configurationCopy, remainingMillis);
+			}
+
+		} catch (Exception e) {
+			release(connection, null, true);
+			throw e;
+		}
+
+		final boolean evicted;
+
+		synchronized (this) {
+			evicted = connection.evicted;
+			if (!evicted) {
+				connection.device = device;
+				connection.deviceType = deviceType;
+				connection.configuration = configurationCopy;
+			}
+		}
+
+		if (evicted) {
+			Closeables.closeQuietly(device);
+			release(connection, null, true);
+			throw new IOException("The device at port \"" + port + "\" was removed while connecting to it");
+		}
+
+		evictIdle();
+		return new DeviceLease(this, connection, device);
+	}
+
+	/**
+	 * Closes the connection to the given port. If it is leased it is closed nonetheless and discarded when it is
+	 * returned. A lease that is connecting to the port fails.
+	 *
+	 * @param port
+	 * 		the port whose connection is to be closed
+	 */
+	public void evict(final String port) {
+
+		final Device device;
+
+		synchronized (this) {
+
+			final PooledConnection connection = connections.get(port);
+			if (connection == null || connection.evicted) {
+				return;
+			}
+
+			// a lease that is connecting right now must not hand out the connection it establishes
+			connection.evicted = true;
+			evictionCount++;
+
+			if (connection.device == null) {
+				return;
+			}
+
+			device = connection.device;
+			connection.device = null;
+			if (!connection.leased) {
+				connections.remove(port);
+			}
+		}
+
+		log.debug("Closing connection to device at port {}", port);
+		Closeables.closeQuietly(device);
+	}
+
+	/**
+	 * Closes all connections that were not leased for longer than the maximum idle time.
+	 */
+	public void evictIdle() {
+
+		final List<Device> devices = newArrayList();
+
+		synchronized (this) {
+			final long now = ticker.read();
+			for (Iterator<PooledConnection> iterator = connections.values().iterator(); iterator.hasNext(); ) {
+				final PooledConnection connection = iterator.next();
+				if (!connection.leased && now - connection.lastReturned >= maxIdleNanos) {
+					iterator.remove();
+					if (connection.device != null) {
+						devices.add(connection.device);
+						evictionCount++;
+					}
+				}
+			}
+		}
+
+		for (Device device : devices) {
+			Closeables.closeQuietly(device);
+		}
+	}
+
+	@Override
+	public void deviceEvent(final DeviceEvent event) {
+		if (event.getType() == DeviceEvent.Type.REMOVED) {
+			evict(event.getDeviceInfo().getPort());
+		}
+	}
+
+	/**
+	 * Closes all connections that are not leased. Leased connections are closed when they are returned.
+	 */
+	@Override
+	public void close() {
+
+		final List<Device> devices = newArrayList();
+
+		synchronized (this) {
+			closed = true;
+			for (Iterator<PooledConnection> iterator = connections.values().iterator(); iterator.hasNext(); ) {
+				final PooledConnection connection = iterator.next();
+				if (!connection.leased) {
+					iterator.remove();
+					if (connection.device != null) {
+						devices.add(connection.device);
+					}
+				}
+			}
+			notifyAll();
+		}
+
+		for (Device device : devices) {
+			Closeables.closeQuietly(device);
+		}
+	}
+
+	/**
+	 * @return the number of connections established so far
+	 */
+	public synchronized long getConnectCount() {
+		return connectCount;
+	}
+
+	/**
+	 * @return the number of leases handed out so far
+	 */
+	public synchronized long getLeaseCount() {
+		return leaseCount;
+	}
+
+	/**
+	 * @return the number of connections closed because they were idle or the device was removed
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return the total time callers of {@link #lease(String, DeviceType, java.util.Map, long)} waited for connections
+	 *         to be returned
+	 */
+	public synchronized long getTotalLeaseWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalLeaseWaitNanos);
+	}
+
+	/**
+	 * @return the longest time a caller of {@link #lease(String, DeviceType, java.util.Map, long)} waited for a
+	 *         connection to be returned
+	 */
+	public synchronized long getMaxLeaseWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxLeaseWaitNanos);
+	}
+
+	/**
+	 * @return the number of open connections, leased or not
+	 */
+	public synchronized int getOpenCount() {
+		int count = 0;
+		for (PooledConnection connection : connections.values()) {
+			if (connection.device != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "DeviceConnectionPool{" +
+				"openCount=" + getOpenCount() +
+				", connectCount=" + connectCount +
+				", leaseCount=" + leaseCount +
+				", evictionCount=" + evictionCount +
+				", totalLeaseWaitMillis=" + getTotalLeaseWaitMillis() +
+				", maxLeaseWaitMillis=" + getMaxLeaseWaitMillis() +
+				'}';
+	}
+
+	/**
+	 * Returns a leased connection. It is closed if it is to be discarded, if it was evicted while it was leased or if
+	 * the pool has been closed in the meantime.
+	 */
+	void release(final PooledConnection connection, @Nullable final Device device, final boolean discard) {
+
+		Device deviceToClose = null;
+
+		synchronized (this) {
+
+			connection.leased = false;
+			connection.lastReturned = ticker.read();
+
+			if (discard || closed || connection.device == null || connection.device != device) {
+				if (connections.get(connection.port) == connection) {
+					connections.remove(connection.port);
+				}
+				deviceToClose = connection.device;
+				connection.device = null;
+			}
+
+			notifyAll();
+		}
+
+		Closeables.closeQuietly(deviceToClose);
+		evictIdle();
+	}
+
+	private Device connect(final String port,
+						   final DeviceType deviceType,
+						   @Nullable final Map<String, String> configuration,
+						   final long timeoutMillis) throws Exception {
+
+		final Device device = deviceFactory.create(executorService, deviceType, configuration);
+
+		try {
+			connectionStrategy.connect(device, port, deviceType, timeoutMillis);
+		} catch (Exception e) {
+			Closeables.closeQuietly(device);
+			throw e;
+		}
+
+		synchronized (this) {
+			connectCount++;
+		}
+
+		return device;
+	}
+
+	static class PooledConnection {
+
+		private final String port;
+
+		private Device device;
+
+		private DeviceType deviceType;
+
+		private ImmutableMap<String, String> configuration;
+
+		private boolean leased;
+
+		private boolean evicted;
+
+		private long lastReturned;
+
+		private PooledConnection(final String port) {
+			this.port = port;
+		}
+
+		private boolean isHealthyFor(final Device device,
+									 final DeviceType deviceType,
+									 @Nullable final Map<String, String> configuration) {
+			return deviceType == this.deviceType &&
+					Objects.equal(this.configuration, configuration) &&
+					device.isConnected();
+		}
+	}
+}
@@ -0,0 +1,322 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.exception.PortNotFoundException;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newEnumMap;
+
+/**
+ * Connects devices to their ports, retrying failed attempts with exponential backoff. Stops as soon as the device is
+ * connected, after {@link #getMaxAttempts()} attempts, when {@link #getDeadlineMillis()} passed or when an attempt
+ * failed with an exception that is not one of the {@link #getRetryableExceptions()} (e.g., the device type does not
+ * match the device). The delay before each retry is drawn from
+ * {@code [(1 - jitter) * backoff, (1 + jitter) * backoff]} so that concurrent connection attempts to the same tty do
+ * not keep colliding. Previous versions made ten attempts 100 ms apart, even after the device had been connected.
+ */
+public class DeviceConnectionStrategy {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceConnectionStrategy.class);
+
+	private int maxAttempts = 10;
+
+	private long initialBackoffMillis = 50;
+
+	private long maxBackoffMillis = 1000;
+
+	/**
+	 * The maximum deviation of the delays between attempts from the exponential backoff as a fraction of it.
+	 */
+	private double jitter = 0.2;
+
+	/**
+	 * The time after the first attempt after which no further attempts are made.
+	 */
+	private long deadlineMillis = 5000;
+
+	private ImmutableList<Class<? extends Exception>> retryableExceptions =
+			ImmutableList.<Class<? extends Exception>>of(PortNotFoundException.class);
+
+	private Ticker ticker = Ticker.systemTicker();
+
+	private Random random = new Random();
+
+	private final Map<DeviceType, MutableMetrics> metrics = newEnumMap(DeviceType.class);
+
+	/**
+	 * Connects the device to the port.
+	 *
+	 * @param device
+	 * 		the device to connect
+	 * @param port
+	 * 		the port the device is attached to
+	 * @param deviceType
+	 * 		the type of the device, used to keep metrics per device type
+	 *
+	 * @throws InterruptedException
+	 * 		if interrupted while waiting for the next attempt
+	 * @throws Exception
+	 * 		if the device could not be connected, caused by the exception of the last attempt if any
+	 */
+	public void connect(final Device device, final String port, final DeviceType deviceType) throws Exception {
+		connect(device, port, deviceType, deadlineMillis);
+	}
+
+	/**
+	 * Connects the device to the port, giving up after {@code timeoutMillis} if that is earlier than
+	 * {@link #getDeadlineMillis()}, e.g., because connecting is only one step of a composed operation with a
+	 * {@link Deadline}.
+	 *
+	 * @see #connect(de.uniluebeck.itm.wsn.drivers.core.Device, String, de.uniluebeck.itm.wsn.drivers.factories.DeviceType)
+	 */
+	public void connect(final Device device,
+						final String port,
+						final DeviceType deviceType,
+						final long timeoutMillis) throws Exception {
+
+		final long start = ticker.read();
+		final long deadline = start + TimeUnit.MILLISECONDS.toNanos(Math.min(deadlineMillis, timeoutMillis));
+
+		Exception lastException = null;
+		int attempts = 0;
+
+		while (attempts < maxAttempts) {
+
+			attempts++;
+
+			try {
+
+				device.connect(port);
+
+				if (device.isConnected()) {
+					final long timeToConnect = ticker.read() - start;
+					getMetrics(deviceType).onConnected(attempts, timeToConnect);
+					log.trace("Connected to {} device at port {} after {} attempts", deviceType, port, attempts);
+					return;
+				}
+
+			} catch (Exception e) {
+				if (!isRetryable(e)) {
+					getMetrics(deviceType).onFailed(attempts);
+					throw e;
+				}
+				lastException = e;
+			}
+
+			final long delayNanos = Math.min(getBackoffNanos(attempts), deadline - ticker.read());
+			if (delayNanos <= 0 || attempts == maxAttempts) {
+				break;
+			}
+
+			log.trace("Attempt {} to connect to device at port {} failed, retrying in {} ms",
+					attempts, port, TimeUnit.NANOSECONDS.toMillis(delayNanos)
+			);
+
+			try {
+				TimeUnit.NANOSECONDS.sleep(delayNanos);
+			} catch (InterruptedException e) {
+				getMetrics(deviceType).onFailed(attempts);
+				throw e;
+			}
+		}
+
+		getMetrics(deviceType).onFailed(attempts);
+		throw new Exception("Connection to device at port \"" + port + "\" could not be established after " +
+				attempts + " attempts!", lastException
+		);
+	}
+
+	/**
+	 * @return the connection metrics by device type
+	 */
+	public synchronized ImmutableMap<DeviceType, DeviceConnectionMetrics> getMetrics() {
+		final ImmutableMap.Builder<DeviceType, DeviceConnectionMetrics> snapshot = ImmutableMap.builder();
+		for (Map.Entry<DeviceType, MutableMetrics> entry : metrics.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().toMetrics());
+		}
+		return snapshot.build();
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public DeviceConnectionStrategy setMaxAttempts(final int maxAttempts) {
+		checkArgument(maxAttempts > 0, "The maximum number of attempts must be positive");
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	public long getInitialBackoffMillis() {
+		return initialBackoffMillis;
+	}
+
+	public DeviceConnectionStrategy setInitialBackoffMillis(final long initialBackoffMillis) {
+		checkArgument(initialBackoffMillis >= 0, "The initial backoff must not be negative");
+		this.initialBackoffMillis = initialBackoffMillis;
+		return this;
+	}
+
+	public long getMaxBackoffMillis() {
+		return maxBackoffMillis;
+	}
+
+	public DeviceConnectionStrategy setMaxBackoffMillis(final long maxBackoffMillis) {
+		checkArgument(maxBackoffMillis >= 0, "The maximum backoff must not be negative");
+		this.maxBackoffMillis = maxBackoffMillis;
+		return this;
+	}
+
+	public double getJitter() {
+		return jitter;
+	}
+
+	public DeviceConnectionStrategy setJitter(final double jitter) {
+		checkArgument(jitter >= 0 && jitter <= 1, "The jitter must be between 0 and 1");
+		this.jitter = jitter;
+		return this;
+	}
+
+	public long getDeadlineMillis() {
+		return deadlineMillis;
+	}
+
+	public DeviceConnectionStrategy setDeadlineMillis(final long deadlineMillis) {
+		checkArgument(deadlineMillis >= 0, "The deadline must not be negative");
+		this.deadlineMillis = deadlineMillis;
+		return this;
+	}
+
+	public ImmutableList<Class<? extends Exception>> getRetryableExceptions() {
+		return retryableExceptions;
+	}
+
+	/**
+	 * Sets the exceptions (including their subclasses) after which another attempt is made. Any other exception is
+	 * rethrown right away.
+	 */
+	public DeviceConnectionStrategy setRetryableExceptions(final List<Class<? extends Exception>> retryableExceptions) {
+		this.retryableExceptions = ImmutableList.copyOf(retryableExceptions);
+		return this;
+	}
+
+	public DeviceConnectionStrategy setTicker(final Ticker ticker) {
+		this.ticker = checkNotNull(ticker);
+		return this;
+	}
+
+	public DeviceConnectionStrategy setRandom(final Random random) {
+		this.random = checkNotNull(random);
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceConnectionStrategy{" +
+				"maxAttempts=" + maxAttempts +
+				", initialBackoffMillis=" + initialBackoffMillis +
+				", maxBackoffMillis=" + maxBackoffMillis +
+				", jitter=" + jitter +
+				", deadlineMillis=" + deadlineMillis +
+				", retryableExceptions=" + retryableExceptions +
+				'}';
+	}
+
+	private boolean isRetryable(final Exception e) {
+		for (Class<? extends Exception> retryableException : retryableExceptions) {
+			if (retryableException.isInstance(e)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private long getBackoffNanos(final int failedAttempts) {
+		final long backoffMillis = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(failedAttempts - 1, 30));
+		final double factor = 1 - jitter + 2 * jitter * random.nextDouble();
+		return (long) (TimeUnit.MILLISECONDS.toNanos(backoffMillis) * factor);
+	}
+
+	private synchronized MutableMetrics getMetrics(final DeviceType deviceType) {
+		MutableMetrics deviceTypeMetrics = metrics.get(deviceType);
+		if (deviceTypeMetrics == null) {
+			deviceTypeMetrics = new MutableMetrics();
+			metrics.put(deviceType, deviceTypeMetrics);
+		}
+		return deviceTypeMetrics;
+	}
+
+	private class MutableMetrics {
+
+		private long connectionCount;
+
+		private long failedConnectionCount;
+
+		private long attemptCount;
+
+		private long totalTimeToConnectNanos;
+
+		private long maxTimeToConnectNanos;
+
+		private void onConnected(final int attempts, final long timeToConnectNanos) {
+			synchronized (DeviceConnectionStrategy.this) {
+				connectionCount++;
+				attemptCount += attempts;
+				totalTimeToConnectNanos += timeToConnectNanos;
+				maxTimeToConnectNanos = Math.max(maxTimeToConnectNanos, timeToConnectNanos);
+			}
+		}
+
+		private void onFailed(final int attempts) {
+			synchronized (DeviceConnectionStrategy.this) {
+				failedConnectionCount++;
+				attemptCount += attempts;
+			}
+		}
+
+		private DeviceConnectionMetrics toMetrics() {
+			return new DeviceConnectionMetrics(
+					connectionCount,
+					failedConnectionCount,
+					attemptCount,
+					TimeUnit.NANOSECONDS.toMillis(totalTimeToConnectNanos),
+					TimeUnit.NANOSECONDS.toMillis(maxTimeToConnectNanos)
+			);
+		}
+	}
+}
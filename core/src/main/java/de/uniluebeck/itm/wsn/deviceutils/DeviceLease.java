@@ -0,0 +1,77 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+
+import java.io.Closeable;
+
+/**
+ * Exclusive access to a connection of a {@link DeviceConnectionPool}. Closing the lease returns the connection to the
+ * pool, the device itself must not be closed by the lessee.
+ */
+public class DeviceLease implements Closeable {
+
+	private final DeviceConnectionPool pool;
+
+	private final DeviceConnectionPool.PooledConnection connection;
+
+	private final Device device;
+
+	private boolean released;
+
+	DeviceLease(final DeviceConnectionPool pool,
+				final DeviceConnectionPool.PooledConnection connection,
+				final Device device) {
+		this.pool = pool;
+		this.connection = connection;
+		this.device = device;
+	}
+
+	public Device getDevice() {
+		return device;
+	}
+
+	/**
+	 * Closes the connection instead of returning it to the pool, e.g., because an operation failed and left the device
+	 * in an unknown state.
+	 */
+	public synchronized void invalidate() {
+		if (!released) {
+			released = true;
+			pool.release(connection, device, true);
+		}
+	}
+
+	/**
+	 * Returns the connection to the pool. Does nothing if it has already been returned or invalidated.
+	 */
+	@Override
+	public synchronized void close() {
+		if (!released) {
+			released = true;
+			pool.release(connection, device, false);
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.base.Ticker;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newEnumMap;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * Timeouts of device operations by device type and operation. Every timeout is capped by a maximum that defaults to
+ * the timeout previous versions used for all device types. Once enough durations of an operation on a device type have
+ * been recorded, its timeout adapts to the 99th percentile of the recent durations times a safety factor, so that a
+ * hung device is given up on long before the maximum passed.
+ */
+public class DeviceOperationTimeouts {
+
+	public static enum Operation {
+
+		CONNECT(5000),
+
+		READ_MAC(300000),
+
+		WRITE_MAC(120000),
+
+		PROGRAM(120000),
+
+		RESET(1000);
+
+		private final long defaultMaxTimeoutMillis;
+
+		private Operation(final long defaultMaxTimeoutMillis) {
+			this.defaultMaxTimeoutMillis = defaultMaxTimeoutMillis;
+		}
+
+		public long getDefaultMaxTimeoutMillis() {
+			return defaultMaxTimeoutMillis;
+		}
+	}
+
+	/**
+	 * The number of recent durations per device type and operation the percentile is computed from.
+	 */
+	private static final int SAMPLE_WINDOW = 200;
+
+	private final Map<Operation, Long> maxTimeouts = newEnumMap(Operation.class);
+
+	private final Map<Key, Long> maxTimeoutsByDeviceType = newHashMap();
+
+	private final Map<Key, Durations> durations = newHashMap();
+
+	private double safetyFactor = 3;
+
+	private int minSamples = 20;
+
+	private long minTimeoutMillis = 1000;
+
+	/**
+	 * Returns the timeout of an operation on a device type.
+	 *
+	 * @param deviceType
+	 * 		the device type
+	 * @param operation
+	 * 		the operation
+	 *
+	 * @return the maximum timeout or less if enough durations have been recorded
+	 */
+	public synchronized long getTimeoutMillis(final DeviceType deviceType, final Operation operation) {
+
+		final Key key = new Key(checkNotNull(deviceType), checkNotNull(operation));
+		final long maxTimeoutMillis = getMaxTimeoutMillis(deviceType, operation);
+		final Durations recentDurations = durations.get(key);
+
+		if (recentDurations == null || recentDurations.count < minSamples) {
+			return maxTimeoutMillis;
+		}
+
+		final long adaptiveTimeoutMillis = (long) Math.ceil(recentDurations.getP99Millis() * safetyFactor);
+		return Math.min(maxTimeoutMillis, Math.max(minTimeoutMillis, adaptiveTimeoutMillis));
+	}
+
+	/**
+	 * Creates the deadline of a composed operation, i.e., one that is as far in the future as the sum of the timeouts
+	 * of the individual operations.
+	 */
+	public Deadline newDeadline(final DeviceType deviceType, final Operation... operations) {
+		return newDeadline(Ticker.systemTicker(), deviceType, operations);
+	}
+
+	/**
+	 * Same as {@link #newDeadline(DeviceType, Operation...)} but with the given time source.
+	 */
+	public Deadline newDeadline(final Ticker ticker, final DeviceType deviceType, final Operation... operations) {
+		long timeoutMillis = 0;
+		for (Operation operation : operations) {
+			timeoutMillis += getTimeoutMillis(deviceType, operation);
+		}
+		return Deadline.after(timeoutMillis, ticker);
+	}
+
+	/**
+	 * Records the duration of a successful operation.
+	 */
+	public synchronized void recordDuration(final DeviceType deviceType,
+											final Operation operation,
+											final long durationMillis) {
+		final Key key = new Key(checkNotNull(deviceType), checkNotNull(operation));
+		Durations recentDurations = durations.get(key);
+		if (recentDurations == null) {
+			recentDurations = new Durations();
+			durations.put(key, recentDurations);
+		}
+		recentDurations.add(durationMillis);
+	}
+
+	public synchronized long getMaxTimeoutMillis(final DeviceType deviceType, final Operation operation) {
+		final Long byDeviceType = maxTimeoutsByDeviceType.get(new Key(deviceType, operation));
+		if (byDeviceType != null) {
+			return byDeviceType;
+		}
+		final Long byOperation = maxTimeouts.get(operation);
+		return byOperation == null ? operation.getDefaultMaxTimeoutMillis() : byOperation;
+	}
+
+	public synchronized DeviceOperationTimeouts setMaxTimeoutMillis(final Operation operation,
+																	 final long maxTimeoutMillis) {
+		checkArgument(maxTimeoutMillis > 0, "The maximum timeout must be positive");
+		maxTimeouts.put(checkNotNull(operation), maxTimeoutMillis);
+		return this;
+	}
+
+	public synchronized DeviceOperationTimeouts setMaxTimeoutMillis(final DeviceType deviceType,
+																	 final Operation operation,
+																	 final long maxTimeoutMillis) {
+		checkArgument(maxTimeoutMillis > 0, "The maximum timeout must be positive");
+		maxTimeoutsByDeviceType.put(new Key(checkNotNull(deviceType), checkNotNull(operation)), maxTimeoutMillis);
+		return this;
+	}
+
+	public synchronized double getSafetyFactor() {
+		return safetyFactor;
+	}
+
+	public synchronized DeviceOperationTimeouts setSafetyFactor(final double safetyFactor) {
+		checkArgument(safetyFactor >= 1, "The safety factor must be at least 1");
+		this.safetyFactor = safetyFactor;
+		return this;
+	}
+
+	public synchronized int getMinSamples() {
+		return minSamples;
+	}
+
+	public synchronized DeviceOperationTimeouts setMinSamples(final int minSamples) {
+		checkArgument(minSamples > 0 && minSamples <= SAMPLE_WINDOW,
+				"The minimum number of samples must be between 1 and " + SAMPLE_WINDOW
+		);
+		this.minSamples = minSamples;
+		return this;
+	}
+
+	public synchronized long getMinTimeoutMillis() {
+		return minTimeoutMillis;
+	}
+
+	public synchronized DeviceOperationTimeouts setMinTimeoutMillis(final long minTimeoutMillis) {
+		checkArgument(minTimeoutMillis >= 0, "The minimum timeout must not be negative");
+		this.minTimeoutMillis = minTimeoutMillis;
+		return this;
+	}
+
+	private static class Key {
+
+		private final DeviceType deviceType;
+
+		private final Operation operation;
+
+		private Key(final DeviceType deviceType, final Operation operation) {
+			this.deviceType = deviceType;
+			this.operation = operation;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			final Key key = (Key) o;
+			return deviceType == key.deviceType && operation == key.operation;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * deviceType.hashCode() + operation.hashCode();
+		}
+	}
+
+	/**
+	 * The most recent durations of an operation on a device type in a ring buffer.
+	 */
+	private static class Durations {
+
+		private final long[] ring = new long[SAMPLE_WINDOW];
+
+		private int count;
+
+		private int next;
+
+		private long p99Millis = -1;
+
+		private void add(final long durationMillis) {
+			ring[next] = durationMillis;
+			next = (next + 1) % ring.length;
+			count = Math.min(count + 1, ring.length);
+			p99Millis = -1;
+		}
+
+		private long getP99Millis() {
+			if (p99Millis < 0) {
+				final long[] sorted = Arrays.copyOf(ring, count);
+				Arrays.sort(sorted);
+				p99Millis = sorted[(int) Math.ceil(0.99 * count) - 1];
+			}
+			return p99Millis;
+		}
+	}
+}
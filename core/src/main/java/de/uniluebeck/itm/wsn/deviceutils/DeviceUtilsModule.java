@@ -23,15 +23,26 @@
 
 package de.uniluebeck.itm.wsn.deviceutils;
 
+import com.google.common.base.Ticker;
 import com.google.inject.Binder;
+import com.google.inject.Inject;
 import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReadCache;
 import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReaderModule;
 import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReferenceMap;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserverConfig;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserverModule;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactoryModule;
 
 import javax.annotation.Nullable;
 import java.util.concurrent.ExecutorService;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 public class DeviceUtilsModule implements Module {
 
 	private final ExecutorService executorService;
@@ -40,6 +51,20 @@ public class DeviceUtilsModule implements Module {
 
 	private final boolean use16BitMode;
 
+	private final DeviceObserverConfig deviceObserverConfig;
+
+	private DeviceOperationTimeouts operationTimeouts = new DeviceOperationTimeouts();
+
+	private boolean connectionPoolEnabled = false;
+
+	private long connectionPoolMaxIdleMillis = DeviceConnectionPool.DEFAULT_MAX_IDLE_MILLIS;
+
+	private boolean macReadCacheEnabled = false;
+
+	private long macReadCacheTtlMillis = DeviceMacReadCache.DEFAULT_TTL_MILLIS;
+
+	private int macReadCacheMaxSize = DeviceMacReadCache.DEFAULT_MAX_SIZE;
+
 	public DeviceUtilsModule(final ExecutorService executorService,
 							 @Nullable DeviceMacReferenceMap deviceMacReferenceMap) {
 		this(executorService, deviceMacReferenceMap, true);
@@ -47,14 +72,128 @@ public class DeviceUtilsModule implements Module {
 
 	public DeviceUtilsModule(final ExecutorService executorService,
 							 @Nullable DeviceMacReferenceMap deviceMacReferenceMap, boolean use16BitMode) {
+		this(executorService, deviceMacReferenceMap, use16BitMode, new DeviceObserverConfig());
+	}
+
+	public DeviceUtilsModule(final ExecutorService executorService,
+							 @Nullable DeviceMacReferenceMap deviceMacReferenceMap, boolean use16BitMode,
+							 final DeviceObserverConfig deviceObserverConfig) {
 		this.executorService = executorService;
 		this.deviceMacReferenceMap = deviceMacReferenceMap;
 		this.use16BitMode = use16BitMode;
+		this.deviceObserverConfig = deviceObserverConfig;
+	}
+
+	public DeviceOperationTimeouts getOperationTimeouts() {
+		return operationTimeouts;
+	}
+
+	/**
+	 * @see DeviceMacReaderModule#setOperationTimeouts(DeviceOperationTimeouts)
+	 */
+	public DeviceUtilsModule setOperationTimeouts(final DeviceOperationTimeouts operationTimeouts) {
+		this.operationTimeouts = checkNotNull(operationTimeouts);
+		return this;
+	}
+
+	public boolean isConnectionPoolEnabled() {
+		return connectionPoolEnabled;
+	}
+
+	/**
+	 * Binds a {@link DeviceConnectionPool} as a singleton, which is then used to connect to the devices, e.g., by the
+	 * MAC reader. The pool is registered with every {@link de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver}
+	 * the injector creates so that connections to removed devices are closed right away. Disabled by default.
+	 */
+	public DeviceUtilsModule setConnectionPoolEnabled(final boolean connectionPoolEnabled) {
+		this.connectionPoolEnabled = connectionPoolEnabled;
+		return this;
+	}
+
+	public long getConnectionPoolMaxIdleMillis() {
+		return connectionPoolMaxIdleMillis;
+	}
+
+	public DeviceUtilsModule setConnectionPoolMaxIdleMillis(final long connectionPoolMaxIdleMillis) {
+		checkArgument(connectionPoolMaxIdleMillis >= 0, "The maximum idle time must not be negative");
+		this.connectionPoolMaxIdleMillis = connectionPoolMaxIdleMillis;
+		return this;
+	}
+
+	public boolean isMacReadCacheEnabled() {
+		return macReadCacheEnabled;
+	}
+
+	/**
+	 * @see DeviceMacReaderModule#setMacReadCacheEnabled(boolean)
+	 */
+	public DeviceUtilsModule setMacReadCacheEnabled(final boolean macReadCacheEnabled) {
+		this.macReadCacheEnabled = macReadCacheEnabled;
+		return this;
+	}
+
+	public long getMacReadCacheTtlMillis() {
+		return macReadCacheTtlMillis;
+	}
+
+	public DeviceUtilsModule setMacReadCacheTtlMillis(final long macReadCacheTtlMillis) {
+		checkArgument(macReadCacheTtlMillis > 0, "The time to live must be positive");
+		this.macReadCacheTtlMillis = macReadCacheTtlMillis;
+		return this;
+	}
+
+	public int getMacReadCacheMaxSize() {
+		return macReadCacheMaxSize;
+	}
+
+	public DeviceUtilsModule setMacReadCacheMaxSize(final int macReadCacheMaxSize) {
+		checkArgument(macReadCacheMaxSize > 0, "The maximum size must be positive");
+		this.macReadCacheMaxSize = macReadCacheMaxSize;
+		return this;
 	}
 
 	@Override
 	public void configure(final Binder binder) {
-		binder.install(new DeviceMacReaderModule(executorService, deviceMacReferenceMap, use16BitMode));
+		final DeviceMacReaderModule macReaderModule =
+				new DeviceMacReaderModule(executorService, deviceMacReferenceMap, use16BitMode, deviceObserverConfig);
+		macReaderModule
+				.setOperationTimeouts(operationTimeouts)
+				.setMacReadCacheEnabled(macReadCacheEnabled)
+				.setMacReadCacheTtlMillis(macReadCacheTtlMillis)
+				.setMacReadCacheMaxSize(macReadCacheMaxSize);
+		binder.install(macReaderModule);
 		binder.install(new DeviceFactoryModule());
+
+		if (connectionPoolEnabled) {
+			binder.bind(DeviceConnectionPool.class)
+					.toProvider(new DeviceConnectionPoolProvider(connectionPoolMaxIdleMillis))
+					.in(Singleton.class);
+			DeviceObserverModule.addListenerToObservers(binder, DeviceConnectionPool.class);
+		}
+	}
+
+	private static class DeviceConnectionPoolProvider implements Provider<DeviceConnectionPool> {
+
+		private final long maxIdleMillis;
+
+		@Inject
+		private DeviceFactory deviceFactory;
+
+		@Inject
+		private ExecutorService executorService;
+
+		@Inject(optional = true)
+		private DeviceConnectionStrategy connectionStrategy = new DeviceConnectionStrategy();
+
+		private DeviceConnectionPoolProvider(final long maxIdleMillis) {
+			this.maxIdleMillis = maxIdleMillis;
+		}
+
+		@Override
+		public DeviceConnectionPool get() {
+			return new DeviceConnectionPool(deviceFactory, executorService, connectionStrategy, maxIdleMillis,
+					Ticker.systemTicker()
+			);
+		}
 	}
 }
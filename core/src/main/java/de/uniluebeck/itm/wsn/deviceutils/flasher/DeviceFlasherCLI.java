@@ -25,6 +25,7 @@ package de.uniluebeck.itm.wsn.deviceutils.flasher;
 
 import com.google.common.base.Joiner;
 import com.google.common.io.Closeables;
+import com.google.common.primitives.Ints;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
@@ -32,11 +33,14 @@ import com.google.inject.Injector;
 import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
 import de.uniluebeck.itm.util.logging.LogLevel;
 import de.uniluebeck.itm.util.logging.Logging;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts;
 import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
 import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 import de.uniluebeck.itm.wsn.drivers.core.operation.StateChangedEvent;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.Options;
@@ -52,10 +56,12 @@ import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.google.common.collect.Maps.newHashMap;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.assertParametersPresent;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.printUsageAndExit;
+import static de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts.Operation.PROGRAM;
 
 public class DeviceFlasherCLI {
 
@@ -74,6 +80,7 @@ public class DeviceFlasherCLI {
 		String port = null;
 		File imageFile = null;
 		Map<String, String> configuration = newHashMap();
+		Long timeoutMillisOption = null;
 
 		try {
 
@@ -107,6 +114,10 @@ public class DeviceFlasherCLI {
 			port = line.getOptionValue('p');
 			imageFile = new File(line.getOptionValue('i'));
 
+			if (line.hasOption('o')) {
+				timeoutMillisOption = Long.parseLong(line.getOptionValue('o'));
+			}
+
 		} catch (Exception e) {
 			log.error("Invalid command line: " + e);
 			printUsageAndExit(DeviceFlasherCLI.class, options, 1);
@@ -117,6 +128,12 @@ public class DeviceFlasherCLI {
 		);
 
 		final Injector injector = Guice.createInjector(new DeviceUtilsModule(executorService, null));
+		final DeviceOperationTimeouts operationTimeouts = injector.getInstance(DeviceOperationTimeouts.class);
+		final DeviceType type = DeviceType.fromString(deviceType);
+		if (timeoutMillisOption != null) {
+			operationTimeouts.setMaxTimeoutMillis(type, PROGRAM, timeoutMillisOption);
+		}
+		final long timeoutMillis = operationTimeouts.getTimeoutMillis(type, PROGRAM);
 		final Device device = injector.getInstance(DeviceFactory.class).create(executorService, deviceType, configuration);
 
 		device.connect(port);
@@ -168,7 +185,15 @@ public class DeviceFlasherCLI {
 		};
 
 		try {
-			device.program(Files.toByteArray(imageFile), 120000, callback).get();
+			final OperationFuture<Void> future = device.program(
+					Files.toByteArray(imageFile), Ints.saturatedCast(timeoutMillis), callback
+			);
+			try {
+				future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				future.cancel(true);
+				throw e;
+			}
 		} finally {
 			closeConnection(executorService, device);
 		}
@@ -193,6 +218,10 @@ public class DeviceFlasherCLI {
 		options.addOption("i", "image", true, "Image file to flash onto the device");
 		options.getOption("i").setRequired(true);
 
+		options.addOption("o", "timeout", true,
+				"Optional: the time in milliseconds after which flashing is aborted (default: the flashing timeout " +
+						"of the device type, at most " + PROGRAM.getDefaultMaxTimeoutMillis() + ")"
+		);
 		options.addOption("c", "configuration", true,
 				"Optional: file name of a configuration file containing key value pairs to configure the device"
 		);
@@ -0,0 +1,107 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits and failure handling of {@link DeviceMacReader#readMacs(java.util.Collection, DeviceMacBatchReadConfig)}.
+ */
+public class DeviceMacBatchReadConfig {
+
+	/**
+	 * The maximum number of MAC addresses of the batch read concurrently.
+	 */
+	private int maxConcurrentReads = 8;
+
+	/**
+	 * The maximum number of MAC addresses of the batch read concurrently from devices of the same type.
+	 */
+	private int maxConcurrentReadsPerDeviceType = 8;
+
+	/**
+	 * The time a single device may take to connect and report its MAC address after the read started, 0 to use the
+	 * connect and read timeouts of its device type (see
+	 * {@link de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts}). Time spent waiting for the concurrency limits
+	 * does not count.
+	 */
+	private long readTimeoutMillis = 0;
+
+	/**
+	 * If enabled, the reads of the other devices go on if a read fails or times out. Otherwise the first failure
+	 * cancels all reads that did not finish yet.
+	 */
+	private boolean partialResults = true;
+
+	public int getMaxConcurrentReads() {
+		return maxConcurrentReads;
+	}
+
+	public DeviceMacBatchReadConfig setMaxConcurrentReads(final int maxConcurrentReads) {
+		checkArgument(maxConcurrentReads > 0, "The maximum number of concurrent reads must be positive");
+		this.maxConcurrentReads = maxConcurrentReads;
+		return this;
+	}
+
+	public int getMaxConcurrentReadsPerDeviceType() {
+		return maxConcurrentReadsPerDeviceType;
+	}
+
+	public DeviceMacBatchReadConfig setMaxConcurrentReadsPerDeviceType(final int maxConcurrentReadsPerDeviceType) {
+		checkArgument(maxConcurrentReadsPerDeviceType > 0,
+				"The maximum number of concurrent reads per device type must be positive"
+		);
+		this.maxConcurrentReadsPerDeviceType = maxConcurrentReadsPerDeviceType;
+		return this;
+	}
+
+	public long getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	public DeviceMacBatchReadConfig setReadTimeoutMillis(final long readTimeoutMillis) {
+		checkArgument(readTimeoutMillis >= 0, "The read timeout must not be negative");
+		this.readTimeoutMillis = readTimeoutMillis;
+		return this;
+	}
+
+	public boolean isPartialResults() {
+		return partialResults;
+	}
+
+	public DeviceMacBatchReadConfig setPartialResults(final boolean partialResults) {
+		this.partialResults = partialResults;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceMacBatchReadConfig{" +
+				"maxConcurrentReads=" + maxConcurrentReads +
+				", maxConcurrentReadsPerDeviceType=" + maxConcurrentReadsPerDeviceType +
+				", readTimeoutMillis=" + readTimeoutMillis +
+				", partialResults=" + partialResults +
+				'}';
+	}
+}
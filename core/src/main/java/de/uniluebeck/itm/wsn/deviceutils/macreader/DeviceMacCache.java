@@ -0,0 +1,363 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * A persistent cache of MAC addresses by device reference (i.e., the USB serial number) so that a restarted observer
+ * does not have to connect to every attached device again.
+ * <p/>
+ * The cache is stored in an append-only text file that may be shared by several processes (e.g., a running observer
+ * and the MAC writer). Every line after the header either maps a reference to a MAC address or invalidates it. Records
+ * written by other processes are picked up on the next lookup, for which the file is only opened if its length or
+ * modification time changed. Once the file contains much more records than live entries it is compacted in place.
+ * Writes are serialized across processes by locking the file, I/O errors are logged and otherwise ignored as the cache
+ * is only an optimization.
+ */
+public class DeviceMacCache {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceMacCache.class);
+
+	private static final String HEADER_PREFIX = "#wsn-device-utils-mac-cache ";
+
+	private static final String SEPARATOR = "\t";
+
+	private static final String INVALIDATED = "-";
+
+	/**
+	 * The minimum number of records in the file before it is compacted.
+	 */
+	private static final int MIN_RECORDS_BEFORE_COMPACTION = 64;
+
+	/**
+	 * The resolution of file modification times to expect, a file modified less than this before it was checked is
+	 * opened again even if its length and modification time did not change.
+	 */
+	private static final long MODIFICATION_TIME_RESOLUTION_MILLIS = 2000;
+
+	private final File file;
+
+	private final Map<String, MacAddress> entries = newHashMap();
+
+	/**
+	 * Identifies the file contents read so far. Changes whenever the file is compacted so that other processes know
+	 * they have to read it from the start.
+	 */
+	private String generation;
+
+	private long readOffset;
+
+	private int recordCount;
+
+	private long checkedLength = -1;
+
+	private long checkedLastModified;
+
+	private long checkedAtMillis;
+
+	private long hitCount;
+
+	private long missCount;
+
+	public DeviceMacCache(final File file) {
+		this.file = checkNotNull(file);
+		refresh();
+	}
+
+	/**
+	 * Returns the cached MAC address of the device with the given reference.
+	 *
+	 * @param reference
+	 * 		the device reference, may be {@code null} in which case nothing is cached
+	 *
+	 * @return the cached MAC address or {@code null} if none is cached
+	 */
+	@Nullable
+	public synchronized MacAddress get(@Nullable final String reference) {
+
+		if (!isCacheable(reference)) {
+			return null;
+		}
+
+		refresh();
+
+		final MacAddress macAddress = entries.get(reference);
+		if (macAddress == null) {
+			missCount++;
+		} else {
+			hitCount++;
+		}
+		return macAddress;
+	}
+
+	public synchronized void put(@Nullable final String reference, final MacAddress macAddress) {
+
+		checkNotNull(macAddress);
+
+		if (isCacheable(reference) && !macAddress.equals(entries.get(reference))) {
+			append(reference, macAddress);
+		}
+	}
+
+	/**
+	 * Removes the MAC address of the device with the given reference, e.g., because it was rewritten. The invalidation
+	 * is persisted even if the reference is not cached in this instance as other processes may have cached it.
+	 *
+	 * @param reference
+	 * 		the device reference
+	 */
+	public synchronized void invalidate(@Nullable final String reference) {
+		if (isCacheable(reference)) {
+			append(reference, null);
+		}
+	}
+
+	/**
+	 * Rewrites the file so that it only contains the live entries.
+	 */
+	public synchronized void compact() {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			final FileLock lock = raf.getChannel().lock();
+			try {
+				readRecords(raf);
+				compact(raf);
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			log.warn("Could not compact MAC cache {}: {}", file, e.toString());
+		} finally {
+			Closeables.closeQuietly(raf);
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "DeviceMacCache{" +
+				"file=" + file +
+				", size=" + entries.size() +
+				", hitCount=" + hitCount +
+				", missCount=" + missCount +
+				'}';
+	}
+
+	private void refresh() {
+
+		final long now = System.currentTimeMillis();
+		final long length = file.length();
+		final long lastModified = file.lastModified();
+
+		if (lastModified == 0) {
+			return;
+		}
+
+		if (length == checkedLength && lastModified == checkedLastModified &&
+				checkedAtMillis - lastModified >= MODIFICATION_TIME_RESOLUTION_MILLIS) {
+			return;
+		}
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			// a compaction by another process may leave the file at the same length, so the generation is compared, too
+			if (raf.length() != readOffset || !(HEADER_PREFIX + generation).equals(raf.readLine())) {
+				readRecords(raf);
+			}
+			checkedLength = length;
+			checkedLastModified = lastModified;
+			checkedAtMillis = now;
+		} catch (IOException e) {
+			log.warn("Could not read MAC cache {}: {}", file, e.toString());
+		} finally {
+			Closeables.closeQuietly(raf);
+		}
+	}
+
+	private void append(final String reference, @Nullable final MacAddress macAddress) {
+
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			final FileLock lock = raf.getChannel().lock();
+			try {
+
+				readRecords(raf);
+				if (raf.length() == 0) {
+					writeHeader(raf);
+				}
+
+				apply(reference, macAddress);
+
+				raf.seek(raf.length());
+				raf.write(toRecord(reference, macAddress).getBytes(Charsets.UTF_8));
+				readOffset = raf.length();
+				recordCount++;
+
+				if (recordCount > Math.max(MIN_RECORDS_BEFORE_COMPACTION, 2 * entries.size())) {
+					compact(raf);
+				}
+
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			log.warn("Could not write MAC cache {}: {}", file, e.toString());
+			apply(reference, macAddress);
+		} finally {
+			Closeables.closeQuietly(raf);
+		}
+	}
+
+	/**
+	 * Reads all complete records that were appended since the last read or the whole file if it was compacted in the
+	 * meantime.
+	 */
+	private void readRecords(final RandomAccessFile raf) throws IOException {
+
+		final long length = raf.length();
+		if (length == 0) {
+			return;
+		}
+
+		raf.seek(0);
+		final String header = raf.readLine();
+		if (header == null || !header.startsWith(HEADER_PREFIX)) {
+			throw new IOException("Not a MAC cache file");
+		}
+
+		if (!header.equals(HEADER_PREFIX + generation) || length < readOffset) {
+			entries.clear();
+			recordCount = 0;
+			generation = header.substring(HEADER_PREFIX.length());
+			readOffset = raf.getFilePointer();
+		}
+
+		final byte[] bytes = new byte[(int) (length - readOffset)];
+		raf.seek(readOffset);
+		raf.readFully(bytes);
+
+		int lineStart = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] == '\n') {
+				applyRecord(new String(bytes, lineStart, i - lineStart, Charsets.UTF_8));
+				lineStart = i + 1;
+			}
+		}
+
+		// an incomplete last line is being written by another process and will be read next time
+		readOffset += lineStart;
+	}
+
+	private void applyRecord(final String record) {
+
+		final int separatorIndex = record.lastIndexOf(SEPARATOR);
+		if (separatorIndex <= 0) {
+			log.warn("Ignoring malformed record \"{}\" in MAC cache {}", record, file);
+			return;
+		}
+
+		final String reference = record.substring(0, separatorIndex);
+		final String value = record.substring(separatorIndex + 1);
+
+		try {
+			apply(reference, INVALIDATED.equals(value) ? null : new MacAddress(value));
+			recordCount++;
+		} catch (Exception e) {
+			log.warn("Ignoring malformed record \"{}\" in MAC cache {}", record, file);
+		}
+	}
+
+	private void apply(final String reference, @Nullable final MacAddress macAddress) {
+		if (macAddress == null) {
+			entries.remove(reference);
+		} else {
+			entries.put(reference, macAddress);
+		}
+	}
+
+	private void compact(final RandomAccessFile raf) throws IOException {
+
+		raf.setLength(0);
+		writeHeader(raf);
+
+		final StringBuilder records = new StringBuilder();
+		for (Map.Entry<String, MacAddress> entry : entries.entrySet()) {
+			records.append(toRecord(entry.getKey(), entry.getValue()));
+		}
+		raf.write(records.toString().getBytes(Charsets.UTF_8));
+
+		readOffset = raf.length();
+		recordCount = entries.size();
+
+		log.debug("Compacted MAC cache {} to {} entries", file, recordCount);
+	}
+
+	private void writeHeader(final RandomAccessFile raf) throws IOException {
+		generation = UUID.randomUUID().toString();
+		raf.seek(0);
+		raf.write((HEADER_PREFIX + generation + "\n").getBytes(Charsets.UTF_8));
+	}
+
+	private static String toRecord(final String reference, @Nullable final MacAddress macAddress) {
+		return reference + SEPARATOR + (macAddress == null ? INVALIDATED : macAddress.toHexString()) + "\n";
+	}
+
+	private static boolean isCacheable(@Nullable final String reference) {
+		return reference != null && !reference.isEmpty() && !reference.contains(SEPARATOR) && !reference.contains("\n");
+	}
+}
@@ -0,0 +1,201 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceEvent;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserverListener;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
+
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the MAC addresses read from devices in memory for a short time so that tools which read the MAC address of the
+ * same device over and over again (e.g., in a loop) do not have to connect to the device every time.
+ * <p/>
+ * MAC addresses are cached by port, device type and reference and expire after a fixed time after they were read. If
+ * the cache is full, the ones that were not used recently are evicted first. Concurrent reads of the same device are
+ * coalesced, i.e., only one of them reads from the device while the others wait for its result. Failed reads are not
+ * cached. Registered as a {@link DeviceObserverListener}, the cache forgets the MAC address of a device as soon as it
+ * is reported to be removed.
+ * <p/>
+ * {@link DeviceMacReaderImpl} uses the cache if it is bound, see
+ * {@link DeviceMacReaderModule#setMacReadCacheEnabled(boolean)}.
+ */
+public class DeviceMacReadCache implements DeviceObserverListener {
+
+	public static final long DEFAULT_TTL_MILLIS = 10000;
+
+	public static final int DEFAULT_MAX_SIZE = 1024;
+
+	private final Cache<Key, MacAddress> cache;
+
+	/**
+	 * @param ttlMillis
+	 * 		the time in milliseconds after which a MAC address is read from the device again
+	 * @param maxSize
+	 * 		the maximum number of cached MAC addresses
+	 */
+	public DeviceMacReadCache(final long ttlMillis, final int maxSize) {
+		this(ttlMillis, maxSize, Ticker.systemTicker());
+	}
+
+	public DeviceMacReadCache(final long ttlMillis, final int maxSize, final Ticker ticker) {
+		checkArgument(ttlMillis > 0, "The time to live must be positive");
+		checkArgument(maxSize > 0, "The maximum size must be positive");
+		this.cache = CacheBuilder.newBuilder()
+				.expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+				.maximumSize(maxSize)
+				.ticker(checkNotNull(ticker))
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * Returns the cached MAC address of a device or reads it if none is cached. If another thread is reading the MAC
+	 * address of the same device already, waits for its result instead.
+	 *
+	 * @param port
+	 * 		the port the device is attached to
+	 * @param deviceType
+	 * 		the type of the device
+	 * @param reference
+	 * 		the reference of the device, if known
+	 * @param reader
+	 * 		reads the MAC address from the device
+	 *
+	 * @return the MAC address
+	 *
+	 * @throws Exception
+	 * 		the exception thrown by {@code reader}, either in this or in the thread it was read in
+	 */
+	public MacAddress get(final String port,
+						  final DeviceType deviceType,
+						  @Nullable final String reference,
+						  final Callable<MacAddress> reader) throws Exception {
+		try {
+			return cache.get(new Key(checkNotNull(port), checkNotNull(deviceType), reference), reader);
+		} catch (ExecutionException e) {
+			throw (Exception) e.getCause();
+		} catch (UncheckedExecutionException e) {
+			throw (RuntimeException) e.getCause();
+		} catch (ExecutionError e) {
+			throw (Error) e.getCause();
+		}
+	}
+
+	/**
+	 * Forgets the MAC addresses of all devices attached to the given port.
+	 */
+	public void invalidate(final String port) {
+		checkNotNull(port);
+		for (Iterator<Key> iterator = cache.asMap().keySet().iterator(); iterator.hasNext(); ) {
+			if (iterator.next().port.equals(port)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public void deviceEvent(final DeviceEvent event) {
+		if (event.getType() == DeviceEvent.Type.REMOVED) {
+			invalidate(event.getDeviceInfo().getPort());
+		}
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceMacReadCache{" +
+				"size=" + cache.size() +
+				", hitCount=" + getHitCount() +
+				", missCount=" + getMissCount() +
+				'}';
+	}
+
+	private static class Key {
+
+		private final String port;
+
+		private final DeviceType deviceType;
+
+		@Nullable
+		private final String reference;
+
+		private Key(final String port, final DeviceType deviceType, @Nullable final String reference) {
+			this.port = port;
+			this.deviceType = deviceType;
+			this.reference = reference;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+
+			final Key that = (Key) o;
+
+			return port.equals(that.port) &&
+					deviceType == that.deviceType &&
+					Objects.equal(reference, that.reference);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(port, deviceType, reference);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A device whose MAC address is to be read by {@link DeviceMacReader#readMacs(java.util.Collection,
+ * DeviceMacBatchReadConfig)}.
+ */
+public class DeviceMacReadTarget {
+
+	private final String port;
+
+	private final String deviceType;
+
+	private final String reference;
+
+	private final ImmutableMap<String, String> configuration;
+
+	public DeviceMacReadTarget(final String port, final String deviceType, @Nullable final String reference) {
+		this(port, deviceType, reference, null);
+	}
+
+	public DeviceMacReadTarget(final String port,
+							   final String deviceType,
+							   @Nullable final String reference,
+							   @Nullable final Map<String, String> configuration) {
+		this.port = checkNotNull(port);
+		this.deviceType = checkNotNull(deviceType);
+		this.reference = reference;
+		this.configuration = configuration == null ? null : ImmutableMap.copyOf(configuration);
+	}
+
+	public String getPort() {
+		return port;
+	}
+
+	public String getDeviceType() {
+		return deviceType;
+	}
+
+	@Nullable
+	public String getReference() {
+		return reference;
+	}
+
+	@Nullable
+	public ImmutableMap<String, String> getConfiguration() {
+		return configuration;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+
+		final DeviceMacReadTarget that = (DeviceMacReadTarget) o;
+
+		return port.equals(that.port) &&
+				deviceType.equals(that.deviceType) &&
+				Objects.equal(reference, that.reference) &&
+				Objects.equal(configuration, that.configuration);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(port, deviceType, reference, configuration);
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceMacReadTarget{" +
+				"port='" + port + '\'' +
+				", deviceType='" + deviceType + '\'' +
+				", reference='" + reference + '\'' +
+				'}';
+	}
+}
@@ -23,9 +23,12 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.macreader;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.Map;
 
 public interface DeviceMacReader {
@@ -56,4 +59,24 @@ public interface DeviceMacReader {
 					   @Nullable Map<String, String> configuration,
 					   @Nullable final String reference);
 
+	/**
+	 * Reads the MAC addresses of several devices concurrently, each one as if by calling {@link #readMac(String,
+	 * String, java.util.Map, String)}. Returns immediately, the reads are queued until the concurrency limits of
+	 * {@code config} allow them to start.
+	 * <p/>
+	 * A read that takes longer than {@link DeviceMacBatchReadConfig#getReadTimeoutMillis()} is aborted and fails.
+	 * Unless {@link DeviceMacBatchReadConfig#isPartialResults()} is enabled, the first failed read cancels all reads
+	 * that did not finish yet. Cancelling a future cancels the read if it did not start yet.
+	 *
+	 * @param targets
+	 * 		the devices to read the MAC addresses from
+	 * @param config
+	 * 		the limits to apply to the reads
+	 *
+	 * @return a future per device, holding its MAC address or {@code null} if it could not be determined, in the order
+	 *         of {@code targets}
+	 */
+	ImmutableMap<DeviceMacReadTarget, ListenableFuture<MacAddress>> readMacs(Collection<DeviceMacReadTarget> targets,
+																			 DeviceMacBatchReadConfig config);
+
 }
@@ -23,13 +23,24 @@
 
 package de.uniluebeck.itm.wsn.deviceutils.macreader;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Closeables;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import de.uniluebeck.itm.wsn.deviceutils.BoundedExecutor;
+import de.uniluebeck.itm.wsn.deviceutils.Deadline;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionPool;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceConnectionStrategy;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceLease;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts;
 import de.uniluebeck.itm.wsn.drivers.core.Device;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
-import de.uniluebeck.itm.wsn.drivers.core.exception.PortNotFoundException;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationAdapter;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
@@ -37,17 +48,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.google.common.base.Throwables.propagate;
+import static de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts.Operation.CONNECT;
+import static de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts.Operation.READ_MAC;
+import static com.google.common.collect.Sets.newLinkedHashSet;
 
 public class DeviceMacReaderImpl implements DeviceMacReader {
 
 	private static final Logger log = LoggerFactory.getLogger(DeviceMacReaderImpl.class);
 
-	private static final int TIMEOUT = 300000;
-
 	@Inject
 	private DeviceFactory deviceFactory;
 
@@ -62,23 +79,118 @@ public class DeviceMacReaderImpl implements DeviceMacReader {
 	@Named("use16BitMode")
 	private Boolean use16BitMode = true;
 
+	/**
+	 * Provides the connections to the devices if bound, otherwise every read connects to the device and closes the
+	 * connection afterwards.
+	 */
+	@Inject(optional = true)
+	private DeviceConnectionPool connectionPool;
+
+	/**
+	 * Caches the MAC addresses read from the devices if bound, otherwise every read goes to the device.
+	 */
+	@Inject(optional = true)
+	private DeviceMacReadCache readCache;
+
+	@Inject(optional = true)
+	private DeviceConnectionStrategy connectionStrategy = new DeviceConnectionStrategy();
+
+	/**
+	 * The timeouts of connecting and reading by device type, bound as a singleton by {@link DeviceMacReaderModule} so
+	 * that they adapt to the durations recorded by all users of the injector.
+	 */
+	@Inject
+	private DeviceOperationTimeouts operationTimeouts;
+
 	@Override
 	public MacAddress readMac(final String port,
 							  final String deviceTypeString,
 							  @Nullable Map<String, String> configuration,
 							  @Nullable final String reference) {
+		return readMac(port, deviceTypeString, configuration, reference, 0);
+	}
+
+	@Override
+	public ImmutableMap<DeviceMacReadTarget, ListenableFuture<MacAddress>> readMacs(
+			final Collection<DeviceMacReadTarget> targets,
+			final DeviceMacBatchReadConfig config) {
+
+		final BoundedExecutor boundedExecutor = new BoundedExecutor(
+				executorService,
+				config.getMaxConcurrentReads(),
+				config.getMaxConcurrentReadsPerDeviceType()
+		);
+		final long readTimeoutMillis = config.getReadTimeoutMillis();
+
+		final ImmutableMap.Builder<DeviceMacReadTarget, ListenableFuture<MacAddress>> futures = ImmutableMap.builder();
+		final Set<DeviceMacReadTarget> uniqueTargets = newLinkedHashSet(targets);
+
+		for (final DeviceMacReadTarget target : uniqueTargets) {
+			futures.put(target, boundedExecutor.submit(target.getDeviceType(), new Callable<MacAddress>() {
+				@Override
+				public MacAddress call() throws Exception {
+					return readMac(
+							target.getPort(),
+							target.getDeviceType(),
+							target.getConfiguration(),
+							target.getReference(),
+							readTimeoutMillis
+					);
+				}
+			}
+			)
+			);
+		}
+
+		final ImmutableMap<DeviceMacReadTarget, ListenableFuture<MacAddress>> result = futures.build();
+
+		if (!config.isPartialResults()) {
+			for (ListenableFuture<MacAddress> future : result.values()) {
+				Futures.addCallback(future, new FutureCallback<MacAddress>() {
+					@Override
+					public void onSuccess(final MacAddress macAddress) {
+						// nothing to do
+					}
+
+					@Override
+					public void onFailure(final Throwable t) {
+						for (ListenableFuture<MacAddress> otherFuture : result.values()) {
+							otherFuture.cancel(false);
+						}
+					}
+				}
+				);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param timeoutMillis
+	 * 		the time connecting to the device and reading the MAC address may take together, 0 to use the sum of the
+	 * 		connect and read timeouts of the device type
+	 */
+	private MacAddress readMac(final String port,
+							   final String deviceTypeString,
+							   @Nullable final Map<String, String> configuration,
+							   @Nullable final String reference,
+							   final long timeoutMillis) {
 
 		try {
 
 			final DeviceType deviceType = DeviceType.fromString(deviceTypeString);
+			final Deadline deadline = timeoutMillis == 0 ?
+					operationTimeouts.newDeadline(deviceType, CONNECT, READ_MAC) :
+					Deadline.after(timeoutMillis);
 
 			switch (deviceType) {
 				case ISENSE:
-					return readMacFromDevice(port, deviceType, configuration);
+					return readMacFromDevice(port, deviceType, configuration, reference, deadline);
 				case MOCK:
-					return readMacFromDevice(port, deviceType, configuration);
+					return readMacFromDevice(port, deviceType, configuration, reference, deadline);
 				case PACEMATE:
-					return readMacFromDevice(port, deviceType, configuration);
+					return readMacFromDevice(port, deviceType, configuration, reference, deadline);
 				case TELOSB:
 					return readMacFromMap(reference);
 				default:
@@ -100,36 +212,58 @@ public class DeviceMacReaderImpl implements DeviceMacReader {
 	}
 
 	private MacAddress readMacFromDevice(final String port, final DeviceType deviceType,
-										 @Nullable Map<String, String> configuration) throws Exception {
+										 @Nullable final Map<String, String> configuration,
+										 @Nullable final String reference, final Deadline deadline) throws Exception {
 
-		try {
+		if (readCache == null) {
+			return readMacFromDevice(port, deviceType, configuration, deadline);
+		}
 
-			final Device device = deviceFactory.create(executorService, deviceType, configuration);
+		return readCache.get(port, deviceType, reference, new Callable<MacAddress>() {
+			@Override
+			public MacAddress call() throws Exception {
+				return readMacFromDevice(port, deviceType, configuration, deadline);
+			}
+		}
+		);
+	}
 
-			try {
+	/**
+	 * Reads the MAC address from the device. If the deadline passes while reading, the connection is closed right away
+	 * instead of waiting for the driver to give up.
+	 */
+	private MacAddress readMacFromDevice(final String port, final DeviceType deviceType,
+										 @Nullable Map<String, String> configuration, final Deadline deadline)
+			throws Exception {
 
-				tryToConnect(device, port);
+		try {
 
-				final OperationListener<MacAddress> callback = new OperationAdapter<MacAddress>() {
-					private int lastProgress = -1;
+			if (connectionPool != null) {
+
+				final DeviceLease lease = connectionPool.lease(port, deviceType, configuration,
+						deadline.getTimeoutMillis(Long.MAX_VALUE, "connecting to " + port)
+				);
+				try {
+					final MacAddress macAddress = readMacFromDevice(lease.getDevice(), deviceType, deadline);
+					lease.close();
+					return macAddress;
+				} finally {
+					lease.invalidate();
+				}
+			}
 
-					@Override
-					public void onProgressChange(float fraction) {
-						int newProgress = (int) Math.floor(fraction * 100);
-						if (lastProgress < newProgress) {
-							lastProgress = newProgress;
-							log.debug("Progress: {}%", newProgress);
-						}
-					}
-				};
+			final Device device = deviceFactory.create(executorService, deviceType, configuration);
 
-				final MacAddress macAddress = device.readMac(TIMEOUT, callback).get();
+			try {
 
-				if (use16BitMode) {
-					return macAddress.to16BitMacAddress();
-				}
+				final long connectStart = System.nanoTime();
+				connectionStrategy.connect(device, port, deviceType, deadline.getTimeoutMillis(
+						operationTimeouts.getTimeoutMillis(deviceType, CONNECT), "connecting to " + port
+				)
+				);
+				operationTimeouts.recordDuration(deviceType, CONNECT, millisSince(connectStart));
 
-				return macAddress;
+				return readMacFromDevice(device, deviceType, deadline);
 
 			} finally {
 				Closeables.closeQuietly(device);
@@ -141,18 +275,47 @@ public class DeviceMacReaderImpl implements DeviceMacReader {
 		}
 	}
 
-	private void tryToConnect(final Device device, final String port) throws Exception {
-		for (int i = 0; i < 10; i++) {
-			try {
-				device.connect(port);
-			} catch (PortNotFoundException e) {
-				Thread.sleep(100);
-			} catch (Exception e) {
+	private MacAddress readMacFromDevice(final Device device, final DeviceType deviceType, final Deadline deadline)
+			throws Exception {
+
+		final long timeoutMillis = deadline.getTimeoutMillis(
+				operationTimeouts.getTimeoutMillis(deviceType, READ_MAC), "reading the MAC address"
+		);
+
+		final OperationListener<MacAddress> callback = new OperationAdapter<MacAddress>() {
+			private int lastProgress = -1;
+
+			@Override
+			public void onProgressChange(float fraction) {
+				int newProgress = (int) Math.floor(fraction * 100);
+				if (lastProgress < newProgress) {
+					lastProgress = newProgress;
+					log.debug("Progress: {}%", newProgress);
+				}
 			}
+		};
+
+		final long readStart = System.nanoTime();
+		final OperationFuture<MacAddress> future = device.readMac(Ints.saturatedCast(timeoutMillis), callback);
+		final MacAddress macAddress;
+
+		try {
+			macAddress = future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw e;
 		}
 
-		if (!device.isConnected()) {
-			throw new Exception("Connection to device at port \"" + port + "\" could not be established!");
+		operationTimeouts.recordDuration(deviceType, READ_MAC, millisSince(readStart));
+
+		if (use16BitMode) {
+			return macAddress.to16BitMacAddress();
 		}
+
+		return macAddress;
+	}
+
+	private static long millisSince(final long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
 	}
-}
\ No newline at end of file
+}
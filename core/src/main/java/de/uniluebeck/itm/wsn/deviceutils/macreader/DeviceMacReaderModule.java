@@ -25,13 +25,19 @@ package de.uniluebeck.itm.wsn.deviceutils.macreader;
 
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.google.inject.Singleton;
 import com.google.inject.name.Names;
 import com.google.inject.util.Providers;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserverConfig;
 import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserverModule;
 
 import javax.annotation.Nullable;
 import java.util.concurrent.ExecutorService;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 public class DeviceMacReaderModule implements Module {
 
 	private final ExecutorService executorService;
@@ -40,6 +46,16 @@ public class DeviceMacReaderModule implements Module {
 
 	private final boolean use16BitMode;
 
+	private final DeviceObserverConfig deviceObserverConfig;
+
+	private DeviceOperationTimeouts operationTimeouts = new DeviceOperationTimeouts();
+
+	private boolean macReadCacheEnabled = false;
+
+	private long macReadCacheTtlMillis = DeviceMacReadCache.DEFAULT_TTL_MILLIS;
+
+	private int macReadCacheMaxSize = DeviceMacReadCache.DEFAULT_MAX_SIZE;
+
 	public DeviceMacReaderModule(final ExecutorService executorService,
 								 @Nullable final DeviceMacReferenceMap deviceMacReferenceMap) {
 		this(executorService, deviceMacReferenceMap, true);
@@ -48,15 +64,73 @@ public class DeviceMacReaderModule implements Module {
 	public DeviceMacReaderModule(final ExecutorService executorService,
 								 @Nullable final DeviceMacReferenceMap deviceMacReferenceMap,
 								 final boolean use16BitMode) {
+		this(executorService, deviceMacReferenceMap, use16BitMode, new DeviceObserverConfig());
+	}
+
+	public DeviceMacReaderModule(final ExecutorService executorService,
+								 @Nullable final DeviceMacReferenceMap deviceMacReferenceMap,
+								 final boolean use16BitMode,
+								 final DeviceObserverConfig deviceObserverConfig) {
 
 		this.executorService = executorService;
 		this.deviceMacReferenceMap = deviceMacReferenceMap;
 		this.use16BitMode = use16BitMode;
+		this.deviceObserverConfig = deviceObserverConfig;
+	}
+
+	public DeviceOperationTimeouts getOperationTimeouts() {
+		return operationTimeouts;
+	}
+
+	/**
+	 * Sets the timeouts of device operations that are bound as a singleton, e.g., to override the maximum timeouts of
+	 * a device type (see {@link DeviceOperationTimeouts#setMaxTimeoutMillis(
+	 * de.uniluebeck.itm.wsn.drivers.factories.DeviceType, DeviceOperationTimeouts.Operation, long)}). All users of the
+	 * injector share the instance, so the timeouts adapt to the durations recorded by all of them.
+	 */
+	public DeviceMacReaderModule setOperationTimeouts(final DeviceOperationTimeouts operationTimeouts) {
+		this.operationTimeouts = checkNotNull(operationTimeouts);
+		return this;
+	}
+
+	public boolean isMacReadCacheEnabled() {
+		return macReadCacheEnabled;
+	}
+
+	/**
+	 * Binds a {@link DeviceMacReadCache} so that MAC addresses read from a device are reused for
+	 * {@link #getMacReadCacheTtlMillis()}. The cache is registered with every
+	 * {@link de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver} the injector creates so that the MAC addresses
+	 * of removed devices are forgotten right away. Disabled by default.
+	 */
+	public DeviceMacReaderModule setMacReadCacheEnabled(final boolean macReadCacheEnabled) {
+		this.macReadCacheEnabled = macReadCacheEnabled;
+		return this;
+	}
+
+	public long getMacReadCacheTtlMillis() {
+		return macReadCacheTtlMillis;
+	}
+
+	public DeviceMacReaderModule setMacReadCacheTtlMillis(final long macReadCacheTtlMillis) {
+		checkArgument(macReadCacheTtlMillis > 0, "The time to live must be positive");
+		this.macReadCacheTtlMillis = macReadCacheTtlMillis;
+		return this;
+	}
+
+	public int getMacReadCacheMaxSize() {
+		return macReadCacheMaxSize;
+	}
+
+	public DeviceMacReaderModule setMacReadCacheMaxSize(final int macReadCacheMaxSize) {
+		checkArgument(macReadCacheMaxSize > 0, "The maximum size must be positive");
+		this.macReadCacheMaxSize = macReadCacheMaxSize;
+		return this;
 	}
 
 	@Override
 	public void configure(final Binder binder) {
-		binder.install(new DeviceObserverModule());
+		binder.install(new DeviceObserverModule(deviceObserverConfig));
 
 		if (deviceMacReferenceMap == null) {
 			binder.bind(DeviceMacReferenceMap.class).toProvider(Providers.<DeviceMacReferenceMap>of(null));
@@ -65,7 +139,14 @@ public class DeviceMacReaderModule implements Module {
 		}
 
 		binder.bind(Boolean.class).annotatedWith(Names.named("use16BitMode")).toInstance(use16BitMode);
-		binder.bind(DeviceMacReader.class).to(DeviceMacReaderImpl.class);
+		binder.bind(DeviceMacReader.class).to(DeviceMacReaderImpl.class).in(Singleton.class);
+		binder.bind(DeviceOperationTimeouts.class).toInstance(operationTimeouts);
 		binder.bind(ExecutorService.class).toInstance(executorService);
+
+		if (macReadCacheEnabled) {
+			binder.bind(DeviceMacReadCache.class)
+					.toInstance(new DeviceMacReadCache(macReadCacheTtlMillis, macReadCacheMaxSize));
+			DeviceObserverModule.addListenerToObservers(binder, DeviceMacReadCache.class);
+		}
 	}
 }
@@ -25,6 +25,7 @@ package de.uniluebeck.itm.wsn.deviceutils.macwriter;
 
 import com.google.common.base.Joiner;
 import com.google.common.io.Closeables;
+import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -32,13 +33,19 @@ import de.uniluebeck.itm.util.StringUtils;
 import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
 import de.uniluebeck.itm.util.logging.LogLevel;
 import de.uniluebeck.itm.util.logging.Logging;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts;
 import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacCache;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
 import de.uniluebeck.itm.wsn.drivers.core.Device;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
 import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
 import de.uniluebeck.itm.wsn.drivers.core.operation.StateChangedEvent;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
 import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactoryModule;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.Options;
@@ -46,6 +53,7 @@ import org.apache.commons.cli.PosixParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileReader;
 import java.util.Map;
@@ -53,10 +61,12 @@ import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.google.common.collect.Maps.newHashMap;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.assertParametersPresent;
 import static de.uniluebeck.itm.wsn.deviceutils.CliUtils.printUsageAndExit;
+import static de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts.Operation.WRITE_MAC;
 
 public class DeviceMacWriterCLI {
 
@@ -76,6 +86,9 @@ public class DeviceMacWriterCLI {
 		String macAddressLower16String = null;
 		Map<String,String> configuration = newHashMap();
 		boolean use16BitMode = true;
+		File macCacheFile = null;
+		String reference = null;
+		Long timeoutMillisOption = null;
 
 		try {
 
@@ -110,6 +123,15 @@ public class DeviceMacWriterCLI {
 			macAddressLower16String = line.getOptionValue('m');
 			use16BitMode = !line.hasOption('x');
 
+			if (line.hasOption('k')) {
+				macCacheFile = new File(line.getOptionValue('k'));
+				reference = line.getOptionValue('r');
+			}
+
+			if (line.hasOption('o')) {
+				timeoutMillisOption = Long.parseLong(line.getOptionValue('o'));
+			}
+
 		} catch (Exception e) {
 			log.error("Invalid command line: " + e);
 			printUsageAndExit(DeviceMacWriterCLI.class, options, 1);
@@ -136,8 +158,14 @@ public class DeviceMacWriterCLI {
 				new DeviceFactoryModule(),
 				new DeviceUtilsModule(executorService, null, use16BitMode)
 		);
+		final DeviceOperationTimeouts operationTimeouts = injector.getInstance(DeviceOperationTimeouts.class);
+		final DeviceType type = DeviceType.fromString(deviceType);
+		if (timeoutMillisOption != null) {
+			operationTimeouts.setMaxTimeoutMillis(type, WRITE_MAC, timeoutMillisOption);
+		}
+		final long timeoutMillis = operationTimeouts.getTimeoutMillis(type, WRITE_MAC);
 		final Device device = injector.getInstance(DeviceFactory.class).create(executorService, deviceType, configuration);
-		
+
 		device.connect(port);
 		if (!device.isConnected()) {
 			throw new RuntimeException("Connection to device at port \"" + args[1] + "\" could not be established!");
@@ -191,13 +219,46 @@ public class DeviceMacWriterCLI {
 			}
 		};
 
-		try{
-			device.writeMac(macAddress, 120000, callback).get();
+		if (macCacheFile != null && reference == null) {
+			reference = getReference(injector.getInstance(DeviceObserver.class), port);
+		}
+
+		try {
+			final OperationFuture<Void> future =
+					device.writeMac(macAddress, Ints.saturatedCast(timeoutMillis), callback);
+			try {
+				future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				future.cancel(true);
+				throw e;
+			}
 		} finally {
+			if (macCacheFile != null) {
+				invalidateMacCache(macCacheFile, reference, port);
+			}
 			closeConnection(device, executorService);
 		}
 	}
 
+	@Nullable
+	private static String getReference(final DeviceObserver deviceObserver, final String port) {
+		deviceObserver.updateState(false);
+		final DeviceInfo deviceInfo = deviceObserver.getCurrentState().get(port);
+		return deviceInfo == null ? null : deviceInfo.getReference();
+	}
+
+	private static void invalidateMacCache(final File macCacheFile, @Nullable final String reference,
+										   final String port) {
+		if (reference == null) {
+			log.warn("Could not determine the reference of the device at port {}, MAC cache {} is not invalidated. " +
+					"Use the --reference option to specify it.", port, macCacheFile
+			);
+		} else {
+			new DeviceMacCache(macCacheFile).invalidate(reference);
+			log.info("Invalidated MAC address of device {} in MAC cache {}", reference, macCacheFile);
+		}
+	}
+
 	private static void closeConnection(final Device device, final ExecutorService executorService) {
 		log.debug("Closing Device...");
 		Closeables.closeQuietly(device);
@@ -223,6 +284,16 @@ public class DeviceMacWriterCLI {
 		options.addOption("x", "use64BitMode", false, "Set if you want to write the MAC in 64 bit mode");
 		options.getOption("x").setRequired(false);
 
+		options.addOption("k", "maccache", true,
+				"Optional: MAC cache file of a device observer in which the MAC address of the device is invalidated"
+		);
+		options.addOption("r", "reference", true,
+				"Optional: reference of the device to invalidate in the MAC cache (default: determined by port)"
+		);
+		options.addOption("o", "timeout", true,
+				"Optional: the time in milliseconds after which writing the MAC address is aborted (default: the " +
+						"timeout of the device type, at most " + WRITE_MAC.getDefaultMaxTimeoutMillis() + ")"
+		);
 		options.addOption("c", "configuration", true,
 				"Optional: file name of a configuration file containing key value pairs to configure the device"
 		);
@@ -0,0 +1,292 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Runs the scans of a {@link DeviceObserver} in an interval that adapts to how often devices change. After a scan
+ * detected a change, the observer is scanned every {@link DeviceObserverConfig#getFastScanIntervalMillis()} for
+ * {@link DeviceObserverConfig#getFastScanWindowMillis()}, otherwise every
+ * {@link DeviceObserverConfig#getIdleScanIntervalMillis()}. The next scan is only scheduled once the previous one
+ * finished, so scans never overlap. A scan that takes longer than the interval is counted as an overrun and followed
+ * by the next scan immediately. If the observer is a {@link ScanRequestingDeviceObserver}, scans it asks for are run
+ * right away and the next scan is run as soon as pending changes are due if that is earlier than the interval.
+ */
+public class AdaptiveScanScheduler implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(AdaptiveScanScheduler.class);
+
+	private final DeviceObserver deviceObserver;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final Ticker ticker;
+
+	private final long fastScanIntervalNanos;
+
+	private final long idleScanIntervalNanos;
+
+	private final long fastScanWindowNanos;
+
+	private final AtomicLong scanCount = new AtomicLong();
+
+	private final AtomicLong overrunCount = new AtomicLong();
+
+	private volatile long lastScanDurationNanos;
+
+	private volatile long maxScanDurationNanos;
+
+	private boolean changed;
+
+	private long lastChangeNanos;
+
+	private boolean started;
+
+	private boolean closed;
+
+	private ScheduledFuture<?> nextScanFuture;
+
+	/**
+	 * Incremented whenever a scan is scheduled so that a scan that was replaced by a requested one does not run.
+	 */
+	private long scheduledScanCount;
+
+	private boolean scanning;
+
+	private boolean scanRequested;
+
+	private final Runnable scanRequestListener = new Runnable() {
+		@Override
+		public void run() {
+			requestScan();
+		}
+	};
+
+	/**
+	 * @param deviceObserver
+	 * 		the observer to scan
+	 * @param scheduler
+	 * 		the scheduler to run the scans on
+	 * @param config
+	 * 		the configuration to take the scan intervals from
+	 */
+	public AdaptiveScanScheduler(final DeviceObserver deviceObserver,
+								 final ScheduledExecutorService scheduler,
+								 final DeviceObserverConfig config) {
+		this(deviceObserver, scheduler, config, Ticker.systemTicker());
+	}
+
+	AdaptiveScanScheduler(final DeviceObserver deviceObserver,
+						  final ScheduledExecutorService scheduler,
+						  final DeviceObserverConfig config,
+						  final Ticker ticker) {
+		this.deviceObserver = checkNotNull(deviceObserver);
+		this.scheduler = checkNotNull(scheduler);
+		this.ticker = checkNotNull(ticker);
+		this.fastScanIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFastScanIntervalMillis());
+		this.idleScanIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleScanIntervalMillis());
+		this.fastScanWindowNanos = TimeUnit.MILLISECONDS.toNanos(config.getFastScanWindowMillis());
+	}
+
+	/**
+	 * Runs the first scan immediately and schedules the following ones.
+	 */
+	public synchronized void start() {
+		checkState(!started, "Already started");
+		started = true;
+		scheduleScan(0);
+		if (deviceObserver instanceof ScanRequestingDeviceObserver) {
+			((ScanRequestingDeviceObserver) deviceObserver).addScanRequestListener(scanRequestListener);
+		}
+	}
+
+	/**
+	 * Stops scheduling scans. A scan that is currently running is not interrupted.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (deviceObserver instanceof ScanRequestingDeviceObserver) {
+			((ScanRequestingDeviceObserver) deviceObserver).removeScanRequestListener(scanRequestListener);
+		}
+		if (nextScanFuture != null) {
+			nextScanFuture.cancel(false);
+		}
+	}
+
+	/**
+	 * Runs a scan right away instead of waiting for the interval to pass. If a scan is currently running, the next one
+	 * follows immediately.
+	 */
+	public synchronized void requestScan() {
+
+		if (!started || closed) {
+			return;
+		}
+
+		if (scanning) {
+			scanRequested = true;
+			return;
+		}
+
+		if (nextScanFuture != null) {
+			nextScanFuture.cancel(false);
+		}
+		scheduleScan(0);
+	}
+
+	/**
+	 * @return the number of scans run so far
+	 */
+	public long getScanCount() {
+		return scanCount.get();
+	}
+
+	/**
+	 * @return the number of scans that took longer than the interval they were scheduled in
+	 */
+	public long getOverrunCount() {
+		return overrunCount.get();
+	}
+
+	public long getLastScanDurationMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(lastScanDurationNanos);
+	}
+
+	public long getMaxScanDurationMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxScanDurationNanos);
+	}
+
+	/**
+	 * @return {@code true} if a change was detected within the fast scan window
+	 */
+	public synchronized boolean isScanningFast() {
+		return isScanningFast(ticker.read());
+	}
+
+	private void scan(final long scheduledScan) {
+
+		synchronized (this) {
+			if (scheduledScan != scheduledScanCount) {
+				return;
+			}
+			scanning = true;
+		}
+
+		final ImmutableMap<String, DeviceInfo> stateBefore = deviceObserver.getCurrentState();
+		final long startNanos = ticker.read();
+
+		try {
+			deviceObserver.run();
+		} catch (Exception e) {
+			log.warn("Exception while scanning for devices: ", e);
+		}
+
+		final long endNanos = ticker.read();
+		final long durationNanos = endNanos - startNanos;
+
+		scanCount.incrementAndGet();
+		lastScanDurationNanos = durationNanos;
+		maxScanDurationNanos = Math.max(maxScanDurationNanos, durationNanos);
+
+		synchronized (this) {
+
+			// unchanged devices are kept as the same state instance, see DeviceObserverImpl#updateState
+			if (deviceObserver.getCurrentState() != stateBefore) {
+				changed = true;
+				lastChangeNanos = endNanos;
+			}
+
+			final long intervalNanos = isScanningFast(endNanos) ? fastScanIntervalNanos : idleScanIntervalNanos;
+
+			if (durationNanos > intervalNanos) {
+				log.warn("Scan took {} ms, longer than the scan interval of {} ms ({} overruns so far)",
+						TimeUnit.NANOSECONDS.toMillis(durationNanos),
+						TimeUnit.NANOSECONDS.toMillis(intervalNanos),
+						overrunCount.incrementAndGet()
+				);
+			} else {
+				log.trace("Scan took {} ms, next scan in {} ms",
+						TimeUnit.NANOSECONDS.toMillis(durationNanos),
+						TimeUnit.NANOSECONDS.toMillis(intervalNanos - durationNanos)
+				);
+			}
+
+			long delayNanos = Math.max(0, intervalNanos - durationNanos);
+			if (deviceObserver instanceof ScanRequestingDeviceObserver) {
+				final long pendingDelayMillis =
+						((ScanRequestingDeviceObserver) deviceObserver).getNextScanDelayMillis();
+				if (pendingDelayMillis >= 0) {
+					delayNanos = Math.min(delayNanos, TimeUnit.MILLISECONDS.toNanos(pendingDelayMillis));
+				}
+			}
+
+			scanning = false;
+			if (scanRequested) {
+				scanRequested = false;
+				scheduleScan(0);
+			} else {
+				scheduleScan(delayNanos);
+			}
+		}
+	}
+
+	private boolean isScanningFast(final long nowNanos) {
+		return changed && nowNanos - lastChangeNanos < fastScanWindowNanos;
+	}
+
+	private void scheduleScan(final long delayNanos) {
+
+		if (closed) {
+			return;
+		}
+
+		final long scheduledScan = ++scheduledScanCount;
+		try {
+			nextScanFuture = scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					scan(scheduledScan);
+				}
+			}, delayNanos, TimeUnit.NANOSECONDS
+			);
+		} catch (RejectedExecutionException e) {
+			log.debug("Scheduler was shut down, stopping to scan");
+		}
+	}
+}
@@ -0,0 +1,370 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Ticker;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserverConfig.ListenerOverflowPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static com.google.common.collect.Sets.newLinkedHashSet;
+
+/**
+ * Decouples a {@link DeviceObserverListener} from the scanning thread. Events are put into a bounded queue and
+ * delivered by a thread dedicated to the listener, so that a slow listener only delays its own notifications. What
+ * happens if the queue is full is determined by the {@link ListenerOverflowPolicy}.
+ * <p/>
+ * With {@link ListenerOverflowPolicy#COALESCE}, the events are queued per port (ports in the order their first queued
+ * event arrived) so that the events of a single port can be merged when the queue overflows, starting with the port of
+ * the new event. Every event is merged at most once, so queueing takes constant time on average. If all queued events
+ * are merged already, i.e., more distinct ports have events queued than fit into the queue, the new event is queued
+ * beyond the capacity and counted in {@link DeviceObserverListenerMetrics#getOverCapacityEventCount()}. The queue
+ * then holds at most two events per port.
+ */
+class AsyncDeviceObserverListener implements DeviceObserverListener, Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceObserverListener.class);
+
+	private final DeviceObserverListener listener;
+
+	private final int capacity;
+
+	private final ListenerOverflowPolicy overflowPolicy;
+
+	private final Ticker ticker;
+
+	private final Lock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * The queued events if the overflow policy is not {@link ListenerOverflowPolicy#COALESCE}.
+	 */
+	private final LinkedList<QueuedEvent> queue = new LinkedList<QueuedEvent>();
+
+	/**
+	 * The queued events by port if the overflow policy is {@link ListenerOverflowPolicy#COALESCE}.
+	 */
+	private final Map<String, LinkedList<QueuedEvent>> queuesByPort = newLinkedHashMap();
+
+	/**
+	 * The ports with several queued events that were not merged yet.
+	 */
+	private final Set<String> mergeablePorts = newLinkedHashSet();
+
+	private int queueSize;
+
+	private boolean closed;
+
+	private long deliveredEventCount;
+
+	private long droppedEventCount;
+
+	private long coalescedEventCount;
+
+	private long overCapacityEventCount;
+
+	private long lastDeliveryLagNanos;
+
+	private long maxDeliveryLagNanos;
+
+	AsyncDeviceObserverListener(final DeviceObserverListener listener, final int capacity,
+								final ListenerOverflowPolicy overflowPolicy, final Ticker ticker) {
+
+		checkArgument(capacity > 0, "The queue capacity must be positive");
+
+		this.listener = checkNotNull(listener);
+		this.capacity = capacity;
+		this.overflowPolicy = checkNotNull(overflowPolicy);
+		this.ticker = checkNotNull(ticker);
+
+		final Thread deliveryThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				deliver();
+			}
+		}, "DeviceObserverListener " + listener
+		);
+		deliveryThread.setDaemon(true);
+		deliveryThread.start();
+	}
+
+	@Override
+	public void deviceEvent(final DeviceEvent event) {
+
+		final QueuedEvent queuedEvent = new QueuedEvent(event, ticker.read());
+
+		lock.lock();
+		try {
+
+			if (overflowPolicy == ListenerOverflowPolicy.COALESCE) {
+				if (!closed) {
+					enqueueCoalescing(queuedEvent);
+					notEmpty.signal();
+				}
+				return;
+			}
+
+			while (!closed && queueSize >= capacity) {
+				if (overflowPolicy == ListenerOverflowPolicy.BLOCK) {
+					notFull.awaitUninterruptibly();
+				} else {
+					queue.removeFirst();
+					queueSize--;
+					droppedEventCount++;
+				}
+			}
+
+			if (closed) {
+				return;
+			}
+
+			queue.add(queuedEvent);
+			queueSize++;
+			notEmpty.signal();
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	DeviceObserverListenerMetrics getMetrics() {
+		lock.lock();
+		try {
+			return new DeviceObserverListenerMetrics(
+					queueSize,
+					deliveredEventCount,
+					droppedEventCount,
+					coalescedEventCount,
+					overCapacityEventCount,
+					TimeUnit.NANOSECONDS.toMillis(lastDeliveryLagNanos),
+					TimeUnit.NANOSECONDS.toMillis(maxDeliveryLagNanos)
+			);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops delivering events. Queued events are discarded, an event that is currently being delivered is not
+	 * interrupted.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			queue.clear();
+			queuesByPort.clear();
+			mergeablePorts.clear();
+			queueSize = 0;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void deliver() {
+
+		while (true) {
+
+			final QueuedEvent queuedEvent;
+
+			lock.lock();
+			try {
+				while (!closed && queueSize == 0) {
+					notEmpty.awaitUninterruptibly();
+				}
+				if (closed) {
+					return;
+				}
+				queuedEvent = dequeue();
+				notFull.signal();
+			} finally {
+				lock.unlock();
+			}
+
+			try {
+				listener.deviceEvent(queuedEvent.event);
+			} catch (Exception e) {
+				log.warn("Exception occurred while notifying {} listener: {}", listener, e);
+			}
+
+			final long lagNanos = ticker.read() - queuedEvent.enqueuedNanos;
+
+			lock.lock();
+			try {
+				deliveredEventCount++;
+				lastDeliveryLagNanos = lagNanos;
+				maxDeliveryLagNanos = Math.max(maxDeliveryLagNanos, lagNanos);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private QueuedEvent dequeue() {
+
+		queueSize--;
+
+		if (overflowPolicy != ListenerOverflowPolicy.COALESCE) {
+			return queue.removeFirst();
+		}
+
+		final Iterator<Map.Entry<String, LinkedList<QueuedEvent>>> iterator = queuesByPort.entrySet().iterator();
+		final Map.Entry<String, LinkedList<QueuedEvent>> portQueue = iterator.next();
+		final QueuedEvent queuedEvent = portQueue.getValue().removeFirst();
+		if (portQueue.getValue().size() < 2) {
+			mergeablePorts.remove(portQueue.getKey());
+		}
+		if (portQueue.getValue().isEmpty()) {
+			iterator.remove();
+		}
+		return queuedEvent;
+	}
+
+	/**
+	 * Queues the event with the ones of its port and merges the events of single ports until the queue is not full
+	 * anymore. Must be called while holding the lock.
+	 */
+	private void enqueueCoalescing(final QueuedEvent queuedEvent) {
+
+		final String port = queuedEvent.event.getDeviceInfo().getPort();
+		LinkedList<QueuedEvent> portQueue = queuesByPort.get(port);
+
+		if (portQueue == null) {
+			portQueue = new LinkedList<QueuedEvent>();
+			queuesByPort.put(port, portQueue);
+		}
+
+		portQueue.add(queuedEvent);
+		queueSize++;
+
+		if (portQueue.size() > 1) {
+			mergeablePorts.add(port);
+		}
+
+		while (queueSize > capacity) {
+
+			if (mergeablePorts.isEmpty()) {
+				overCapacityEventCount++;
+				return;
+			}
+
+			coalesce(mergeablePorts.contains(port) ? port : mergeablePorts.iterator().next());
+		}
+	}
+
+	/**
+	 * Replaces the queued events of a port by the events that lead from the state before the first to the state after
+	 * the last of them. Must be called while holding the lock.
+	 */
+	private void coalesce(final String port) {
+
+		final LinkedList<QueuedEvent> portQueue = queuesByPort.get(port);
+		final int sizeBefore = portQueue.size();
+		final QueuedEvent first = portQueue.getFirst();
+		final QueuedEvent last = portQueue.getLast();
+		final DeviceInfo before = getStateBefore(first.event);
+		final DeviceInfo after = last.event.getType() == DeviceEvent.Type.REMOVED ?
+				null :
+				last.event.getDeviceInfo();
+
+		portQueue.clear();
+
+		if (before == null && after != null) {
+			portQueue.add(withEvent(last, DeviceEvent.Type.ATTACHED, after));
+		} else if (before != null && after == null) {
+			portQueue.add(withEvent(first, DeviceEvent.Type.REMOVED, before));
+		} else if (before != null && !before.equals(after)) {
+			if (before.getMacAddress() == null && after.getMacAddress() != null && before.isSameDevice(after)) {
+				portQueue.add(withEvent(last, DeviceEvent.Type.MAC_RESOLVED, after));
+			} else {
+				portQueue.add(withEvent(first, DeviceEvent.Type.REMOVED, before));
+				portQueue.add(withEvent(last, DeviceEvent.Type.ATTACHED, after));
+			}
+		}
+
+		mergeablePorts.remove(port);
+		if (portQueue.isEmpty()) {
+			queuesByPort.remove(port);
+		}
+
+		queueSize -= sizeBefore - portQueue.size();
+		coalescedEventCount += sizeBefore - portQueue.size();
+	}
+
+	/**
+	 * @return the device attached to the port of the event before the event happened, {@code null} if none
+	 */
+	private static DeviceInfo getStateBefore(final DeviceEvent event) {
+		switch (event.getType()) {
+			case REMOVED:
+				return event.getDeviceInfo();
+			case MAC_RESOLVED:
+				return event.getDeviceInfo().withMacAddress(null);
+			default:
+				return null;
+		}
+	}
+
+	private static QueuedEvent withEvent(final QueuedEvent queuedEvent, final DeviceEvent.Type type,
+										 final DeviceInfo deviceInfo) {
+		if (queuedEvent.event.getType() == type && queuedEvent.event.getDeviceInfo() == deviceInfo) {
+			return queuedEvent;
+		}
+		return new QueuedEvent(new DeviceEvent(type, deviceInfo), queuedEvent.enqueuedNanos);
+	}
+
+	private static class QueuedEvent {
+
+		private final DeviceEvent event;
+
+		private final long enqueuedNanos;
+
+		private QueuedEvent(final DeviceEvent event, final long enqueuedNanos) {
+			this.event = event;
+			this.enqueuedNanos = enqueuedNanos;
+		}
+	}
+}
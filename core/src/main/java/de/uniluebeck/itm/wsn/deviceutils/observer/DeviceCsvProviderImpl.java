@@ -31,19 +31,33 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
 
 public class DeviceCsvProviderImpl implements DeviceCsvProvider {
 
 	private static final Logger log = LoggerFactory.getLogger(DeviceCsvProvider.class);
 
+	static final String SCRIPT_LINUX = "devicelist-linux";
+
+	static final String SCRIPT_MAC_OSX = "devicelist-macosx";
+
+	static final String SCRIPT_WINDOWS_XP = "devicelist-windowsxp.exe";
+
 	@Override
 	public String getDeviceCsv() {
+		return getCsv(getScriptName());
+	}
+
+	static String getScriptName() {
 		if (SystemUtils.IS_OS_LINUX) {
-			return getCsv("devicelist-linux");
+			return SCRIPT_LINUX;
 		} else if (SystemUtils.IS_OS_MAC_OSX) {
-			return getCsv("devicelist-macosx");
+			return SCRIPT_MAC_OSX;
 		} else if (SystemUtils.IS_OS_WINDOWS_XP) {
-			return getCsv("devicelist-windowsxp.exe");
+			return SCRIPT_WINDOWS_XP;
 		}
 		throw new RuntimeException(
 				"OS " + SystemUtils.OS_NAME + " " + SystemUtils.OS_VERSION +
@@ -51,13 +65,16 @@ public class DeviceCsvProviderImpl implements DeviceCsvProvider {
 		);
 	}
 
-	private String getCsv(final String scriptName) {
+	String getCsv(final String scriptName, final String... additionalArguments) {
 
 		File tmpFile = copyScriptToTmpFile(scriptName);
 
 		try {
 
-			ProcessBuilder pb = new ProcessBuilder(tmpFile.getAbsolutePath(), "-c");
+			final List<String> command = newArrayList(tmpFile.getAbsolutePath(), "-c");
+			command.addAll(Arrays.asList(additionalArguments));
+
+			ProcessBuilder pb = new ProcessBuilder(command);
 			Process p = pb.start();
 			final String csv = new String(ByteStreams.toByteArray(p.getInputStream()));
 			if (!tmpFile.delete()) {
@@ -70,12 +87,12 @@ public class DeviceCsvProviderImpl implements DeviceCsvProvider {
 		}
 	}
 
-	private File copyScriptToTmpFile(final String scriptName) {
+	static File copyScriptToTmpFile(final String scriptName) {
 
 		try {
 
 			final byte[] scriptBytes = ByteStreams.toByteArray(
-					getClass().getClassLoader().getResourceAsStream(scriptName)
+					DeviceCsvProviderImpl.class.getClassLoader().getResourceAsStream(scriptName)
 			);
 			File to = File.createTempFile("devicelist", "");
 			Files.copy(ByteStreams.newInputStreamSupplier(scriptBytes), to);
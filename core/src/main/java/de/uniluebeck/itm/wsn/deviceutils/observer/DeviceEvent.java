@@ -26,8 +26,16 @@ package de.uniluebeck.itm.wsn.deviceutils.observer;
 public class DeviceEvent {
 
 	public static enum Type {
+
 		ATTACHED,
-		REMOVED
+
+		REMOVED,
+
+		/**
+		 * The MAC address of a device that was attached before without a MAC address has been read. Only emitted if
+		 * {@link DeviceObserverConfig#isLazyMacResolution()} is enabled.
+		 */
+		MAC_RESOLVED
 	}
 
 	private final Type type;
@@ -0,0 +1,100 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the most recent events of a {@link DeviceObserver} in a ring buffer. Events are numbered consecutively,
+ * starting at 1, so that consumers can ask for the events following the last one they have seen without keeping a copy
+ * of the device state.
+ */
+class DeviceEventLog {
+
+	private final DeviceEvent[] ring;
+
+	/**
+	 * The sequence number of the last event appended, 0 if there is none.
+	 */
+	private long lastSequence;
+
+	private ImmutableMap<String, DeviceInfo> state = ImmutableMap.of();
+
+	DeviceEventLog(final int capacity) {
+		checkArgument(capacity > 0, "The event log capacity must be positive");
+		this.ring = new DeviceEvent[capacity];
+	}
+
+	/**
+	 * Appends the events of a scan.
+	 *
+	 * @param events
+	 * 		the events that lead to {@code state}
+	 * @param state
+	 * 		the state after the events
+	 */
+	synchronized void append(final List<DeviceEvent> events, final ImmutableMap<String, DeviceInfo> state) {
+		for (DeviceEvent event : events) {
+			lastSequence++;
+			ring[(int) ((lastSequence - 1) % ring.length)] = event;
+		}
+		this.state = checkNotNull(state);
+	}
+
+	synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * Returns the events with sequence numbers greater than {@code sequence}. If any of these events has been dropped
+	 * already or {@code sequence} is greater than the last sequence number handed out, the page asks for a resync
+	 * instead, which is always the case for negative sequence numbers.
+	 *
+	 * @param sequence
+	 * 		the sequence number of the last event seen, 0 if none
+	 *
+	 * @return the page of events
+	 */
+	synchronized DeviceEventPage getEventsSince(final long sequence) {
+
+		final long oldestSequence = Math.max(1, lastSequence - ring.length + 1);
+
+		if (sequence < oldestSequence - 1 || sequence > lastSequence) {
+			return new DeviceEventPage(ImmutableList.<DeviceEvent>of(), lastSequence, state);
+		}
+
+		final ImmutableList.Builder<DeviceEvent> events = ImmutableList.builder();
+		for (long s = sequence + 1; s <= lastSequence; s++) {
+			events.add(ring[(int) ((s - 1) % ring.length)]);
+		}
+
+		return new DeviceEventPage(events.build(), lastSequence, null);
+	}
+}
@@ -0,0 +1,95 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The answer to {@link ExtendedDeviceObserver#getEventsSince(long)}: either the events that happened after the given
+ * sequence number or, if these are no longer available, the current state to resynchronize with.
+ */
+public class DeviceEventPage {
+
+	private final ImmutableList<DeviceEvent> events;
+
+	private final long lastSequence;
+
+	@Nullable
+	private final ImmutableMap<String, DeviceInfo> resyncState;
+
+	DeviceEventPage(final ImmutableList<DeviceEvent> events,
+					final long lastSequence,
+					@Nullable final ImmutableMap<String, DeviceInfo> resyncState) {
+		this.events = checkNotNull(events);
+		this.lastSequence = lastSequence;
+		this.resyncState = resyncState;
+	}
+
+	/**
+	 * @return the events after the requested sequence number in the order they happened, empty if
+	 *         {@link #isResyncRequired()}
+	 */
+	public ImmutableList<DeviceEvent> getEvents() {
+		return events;
+	}
+
+	/**
+	 * @return the sequence number of the last event contained in (or, on a resync, reflected by) this page, to be
+	 *         passed to the next call of {@link ExtendedDeviceObserver#getEventsSince(long)}
+	 */
+	public long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * @return {@code true} if the requested events have been dropped from the event log (or were never logged) so that
+	 *         the consumer has to replace its state with {@link #getResyncState()}
+	 */
+	public boolean isResyncRequired() {
+		return resyncState != null;
+	}
+
+	/**
+	 * @return the state after the event with sequence number {@link #getLastSequence()} if
+	 *         {@link #isResyncRequired()}, {@code null} otherwise
+	 */
+	@Nullable
+	public ImmutableMap<String, DeviceInfo> getResyncState() {
+		return resyncState;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceEventPage{" +
+				"events=" + events +
+				", lastSequence=" + lastSequence +
+				", resyncState=" + resyncState +
+				'}';
+	}
+}
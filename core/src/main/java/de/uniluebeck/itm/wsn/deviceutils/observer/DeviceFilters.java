@@ -0,0 +1,141 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Filters to register a {@link DeviceObserverListener} with (see
+ * {@link ExtendedDeviceObserver#addListener(DeviceObserverListener, Predicate)}) so that it is only notified about the
+ * devices it is interested in. Filters can be combined using {@link com.google.common.base.Predicates}.
+ */
+public final class DeviceFilters {
+
+	private DeviceFilters() {
+	}
+
+	/**
+	 * @param types
+	 * 		the device types to match, e.g., {@code "telosb"}
+	 *
+	 * @return a filter matching devices of one of the given types
+	 */
+	public static Predicate<DeviceInfo> type(final String... types) {
+		final Set<String> typeSet = ImmutableSet.copyOf(types);
+		return new Predicate<DeviceInfo>() {
+			@Override
+			public boolean apply(final DeviceInfo deviceInfo) {
+				return typeSet.contains(deviceInfo.getType());
+			}
+
+			@Override
+			public String toString() {
+				return "type in " + typeSet;
+			}
+		};
+	}
+
+	/**
+	 * @param portPattern
+	 * 		a regular expression the whole port has to match, e.g., {@code "/dev/ttyUSB.*"}
+	 *
+	 * @return a filter matching devices attached to a port matching {@code portPattern}
+	 */
+	public static Predicate<DeviceInfo> portMatching(final String portPattern) {
+		return portMatching(Pattern.compile(portPattern));
+	}
+
+	/**
+	 * @param portPattern
+	 * 		a pattern the whole port has to match
+	 *
+	 * @return a filter matching devices attached to a port matching {@code portPattern}
+	 */
+	public static Predicate<DeviceInfo> portMatching(final Pattern portPattern) {
+		checkNotNull(portPattern);
+		return new Predicate<DeviceInfo>() {
+			@Override
+			public boolean apply(final DeviceInfo deviceInfo) {
+				return portPattern.matcher(deviceInfo.getPort()).matches();
+			}
+
+			@Override
+			public String toString() {
+				return "port matches " + portPattern;
+			}
+		};
+	}
+
+	/**
+	 * @param reference
+	 * 		the device reference to match
+	 *
+	 * @return a filter matching the device with the given reference
+	 */
+	public static Predicate<DeviceInfo> reference(final String reference) {
+		checkNotNull(reference);
+		return new Predicate<DeviceInfo>() {
+			@Override
+			public boolean apply(final DeviceInfo deviceInfo) {
+				return reference.equals(deviceInfo.getReference());
+			}
+
+			@Override
+			public String toString() {
+				return "reference is " + reference;
+			}
+		};
+	}
+
+	/**
+	 * Matches the device with the given MAC address. Note that devices whose MAC address is not known yet when they are
+	 * attached do not match before their MAC address is resolved, see {@link DeviceEvent.Type#MAC_RESOLVED}.
+	 *
+	 * @param macAddress
+	 * 		the MAC address to match
+	 *
+	 * @return a filter matching the device with the given MAC address
+	 */
+	public static Predicate<DeviceInfo> macAddress(final MacAddress macAddress) {
+		checkNotNull(macAddress);
+		return new Predicate<DeviceInfo>() {
+			@Override
+			public boolean apply(final DeviceInfo deviceInfo) {
+				return macAddress.equals(deviceInfo.getMacAddress());
+			}
+
+			@Override
+			public String toString() {
+				return "MAC address is " + macAddress;
+			}
+		};
+	}
+}
@@ -27,15 +27,21 @@ import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Describes a device attached to a serial port. Instances are immutable so that the observer can hand out the same
+ * instance for an unchanged device in every scan.
+ */
 public class DeviceInfo {
 
-	String type;
+	private final String type;
 
-	String port;
+	private final String port;
 
-	String reference;
+	private final String reference;
 
-	MacAddress macAddress;
+	private final MacAddress macAddress;
+
+	private final int hashCode;
 
 	public DeviceInfo(final String type, final String port, final String reference, final MacAddress macAddress) {
 
@@ -47,6 +53,40 @@ public class DeviceInfo {
 
 		this.reference = reference;
 		this.macAddress = macAddress;
+
+		int result = type.hashCode();
+		result = 31 * result + port.hashCode();
+		result = 31 * result + (reference != null ? reference.hashCode() : 0);
+		result = 31 * result + (macAddress != null ? macAddress.hashCode() : 0);
+		this.hashCode = result;
+	}
+
+	/**
+	 * Returns a copy of this instance with the given MAC address.
+	 *
+	 * @param macAddress
+	 * 		the MAC address of the device
+	 *
+	 * @return a copy of this instance with the given MAC address
+	 */
+	public DeviceInfo withMacAddress(final MacAddress macAddress) {
+		return new DeviceInfo(type, port, reference, macAddress);
+	}
+
+	/**
+	 * Checks if {@code other} describes the same device as this instance, i.e. if type, port and reference are equal,
+	 * ignoring the MAC address.
+	 *
+	 * @param other
+	 * 		the device to compare with
+	 *
+	 * @return {@code true} if {@code other} describes the same device
+	 */
+	public boolean isSameDevice(final DeviceInfo other) {
+		return other == this || (other != null &&
+				type.equals(other.type) &&
+				port.equals(other.port) &&
+				(reference != null ? reference.equals(other.reference) : other.reference == null));
 	}
 
 	public MacAddress getMacAddress() {
@@ -76,6 +116,10 @@ public class DeviceInfo {
 
 		final DeviceInfo that = (DeviceInfo) o;
 
+		if (hashCode != that.hashCode) {
+			return false;
+		}
+
 		if (macAddress != null ? !macAddress.equals(that.macAddress) : that.macAddress != null) {
 			return false;
 		}
@@ -94,11 +138,7 @@ public class DeviceInfo {
 
 	@Override
 	public int hashCode() {
-		int result = type.hashCode();
-		result = 31 * result + port.hashCode();
-		result = 31 * result + (reference != null ? reference.hashCode() : 0);
-		result = 31 * result + (macAddress != null ? macAddress.hashCode() : 0);
-		return result;
+		return hashCode;
 	}
 
 	@Override
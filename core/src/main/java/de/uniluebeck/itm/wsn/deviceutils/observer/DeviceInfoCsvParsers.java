@@ -0,0 +1,69 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+import static com.google.common.collect.Maps.newHashMap;
+
+final class DeviceInfoCsvParsers {
+
+	private DeviceInfoCsvParsers() {
+	}
+
+	/**
+	 * Parses {@code csv} with {@code parser} and returns the instance contained in {@code lastState} for every device
+	 * that is unchanged, i.e. whose type, port and reference are the same as in {@code lastState}.
+	 *
+	 * @param parser
+	 * 		the parser to use
+	 * @param csv
+	 * 		the CSV to parse
+	 * @param lastState
+	 * 		the result of the last scan or {@code null} if there was none
+	 *
+	 * @return the devices found, keyed by their port
+	 */
+	static Map<String, DeviceInfo> parseCsv(final DeviceInfoCsvParser parser, final String csv,
+											@Nullable final Map<String, DeviceInfo> lastState) {
+
+		if (parser instanceof IncrementalDeviceInfoCsvParser) {
+			return ((IncrementalDeviceInfoCsvParser) parser).parseCsv(csv, lastState);
+		}
+
+		final Map<String, DeviceInfo> newState = newHashMap(parser.parseCsv(csv));
+
+		if (lastState != null) {
+			for (Map.Entry<String, DeviceInfo> entry : newState.entrySet()) {
+				final DeviceInfo lastInfo = lastState.get(entry.getKey());
+				if (lastInfo != null && lastInfo.isSameDevice(entry.getValue())) {
+					entry.setValue(lastInfo);
+				}
+			}
+		}
+
+		return newState;
+	}
+}
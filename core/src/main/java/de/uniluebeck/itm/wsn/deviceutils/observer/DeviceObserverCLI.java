@@ -41,6 +41,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.Properties;
 import java.util.concurrent.*;
 
@@ -56,6 +57,8 @@ public class DeviceObserverCLI {
 
 	private static final int EXIT_CODE_REFERENCE_FILE_IS_DIRECTORY = 4;
 
+	private static final long EVENT_FLUSH_INTERVAL_MILLIS = 100;
+
 	public static void main(String[] args) throws IOException {
 
 		Logging.setLoggingDefaults();
@@ -64,6 +67,13 @@ public class DeviceObserverCLI {
 		Options options = createCommandLineOptions();
 
 		DeviceMacReferenceMap deviceMacReferenceMap = null;
+		final DeviceObserverConfig deviceObserverConfig = new DeviceObserverConfig();
+		boolean watchForHotplugEvents = false;
+		Integer serverPort = null;
+		boolean ndjsonOutput = false;
+		File eventFile = null;
+		long eventFileMaxSize = NdjsonDeviceEventWriter.DEFAULT_MAX_FILE_SIZE;
+		int eventFileMaxBackups = NdjsonDeviceEventWriter.DEFAULT_MAX_BACKUP_FILES;
 
 		try {
 
@@ -85,6 +95,55 @@ public class DeviceObserverCLI {
 				deviceMacReferenceMap = readDeviceMacReferenceMap(line.getOptionValue('r'));
 			}
 
+			if (line.hasOption('d')) {
+				final String csvProviderType = line.getOptionValue('d').toUpperCase().replace('-', '_');
+				deviceObserverConfig.setCsvProviderType(DeviceObserverConfig.CsvProviderType.valueOf(csvProviderType));
+			}
+
+			if (line.hasOption('k')) {
+				deviceObserverConfig.setMacCacheFile(new File(line.getOptionValue('k')));
+			}
+
+			if (line.hasOption('f')) {
+				deviceObserverConfig.setFastScanIntervalMillis(Long.parseLong(line.getOptionValue('f')));
+			}
+
+			if (line.hasOption('i')) {
+				deviceObserverConfig.setIdleScanIntervalMillis(Long.parseLong(line.getOptionValue('i')));
+			}
+
+			if (line.hasOption('t')) {
+				deviceObserverConfig.setFastScanWindowMillis(Long.parseLong(line.getOptionValue('t')));
+			}
+
+			if (line.hasOption('b')) {
+				deviceObserverConfig.setDebounceWindowMillis(Long.parseLong(line.getOptionValue('b')));
+			}
+
+			deviceObserverConfig.setLazyMacResolution(line.hasOption('m'));
+			deviceObserverConfig.setShardedScanning(line.hasOption('s'));
+
+			watchForHotplugEvents = line.hasOption('w');
+
+			if (line.hasOption('p')) {
+				serverPort = Integer.parseInt(line.getOptionValue('p'));
+			}
+
+			ndjsonOutput = line.hasOption('j');
+
+			if (line.hasOption('o')) {
+				ndjsonOutput = true;
+				eventFile = new File(line.getOptionValue('o'));
+			}
+
+			if (line.hasOption('z')) {
+				eventFileMaxSize = Long.parseLong(line.getOptionValue('z'));
+			}
+
+			if (line.hasOption('n')) {
+				eventFileMaxBackups = Integer.parseInt(line.getOptionValue('n'));
+			}
+
 		} catch (Exception e) {
 			log.error("Invalid command line: " + e);
 			printUsageAndExit(DeviceObserverCLI.class, options, 1);
@@ -94,20 +153,54 @@ public class DeviceObserverCLI {
 				new ThreadFactoryBuilder().setNameFormat("DeviceObserver %d").build()
 		);
 		
-		final DeviceObserver deviceObserver = Guice
-				.createInjector(new DeviceUtilsModule(executorService, deviceMacReferenceMap))
-				.getInstance(DeviceObserver.class);
-
-		deviceObserver.addListener(new DeviceObserverListener() {
-			@Override
-			public void deviceEvent(final DeviceEvent event) {
-				System.out.println(event);
-			}
-		});
+		final ExtendedDeviceObserver deviceObserver = Guice
+				.createInjector(new DeviceUtilsModule(executorService, deviceMacReferenceMap, true, deviceObserverConfig))
+				.getInstance(ExtendedDeviceObserver.class);
 
 		final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("DeviceObserverScheduler %d").build();
 		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1, threadFactory);
-		scheduler.scheduleAtFixedRate(deviceObserver, 0, 1, TimeUnit.SECONDS);
+
+		if (ndjsonOutput) {
+
+			final NdjsonDeviceEventWriter eventWriter = eventFile == null ?
+					new NdjsonDeviceEventWriter(System.out) :
+					new NdjsonDeviceEventWriter(eventFile, eventFileMaxSize, eventFileMaxBackups);
+
+			deviceObserver.addListener(eventWriter);
+			scheduler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					eventWriter.flush();
+				}
+			}, EVENT_FLUSH_INTERVAL_MILLIS, EVENT_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS
+			);
+			Runtime.getRuntime().addShutdownHook(new Thread("DeviceObserverShutdown") {
+				@Override
+				public void run() {
+					eventWriter.close();
+				}
+			}
+			);
+
+		} else {
+
+			deviceObserver.addListener(new DeviceObserverListener() {
+				@Override
+				public void deviceEvent(final DeviceEvent event) {
+					System.out.println(event);
+				}
+			});
+		}
+
+		if (serverPort != null) {
+			new DeviceObserverServer(deviceObserver, new InetSocketAddress(serverPort)).start();
+		}
+
+		if (watchForHotplugEvents) {
+			new DeviceObserverHotplugTrigger(deviceObserver, scheduler).start();
+		} else {
+			new AdaptiveScanScheduler(deviceObserver, scheduler, deviceObserverConfig).start();
+		}
 	}
 
 	private static DeviceMacReferenceMap readDeviceMacReferenceMap(final String fileName) throws IOException {
@@ -147,6 +240,57 @@ public class DeviceObserverCLI {
 		options.addOption("r", "referencetomacmap", true,
 				"Optional: a properties file containing device references to MAC address mappings"
 		);
+		options.addOption("d", "devicelist", true,
+				"Optional: how to list attached devices (one of [" +
+						Joiner.on(", ").join(DeviceObserverConfig.CsvProviderType.values()).toLowerCase().replace('_', '-') +
+						"], default: script)"
+		);
+		options.addOption("k", "maccache", true,
+				"Optional: a file to persist MAC addresses read from devices in so that they are not read again after " +
+						"a restart"
+		);
+		options.addOption("w", "watch", false,
+				"Optional: only scan when serial devices appear in or disappear from /dev (plus a safety scan every " +
+						DeviceObserverHotplugTrigger.DEFAULT_SAFETY_POLL_INTERVAL_MILLIS / 1000 + " seconds) " +
+						"instead of polling"
+		);
+		options.addOption("f", "fastinterval", true,
+				"Optional: the polling interval in milliseconds after devices changed (default: 100)"
+		);
+		options.addOption("i", "idleinterval", true,
+				"Optional: the polling interval in milliseconds if devices did not change recently (default: 1000)"
+		);
+		options.addOption("t", "fastwindow", true,
+				"Optional: the time in milliseconds after the last change during which to poll with the fast " +
+						"interval (default: 5000)"
+		);
+		options.addOption("b", "debounce", true,
+				"Optional: the time in milliseconds a port must be stable before a device is reported as attached or " +
+						"removed (default: 0)"
+		);
+		options.addOption("p", "port", true,
+				"Optional: stream the device state to clients connecting to this TCP port"
+		);
+		options.addOption("j", "json", false,
+				"Optional: print events as newline-delimited JSON objects instead of plain text"
+		);
+		options.addOption("o", "outfile", true,
+				"Optional: write events as newline-delimited JSON objects to this file instead of printing them"
+		);
+		options.addOption("z", "outfilesize", true,
+				"Optional: the size in bytes after which the file given by -o is rotated (default: " +
+						NdjsonDeviceEventWriter.DEFAULT_MAX_FILE_SIZE + ")"
+		);
+		options.addOption("n", "outfilebackups", true,
+				"Optional: the number of rotated files to keep next to the file given by -o (default: " +
+						NdjsonDeviceEventWriter.DEFAULT_MAX_BACKUP_FILES + ")"
+		);
+		options.addOption("s", "sharded", false,
+				"Optional: scan the USB buses concurrently and skip unchanged ones (requires -d sysfs)"
+		);
+		options.addOption("m", "lazymac", false,
+				"Optional: report devices before their MAC address is read and report the MAC address when it is known"
+		);
 		options.addOption("v", "verbose", false, "Optional: verbose logging output (equal to -l DEBUG)");
 		options.addOption("l", "logging", true,
 				"Optional: set logging level (one of [" + Joiner.on(", ").join(Logging.LOG_LEVELS) + "])"
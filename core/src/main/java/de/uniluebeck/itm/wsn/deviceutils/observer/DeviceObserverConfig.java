@@ -0,0 +1,378 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacCache;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Configuration of the {@link DeviceObserver} and its collaborators as bound by {@link DeviceObserverModule}. Unless
+ * noted otherwise, all values default to the behaviour of previous versions.
+ */
+public class DeviceObserverConfig {
+
+	public static enum CsvProviderType {
+
+		/**
+		 * Extracts and runs the platform-specific devicelist script on every scan.
+		 */
+		SCRIPT,
+
+		/**
+		 * Keeps the devicelist script running as a helper process that is asked for a new list on every scan, see
+		 * {@link ResidentDeviceCsvProvider}.
+		 */
+		RESIDENT_SCRIPT,
+
+		/**
+		 * Reads the attached devices directly from sysfs (Linux only), see {@link SysfsDeviceCsvProvider}.
+		 */
+		SYSFS
+	}
+
+	/**
+	 * What to do if an event is to be queued for an asynchronously notified listener whose queue is full.
+	 */
+	public static enum ListenerOverflowPolicy {
+
+		/**
+		 * Blocks the scanning thread until the listener made room in its queue. No events are lost.
+		 */
+		BLOCK,
+
+		/**
+		 * Drops the oldest queued event.
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Collapses the queued events into the least number of events that lead the listener to the latest state, e.g.,
+		 * a device that was attached and removed again while the listener was busy is not reported at all.
+		 */
+		COALESCE
+	}
+
+	private CsvProviderType csvProviderType = CsvProviderType.SCRIPT;
+
+	/**
+	 * Whether listeners are notified on a thread of their own instead of the scanning thread, see
+	 * {@link AsyncDeviceObserverListener}.
+	 */
+	private boolean asyncListenerDispatch = false;
+
+	/**
+	 * The maximum number of events queued per listener if listeners are notified asynchronously.
+	 */
+	private int listenerQueueCapacity = 1000;
+
+	private ListenerOverflowPolicy listenerOverflowPolicy = ListenerOverflowPolicy.BLOCK;
+
+	/**
+	 * The maximum number of MAC addresses read concurrently during a scan. Previous versions read them one after
+	 * another.
+	 */
+	private int maxConcurrentMacReads = 8;
+
+	/**
+	 * The maximum number of MAC addresses read concurrently from devices of the same type.
+	 */
+	private int maxConcurrentMacReadsPerDeviceType = 8;
+
+	/**
+	 * The time after which a scan publishes its state even if not all MAC addresses have been read yet, 0 to wait for
+	 * all reads. Reads that miss the deadline keep running and their results are picked up by subsequent scans.
+	 * Ignored if {@link #lazyMacResolution} is enabled.
+	 */
+	private long macReadDeadlineMillis = 0;
+
+	/**
+	 * If enabled and the bound {@link DeviceCsvProvider} is a {@link ShardedDeviceCsvProvider} (e.g., the
+	 * {@link CsvProviderType#SYSFS} provider, whose shards are the USB buses), every shard is scanned as a task of its
+	 * own on the bound {@link java.util.concurrent.ExecutorService} and shards that did not change are not parsed again.
+	 */
+	private boolean shardedScanning = false;
+
+	/**
+	 * If enabled, scans never wait for MAC addresses to be read. Devices are published without MAC address right away
+	 * and a {@link DeviceEvent.Type#MAC_RESOLVED} event is emitted by the first scan after the read finished. Requires
+	 * an {@link java.util.concurrent.ExecutorService} to be bound, otherwise reads still run on the scanning thread.
+	 */
+	private boolean lazyMacResolution = false;
+
+	/**
+	 * The time to wait before reading the MAC address of a device again after the first failed attempt. The delay
+	 * doubles with every further failure. Previous versions retried on every scan.
+	 */
+	private long macReadInitialBackoffMillis = 1000;
+
+	/**
+	 * The maximum time to wait between two attempts to read the MAC address of a device.
+	 */
+	private long macReadMaxBackoffMillis = 300000;
+
+	/**
+	 * The number of failed attempts after which the MAC address of a device is not read again until it is re-attached.
+	 */
+	private int macReadMaxAttempts = 10;
+
+	/**
+	 * The file to persist MAC addresses in by device reference, see {@link DeviceMacCache}. {@code null} disables the
+	 * cache.
+	 */
+	@Nullable
+	private File macCacheFile;
+
+	/**
+	 * The number of most recent events kept for {@link ExtendedDeviceObserver#getEventsSince(long)}.
+	 */
+	private int eventLogCapacity = 1000;
+
+	/**
+	 * The time a port has to show the same device (or no device) before the change is published, see
+	 * {@link DeviceStateDebouncer}. 0 publishes every change immediately.
+	 */
+	private long debounceWindowMillis = 0;
+
+	/**
+	 * The interval in which {@link AdaptiveScanScheduler} scans while devices are changing. Previous versions always
+	 * scanned once per second.
+	 */
+	private long fastScanIntervalMillis = 100;
+
+	/**
+	 * The interval in which {@link AdaptiveScanScheduler} scans if nothing changed for {@link #fastScanWindowMillis}.
+	 */
+	private long idleScanIntervalMillis = 1000;
+
+	/**
+	 * The time after the last change during which {@link AdaptiveScanScheduler} keeps scanning fast.
+	 */
+	private long fastScanWindowMillis = 5000;
+
+	public CsvProviderType getCsvProviderType() {
+		return csvProviderType;
+	}
+
+	public DeviceObserverConfig setCsvProviderType(final CsvProviderType csvProviderType) {
+		this.csvProviderType = checkNotNull(csvProviderType);
+		return this;
+	}
+
+	public boolean isAsyncListenerDispatch() {
+		return asyncListenerDispatch;
+	}
+
+	public DeviceObserverConfig setAsyncListenerDispatch(final boolean asyncListenerDispatch) {
+		this.asyncListenerDispatch = asyncListenerDispatch;
+		return this;
+	}
+
+	public int getListenerQueueCapacity() {
+		return listenerQueueCapacity;
+	}
+
+	public DeviceObserverConfig setListenerQueueCapacity(final int listenerQueueCapacity) {
+		checkArgument(listenerQueueCapacity > 0, "The listener queue capacity must be positive");
+		this.listenerQueueCapacity = listenerQueueCapacity;
+		return this;
+	}
+
+	public ListenerOverflowPolicy getListenerOverflowPolicy() {
+		return listenerOverflowPolicy;
+	}
+
+	public DeviceObserverConfig setListenerOverflowPolicy(final ListenerOverflowPolicy listenerOverflowPolicy) {
+		this.listenerOverflowPolicy = checkNotNull(listenerOverflowPolicy);
+		return this;
+	}
+
+	public int getMaxConcurrentMacReads() {
+		return maxConcurrentMacReads;
+	}
+
+	public DeviceObserverConfig setMaxConcurrentMacReads(final int maxConcurrentMacReads) {
+		checkArgument(maxConcurrentMacReads > 0, "The maximum number of concurrent MAC reads must be positive");
+		this.maxConcurrentMacReads = maxConcurrentMacReads;
+		return this;
+	}
+
+	public int getMaxConcurrentMacReadsPerDeviceType() {
+		return maxConcurrentMacReadsPerDeviceType;
+	}
+
+	public DeviceObserverConfig setMaxConcurrentMacReadsPerDeviceType(final int maxConcurrentMacReadsPerDeviceType) {
+		checkArgument(maxConcurrentMacReadsPerDeviceType > 0,
+				"The maximum number of concurrent MAC reads per device type must be positive"
+		);
+		this.maxConcurrentMacReadsPerDeviceType = maxConcurrentMacReadsPerDeviceType;
+		return this;
+	}
+
+	public long getMacReadDeadlineMillis() {
+		return macReadDeadlineMillis;
+	}
+
+	public DeviceObserverConfig setMacReadDeadlineMillis(final long macReadDeadlineMillis) {
+		checkArgument(macReadDeadlineMillis >= 0, "The MAC read deadline must not be negative");
+		this.macReadDeadlineMillis = macReadDeadlineMillis;
+		return this;
+	}
+
+	public boolean isShardedScanning() {
+		return shardedScanning;
+	}
+
+	public DeviceObserverConfig setShardedScanning(final boolean shardedScanning) {
+		this.shardedScanning = shardedScanning;
+		return this;
+	}
+
+	public boolean isLazyMacResolution() {
+		return lazyMacResolution;
+	}
+
+	public DeviceObserverConfig setLazyMacResolution(final boolean lazyMacResolution) {
+		this.lazyMacResolution = lazyMacResolution;
+		return this;
+	}
+
+	public long getMacReadInitialBackoffMillis() {
+		return macReadInitialBackoffMillis;
+	}
+
+	public DeviceObserverConfig setMacReadInitialBackoffMillis(final long macReadInitialBackoffMillis) {
+		checkArgument(macReadInitialBackoffMillis >= 0, "The initial MAC read backoff must not be negative");
+		this.macReadInitialBackoffMillis = macReadInitialBackoffMillis;
+		return this;
+	}
+
+	public long getMacReadMaxBackoffMillis() {
+		return macReadMaxBackoffMillis;
+	}
+
+	public DeviceObserverConfig setMacReadMaxBackoffMillis(final long macReadMaxBackoffMillis) {
+		checkArgument(macReadMaxBackoffMillis >= 0, "The maximum MAC read backoff must not be negative");
+		this.macReadMaxBackoffMillis = macReadMaxBackoffMillis;
+		return this;
+	}
+
+	public int getMacReadMaxAttempts() {
+		return macReadMaxAttempts;
+	}
+
+	public DeviceObserverConfig setMacReadMaxAttempts(final int macReadMaxAttempts) {
+		checkArgument(macReadMaxAttempts > 0, "The maximum number of MAC read attempts must be positive");
+		this.macReadMaxAttempts = macReadMaxAttempts;
+		return this;
+	}
+
+	@Nullable
+	public File getMacCacheFile() {
+		return macCacheFile;
+	}
+
+	public DeviceObserverConfig setMacCacheFile(@Nullable final File macCacheFile) {
+		this.macCacheFile = macCacheFile;
+		return this;
+	}
+
+	public int getEventLogCapacity() {
+		return eventLogCapacity;
+	}
+
+	public DeviceObserverConfig setEventLogCapacity(final int eventLogCapacity) {
+		checkArgument(eventLogCapacity > 0, "The event log capacity must be positive");
+		this.eventLogCapacity = eventLogCapacity;
+		return this;
+	}
+
+	public long getDebounceWindowMillis() {
+		return debounceWindowMillis;
+	}
+
+	public DeviceObserverConfig setDebounceWindowMillis(final long debounceWindowMillis) {
+		checkArgument(debounceWindowMillis >= 0, "The debounce window must not be negative");
+		this.debounceWindowMillis = debounceWindowMillis;
+		return this;
+	}
+
+	public long getFastScanIntervalMillis() {
+		return fastScanIntervalMillis;
+	}
+
+	public DeviceObserverConfig setFastScanIntervalMillis(final long fastScanIntervalMillis) {
+		checkArgument(fastScanIntervalMillis > 0, "The fast scan interval must be positive");
+		this.fastScanIntervalMillis = fastScanIntervalMillis;
+		return this;
+	}
+
+	public long getIdleScanIntervalMillis() {
+		return idleScanIntervalMillis;
+	}
+
+	public DeviceObserverConfig setIdleScanIntervalMillis(final long idleScanIntervalMillis) {
+		checkArgument(idleScanIntervalMillis > 0, "The idle scan interval must be positive");
+		this.idleScanIntervalMillis = idleScanIntervalMillis;
+		return this;
+	}
+
+	public long getFastScanWindowMillis() {
+		return fastScanWindowMillis;
+	}
+
+	public DeviceObserverConfig setFastScanWindowMillis(final long fastScanWindowMillis) {
+		checkArgument(fastScanWindowMillis >= 0, "The fast scan window must not be negative");
+		this.fastScanWindowMillis = fastScanWindowMillis;
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceObserverConfig{" +
+				"csvProviderType=" + csvProviderType +
+				", asyncListenerDispatch=" + asyncListenerDispatch +
+				", listenerQueueCapacity=" + listenerQueueCapacity +
+				", listenerOverflowPolicy=" + listenerOverflowPolicy +
+				", maxConcurrentMacReads=" + maxConcurrentMacReads +
+				", maxConcurrentMacReadsPerDeviceType=" + maxConcurrentMacReadsPerDeviceType +
+				", macReadDeadlineMillis=" + macReadDeadlineMillis +
+				", shardedScanning=" + shardedScanning +
+				", lazyMacResolution=" + lazyMacResolution +
+				", macReadInitialBackoffMillis=" + macReadInitialBackoffMillis +
+				", macReadMaxBackoffMillis=" + macReadMaxBackoffMillis +
+				", macReadMaxAttempts=" + macReadMaxAttempts +
+				", macCacheFile=" + macCacheFile +
+				", eventLogCapacity=" + eventLogCapacity +
+				", debounceWindowMillis=" + debounceWindowMillis +
+				", fastScanIntervalMillis=" + fastScanIntervalMillis +
+				", idleScanIntervalMillis=" + idleScanIntervalMillis +
+				", fastScanWindowMillis=" + fastScanWindowMillis +
+				'}';
+	}
+}
@@ -0,0 +1,253 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Drives a {@link DeviceObserver} (or any other scan) by watching the directories in which serial devices appear and
+ * disappear instead of polling at a fixed rate. A scan is scheduled whenever a {@code tty*} entry is created or
+ * deleted in one of the watched directories. A slow safety poll catches notifications that got lost (e.g., on
+ * platforms without native file system notifications or for directories that could not be watched).
+ */
+public class DeviceObserverHotplugTrigger implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceObserverHotplugTrigger.class);
+
+	public static final List<File> DEFAULT_WATCHED_DIRECTORIES = ImmutableList.of(
+			new File("/dev"),
+			new File("/sys/bus/usb-serial/devices")
+	);
+
+	public static final long DEFAULT_SAFETY_POLL_INTERVAL_MILLIS = 30000;
+
+	public static final long DEFAULT_SETTLE_DELAY_MILLIS = 50;
+
+	private final Runnable scan;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final List<File> watchedDirectories;
+
+	private final long safetyPollIntervalMillis;
+
+	private final long settleDelayMillis;
+
+	private final AtomicBoolean scanScheduled = new AtomicBoolean(false);
+
+	private final Runnable scanRunnable = new Runnable() {
+		@Override
+		public void run() {
+			scanScheduled.set(false);
+			try {
+				scan.run();
+			} catch (Exception e) {
+				log.warn("Exception while scanning for devices: ", e);
+			}
+			// e.g., debounced changes are published by a scan after they outlasted the window, there is no event for it
+			if (scan instanceof ScanRequestingDeviceObserver) {
+				final long delayMillis = ((ScanRequestingDeviceObserver) scan).getNextScanDelayMillis();
+				if (delayMillis >= 0) {
+					scheduleScan(delayMillis);
+				}
+			}
+		}
+	};
+
+	private final Runnable scanRequestListener = new Runnable() {
+		@Override
+		public void run() {
+			scheduleScan();
+		}
+	};
+
+	private WatchService watchService;
+
+	private Thread watchThread;
+
+	private ScheduledFuture<?> safetyPollFuture;
+
+	public DeviceObserverHotplugTrigger(final Runnable scan, final ScheduledExecutorService scheduler) {
+		this(scan, scheduler, DEFAULT_WATCHED_DIRECTORIES, DEFAULT_SAFETY_POLL_INTERVAL_MILLIS,
+				DEFAULT_SETTLE_DELAY_MILLIS
+		);
+	}
+
+	/**
+	 * @param scan
+	 * 		the scan to run, typically a {@link DeviceObserver}
+	 * @param scheduler
+	 * 		the scheduler to run the scans on, should be single-threaded so that scans never overlap
+	 * @param watchedDirectories
+	 * 		the directories to watch for {@code tty*} entries
+	 * @param safetyPollIntervalMillis
+	 * 		the interval in which to scan even if no notification was received
+	 * @param settleDelayMillis
+	 * 		the time to wait after a notification before scanning so that bursts of notifications result in one scan
+	 */
+	public DeviceObserverHotplugTrigger(final Runnable scan,
+										final ScheduledExecutorService scheduler,
+										final List<File> watchedDirectories,
+										final long safetyPollIntervalMillis,
+										final long settleDelayMillis) {
+
+		checkArgument(safetyPollIntervalMillis > 0, "The safety poll interval must be positive");
+		checkArgument(settleDelayMillis >= 0, "The settle delay must not be negative");
+
+		this.scan = checkNotNull(scan);
+		this.scheduler = checkNotNull(scheduler);
+		this.watchedDirectories = ImmutableList.copyOf(watchedDirectories);
+		this.safetyPollIntervalMillis = safetyPollIntervalMillis;
+		this.settleDelayMillis = settleDelayMillis;
+	}
+
+	/**
+	 * Starts watching and runs an initial scan. If the scan is a {@link ScanRequestingDeviceObserver}, scans it asks
+	 * for are scheduled like the ones caused by hotplug events and a scan is scheduled for when its pending changes are
+	 * due.
+	 *
+	 * @throws IOException
+	 * 		if the platform's watch service could not be created
+	 */
+	public synchronized void start() throws IOException {
+
+		checkState(watchService == null, "Already started");
+
+		watchService = FileSystems.getDefault().newWatchService();
+
+		for (File directory : watchedDirectories) {
+			try {
+				directory.toPath().register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+				log.debug("Watching {} for hotplug events", directory);
+			} catch (Exception e) {
+				log.warn("Could not watch {} for hotplug events, relying on safety poll: {}", directory, e.toString());
+			}
+		}
+
+		final WatchService startedWatchService = watchService;
+		watchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch(startedWatchService);
+			}
+		}, "DeviceObserverHotplugTrigger"
+		);
+		watchThread.setDaemon(true);
+		watchThread.start();
+
+		safetyPollFuture = scheduler.scheduleWithFixedDelay(
+				scanRunnable, 0, safetyPollIntervalMillis, TimeUnit.MILLISECONDS
+		);
+
+		if (scan instanceof ScanRequestingDeviceObserver) {
+			((ScanRequestingDeviceObserver) scan).addScanRequestListener(scanRequestListener);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+
+		if (watchService == null) {
+			return;
+		}
+
+		if (scan instanceof ScanRequestingDeviceObserver) {
+			((ScanRequestingDeviceObserver) scan).removeScanRequestListener(scanRequestListener);
+		}
+
+		safetyPollFuture.cancel(false);
+		watchThread.interrupt();
+		watchService.close();
+		watchService = null;
+	}
+
+	private void watch(final WatchService watchService) {
+
+		while (!Thread.currentThread().isInterrupted()) {
+
+			final WatchKey key;
+			try {
+				key = watchService.take();
+			} catch (InterruptedException e) {
+				break;
+			} catch (ClosedWatchServiceException e) {
+				break;
+			}
+
+			boolean relevant = false;
+			for (WatchEvent<?> event : key.pollEvents()) {
+				relevant |= event.kind() == OVERFLOW || isTty(event.context());
+			}
+
+			key.reset();
+
+			if (relevant) {
+				scheduleScan();
+			}
+		}
+	}
+
+	private void scheduleScan() {
+		scheduleScan(settleDelayMillis);
+	}
+
+	private void scheduleScan(final long delayMillis) {
+		if (scanScheduled.compareAndSet(false, true)) {
+			try {
+				scheduler.schedule(scanRunnable, delayMillis, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				log.debug("Scheduler was shut down, ignoring request to scan");
+			}
+		}
+	}
+
+	private static boolean isTty(final Object context) {
+		return context instanceof Path && ((Path) context).getFileName().toString().startsWith("tty");
+	}
+}
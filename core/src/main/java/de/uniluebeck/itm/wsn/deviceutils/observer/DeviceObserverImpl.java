@@ -25,24 +25,57 @@ package de.uniluebeck.itm.wsn.deviceutils.observer;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Ticker;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.math.LongMath;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.inject.Inject;
+import de.uniluebeck.itm.wsn.deviceutils.BoundedExecutor;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacCache;
 import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
 import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
 
-class DeviceObserverImpl implements DeviceObserver {
+class DeviceObserverImpl implements ExtendedDeviceObserver, ScanRequestingDeviceObserver {
 
 	private static final Logger log = LoggerFactory.getLogger(DeviceObserver.class);
 
+	/**
+	 * The priority of MAC reads requested through {@link #requestMacAddressRead(String)}. Reads of devices that were
+	 * just attached have {@link BoundedExecutor#DEFAULT_PRIORITY}, retries have one less per failed attempt.
+	 */
+	private static final int REQUESTED_MAC_READ_PRIORITY = BoundedExecutor.DEFAULT_PRIORITY + 1;
+
 	@Inject
-	private DeviceObserverListenerManager listenerManager;
+	private ExtendedDeviceObserverListenerManager listenerManager;
 
 	@Inject
 	private DeviceMacReader macReader;
@@ -53,8 +86,111 @@ class DeviceObserverImpl implements DeviceObserver {
 	@Inject
 	private DeviceInfoCsvParser csvParser;
 
+	@Inject(optional = true)
+	private DeviceObserverConfig config = new DeviceObserverConfig();
+
+	/**
+	 * The executor to read MAC addresses on. If none is bound they are read on the scanning thread.
+	 */
+	@Inject(optional = true)
+	private ExecutorService executorService;
+
+	/**
+	 * Consulted before reading MAC addresses from devices if bound.
+	 */
+	@Inject(optional = true)
+	private DeviceMacCache macCache;
+
+	/**
+	 * The time source for backing off failed MAC reads and measuring the delivery lag of asynchronous listeners.
+	 */
+	@Inject(optional = true)
+	private Ticker ticker = Ticker.systemTicker();
+
+	private BoundedExecutor macReadExecutor;
+
+	private MacReadBackoff macReadBackoff;
+
+	private DeviceStateDebouncer debouncer;
+
+	private DeviceEventLog eventLog;
+
+	/**
+	 * Lists the devices if sharded scanning is enabled, {@code null} otherwise.
+	 */
+	private ShardedDeviceScanner shardedScanner;
+
+	/**
+	 * MAC reads by port that were started by a scan but have not been consumed yet, e.g., because they missed the
+	 * deadline of the scan that started them.
+	 */
+	private final Map<String, PendingMacRead> pendingMacReads = newHashMap();
+
+	/**
+	 * The ports whose MAC address is to be read with priority by the next scan.
+	 */
+	private final Set<String> requestedMacReads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * The wrappers registered with the listener manager by listener if listeners are notified asynchronously.
+	 */
+	private final ConcurrentMap<DeviceObserverListener, AsyncDeviceObserverListener> asyncListeners =
+			new ConcurrentHashMap<DeviceObserverListener, AsyncDeviceObserverListener>();
+
+	private final List<Runnable> scanRequestListeners = new CopyOnWriteArrayList<Runnable>();
+
+	/**
+	 * Requests a scan once a MAC read that the last scan did not wait for is done, so that its result is published
+	 * right away instead of with the next scheduled scan.
+	 */
+	private final FutureCallback<MacAddress> macReadCompletionCallback = new FutureCallback<MacAddress>() {
+		@Override
+		public void onSuccess(@Nullable final MacAddress macAddress) {
+			if (macAddress != null) {
+				for (Runnable listener : scanRequestListeners) {
+					try {
+						listener.run();
+					} catch (Exception e) {
+						log.warn("Exception occurred while requesting a scan from {}: {}", listener, e);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void onFailure(final Throwable t) {
+			// failed reads are retried by a later scan after backing off, nothing to publish now
+		}
+	};
+
 	private ImmutableMap<String, DeviceInfo> currentState = ImmutableMap.of();
 
+	private volatile DeviceStateSnapshot currentSnapshot = DeviceStateSnapshot.INITIAL;
+
+	@Inject
+	void initialize() {
+		macReadExecutor = new BoundedExecutor(
+				executorService == null ? MoreExecutors.sameThreadExecutor() : executorService,
+				config.getMaxConcurrentMacReads(),
+				config.getMaxConcurrentMacReadsPerDeviceType()
+		);
+		macReadBackoff = new MacReadBackoff(config, ticker);
+		debouncer = new DeviceStateDebouncer(config.getDebounceWindowMillis(), ticker);
+		eventLog = new DeviceEventLog(config.getEventLogCapacity());
+
+		if (config.isShardedScanning()) {
+			if (csvProvider instanceof ShardedDeviceCsvProvider) {
+				shardedScanner = new ShardedDeviceScanner(
+						(ShardedDeviceCsvProvider) csvProvider,
+						csvParser,
+						executorService
+				);
+			} else {
+				log.warn("Sharded scanning is not supported by {}, scanning all devices at once", csvProvider);
+			}
+		}
+	}
+
 	@Override
 	public ImmutableList<DeviceEvent> getEvents(final ImmutableMap<String, DeviceInfo> lastState) {
 		return deriveEvents(lastState, currentState);
@@ -66,31 +202,43 @@ class DeviceObserverImpl implements DeviceObserver {
 	}
 
 	@Override
-	public ImmutableMap<String, DeviceInfo> updateState(boolean readMacAddress) {
+	public synchronized ImmutableMap<String, DeviceInfo> updateState(boolean readMacAddress) {
 
 		final ImmutableMap<String, DeviceInfo> oldState = currentState;
-		currentState = ImmutableMap.copyOf(csvParser.parseCsv(csvProvider.getDeviceCsv()));
+		final Map<String, DeviceInfo> newState = debouncer.debounce(
+				oldState,
+				shardedScanner != null ?
+						shardedScanner.scan(oldState) :
+						DeviceInfoCsvParsers.parseCsv(csvParser, csvProvider.getDeviceCsv(), oldState)
+		);
 
 		if (readMacAddress) {
 
-			for (Map.Entry<String, DeviceInfo> currentStateEntry : currentState.entrySet()) {
-
-				if (oldState.containsKey(currentStateEntry.getKey())) {
+			// unchanged devices are the instances of the last scan and carry their MAC address forward
+			final List<DeviceInfo> devicesToEnrich = newArrayList();
+			for (DeviceInfo deviceInfo : newState.values()) {
+				if (deviceInfo.getMacAddress() == null) {
+					devicesToEnrich.add(deviceInfo);
+				}
+			}
 
-					DeviceInfo oldDeviceInfo = oldState.get(currentStateEntry.getKey());
-					DeviceInfo newDeviceInfo = currentStateEntry.getValue();
+			macReadBackoff.retainAll(newState.values());
+			final Map<String, MacAddress> macAddresses = tryToEnrichWithMacAddresses(devicesToEnrich);
 
-					if (oldDeviceInfo.getMacAddress() != null) {
-						newDeviceInfo.macAddress = oldDeviceInfo.macAddress;
-					} else {
-						tryToEnrichWithMacAddress(newDeviceInfo);
-					}
-				} else {
-					tryToEnrichWithMacAddress(currentStateEntry.getValue());
-				}
+			for (Map.Entry<String, MacAddress> entry : macAddresses.entrySet()) {
+				newState.put(entry.getKey(), newState.get(entry.getKey()).withMacAddress(entry.getValue()));
 			}
 		}
 
+		currentState = isUnchanged(oldState, newState) ? oldState : ImmutableMap.copyOf(newState);
+
+		currentSnapshot = new DeviceStateSnapshot(
+				currentSnapshot.getVersion() + 1,
+				currentState,
+				deriveEvents(oldState, currentState)
+		);
+		eventLog.append(currentSnapshot.getDelta(), currentState);
+
 		return oldState;
 	}
 
@@ -99,41 +247,257 @@ class DeviceObserverImpl implements DeviceObserver {
 		return currentState;
 	}
 
+	@Override
+	public DeviceStateSnapshot getCurrentSnapshot() {
+		return currentSnapshot;
+	}
+
+	@Override
+	public ImmutableMap<String, MacReadBackoffState> getMacReadBackoffStates() {
+		return macReadBackoff.getStates();
+	}
+
+	@Override
+	public void requestMacAddressRead(final String port) {
+		requestedMacReads.add(checkNotNull(port));
+	}
+
+	@Override
+	public DeviceEventPage getEventsSince(final long sequence) {
+		return eventLog.getEventsSince(sequence);
+	}
+
+	@Override
+	public ImmutableMap<String, Integer> getFlapCounts() {
+		return debouncer.getFlapCounts();
+	}
+
 	@Override
 	public void run() {
 
-		if (listenerManager.getListeners().isEmpty()) {
+		if (listenerManager.getRegistrations().isEmpty()) {
 			return;
 		}
 
 		updateState();
 
-		for (DeviceObserverListener listener : listenerManager.getListeners()) {
+		final DeviceStateSnapshot snapshot = currentSnapshot;
+
+		// the registrations are a snapshot: a listener removed concurrently may still be notified about this scan, a
+		// listener added concurrently is notified starting with the next scan
+		for (DeviceObserverListenerRegistration registration : listenerManager.getRegistrations()) {
+
+			final DeviceObserverListener listener = registration.getListener();
+			final DeviceStateSnapshot lastSnapshot = Objects.firstNonNull(
+					registration.getLastSnapshot(),
+					DeviceStateSnapshot.INITIAL
+			);
+			final Predicate<? super DeviceInfo> filter = registration.getFilter();
+
+			final DeviceStateSnapshot listenerSnapshot;
+			final ImmutableList<DeviceEvent> events;
 
-			final ImmutableMap<String, DeviceInfo> listenerLastState = listenerManager.getLastState(listener);
-			final ImmutableList<DeviceEvent> events = deriveEvents(listenerLastState, currentState);
+			if (filter == null) {
+				listenerSnapshot = snapshot;
+				events = deriveEvents(lastSnapshot, snapshot);
+			} else {
+				listenerSnapshot = deriveFilteredSnapshot(lastSnapshot, snapshot, filter);
+				events = listenerSnapshot.getDelta();
+			}
 
 			for (DeviceEvent event : events) {
 				notifyListener(listener, event);
 			}
 
-			listenerManager.updateLastState(listener, currentState);
+			registration.setLastSnapshot(listenerSnapshot);
+		}
+	}
+
+	@Override
+	public ImmutableMap<DeviceObserverListener, DeviceObserverListenerMetrics> getListenerMetrics() {
+		final ImmutableMap.Builder<DeviceObserverListener, DeviceObserverListenerMetrics> metrics =
+				ImmutableMap.builder();
+		for (Map.Entry<DeviceObserverListener, AsyncDeviceObserverListener> entry : asyncListeners.entrySet()) {
+			metrics.put(entry.getKey(), entry.getValue().getMetrics());
 		}
+		return metrics.build();
 	}
 
 	@Override
 	public void addListener(final DeviceObserverListener listener) {
-		listenerManager.addListener(listener);
+		addListener(listener, null);
+	}
+
+	@Override
+	public void addListener(final DeviceObserverListener listener,
+							@Nullable final Predicate<? super DeviceInfo> filter) {
+		if (config.isAsyncListenerDispatch()) {
+			final AsyncDeviceObserverListener asyncListener = new AsyncDeviceObserverListener(
+					listener, config.getListenerQueueCapacity(), config.getListenerOverflowPolicy(), ticker
+			);
+			if (asyncListeners.putIfAbsent(listener, asyncListener) != null) {
+				asyncListener.close();
+				throw new IllegalArgumentException("The listener instance " + listener + " is already registered!");
+			}
+			listenerManager.addListener(asyncListener, filter);
+		} else {
+			listenerManager.addListener(listener, filter);
+		}
 	}
 
 	@Override
 	public void removeListener(final DeviceObserverListener listener) {
-		listenerManager.removeListener(listener);
+		final AsyncDeviceObserverListener asyncListener = asyncListeners.remove(listener);
+		if (asyncListener != null) {
+			listenerManager.removeListener(asyncListener);
+			asyncListener.close();
+		} else {
+			listenerManager.removeListener(listener);
+		}
+	}
+
+	@Override
+	public void addScanRequestListener(final Runnable listener) {
+		scanRequestListeners.add(checkNotNull(listener));
+	}
+
+	@Override
+	public void removeScanRequestListener(final Runnable listener) {
+		scanRequestListeners.remove(listener);
+	}
+
+	@Override
+	public long getNextScanDelayMillis() {
+		final long nanos = debouncer.getNanosUntilNextChangeIsDue();
+		return nanos < 0 ? -1 : LongMath.divide(nanos, TimeUnit.MILLISECONDS.toNanos(1), RoundingMode.CEILING);
+	}
+
+	/**
+	 * Returns the events that lead from the last to the current snapshot. Listeners that are up to date share the delta
+	 * of the current snapshot, only listeners that missed scans get a diff computed for them.
+	 */
+	private ImmutableList<DeviceEvent> deriveEvents(final DeviceStateSnapshot lastSnapshot,
+													final DeviceStateSnapshot currentSnapshot) {
+
+		if (lastSnapshot.getVersion() >= 0) {
+			if (lastSnapshot.getVersion() == currentSnapshot.getVersion()) {
+				return ImmutableList.of();
+			}
+			if (lastSnapshot.getVersion() == currentSnapshot.getVersion() - 1) {
+				return currentSnapshot.getDelta();
+			}
+		}
+
+		return deriveEvents(lastSnapshot.getState(), currentSnapshot.getState());
+	}
+
+	/**
+	 * Derives the snapshot a filtered listener is notified about: the state contains only the devices matching the
+	 * filter and the delta the events since the listener's last snapshot that match the filter. Listeners that are up
+	 * to date only filter the shared delta of the current snapshot.
+	 */
+	private DeviceStateSnapshot deriveFilteredSnapshot(final DeviceStateSnapshot lastSnapshot,
+													   final DeviceStateSnapshot currentSnapshot,
+													   final Predicate<? super DeviceInfo> filter) {
+
+		if (lastSnapshot.getVersion() >= 0) {
+
+			if (lastSnapshot.getVersion() == currentSnapshot.getVersion()) {
+				return new DeviceStateSnapshot(
+						currentSnapshot.getVersion(), lastSnapshot.getState(), ImmutableList.<DeviceEvent>of()
+				);
+			}
+
+			if (lastSnapshot.getVersion() == currentSnapshot.getVersion() - 1) {
+
+				final ImmutableList<DeviceEvent> delta = filterEvents(
+						lastSnapshot.getState(), currentSnapshot.getDelta(), filter
+				);
+
+				return new DeviceStateSnapshot(
+						currentSnapshot.getVersion(),
+						delta.isEmpty() ? lastSnapshot.getState() : applyEvents(lastSnapshot.getState(), delta),
+						delta
+				);
+			}
+		}
+
+		final ImmutableMap<String, DeviceInfo> filteredState =
+				ImmutableMap.copyOf(Maps.filterValues(currentSnapshot.getState(), filter));
+
+		return new DeviceStateSnapshot(
+				currentSnapshot.getVersion(),
+				filteredState,
+				deriveEvents(lastSnapshot.getState(), filteredState)
+		);
+	}
+
+	/**
+	 * Filters the events of a scan for a listener that was notified about {@code lastState} before. As a device may
+	 * only match the filter once its MAC address is known, a {@link DeviceEvent.Type#MAC_RESOLVED} event is passed on
+	 * as {@link DeviceEvent.Type#ATTACHED} if the device did not match before and as {@link DeviceEvent.Type#REMOVED}
+	 * if it does not match anymore.
+	 */
+	private static ImmutableList<DeviceEvent> filterEvents(final Map<String, DeviceInfo> lastState,
+														   final List<DeviceEvent> events,
+														   final Predicate<? super DeviceInfo> filter) {
+
+		final ImmutableList.Builder<DeviceEvent> filteredEvents = ImmutableList.builder();
+
+		for (DeviceEvent event : events) {
+
+			final DeviceInfo lastInfo = lastState.get(event.getDeviceInfo().getPort());
+
+			switch (event.getType()) {
+				case ATTACHED:
+					if (filter.apply(event.getDeviceInfo())) {
+						filteredEvents.add(event);
+					}
+					break;
+				case REMOVED:
+					if (lastInfo != null) {
+						filteredEvents.add(event);
+					}
+					break;
+				case MAC_RESOLVED:
+					if (filter.apply(event.getDeviceInfo())) {
+						filteredEvents.add(lastInfo != null ?
+								event :
+								new DeviceEvent(DeviceEvent.Type.ATTACHED, event.getDeviceInfo())
+						);
+					} else if (lastInfo != null) {
+						filteredEvents.add(new DeviceEvent(DeviceEvent.Type.REMOVED, lastInfo));
+					}
+					break;
+			}
+		}
+
+		return filteredEvents.build();
+	}
+
+	private static ImmutableMap<String, DeviceInfo> applyEvents(final Map<String, DeviceInfo> state,
+																final List<DeviceEvent> events) {
+
+		final Map<String, DeviceInfo> newState = newHashMap(state);
+
+		for (DeviceEvent event : events) {
+			if (event.getType() == DeviceEvent.Type.REMOVED) {
+				newState.remove(event.getDeviceInfo().getPort());
+			} else {
+				newState.put(event.getDeviceInfo().getPort(), event.getDeviceInfo());
+			}
+		}
+
+		return ImmutableMap.copyOf(newState);
 	}
 
 	private ImmutableList<DeviceEvent> deriveEvents(final Map<String, DeviceInfo> lastState,
 													final Map<String, DeviceInfo> currentState) {
 
+		if (lastState == currentState) {
+			return ImmutableList.of();
+		}
+
 		final ImmutableList.Builder<DeviceEvent> resultBuilder = ImmutableList.builder();
 
 		resultBuilder.addAll(deriveAttachedEvents(lastState, currentState));
@@ -142,6 +506,24 @@ class DeviceObserverImpl implements DeviceObserver {
 		return resultBuilder.build();
 	}
 
+	/**
+	 * Checks if {@code newState} contains exactly the instances contained in {@code oldState}.
+	 */
+	private static boolean isUnchanged(final Map<String, DeviceInfo> oldState, final Map<String, DeviceInfo> newState) {
+
+		if (oldState.size() != newState.size()) {
+			return false;
+		}
+
+		for (Map.Entry<String, DeviceInfo> entry : newState.entrySet()) {
+			if (oldState.get(entry.getKey()) != entry.getValue()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	private List<DeviceEvent> deriveAttachedEvents(final Map<String, DeviceInfo> lastState,
 												   final Map<String, DeviceInfo> currentState) {
 
@@ -149,23 +531,161 @@ class DeviceObserverImpl implements DeviceObserver {
 
 		for (DeviceInfo newInfo : currentState.values()) {
 
-			if (lastState == null || !lastState.containsKey(newInfo.getPort())) {
+			final DeviceInfo lastInfo = lastState == null ? null : lastState.get(newInfo.getPort());
+
+			if (lastInfo == null) {
 				events.add(new DeviceEvent(DeviceEvent.Type.ATTACHED, newInfo));
+			} else if (lastInfo != newInfo && config.isLazyMacResolution() && isMacResolved(lastInfo, newInfo)) {
+				events.add(new DeviceEvent(DeviceEvent.Type.MAC_RESOLVED, newInfo));
 			}
 		}
 
 		return events;
 	}
 
-	private void tryToEnrichWithMacAddress(final DeviceInfo deviceInfo) {
-		try {
-			final MacAddress macAddress = macReader.readMac(deviceInfo.port, deviceInfo.type, null, deviceInfo.reference);
-			if (macAddress != null) {
-				deviceInfo.macAddress = macAddress;
+	private static boolean isMacResolved(final DeviceInfo lastInfo, final DeviceInfo newInfo) {
+		return lastInfo.getMacAddress() == null && newInfo.getMacAddress() != null && lastInfo.isSameDevice(newInfo);
+	}
+
+	/**
+	 * Looks up the MAC addresses of the given devices in the MAC cache (if any) and reads the remaining ones that are
+	 * not backing off after failed attempts concurrently (bounded by the limits in {@link DeviceObserverConfig}). Waits
+	 * until either all reads are done or the deadline passed. Reads that are still running after the deadline are kept
+	 * and consumed by the next scan instead of reading the device again. With lazy MAC resolution only reads that are
+	 * already done are consumed.
+	 *
+	 * @return the MAC addresses found, keyed by port
+	 */
+	private Map<String, MacAddress> tryToEnrichWithMacAddresses(final List<DeviceInfo> deviceInfos) {
+
+		final Map<String, MacAddress> macAddresses = newHashMap();
+		final Map<String, DeviceInfo> currentlyAttached = newHashMap();
+		for (DeviceInfo deviceInfo : deviceInfos) {
+			currentlyAttached.put(deviceInfo.getPort(), deviceInfo);
+		}
+
+		for (Iterator<Map.Entry<String, PendingMacRead>> iterator = pendingMacReads.entrySet().iterator();
+			 iterator.hasNext(); ) {
+			final Map.Entry<String, PendingMacRead> entry = iterator.next();
+			if (!entry.getValue().isFor(currentlyAttached.get(entry.getKey()))) {
+				entry.getValue().future.cancel(false);
+				iterator.remove();
 			}
-		} catch (Exception e) {
-			log.warn("Exception while trying to read MAC address from device: ", e);
 		}
+
+		for (Iterator<String> iterator = requestedMacReads.iterator(); iterator.hasNext(); ) {
+			if (!currentlyAttached.containsKey(iterator.next())) {
+				iterator.remove();
+			}
+		}
+
+		final List<DeviceInfo> devicesToRead = newArrayList();
+		final Map<DeviceInfo, Integer> devicesToSubmit = newHashMap();
+
+		for (DeviceInfo deviceInfo : deviceInfos) {
+
+			final boolean requested = requestedMacReads.remove(deviceInfo.getPort());
+			final PendingMacRead pendingMacRead = pendingMacReads.get(deviceInfo.getPort());
+
+			if (pendingMacRead != null) {
+				if (requested) {
+					macReadExecutor.setPriority(pendingMacRead.future, REQUESTED_MAC_READ_PRIORITY);
+				}
+				devicesToRead.add(deviceInfo);
+				continue;
+			}
+
+			final MacAddress cachedMacAddress = macCache == null ? null : macCache.get(deviceInfo.getReference());
+			if (cachedMacAddress != null) {
+				macAddresses.put(deviceInfo.getPort(), cachedMacAddress);
+			} else if (requested || macReadBackoff.isReadAllowed(deviceInfo)) {
+				devicesToSubmit.put(deviceInfo, requested ?
+						REQUESTED_MAC_READ_PRIORITY :
+						BoundedExecutor.DEFAULT_PRIORITY - macReadBackoff.getFailedAttempts(deviceInfo)
+				);
+				devicesToRead.add(deviceInfo);
+			}
+		}
+
+		// submit in order of priority as well in case the reads are run on the scanning thread
+		final List<DeviceInfo> submissionOrder = newArrayList(devicesToSubmit.keySet());
+		Collections.sort(submissionOrder, new Comparator<DeviceInfo>() {
+			@Override
+			public int compare(final DeviceInfo deviceInfo1, final DeviceInfo deviceInfo2) {
+				return devicesToSubmit.get(deviceInfo2).compareTo(devicesToSubmit.get(deviceInfo1));
+			}
+		}
+		);
+		for (DeviceInfo deviceInfo : submissionOrder) {
+			final PendingMacRead pendingMacRead =
+					new PendingMacRead(deviceInfo, readMac(deviceInfo, devicesToSubmit.get(deviceInfo)));
+			pendingMacReads.put(deviceInfo.getPort(), pendingMacRead);
+			if (config.isLazyMacResolution() && !pendingMacRead.future.isDone()) {
+				pendingMacRead.requestScanWhenDone();
+			}
+		}
+
+		final long deadlineMillis = config.getMacReadDeadlineMillis();
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+
+		for (DeviceInfo deviceInfo : devicesToRead) {
+
+			final PendingMacRead pendingMacRead = pendingMacReads.get(deviceInfo.getPort());
+
+			try {
+
+				final MacAddress macAddress;
+				if (config.isLazyMacResolution()) {
+					if (!pendingMacRead.future.isDone()) {
+						continue;
+					}
+					macAddress = pendingMacRead.future.get();
+				} else if (deadlineMillis == 0) {
+					macAddress = pendingMacRead.future.get();
+				} else {
+					macAddress = pendingMacRead.future.get(
+							Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS
+					);
+				}
+
+				if (macAddress != null) {
+					macAddresses.put(deviceInfo.getPort(), macAddress);
+					macReadBackoff.onSuccess(deviceInfo);
+					if (macCache != null) {
+						macCache.put(deviceInfo.getReference(), macAddress);
+					}
+				} else {
+					macReadBackoff.onFailure(deviceInfo, null);
+				}
+
+			} catch (TimeoutException e) {
+				log.debug("MAC address of {} not read within {} ms, publishing state without it", deviceInfo.getPort(),
+						deadlineMillis
+				);
+				pendingMacRead.requestScanWhenDone();
+				continue;
+			} catch (ExecutionException e) {
+				log.warn("Exception while trying to read MAC address from device: ", e.getCause());
+				macReadBackoff.onFailure(deviceInfo, e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+
+			pendingMacReads.remove(deviceInfo.getPort());
+		}
+
+		return macAddresses;
+	}
+
+	private ListenableFuture<MacAddress> readMac(final DeviceInfo deviceInfo, final int priority) {
+		return macReadExecutor.submit(deviceInfo.getType(), priority, new Callable<MacAddress>() {
+			@Override
+			public MacAddress call() throws Exception {
+				return macReader.readMac(deviceInfo.getPort(), deviceInfo.getType(), null, deviceInfo.getReference());
+			}
+		}
+		);
 	}
 
 	private List<DeviceEvent> deriveRemovedEvents(final Map<String, DeviceInfo> lastState,
@@ -194,4 +714,34 @@ class DeviceObserverImpl implements DeviceObserver {
 			log.warn("Exception occurred while notifying {} listener: {}", listener, e);
 		}
 	}
+
+	private class PendingMacRead {
+
+		private final String type;
+
+		private final String reference;
+
+		private final ListenableFuture<MacAddress> future;
+
+		private boolean scanRequestedWhenDone;
+
+		private PendingMacRead(final DeviceInfo deviceInfo, final ListenableFuture<MacAddress> future) {
+			this.type = deviceInfo.getType();
+			this.reference = deviceInfo.getReference();
+			this.future = future;
+		}
+
+		private boolean isFor(final DeviceInfo deviceInfo) {
+			return deviceInfo != null &&
+					type.equals(deviceInfo.getType()) &&
+					Objects.equal(reference, deviceInfo.getReference());
+		}
+
+		private void requestScanWhenDone() {
+			if (!scanRequestedWhenDone) {
+				scanRequestedWhenDone = true;
+				Futures.addCallback(future, macReadCompletionCallback);
+			}
+		}
+	}
 }
@@ -1,79 +1,141 @@
 package de.uniluebeck.itm.wsn.deviceutils.observer;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static com.google.common.collect.Maps.newHashMap;
+/**
+ * Keeps the registered listeners in an immutable {@link Registry} that is replaced (copy-on-write) whenever a listener
+ * is added or removed. Reading the registrations and the per-listener state is lock-free, so scans never block on
+ * listeners being added or removed concurrently.
+ */
+public class DeviceObserverListenerManagerImpl implements ExtendedDeviceObserverListenerManager {
 
-public class DeviceObserverListenerManagerImpl implements DeviceObserverListenerManager {
+	/**
+	 * A state that is not part of any versioned snapshot, used for states set via {@link #updateLastState}.
+	 */
+	private static final long UNKNOWN_VERSION = -1;
 
-	private final Lock listenerMapLock = new ReentrantLock();
-
-	private Map<DeviceObserverListener, ImmutableMap<String, DeviceInfo>> listenerMap = newHashMap();
+	private final AtomicReference<Registry> registry = new AtomicReference<Registry>(Registry.EMPTY);
 
 	@Override
 	public ImmutableMap<String, DeviceInfo> getLastState(final DeviceObserverListener listener) {
-		listenerMapLock.lock();
-		try {
-			if (!listenerMap.containsKey(listener)) {
-				throw new IllegalArgumentException("The listener instance " + listener + " is not registered!");
-			}
-			return listenerMap.get(listener);
-		} finally {
-			listenerMapLock.unlock();
-		}
+		final DeviceStateSnapshot lastSnapshot = getLastSnapshot(listener);
+		return lastSnapshot == null ? null : lastSnapshot.getState();
 	}
 
 	@Override
 	public void updateLastState(final DeviceObserverListener listener,
 								final ImmutableMap<String, DeviceInfo> newState) {
-		listenerMapLock.lock();
-		try {
-			if (!listenerMap.containsKey(listener)) {
-				throw new IllegalArgumentException("The listener instance " + listener + " was not yet registered!");
-			}
-			listenerMap.put(listener, newState);
-		} finally {
-			listenerMapLock.unlock();
-		}
+		updateLastSnapshot(listener, newState == null ?
+				null :
+				new DeviceStateSnapshot(UNKNOWN_VERSION, newState, ImmutableList.<DeviceEvent>of())
+		);
+	}
+
+	@Override
+	public DeviceStateSnapshot getLastSnapshot(final DeviceObserverListener listener) {
+		return getRegistration(listener).getLastSnapshot();
+	}
+
+	@Override
+	public void updateLastSnapshot(final DeviceObserverListener listener, final DeviceStateSnapshot newSnapshot) {
+		getRegistration(listener).setLastSnapshot(newSnapshot);
 	}
 
 	@Override
 	public ImmutableList<DeviceObserverListener> getListeners() {
-		ImmutableList.Builder<DeviceObserverListener> builder = ImmutableList.builder();
-		listenerMapLock.lock();
-		try {
-			builder.addAll(listenerMap.keySet());
-		} finally {
-			listenerMapLock.unlock();
-		}
-		return builder.build();
+		return registry.get().listeners;
+	}
+
+	@Override
+	public ImmutableList<DeviceObserverListenerRegistration> getRegistrations() {
+		return registry.get().registrations;
 	}
 
 	@Override
 	public void addListener(final DeviceObserverListener listener) {
-		listenerMapLock.lock();
-		try {
-			if (listenerMap.containsKey(listener)) {
+		addListener(listener, null);
+	}
+
+	@Override
+	public void addListener(final DeviceObserverListener listener,
+							@Nullable final Predicate<? super DeviceInfo> filter) {
+
+		final DeviceObserverListenerRegistration registration = new DeviceObserverListenerRegistration(listener, filter);
+
+		while (true) {
+			final Registry current = registry.get();
+			if (current.registrationMap.containsKey(listener)) {
 				throw new IllegalArgumentException("The listener instance " + listener + " is already registered!");
 			}
-			listenerMap.put(listener, null);
-		} finally {
-			listenerMapLock.unlock();
+			if (registry.compareAndSet(current, current.with(registration))) {
+				return;
+			}
 		}
 	}
 
+	@Override
+	public Predicate<? super DeviceInfo> getFilter(final DeviceObserverListener listener) {
+		return getRegistration(listener).getFilter();
+	}
+
 	@Override
 	public void removeListener(final DeviceObserverListener listener) {
-		listenerMapLock.lock();
-		try {
-			listenerMap.remove(listener);
-		} finally {
-			listenerMapLock.unlock();
+		while (true) {
+			final Registry current = registry.get();
+			if (!current.registrationMap.containsKey(listener) ||
+					registry.compareAndSet(current, current.without(listener))) {
+				return;
+			}
+		}
+	}
+
+	private DeviceObserverListenerRegistration getRegistration(final DeviceObserverListener listener) {
+		final DeviceObserverListenerRegistration registration = registry.get().registrationMap.get(listener);
+		if (registration == null) {
+			throw new IllegalArgumentException("The listener instance " + listener + " is not registered!");
+		}
+		return registration;
+	}
+
+	private static class Registry {
+
+		private static final Registry EMPTY =
+				new Registry(ImmutableMap.<DeviceObserverListener, DeviceObserverListenerRegistration>of());
+
+		private final ImmutableMap<DeviceObserverListener, DeviceObserverListenerRegistration> registrationMap;
+
+		private final ImmutableList<DeviceObserverListenerRegistration> registrations;
+
+		private final ImmutableList<DeviceObserverListener> listeners;
+
+		private Registry(final ImmutableMap<DeviceObserverListener, DeviceObserverListenerRegistration> map) {
+			this.registrationMap = map;
+			this.registrations = ImmutableList.copyOf(map.values());
+			this.listeners = ImmutableList.copyOf(map.keySet());
+		}
+
+		private Registry with(final DeviceObserverListenerRegistration registration) {
+			return new Registry(ImmutableMap.<DeviceObserverListener, DeviceObserverListenerRegistration>builder()
+					.putAll(registrationMap)
+					.put(registration.getListener(), registration)
+					.build()
+			);
+		}
+
+		private Registry without(final DeviceObserverListener listener) {
+			final ImmutableMap.Builder<DeviceObserverListener, DeviceObserverListenerRegistration> builder =
+					ImmutableMap.builder();
+			for (DeviceObserverListenerRegistration registration : registrations) {
+				if (!registration.getListener().equals(listener)) {
+					builder.put(registration.getListener(), registration);
+				}
+			}
+			return new Registry(builder.build());
 		}
 	}
 }
@@ -0,0 +1,121 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+/**
+ * A snapshot of the delivery metrics of a listener that is notified asynchronously, see
+ * {@link AsyncDeviceObserverListener}.
+ */
+public class DeviceObserverListenerMetrics {
+
+	private final int queueDepth;
+
+	private final long deliveredEventCount;
+
+	private final long droppedEventCount;
+
+	private final long coalescedEventCount;
+
+	private final long overCapacityEventCount;
+
+	private final long lastDeliveryLagMillis;
+
+	private final long maxDeliveryLagMillis;
+
+	public DeviceObserverListenerMetrics(final int queueDepth,
+										 final long deliveredEventCount,
+										 final long droppedEventCount,
+										 final long coalescedEventCount,
+										 final long overCapacityEventCount,
+										 final long lastDeliveryLagMillis,
+										 final long maxDeliveryLagMillis) {
+		this.queueDepth = queueDepth;
+		this.deliveredEventCount = deliveredEventCount;
+		this.droppedEventCount = droppedEventCount;
+		this.coalescedEventCount = coalescedEventCount;
+		this.overCapacityEventCount = overCapacityEventCount;
+		this.lastDeliveryLagMillis = lastDeliveryLagMillis;
+		this.maxDeliveryLagMillis = maxDeliveryLagMillis;
+	}
+
+	/**
+	 * @return the number of events waiting to be delivered
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public long getDeliveredEventCount() {
+		return deliveredEventCount;
+	}
+
+	/**
+	 * @return the number of events dropped because the queue was full
+	 */
+	public long getDroppedEventCount() {
+		return droppedEventCount;
+	}
+
+	/**
+	 * @return the number of queued events that became obsolete when the queue was coalesced
+	 */
+	public long getCoalescedEventCount() {
+		return coalescedEventCount;
+	}
+
+	/**
+	 * @return the number of events that left the queue above its capacity because the queued events could not be
+	 * coalesced any further, i.e., events of more distinct ports were queued than fit into the queue
+	 */
+	public long getOverCapacityEventCount() {
+		return overCapacityEventCount;
+	}
+
+	/**
+	 * @return the time the last delivered event spent in the queue
+	 */
+	public long getLastDeliveryLagMillis() {
+		return lastDeliveryLagMillis;
+	}
+
+	/**
+	 * @return the maximum time an event spent in the queue
+	 */
+	public long getMaxDeliveryLagMillis() {
+		return maxDeliveryLagMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceObserverListenerMetrics{" +
+				"queueDepth=" + queueDepth +
+				", deliveredEventCount=" + deliveredEventCount +
+				", droppedEventCount=" + droppedEventCount +
+				", coalescedEventCount=" + coalescedEventCount +
+				", overCapacityEventCount=" + overCapacityEventCount +
+				", lastDeliveryLagMillis=" + lastDeliveryLagMillis +
+				", maxDeliveryLagMillis=" + maxDeliveryLagMillis +
+				'}';
+	}
+}
@@ -0,0 +1,84 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Predicate;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A listener registered with an {@link ExtendedDeviceObserverListenerManager} together with its filter and the snapshot
+ * it was last notified about. The snapshot is held in an atomic reference, so it can be read and updated without
+ * locking.
+ */
+public class DeviceObserverListenerRegistration {
+
+	private final DeviceObserverListener listener;
+
+	@Nullable
+	private final Predicate<? super DeviceInfo> filter;
+
+	private final AtomicReference<DeviceStateSnapshot> lastSnapshot = new AtomicReference<DeviceStateSnapshot>();
+
+	public DeviceObserverListenerRegistration(final DeviceObserverListener listener,
+											  @Nullable final Predicate<? super DeviceInfo> filter) {
+		this.listener = checkNotNull(listener);
+		this.filter = filter;
+	}
+
+	public DeviceObserverListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * @return the filter the listener was registered with or {@code null} if it has none
+	 */
+	@Nullable
+	public Predicate<? super DeviceInfo> getFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return the snapshot the listener was last notified about or {@code null} if it was not notified yet
+	 */
+	@Nullable
+	public DeviceStateSnapshot getLastSnapshot() {
+		return lastSnapshot.get();
+	}
+
+	public void setLastSnapshot(@Nullable final DeviceStateSnapshot newSnapshot) {
+		lastSnapshot.set(newSnapshot);
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceObserverListenerRegistration{" +
+				"listener=" + listener +
+				", filter=" + filter +
+				'}';
+	}
+}
@@ -25,14 +25,87 @@ package de.uniluebeck.itm.wsn.deviceutils.observer;
 
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.AbstractMatcher;
+import com.google.inject.spi.InjectionListener;
+import com.google.inject.spi.TypeEncounter;
+import com.google.inject.spi.TypeListener;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacCache;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 public class DeviceObserverModule implements Module {
 
+	private final DeviceObserverConfig config;
+
+	public DeviceObserverModule() {
+		this(new DeviceObserverConfig());
+	}
+
+	public DeviceObserverModule(final DeviceObserverConfig config) {
+		this.config = checkNotNull(config);
+	}
+
 	@Override
 	public void configure(final Binder binder) {
-		binder.bind(DeviceInfoCsvParser.class).to(DeviceInfoCsvParserImpl.class);
-		binder.bind(DeviceCsvProvider.class).to(DeviceCsvProviderImpl.class);
-		binder.bind(DeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
-		binder.bind(DeviceObserver.class).to(DeviceObserverImpl.class);
+		binder.bind(DeviceObserverConfig.class).toInstance(config);
+		binder.bind(DeviceInfoCsvParser.class).to(StreamingDeviceInfoCsvParser.class);
+
+		switch (config.getCsvProviderType()) {
+			case SYSFS:
+				binder.bind(DeviceCsvProvider.class).to(SysfsDeviceCsvProvider.class);
+				break;
+			case RESIDENT_SCRIPT:
+				binder.bind(DeviceCsvProvider.class).to(ResidentDeviceCsvProvider.class).in(Singleton.class);
+				break;
+			default:
+				binder.bind(DeviceCsvProvider.class).to(DeviceCsvProviderImpl.class);
+				break;
+		}
+
+		if (config.getMacCacheFile() != null) {
+			binder.bind(DeviceMacCache.class).toInstance(new DeviceMacCache(config.getMacCacheFile()));
+		}
+
+		binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+		binder.bind(DeviceObserverListenerManager.class).to(ExtendedDeviceObserverListenerManager.class);
+		binder.bind(ExtendedDeviceObserver.class).to(DeviceObserverImpl.class);
+		binder.bind(DeviceObserver.class).to(ExtendedDeviceObserver.class);
+	}
+
+	/**
+	 * Registers the listener bound to {@code listenerType} with every {@link DeviceObserver} the injector creates,
+	 * e.g., so that resources held for a device are released as soon as it is removed. The listener should be bound as
+	 * a singleton so that all observers notify the same instance.
+	 *
+	 * @param binder
+	 * 		the binder of the module that binds the listener
+	 * @param listenerType
+	 * 		the type the listener is bound to
+	 */
+	public static void addListenerToObservers(final Binder binder,
+											  final Class<? extends DeviceObserverListener> listenerType) {
+
+		binder.bindListener(new AbstractMatcher<TypeLiteral<?>>() {
+			@Override
+			public boolean matches(final TypeLiteral<?> typeLiteral) {
+				return DeviceObserver.class.isAssignableFrom(typeLiteral.getRawType());
+			}
+		}, new TypeListener() {
+			@Override
+			public <I> void hear(final TypeLiteral<I> type, final TypeEncounter<I> encounter) {
+				final Provider<? extends DeviceObserverListener> listenerProvider = encounter.getProvider(listenerType);
+				encounter.register(new InjectionListener<I>() {
+					@Override
+					public void afterInjection(final I injectee) {
+						((DeviceObserver) injectee).addListener(listenerProvider.get());
+					}
+				}
+				);
+			}
+		}
+		);
 	}
 }
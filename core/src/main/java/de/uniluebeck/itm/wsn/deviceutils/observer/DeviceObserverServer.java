@@ -0,0 +1,344 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Streams the state of an {@link ExtendedDeviceObserver} to TCP clients. Every client first receives the current state
+ * and then the events of every scan as lines of UTF-8 text:
+ * <pre>
+ * SNAPSHOT &lt;sequence&gt; &lt;device count&gt;
+ * &lt;reference&gt;,&lt;port&gt;,&lt;type&gt;,&lt;MAC address&gt;    (once per device)
+ * &lt;sequence&gt; &lt;event type&gt; &lt;reference&gt;,&lt;port&gt;,&lt;type&gt;,&lt;MAC address&gt;
+ * </pre>
+ * Missing references and MAC addresses are left empty. The sequence numbers are the ones of
+ * {@link ExtendedDeviceObserver#getEventsSince(long)}.
+ * <p/>
+ * The scanning thread only wakes up a publisher thread, which encodes the events of a scan once and hands the same
+ * buffer to all clients. A client whose socket buffer is full is skipped until it drained it and then catches up from
+ * the event log of the observer, or receives a new snapshot if the events it missed are no longer logged. The memory
+ * held for a slow client is therefore bounded by Netty's write buffer high water mark.
+ */
+public class DeviceObserverServer implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceObserverServer.class);
+
+	private final ExtendedDeviceObserver deviceObserver;
+
+	private final SocketAddress address;
+
+	private final ChannelGroup channels = new DefaultChannelGroup(DeviceObserverServer.class.getSimpleName());
+
+	/**
+	 * The sequence number of the last event sent to each client. Only modified by the publisher thread.
+	 */
+	private final Map<Channel, Long> clientSequences = new ConcurrentHashMap<Channel, Long>();
+
+	private final AtomicBoolean publishScheduled = new AtomicBoolean(false);
+
+	private final ExecutorService publisher;
+
+	private final ServerBootstrap bootstrap;
+
+	/**
+	 * The sequence number of the last event published to all clients that were up to date. Only accessed by the
+	 * publisher thread.
+	 */
+	private long publishedSequence = -1;
+
+	private final DeviceObserverListener observerListener = new DeviceObserverListener() {
+		@Override
+		public void deviceEvent(final DeviceEvent event) {
+			if (publishScheduled.compareAndSet(false, true)) {
+				publisher.execute(publishRunnable);
+			}
+		}
+	};
+
+	private final Runnable publishRunnable = new Runnable() {
+		@Override
+		public void run() {
+			publishScheduled.set(false);
+			publish();
+		}
+	};
+
+	private final ChannelHandler channelHandler = new SimpleChannelUpstreamHandler() {
+
+		@Override
+		public void channelOpen(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+			channels.add(ctx.getChannel());
+			super.channelOpen(ctx, e);
+		}
+
+		@Override
+		public void channelConnected(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+			final Channel channel = ctx.getChannel();
+			log.debug("Client {} connected", channel.getRemoteAddress());
+			executeOnPublisher(new Runnable() {
+				@Override
+				public void run() {
+					clientSequences.put(channel, -1L);
+					catchUp(channel);
+				}
+			}
+			);
+		}
+
+		@Override
+		public void channelInterestChanged(final ChannelHandlerContext ctx, final ChannelStateEvent e)
+				throws Exception {
+			final Channel channel = ctx.getChannel();
+			if (channel.isWritable()) {
+				executeOnPublisher(new Runnable() {
+					@Override
+					public void run() {
+						catchUp(channel);
+					}
+				}
+				);
+			}
+		}
+
+		@Override
+		public void channelClosed(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
+			final Channel channel = ctx.getChannel();
+			log.debug("Client {} disconnected", channel.getRemoteAddress());
+			executeOnPublisher(new Runnable() {
+				@Override
+				public void run() {
+					clientSequences.remove(channel);
+				}
+			}
+			);
+		}
+
+		@Override
+		public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+			// clients do not send anything, ignore it
+		}
+
+		@Override
+		public void exceptionCaught(final ChannelHandlerContext ctx, final ExceptionEvent e) throws Exception {
+			log.debug("Closing connection to client {}: {}", ctx.getChannel().getRemoteAddress(), e.getCause());
+			ctx.getChannel().close();
+		}
+	};
+
+	/**
+	 * @param deviceObserver
+	 * 		the observer whose state is streamed, must be run regularly by someone else
+	 * @param address
+	 * 		the address to listen on
+	 */
+	public DeviceObserverServer(final ExtendedDeviceObserver deviceObserver, final SocketAddress address) {
+
+		this.deviceObserver = checkNotNull(deviceObserver);
+		this.address = checkNotNull(address);
+
+		final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat("DeviceObserverServer %d")
+				.setDaemon(true)
+				.build();
+
+		this.publisher = Executors.newSingleThreadExecutor(threadFactory);
+		this.bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(
+				Executors.newCachedThreadPool(threadFactory),
+				Executors.newCachedThreadPool(threadFactory)
+		)
+		);
+		this.bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				return Channels.pipeline(channelHandler);
+			}
+		}
+		);
+		this.bootstrap.setOption("child.tcpNoDelay", true);
+	}
+
+	/**
+	 * Starts listening for clients.
+	 *
+	 * @return this server
+	 */
+	public DeviceObserverServer start() {
+		checkState(channels.isEmpty(), "The server has already been started");
+		channels.add(bootstrap.bind(address));
+		deviceObserver.addListener(observerListener);
+		log.info("Streaming device events on {}", getLocalAddress());
+		return this;
+	}
+
+	/**
+	 * @return the address the server is listening on, e.g., to find out the port if it was started on port 0
+	 */
+	public InetSocketAddress getLocalAddress() {
+		for (Channel channel : channels) {
+			if (channel.getParent() == null) {
+				return (InetSocketAddress) channel.getLocalAddress();
+			}
+		}
+		throw new IllegalStateException("The server has not been started");
+	}
+
+	/**
+	 * @return the number of connected clients
+	 */
+	public int getClientCount() {
+		return clientSequences.size();
+	}
+
+	/**
+	 * Disconnects all clients and stops listening.
+	 */
+	@Override
+	public void close() {
+		deviceObserver.removeListener(observerListener);
+		channels.close().awaitUninterruptibly();
+		publisher.shutdownNow();
+		bootstrap.releaseExternalResources();
+	}
+
+	private void executeOnPublisher(final Runnable runnable) {
+		try {
+			publisher.execute(runnable);
+		} catch (RejectedExecutionException e) {
+			log.trace("Ignoring client state change after the server was closed");
+		}
+	}
+
+	private void publish() {
+
+		final DeviceEventPage page = deviceObserver.getEventsSince(publishedSequence);
+		final ChannelBuffer events = page.isResyncRequired() || page.getEvents().isEmpty() ?
+				null :
+				encodeEvents(publishedSequence, page.getEvents());
+
+		for (Map.Entry<Channel, Long> client : clientSequences.entrySet()) {
+			final Channel channel = client.getKey();
+			if (events != null && client.getValue() == publishedSequence && channel.isWritable()) {
+				channel.write(events.duplicate());
+				client.setValue(page.getLastSequence());
+			} else {
+				catchUp(channel);
+			}
+		}
+
+		publishedSequence = page.getLastSequence();
+	}
+
+	/**
+	 * Sends all events a client missed or a snapshot if they are no longer logged.
+	 */
+	private void catchUp(final Channel channel) {
+
+		final Long sequence = clientSequences.get(channel);
+
+		if (sequence == null || !channel.isWritable()) {
+			return;
+		}
+
+		final DeviceEventPage page = deviceObserver.getEventsSince(sequence);
+
+		if (page.isResyncRequired()) {
+			channel.write(encodeSnapshot(page));
+		} else if (!page.getEvents().isEmpty()) {
+			channel.write(encodeEvents(sequence, page.getEvents()));
+		}
+
+		clientSequences.put(channel, page.getLastSequence());
+	}
+
+	private static ChannelBuffer encodeSnapshot(final DeviceEventPage page) {
+
+		final Map<String, DeviceInfo> state = page.getResyncState();
+		final StringBuilder builder = new StringBuilder();
+
+		builder.append("SNAPSHOT ").append(page.getLastSequence()).append(' ').append(state.size()).append('\n');
+		for (DeviceInfo deviceInfo : state.values()) {
+			appendDeviceInfo(builder, deviceInfo).append('\n');
+		}
+
+		return ChannelBuffers.wrappedBuffer(builder.toString().getBytes(Charsets.UTF_8));
+	}
+
+	private static ChannelBuffer encodeEvents(final long lastSequence, final List<DeviceEvent> events) {
+
+		final StringBuilder builder = new StringBuilder();
+		long sequence = lastSequence;
+
+		for (DeviceEvent event : events) {
+			builder.append(++sequence).append(' ').append(event.getType()).append(' ');
+			appendDeviceInfo(builder, event.getDeviceInfo()).append('\n');
+		}
+
+		return ChannelBuffers.wrappedBuffer(builder.toString().getBytes(Charsets.UTF_8));
+	}
+
+	private static StringBuilder appendDeviceInfo(final StringBuilder builder, final DeviceInfo deviceInfo) {
+		final MacAddress macAddress = deviceInfo.getMacAddress();
+		return builder
+				.append(deviceInfo.getReference() == null ? "" : deviceInfo.getReference()).append(',')
+				.append(deviceInfo.getPort()).append(',')
+				.append(deviceInfo.getType()).append(',')
+				.append(macAddress == null ? "" : macAddress.toHexString());
+	}
+}
@@ -0,0 +1,209 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Sets.newHashSet;
+
+/**
+ * Hides ports flapping between present and absent (e.g., because of marginal cables or hub resets) from the
+ * published device state. A change of a port (a device being attached, removed or replaced) is only published after
+ * every scan during the debounce window saw the same change. A change that is reverted within the window (e.g., a
+ * device that is removed and attached again) is never published. Every change that is superseded or reverted before
+ * being published is counted as a flap of the port.
+ */
+class DeviceStateDebouncer {
+
+	private final long windowNanos;
+
+	private final Ticker ticker;
+
+	private final Map<String, PendingChange> pendingChanges = newHashMap();
+
+	private final Map<String, Integer> flapCounts = newHashMap();
+
+	private boolean initialized;
+
+	DeviceStateDebouncer(final long windowMillis, final Ticker ticker) {
+		checkArgument(windowMillis >= 0, "The debounce window must not be negative");
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.ticker = checkNotNull(ticker);
+	}
+
+	/**
+	 * Derives the state to publish from the last published state and the state found by the current scan. The state
+	 * found by the very first scan is published as is.
+	 *
+	 * @param publishedState
+	 * 		the state published by the last scan
+	 * @param scannedState
+	 * 		the state found by the current scan
+	 *
+	 * @return the state to publish, may be {@code scannedState} itself
+	 */
+	synchronized Map<String, DeviceInfo> debounce(final Map<String, DeviceInfo> publishedState,
+												  final Map<String, DeviceInfo> scannedState) {
+
+		if (windowNanos == 0 || !initialized) {
+			initialized = true;
+			return scannedState;
+		}
+
+		final long now = ticker.read();
+		final Map<String, DeviceInfo> debouncedState = newHashMap(publishedState);
+
+		final Set<String> ports = newHashSet(publishedState.keySet());
+		ports.addAll(scannedState.keySet());
+		ports.addAll(pendingChanges.keySet());
+
+		for (String port : ports) {
+
+			final DeviceInfo publishedInfo = publishedState.get(port);
+			final DeviceInfo scannedInfo = scannedState.get(port);
+
+			if (isSameDevice(publishedInfo, scannedInfo)) {
+				if (pendingChanges.remove(port) != null) {
+					countFlap(port);
+				}
+				continue;
+			}
+
+			PendingChange pendingChange = pendingChanges.get(port);
+			if (pendingChange == null || !isSameDevice(pendingChange.deviceInfo, scannedInfo)) {
+				if (pendingChange != null) {
+					countFlap(port);
+				}
+				pendingChange = new PendingChange(scannedInfo, now);
+				pendingChanges.put(port, pendingChange);
+			}
+
+			if (now - pendingChange.sinceNanos >= windowNanos) {
+				pendingChanges.remove(port);
+				if (scannedInfo == null) {
+					debouncedState.remove(port);
+				} else {
+					debouncedState.put(port, scannedInfo);
+				}
+			}
+		}
+
+		carryForwardMacAddresses(publishedState, debouncedState);
+
+		return debouncedState;
+	}
+
+	/**
+	 * Returns the time until the earliest pending change outlasted the debounce window, i.e., until a scan would
+	 * publish it.
+	 *
+	 * @return the time in nanoseconds, 0 if the change is due already, -1 if no change is pending
+	 */
+	synchronized long getNanosUntilNextChangeIsDue() {
+
+		if (pendingChanges.isEmpty()) {
+			return -1;
+		}
+
+		long earliestSinceNanos = Long.MAX_VALUE;
+		for (PendingChange pendingChange : pendingChanges.values()) {
+			earliestSinceNanos = Math.min(earliestSinceNanos, pendingChange.sinceNanos);
+		}
+
+		return Math.max(0, earliestSinceNanos + windowNanos - ticker.read());
+	}
+
+	/**
+	 * @return the number of flaps per port
+	 */
+	synchronized ImmutableMap<String, Integer> getFlapCounts() {
+		return ImmutableMap.copyOf(flapCounts);
+	}
+
+	/**
+	 * Hub resets frequently re-enumerate devices on other ports. Devices that were attached at another port before are
+	 * recognized by their reference so that their MAC address does not have to be read again.
+	 */
+	private static void carryForwardMacAddresses(final Map<String, DeviceInfo> publishedState,
+												 final Map<String, DeviceInfo> debouncedState) {
+
+		Map<String, DeviceInfo> publishedByReference = null;
+
+		for (Map.Entry<String, DeviceInfo> entry : debouncedState.entrySet()) {
+
+			final DeviceInfo deviceInfo = entry.getValue();
+			if (deviceInfo.getMacAddress() != null || deviceInfo.getReference() == null ||
+					deviceInfo.getReference().isEmpty()) {
+				continue;
+			}
+
+			if (publishedByReference == null) {
+				publishedByReference = newHashMap();
+				for (DeviceInfo publishedInfo : publishedState.values()) {
+					if (publishedInfo.getMacAddress() != null && publishedInfo.getReference() != null) {
+						publishedByReference.put(publishedInfo.getReference(), publishedInfo);
+					}
+				}
+			}
+
+			final DeviceInfo publishedInfo = publishedByReference.get(deviceInfo.getReference());
+			if (publishedInfo != null && publishedInfo.getType().equals(deviceInfo.getType())) {
+				final MacAddress macAddress = publishedInfo.getMacAddress();
+				entry.setValue(deviceInfo.withMacAddress(macAddress));
+			}
+		}
+	}
+
+	private void countFlap(final String port) {
+		final Integer flapCount = flapCounts.get(port);
+		flapCounts.put(port, flapCount == null ? 1 : flapCount + 1);
+	}
+
+	private static boolean isSameDevice(@Nullable final DeviceInfo deviceInfo, @Nullable final DeviceInfo other) {
+		return deviceInfo == null ? other == null : deviceInfo.isSameDevice(other);
+	}
+
+	private static class PendingChange {
+
+		@Nullable
+		private final DeviceInfo deviceInfo;
+
+		private final long sinceNanos;
+
+		private PendingChange(@Nullable final DeviceInfo deviceInfo, final long sinceNanos) {
+			this.deviceInfo = deviceInfo;
+			this.sinceNanos = sinceNanos;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The state of the attached devices after a scan together with the events that lead to it from the state of the
+ * previous scan. Every scan of a {@link DeviceObserver} produces a snapshot with a version one higher than the previous
+ * one, so listeners that saw the previous version can be notified with the shared delta instead of a diff of their
+ * own.
+ */
+public class DeviceStateSnapshot {
+
+	/**
+	 * The snapshot before the first scan, i.e., no devices attached.
+	 */
+	public static final DeviceStateSnapshot INITIAL = new DeviceStateSnapshot(
+			0, ImmutableMap.<String, DeviceInfo>of(), ImmutableList.<DeviceEvent>of()
+	);
+
+	private final long version;
+
+	private final ImmutableMap<String, DeviceInfo> state;
+
+	private final ImmutableList<DeviceEvent> delta;
+
+	public DeviceStateSnapshot(final long version,
+							   final ImmutableMap<String, DeviceInfo> state,
+							   final ImmutableList<DeviceEvent> delta) {
+		this.version = version;
+		this.state = checkNotNull(state);
+		this.delta = checkNotNull(delta);
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the attached devices as a mapping from serial port to {@link DeviceInfo}
+	 */
+	public ImmutableMap<String, DeviceInfo> getState() {
+		return state;
+	}
+
+	/**
+	 * @return the events that lead from the snapshot with the previous version to this one
+	 */
+	public ImmutableList<DeviceEvent> getDelta() {
+		return delta;
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceStateSnapshot{" +
+				"version=" + version +
+				", state=" + state +
+				", delta=" + delta +
+				'}';
+	}
+}
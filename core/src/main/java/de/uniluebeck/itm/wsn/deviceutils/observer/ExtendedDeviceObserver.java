@@ -0,0 +1,104 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link DeviceObserver} that additionally supports filtered listeners, versioned snapshots with an event log to
+ * catch up from, prioritized MAC address reads and metrics about MAC read backoff, flapping devices and listener
+ * delivery.
+ */
+public interface ExtendedDeviceObserver extends DeviceObserver {
+
+	/**
+	 * Registers a listener that is only notified about devices matching {@code filter} (see {@link DeviceFilters}).
+	 * The observer only keeps the matching devices as the listener's last state, so memory and diff work scale with
+	 * the number of devices the listener watches. The filter is applied to the {@link DeviceInfo} of every event.
+	 *
+	 * @param listener
+	 * 		the listener to register
+	 * @param filter
+	 * 		the filter or {@code null} to notify the listener about all devices
+	 */
+	void addListener(DeviceObserverListener listener, @Nullable Predicate<? super DeviceInfo> filter);
+
+	/**
+	 * Returns the snapshot produced by the last scan.
+	 *
+	 * @return the current snapshot or {@link DeviceStateSnapshot#INITIAL} if no scan happened yet
+	 */
+	DeviceStateSnapshot getCurrentSnapshot();
+
+	/**
+	 * Returns the events that happened after the event with the given sequence number, taken from a log of the most
+	 * recent events (see {@link DeviceObserverConfig#getEventLogCapacity()}). Allows consumers to catch up without
+	 * keeping a copy of the device state: start with 0 and pass {@link DeviceEventPage#getLastSequence()} of the
+	 * previous page. If the requested events are no longer logged, the page contains the current state to resync with.
+	 * Passing a negative sequence number always yields the current state together with the matching sequence number.
+	 *
+	 * @param sequence
+	 * 		the sequence number of the last event seen, 0 if none, negative to ask for the current state
+	 *
+	 * @return the events since {@code sequence} or the state to resync with
+	 */
+	DeviceEventPage getEventsSince(long sequence);
+
+	/**
+	 * Requests the MAC address of the device attached to {@code port} to be read by the next scan with a higher
+	 * priority than the reads of other devices, even if previous reads failed and the device is backing off. Has no
+	 * effect if the MAC address is already known or no device is attached to the port.
+	 *
+	 * @param port
+	 * 		the serial port of the device
+	 */
+	void requestMacAddressRead(String port);
+
+	/**
+	 * Returns the backoff state of all attached devices whose MAC address could not be read (yet).
+	 *
+	 * @return a mapping from device reference (or serial port if the device has no reference) to backoff state
+	 */
+	ImmutableMap<String, MacReadBackoffState> getMacReadBackoffStates();
+
+	/**
+	 * Returns how often the device at a port changed again before the previous change outlasted the debounce window
+	 * (see {@link DeviceObserverConfig#getDebounceWindowMillis()}) and was published.
+	 *
+	 * @return a mapping from serial port to the number of flaps seen
+	 */
+	ImmutableMap<String, Integer> getFlapCounts();
+
+	/**
+	 * Returns the delivery metrics of all listeners if listeners are notified asynchronously (see
+	 * {@link DeviceObserverConfig#isAsyncListenerDispatch()}).
+	 *
+	 * @return a mapping from listener to its metrics, empty if listeners are notified synchronously
+	 */
+	ImmutableMap<DeviceObserverListener, DeviceObserverListenerMetrics> getListenerMetrics();
+
+}
@@ -0,0 +1,54 @@
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link DeviceObserverListenerManager} that keeps a filter and the last {@link DeviceStateSnapshot} per listener,
+ * as used by {@link ExtendedDeviceObserver}.
+ */
+public interface ExtendedDeviceObserverListenerManager extends DeviceObserverListenerManager {
+
+	/**
+	 * Returns the snapshot the listener was last notified about.
+	 *
+	 * @param listener
+	 * 		a registered listener
+	 *
+	 * @return the last snapshot or {@code null} if the listener was not notified yet
+	 */
+	@Nullable
+	DeviceStateSnapshot getLastSnapshot(DeviceObserverListener listener);
+
+	void updateLastSnapshot(DeviceObserverListener listener, DeviceStateSnapshot newSnapshot);
+
+	/**
+	 * Returns the registrations of all listeners. The returned list does not change when listeners are added or
+	 * removed afterwards, and the per-listener state can be read and updated through it without locking.
+	 *
+	 * @return the registrations of all listeners in the order they were added
+	 */
+	ImmutableList<DeviceObserverListenerRegistration> getRegistrations();
+
+	/**
+	 * Registers a listener that is only notified about devices matching {@code filter}.
+	 *
+	 * @param listener
+	 * 		the listener to register
+	 * @param filter
+	 * 		the filter or {@code null} to notify the listener about all devices
+	 */
+	void addListener(DeviceObserverListener listener, @Nullable Predicate<? super DeviceInfo> filter);
+
+	/**
+	 * @param listener
+	 * 		a registered listener
+	 *
+	 * @return the filter the listener was registered with or {@code null} if it has none
+	 */
+	@Nullable
+	Predicate<? super DeviceInfo> getFilter(DeviceObserverListener listener);
+
+}
@@ -0,0 +1,49 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * A {@link DeviceInfoCsvParser} that reuses the instances of the last scan for unchanged devices itself, e.g., to
+ * avoid creating them in the first place. Parsers that do not implement it get the instances replaced after parsing
+ * (see {@link DeviceInfoCsvParsers#parseCsv(DeviceInfoCsvParser, String, Map)}).
+ */
+public interface IncrementalDeviceInfoCsvParser extends DeviceInfoCsvParser {
+
+	/**
+	 * Parses {@code csv} like {@link #parseCsv(String)} but returns the instance contained in {@code lastState} for
+	 * every device that is unchanged, i.e. whose type, port and reference are the same as in {@code lastState}.
+	 *
+	 * @param csv
+	 * 		the CSV to parse
+	 * @param lastState
+	 * 		the result of the last scan or {@code null} if there was none
+	 *
+	 * @return the devices found, keyed by their port
+	 */
+	Map<String, DeviceInfo> parseCsv(String csv, @Nullable Map<String, DeviceInfo> lastState);
+
+}
@@ -0,0 +1,114 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * Tracks failed MAC address reads per device so that a broken or busy device is not read again on every scan. The
+ * delay between attempts doubles with every failure (starting at the initial backoff, up to the maximum backoff)
+ * until the maximum number of attempts is reached.
+ */
+class MacReadBackoff {
+
+	private final DeviceObserverConfig config;
+
+	private final Ticker ticker;
+
+	private final Map<String, MacReadBackoffState> states = newHashMap();
+
+	MacReadBackoff(final DeviceObserverConfig config, final Ticker ticker) {
+		this.config = checkNotNull(config);
+		this.ticker = checkNotNull(ticker);
+	}
+
+	synchronized boolean isReadAllowed(final DeviceInfo deviceInfo) {
+		final MacReadBackoffState state = states.get(getKey(deviceInfo));
+		return state == null || (!state.isExhausted() && ticker.read() - state.getNextAttemptNanos() >= 0);
+	}
+
+	synchronized int getFailedAttempts(final DeviceInfo deviceInfo) {
+		final MacReadBackoffState state = states.get(getKey(deviceInfo));
+		return state == null ? 0 : state.getFailedAttempts();
+	}
+
+	synchronized void onSuccess(final DeviceInfo deviceInfo) {
+		states.remove(getKey(deviceInfo));
+	}
+
+	synchronized void onFailure(final DeviceInfo deviceInfo, @Nullable final Throwable failure) {
+
+		final String key = getKey(deviceInfo);
+		final MacReadBackoffState oldState = states.get(key);
+		final int failedAttempts = oldState == null ? 1 : oldState.getFailedAttempts() + 1;
+
+		final long backoffMillis = Math.min(
+				config.getMacReadMaxBackoffMillis(),
+				config.getMacReadInitialBackoffMillis() << Math.min(failedAttempts - 1, 30)
+		);
+
+		states.put(key, new MacReadBackoffState(
+				key,
+				failedAttempts,
+				ticker.read() + TimeUnit.MILLISECONDS.toNanos(backoffMillis),
+				failedAttempts >= config.getMacReadMaxAttempts(),
+				failure
+		)
+		);
+	}
+
+	/**
+	 * Forgets the state of all devices that are no longer attached so that they are read again when re-attached.
+	 *
+	 * @param attachedDevices
+	 * 		the currently attached devices
+	 */
+	synchronized void retainAll(final Iterable<DeviceInfo> attachedDevices) {
+		final Map<String, MacReadBackoffState> retained = newHashMap();
+		for (DeviceInfo deviceInfo : attachedDevices) {
+			final String key = getKey(deviceInfo);
+			if (states.containsKey(key)) {
+				retained.put(key, states.get(key));
+			}
+		}
+		states.clear();
+		states.putAll(retained);
+	}
+
+	synchronized ImmutableMap<String, MacReadBackoffState> getStates() {
+		return ImmutableMap.copyOf(states);
+	}
+
+	private static String getKey(final DeviceInfo deviceInfo) {
+		return deviceInfo.getReference() == null ? deviceInfo.getPort() : deviceInfo.getReference();
+	}
+}
@@ -0,0 +1,97 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import javax.annotation.Nullable;
+
+/**
+ * The backoff state of a device whose MAC address could not be read. Attempts are spaced exponentially and stop
+ * altogether once the retry budget configured in {@link DeviceObserverConfig} is exhausted, until the device is
+ * attached again.
+ */
+public class MacReadBackoffState {
+
+	private final String key;
+
+	private final int failedAttempts;
+
+	private final long nextAttemptNanos;
+
+	private final boolean exhausted;
+
+	private final Throwable lastFailure;
+
+	public MacReadBackoffState(final String key, final int failedAttempts, final long nextAttemptNanos,
+							   final boolean exhausted, @Nullable final Throwable lastFailure) {
+		this.key = key;
+		this.failedAttempts = failedAttempts;
+		this.nextAttemptNanos = nextAttemptNanos;
+		this.exhausted = exhausted;
+		this.lastFailure = lastFailure;
+	}
+
+	/**
+	 * @return the reference of the device or its port if it has no reference
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	public int getFailedAttempts() {
+		return failedAttempts;
+	}
+
+	/**
+	 * @return the time of the next attempt as read from the observer's {@link com.google.common.base.Ticker}
+	 */
+	public long getNextAttemptNanos() {
+		return nextAttemptNanos;
+	}
+
+	/**
+	 * @return {@code true} if no more attempts will be made while the device stays attached
+	 */
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	/**
+	 * @return the exception of the last failed attempt or {@code null} if the MAC reader returned no MAC address
+	 */
+	@Nullable
+	public Throwable getLastFailure() {
+		return lastFailure;
+	}
+
+	@Override
+	public String toString() {
+		return "MacReadBackoffState{" +
+				"key='" + key + '\'' +
+				", failedAttempts=" + failedAttempts +
+				", nextAttemptNanos=" + nextAttemptNanos +
+				", exhausted=" + exhausted +
+				", lastFailure=" + lastFailure +
+				'}';
+	}
+}
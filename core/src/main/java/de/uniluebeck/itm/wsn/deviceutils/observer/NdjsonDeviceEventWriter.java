@@ -0,0 +1,314 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes device events as newline-delimited JSON, one object per event:
+ * <pre>
+ * {"time":1350000000000,"type":"ATTACHED","port":"/dev/ttyUSB0","reference":"01234","deviceType":"isense","mac":null}
+ * </pre>
+ * Missing references and MAC addresses are written as {@code null}, non-ASCII characters are escaped.
+ * <p/>
+ * Events are encoded directly into a reusable buffer which is only written out when it is full or when
+ * {@link #flush()} is called, so callers should flush regularly (e.g., every few hundred milliseconds) to bound the
+ * output latency. When writing to a file, the file is rotated before it would grow beyond its maximum size: the current
+ * file is renamed to {@code <name>.1}, older files are shifted to {@code <name>.2} and so on, and the oldest one is
+ * deleted. I/O errors are logged and the affected events are dropped so that the observer keeps running.
+ */
+public class NdjsonDeviceEventWriter implements DeviceObserverListener, Flushable, Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(NdjsonDeviceEventWriter.class);
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	public static final long DEFAULT_MAX_FILE_SIZE = 10 * 1024 * 1024;
+
+	public static final int DEFAULT_MAX_BACKUP_FILES = 5;
+
+	/**
+	 * The length of the longest line without the variable string values, i.e., the field names, the type, the MAC
+	 * address and the time stamp.
+	 */
+	private static final int MAX_FIXED_LINE_LENGTH = 160;
+
+	private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(Charsets.US_ASCII);
+
+	private static final byte[] NULL = "null".getBytes(Charsets.US_ASCII);
+
+	private static final byte[] TIME_FIELD = "{\"time\":".getBytes(Charsets.US_ASCII);
+
+	private static final byte[] TYPE_FIELD = ",\"type\":".getBytes(Charsets.US_ASCII);
+
+	private static final byte[] PORT_FIELD = ",\"port\":".getBytes(Charsets.US_ASCII);
+
+	private static final byte[] REFERENCE_FIELD = ",\"reference\":".getBytes(Charsets.US_ASCII);
+
+	private static final byte[] DEVICE_TYPE_FIELD = ",\"deviceType\":".getBytes(Charsets.US_ASCII);
+
+	private static final byte[] MAC_FIELD = ",\"mac\":".getBytes(Charsets.US_ASCII);
+
+	private static final byte[] LINE_END = "}\n".getBytes(Charsets.US_ASCII);
+
+	@Nullable
+	private final OutputStream outputStream;
+
+	@Nullable
+	private final File file;
+
+	private final long maxFileSize;
+
+	private final int maxBackupFiles;
+
+	private WritableByteChannel channel;
+
+	private ByteBuffer buffer;
+
+	/**
+	 * The number of bytes written to the current file, only maintained when writing to a file.
+	 */
+	private long fileSize;
+
+	/**
+	 * Creates a writer that writes to the given stream, e.g., {@code System.out}. The stream is flushed on every
+	 * {@link #flush()} but not closed on {@link #close()}.
+	 *
+	 * @param outputStream
+	 * 		the stream to write to
+	 */
+	public NdjsonDeviceEventWriter(final OutputStream outputStream) {
+		this.outputStream = checkNotNull(outputStream);
+		this.file = null;
+		this.maxFileSize = Long.MAX_VALUE;
+		this.maxBackupFiles = 0;
+		this.channel = Channels.newChannel(outputStream);
+		this.buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates a writer that appends to the given file and rotates it.
+	 *
+	 * @param file
+	 * 		the file to write to
+	 * @param maxFileSize
+	 * 		the size in bytes after which the file is rotated
+	 * @param maxBackupFiles
+	 * 		the number of rotated files to keep, 0 to discard the contents of a full file
+	 *
+	 * @throws IOException
+	 * 		if the file can not be opened
+	 */
+	public NdjsonDeviceEventWriter(final File file, final long maxFileSize, final int maxBackupFiles)
+			throws IOException {
+		checkArgument(maxFileSize > 0, "The maximum file size must be positive");
+		checkArgument(maxBackupFiles >= 0, "The number of backup files must not be negative");
+		this.outputStream = null;
+		this.file = checkNotNull(file);
+		this.maxFileSize = maxFileSize;
+		this.maxBackupFiles = maxBackupFiles;
+		this.channel = new FileOutputStream(file, true).getChannel();
+		this.fileSize = file.length();
+		this.buffer = ByteBuffer.allocate((int) Math.min(DEFAULT_BUFFER_SIZE, maxFileSize));
+	}
+
+	@Override
+	public synchronized void deviceEvent(final DeviceEvent event) {
+
+		final DeviceInfo deviceInfo = event.getDeviceInfo();
+		final int maxLineLength = MAX_FIXED_LINE_LENGTH + maxEncodedLength(deviceInfo.getPort()) +
+				maxEncodedLength(deviceInfo.getReference()) + maxEncodedLength(deviceInfo.getType());
+
+		if (buffer.remaining() < maxLineLength) {
+			flushBuffer();
+			if (buffer.capacity() < maxLineLength) {
+				buffer = ByteBuffer.allocate(maxLineLength);
+			}
+		}
+
+		final int lineStart = buffer.position();
+
+		buffer.put(TIME_FIELD);
+		putDigits(System.currentTimeMillis());
+		buffer.put(TYPE_FIELD);
+		putString(event.getType().name());
+		buffer.put(PORT_FIELD);
+		putString(deviceInfo.getPort());
+		buffer.put(REFERENCE_FIELD);
+		putString(deviceInfo.getReference());
+		buffer.put(DEVICE_TYPE_FIELD);
+		putString(deviceInfo.getType());
+		buffer.put(MAC_FIELD);
+		final MacAddress macAddress = deviceInfo.getMacAddress();
+		putString(macAddress == null ? null : macAddress.toHexString());
+		buffer.put(LINE_END);
+
+		if (file != null && fileSize + lineStart > 0 && fileSize + buffer.position() > maxFileSize) {
+			rotateBefore(lineStart);
+		}
+	}
+
+	/**
+	 * Writes out all buffered events.
+	 */
+	@Override
+	public synchronized void flush() {
+		flushBuffer();
+		if (outputStream != null) {
+			try {
+				outputStream.flush();
+			} catch (IOException e) {
+				log.warn("Could not flush device events: {}", e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Writes out all buffered events and closes the file if writing to one.
+	 */
+	@Override
+	public synchronized void close() {
+		flush();
+		if (file != null) {
+			Closeables.closeQuietly(channel);
+		}
+	}
+
+	/**
+	 * Writes the lines before {@code lineStart} to the current file, rotates it and keeps the line starting at
+	 * {@code lineStart} in the buffer for the new file.
+	 */
+	private void rotateBefore(final int lineStart) {
+
+		final int lineEnd = buffer.position();
+
+		buffer.position(lineStart);
+		final ByteBuffer line = buffer.slice();
+		line.limit(lineEnd - lineStart);
+
+		buffer.limit(lineStart);
+		buffer.position(0);
+		writeBuffer();
+
+		buffer.clear();
+		rotate();
+		buffer.put(line);
+	}
+
+	private void rotate() {
+
+		Closeables.closeQuietly(channel);
+
+		if (maxBackupFiles == 0) {
+			file.delete();
+		} else {
+			new File(file.getPath() + "." + maxBackupFiles).delete();
+			for (int i = maxBackupFiles - 1; i > 0; i--) {
+				new File(file.getPath() + "." + i).renameTo(new File(file.getPath() + "." + (i + 1)));
+			}
+			if (!file.renameTo(new File(file.getPath() + ".1"))) {
+				log.warn("Could not rotate device event file {}", file);
+			}
+		}
+
+		try {
+			channel = new FileOutputStream(file, true).getChannel();
+			fileSize = file.length();
+		} catch (IOException e) {
+			log.error("Could not reopen device event file {}: {}", file, e.toString());
+		}
+
+		log.debug("Rotated device event file {}", file);
+	}
+
+	private void flushBuffer() {
+		buffer.flip();
+		writeBuffer();
+		buffer.clear();
+	}
+
+	private void writeBuffer() {
+		try {
+			while (buffer.hasRemaining()) {
+				fileSize += channel.write(buffer);
+			}
+		} catch (IOException e) {
+			log.warn("Dropping {} bytes of device events: {}", buffer.remaining(), e.toString());
+		}
+	}
+
+	private void putDigits(final long value) {
+		if (value >= 10) {
+			putDigits(value / 10);
+		}
+		buffer.put((byte) ('0' + value % 10));
+	}
+
+	private void putString(@Nullable final String value) {
+
+		if (value == null) {
+			buffer.put(NULL);
+			return;
+		}
+
+		buffer.put((byte) '"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				buffer.put((byte) '\\').put((byte) c);
+			} else if (c >= 0x20 && c < 0x7f) {
+				buffer.put((byte) c);
+			} else {
+				buffer.put((byte) '\\').put((byte) 'u')
+						.put(HEX_DIGITS[(c >> 12) & 0xf])
+						.put(HEX_DIGITS[(c >> 8) & 0xf])
+						.put(HEX_DIGITS[(c >> 4) & 0xf])
+						.put(HEX_DIGITS[c & 0xf]);
+			}
+		}
+		buffer.put((byte) '"');
+	}
+
+	private static int maxEncodedLength(@Nullable final String value) {
+		return value == null ? 4 : 2 + 6 * value.length();
+	}
+}
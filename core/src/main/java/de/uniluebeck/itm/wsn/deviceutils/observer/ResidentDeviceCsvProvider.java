@@ -0,0 +1,187 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closeables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * A {@link DeviceCsvProvider} that keeps a single devicelist script process alive in resident mode ({@code -r}) and
+ * asks it for a fresh device list on every scan by writing a line to its stdin. The script answers with the CSV
+ * followed by an empty line. Scripts are extracted only once per JVM and a helper process that died is restarted
+ * transparently.
+ * <p/>
+ * The Windows XP devicelist binary does not support the resident mode so it is forked for every scan as before.
+ */
+public class ResidentDeviceCsvProvider implements DeviceCsvProvider, Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceCsvProvider.class);
+
+	private static final int MAX_ATTEMPTS = 2;
+
+	private static final Map<String, File> extractedScripts = newHashMap();
+
+	private final DeviceCsvProviderImpl forkingProvider = new DeviceCsvProviderImpl();
+
+	private final String scriptName;
+
+	private final List<String> additionalArguments;
+
+	private Process process;
+
+	private Writer requestWriter;
+
+	private BufferedReader responseReader;
+
+	private int helperStartCount;
+
+	public ResidentDeviceCsvProvider() {
+		this(DeviceCsvProviderImpl.getScriptName());
+	}
+
+	ResidentDeviceCsvProvider(final String scriptName, final String... additionalArguments) {
+		this.scriptName = checkNotNull(scriptName);
+		this.additionalArguments = ImmutableList.copyOf(additionalArguments);
+	}
+
+	@Override
+	public synchronized String getDeviceCsv() {
+
+		if (DeviceCsvProviderImpl.SCRIPT_WINDOWS_XP.equals(scriptName)) {
+			return forkingProvider.getCsv(scriptName);
+		}
+
+		IOException lastException = null;
+
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			try {
+				ensureHelperIsRunning();
+				return requestCsv();
+			} catch (IOException e) {
+				log.warn("Communication with devicelist helper process failed: {}", e.toString());
+				lastException = e;
+				destroyHelper();
+			}
+		}
+
+		throw new RuntimeException(lastException);
+	}
+
+	/**
+	 * Returns how often the helper process was started, i.e., one plus the number of restarts.
+	 *
+	 * @return the number of helper process starts
+	 */
+	public synchronized int getHelperStartCount() {
+		return helperStartCount;
+	}
+
+	@Override
+	public synchronized void close() {
+		destroyHelper();
+	}
+
+	synchronized Process getHelperProcess() {
+		return process;
+	}
+
+	private void destroyHelper() {
+		if (process != null) {
+			Closeables.closeQuietly(requestWriter);
+			Closeables.closeQuietly(responseReader);
+			process.destroy();
+			process = null;
+		}
+	}
+
+	private void ensureHelperIsRunning() throws IOException {
+
+		if (process != null) {
+			try {
+				log.warn("devicelist helper process exited with code {}, restarting it", process.exitValue());
+				destroyHelper();
+			} catch (IllegalThreadStateException e) {
+				return; // still running
+			}
+		}
+
+		final List<String> command = newArrayList(extractScript(scriptName).getAbsolutePath(), "-c", "-r");
+		command.addAll(additionalArguments);
+
+		process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		requestWriter = new OutputStreamWriter(process.getOutputStream(), Charsets.UTF_8);
+		responseReader = new BufferedReader(new InputStreamReader(process.getInputStream(), Charsets.UTF_8));
+		helperStartCount++;
+
+		log.debug("Started devicelist helper process {}", command);
+	}
+
+	private String requestCsv() throws IOException {
+
+		requestWriter.write("scan\n");
+		requestWriter.flush();
+
+		final StringBuilder csv = new StringBuilder();
+		String line;
+
+		while ((line = responseReader.readLine()) != null) {
+			if (line.isEmpty()) {
+				return csv.toString();
+			}
+			csv.append(line).append('\n');
+		}
+
+		throw new EOFException("devicelist helper process closed its output");
+	}
+
+	private static File extractScript(final String scriptName) {
+		synchronized (extractedScripts) {
+			File script = extractedScripts.get(scriptName);
+			if (script == null || !script.exists()) {
+				script = DeviceCsvProviderImpl.copyScriptToTmpFile(scriptName);
+				script.deleteOnExit();
+				extractedScripts.put(scriptName, script);
+			}
+			return script;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+/**
+ * A {@link DeviceObserver} that has changes to publish in between scans, e.g., MAC addresses that were read in the
+ * background with lazy MAC resolution (see {@link DeviceObserverConfig#isLazyMacResolution()}) or devices that were
+ * attached or removed within the debounce window (see {@link DeviceObserverConfig#getDebounceWindowMillis()}). Such
+ * changes are only published by a later scan, so whatever drives the scans ({@link DeviceObserverHotplugTrigger},
+ * {@link AdaptiveScanScheduler}) registers a listener to be asked for a scan right away and schedules a scan for when
+ * pending changes are due instead of waiting for the next scheduled one.
+ */
+public interface ScanRequestingDeviceObserver extends DeviceObserver {
+
+	/**
+	 * Registers a listener that is run whenever a scan would publish changes. The listener is run on the thread that
+	 * detected the change and should only schedule the scan.
+	 *
+	 * @param listener
+	 * 		the listener to register
+	 */
+	void addScanRequestListener(Runnable listener);
+
+	void removeScanRequestListener(Runnable listener);
+
+	/**
+	 * Returns the time until a scan would publish changes found by previous scans, e.g., a device that was attached
+	 * within the debounce window. Meant to be asked after every scan.
+	 *
+	 * @return the delay in milliseconds, 0 if a scan would publish changes right away, -1 if no changes are pending
+	 */
+	long getNextScanDelayMillis();
+
+}
@@ -0,0 +1,54 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import java.util.Set;
+
+/**
+ * A {@link DeviceCsvProvider} that can list the devices of a part of the system (a shard, e.g., a USB bus) on its own
+ * so that the shards can be scanned concurrently and unchanged shards can be skipped, see
+ * {@link DeviceObserverConfig#isShardedScanning()}.
+ */
+public interface ShardedDeviceCsvProvider extends DeviceCsvProvider {
+
+	/**
+	 * Returns the shards that currently have devices attached.
+	 *
+	 * @return the shard identifiers
+	 */
+	Set<String> getShards();
+
+	/**
+	 * Returns the devices of one shard in the same format as {@link #getDeviceCsv()}. Must be safe to call
+	 * concurrently for different shards. Implementations may return the identical string instance as long as the
+	 * devices of the shard did not change.
+	 *
+	 * @param shard
+	 * 		the shard identifier as returned by {@link #getShards()}
+	 *
+	 * @return the CSV list of devices attached to the shard
+	 */
+	String getDeviceCsv(String shard);
+
+}
@@ -0,0 +1,182 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * Lists the attached devices shard by shard (see {@link ShardedDeviceCsvProvider}). Every shard is scanned and parsed
+ * as a task of its own and shards whose device list did not change since the last scan are not parsed again. The
+ * devices of all shards are merged into one state, reusing the instances of the last state for unchanged devices.
+ */
+class ShardedDeviceScanner {
+
+	private final ShardedDeviceCsvProvider csvProvider;
+
+	private final DeviceInfoCsvParser csvParser;
+
+	private final ListeningExecutorService executorService;
+
+	/**
+	 * The result of the last scan by shard, only accessed by one scan at a time.
+	 */
+	private Map<String, Shard> lastShards = newHashMap();
+
+	private final AtomicLong parsedShardCount = new AtomicLong();
+
+	private final AtomicLong skippedShardCount = new AtomicLong();
+
+	/**
+	 * @param csvProvider
+	 * 		the provider to list the devices of the shards with
+	 * @param csvParser
+	 * 		the parser for the device lists of the shards
+	 * @param executorService
+	 * 		the executor to scan the shards on or {@code null} to scan them one after another on the calling thread
+	 */
+	ShardedDeviceScanner(final ShardedDeviceCsvProvider csvProvider, final DeviceInfoCsvParser csvParser,
+						 @Nullable final ExecutorService executorService) {
+		this.csvProvider = checkNotNull(csvProvider);
+		this.csvParser = checkNotNull(csvParser);
+		this.executorService = executorService == null ?
+				MoreExecutors.sameThreadExecutor() :
+				MoreExecutors.listeningDecorator(executorService);
+	}
+
+	/**
+	 * Scans all shards. Must not be called concurrently.
+	 *
+	 * @param lastState
+	 * 		the state of the last scan
+	 *
+	 * @return the currently attached devices by port
+	 */
+	Map<String, DeviceInfo> scan(final ImmutableMap<String, DeviceInfo> lastState) {
+
+		final Map<String, Shard> shards = newHashMap();
+		final List<ListenableFuture<Shard>> futures = newArrayList();
+
+		for (final String shard : csvProvider.getShards()) {
+			futures.add(executorService.submit(new Callable<Shard>() {
+				@Override
+				public Shard call() throws Exception {
+					return scanShard(shard, lastState);
+				}
+			}
+			));
+		}
+
+		final List<Shard> scannedShards;
+		try {
+			scannedShards = Futures.allAsList(futures).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		}
+
+		final Map<String, DeviceInfo> state = newHashMap();
+
+		for (Shard shard : scannedShards) {
+
+			shards.put(shard.id, shard);
+
+			if (shard == lastShards.get(shard.id)) {
+				skippedShardCount.incrementAndGet();
+			} else {
+				parsedShardCount.incrementAndGet();
+			}
+
+			for (DeviceInfo deviceInfo : shard.devices.values()) {
+				final DeviceInfo lastDeviceInfo = lastState.get(deviceInfo.getPort());
+				state.put(deviceInfo.getPort(), lastDeviceInfo != null && lastDeviceInfo.isSameDevice(deviceInfo) ?
+						lastDeviceInfo :
+						deviceInfo
+				);
+			}
+		}
+
+		lastShards = shards;
+		return state;
+	}
+
+	/**
+	 * @return the number of shards whose device list was parsed because it changed
+	 */
+	long getParsedShardCount() {
+		return parsedShardCount.get();
+	}
+
+	/**
+	 * @return the number of shards whose device list was not parsed again because it did not change
+	 */
+	long getSkippedShardCount() {
+		return skippedShardCount.get();
+	}
+
+	private Shard scanShard(final String id, final ImmutableMap<String, DeviceInfo> lastState) {
+
+		final String csv = csvProvider.getDeviceCsv(id);
+		final Shard lastShard = lastShards.get(id);
+
+		if (lastShard != null && lastShard.csv.equals(csv)) {
+			return lastShard;
+		}
+
+		return new Shard(id, csv, DeviceInfoCsvParsers.parseCsv(csvParser, csv, lastState));
+	}
+
+	private static class Shard {
+
+		private final String id;
+
+		private final String csv;
+
+		private final Map<String, DeviceInfo> devices;
+
+		private Shard(final String id, final String csv, final Map<String, DeviceInfo> devices) {
+			this.id = id;
+			this.csv = csv;
+			this.devices = devices;
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.collect.Maps.newHashMap;
+
+/**
+ * Parses the output of a {@link DeviceCsvProvider} in a single pass over a character stream. Rows are located in a
+ * reusable buffer and split in place, so the only objects created per row are the column values and the
+ * {@link DeviceInfo} itself. For devices that are unchanged since the last scan only the port is created and the last
+ * instance is reused. Unlike {@link DeviceInfoCsvParserImpl}, malformed rows are skipped and counted instead of
+ * failing the whole scan.
+ */
+public class StreamingDeviceInfoCsvParser implements IncrementalDeviceInfoCsvParser {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceInfoCsvParser.class);
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final AtomicLong malformedRowCount = new AtomicLong();
+
+	@Override
+	public Map<String, DeviceInfo> parseCsv(final String csv) {
+		return parseCsv(csv, null);
+	}
+
+	@Override
+	public Map<String, DeviceInfo> parseCsv(final String csv, @Nullable final Map<String, DeviceInfo> lastState) {
+		try {
+			return parseCsv(new StringReader(csv), lastState);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Parses the CSV rows read from {@code reader} until the end of the stream is reached. The reader is not closed.
+	 *
+	 * @param reader
+	 * 		the reader to parse the rows from
+	 * @param lastState
+	 * 		the result of the last scan whose instances are reused for unchanged devices or {@code null}
+	 *
+	 * @return the devices found, keyed by their port
+	 *
+	 * @throws IOException
+	 * 		if reading from {@code reader} fails
+	 */
+	public Map<String, DeviceInfo> parseCsv(final Reader reader, @Nullable final Map<String, DeviceInfo> lastState)
+			throws IOException {
+
+		final Map<String, DeviceInfo> newState = newHashMap();
+
+		char[] buffer = new char[BUFFER_SIZE];
+		int length = 0;
+		int malformedRows = 0;
+		int read;
+
+		while ((read = reader.read(buffer, length, buffer.length - length)) != -1) {
+
+			int rowStart = 0;
+			for (int i = length; i < length + read; i++) {
+				if (buffer[i] == '\n') {
+					if (!parseRow(buffer, rowStart, i, lastState, newState)) {
+						malformedRows++;
+					}
+					rowStart = i + 1;
+				}
+			}
+			length += read;
+
+			if (rowStart > 0) {
+				System.arraycopy(buffer, rowStart, buffer, 0, length - rowStart);
+				length -= rowStart;
+			} else if (length == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+		}
+
+		if (!parseRow(buffer, 0, length, lastState, newState)) {
+			malformedRows++;
+		}
+
+		if (malformedRows > 0) {
+			malformedRowCount.addAndGet(malformedRows);
+			log.warn("Skipped {} malformed rows in the device list, every row must have exactly three columns",
+					malformedRows
+			);
+		}
+
+		return newState;
+	}
+
+	/**
+	 * @return the number of malformed rows skipped by this parser so far
+	 */
+	public long getMalformedRowCount() {
+		return malformedRowCount.get();
+	}
+
+	/**
+	 * Parses the row in {@code buffer[start, end)} and adds the device found to {@code newState}.
+	 *
+	 * @return {@code false} if the row is malformed, {@code true} if it was parsed or is blank
+	 */
+	private static boolean parseRow(final char[] buffer, final int start, final int end,
+									@Nullable final Map<String, DeviceInfo> lastState,
+									final Map<String, DeviceInfo> newState) {
+
+		final int rowStart = skipWhitespace(buffer, start, end);
+		final int rowEnd = skipTrailingWhitespace(buffer, rowStart, end);
+
+		if (rowStart == rowEnd) {
+			return true;
+		}
+
+		final int firstComma = indexOfComma(buffer, rowStart, rowEnd);
+		final int secondComma = firstComma == -1 ? -1 : indexOfComma(buffer, firstComma + 1, rowEnd);
+		if (secondComma == -1 || indexOfComma(buffer, secondComma + 1, rowEnd) != -1) {
+			return false;
+		}
+
+		final String port = column(buffer, firstComma + 1, secondComma);
+		if (port.isEmpty()) {
+			return false;
+		}
+
+		final DeviceInfo lastInfo = lastState == null ? null : lastState.get(port);
+		if (lastInfo != null && lastInfo.getReference() != null &&
+				columnEquals(buffer, secondComma + 1, rowEnd, lastInfo.getType()) &&
+				columnEquals(buffer, rowStart, firstComma, lastInfo.getReference())) {
+			newState.put(port, lastInfo);
+			return true;
+		}
+
+		final DeviceInfo info = new DeviceInfo(
+				column(buffer, secondComma + 1, rowEnd),
+				port,
+				column(buffer, rowStart, firstComma),
+				null
+		);
+		newState.put(port, lastInfo != null && lastInfo.isSameDevice(info) ? lastInfo : info);
+		return true;
+	}
+
+	private static boolean columnEquals(final char[] buffer, final int start, final int end, final String value) {
+		final int columnStart = skipWhitespace(buffer, start, end);
+		final int columnEnd = skipTrailingWhitespace(buffer, columnStart, end);
+		if (columnEnd - columnStart != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (buffer[columnStart + i] != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String column(final char[] buffer, final int start, final int end) {
+		final int columnStart = skipWhitespace(buffer, start, end);
+		final int columnEnd = skipTrailingWhitespace(buffer, columnStart, end);
+		return new String(buffer, columnStart, columnEnd - columnStart);
+	}
+
+	private static int indexOfComma(final char[] buffer, final int start, final int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == ',') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int skipWhitespace(final char[] buffer, int start, final int end) {
+		while (start < end && Character.isWhitespace(buffer[start])) {
+			start++;
+		}
+		return start;
+	}
+
+	private static int skipTrailingWhitespace(final char[] buffer, final int start, int end) {
+		while (end > start && Character.isWhitespace(buffer[end - 1])) {
+			end--;
+		}
+		return end;
+	}
+}
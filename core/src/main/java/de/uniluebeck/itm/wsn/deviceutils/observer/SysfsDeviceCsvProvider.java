@@ -0,0 +1,394 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newHashSet;
+
+/**
+ * A {@link DeviceCsvProvider} for Linux that walks {@code /sys/bus/usb/drivers/usb} directly instead of extracting
+ * and forking the {@code devicelist-linux} Perl script on every scan. The output is identical to the one of the script
+ * when called with {@code -c}.
+ * <p/>
+ * The shards of this provider are the USB buses. The devices of a bus are only read again if a device on the bus was
+ * added, removed or re-enumerated since the last call, which is detected by their sysfs names and device numbers.
+ */
+public class SysfsDeviceCsvProvider implements ShardedDeviceCsvProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(DeviceCsvProvider.class);
+
+	private static final String USB_DRIVER_PATH = "sys/bus/usb/drivers/usb";
+
+	private static final String[] DEV_PREFIXES = {"/dev/usb/tts/", "/dev/ttyUSB", "/dev/tts/USB"};
+
+	private static final String NO_SERIAL_DEVICE = "  (none)";
+
+	private static final Pattern DIGITS = Pattern.compile("(\\d+)");
+
+	/**
+	 * Pairs of USB vendor and product IDs of the supported USB-to-serial converters (FTDI FT232 and Silabs CP210x).
+	 */
+	private static final String[][] SUPPORTED_CONVERTERS = {
+			{"0403", "6001"},
+			{"10c4", "ea60"}
+	};
+
+	private static final Map<String, String> PRODUCT_TO_DEVICE_TYPE = ImmutableMap.<String, String>builder()
+			.put("Crossbow Telos Rev.B", "telosb")
+			.put("MTM-CM5000MSP", "telosb")
+			.put("USB <-> Serial", "isense")
+			.put("isense-gateway-module-2", "isense")
+			.put("Pacemate", "pacemate")
+			.put("FT232R USB UART", "xbee")
+			.build();
+
+	private final File rootDirectory;
+
+	/**
+	 * The last CSV of every USB bus together with the fingerprint of the bus at the time it was read.
+	 */
+	private final ConcurrentMap<String, ShardCsv> shardCsvs = new ConcurrentHashMap<String, ShardCsv>();
+
+	public SysfsDeviceCsvProvider() {
+		this(new File("/"));
+	}
+
+	/**
+	 * Creates a provider that resolves all sysfs and {@code /dev} paths relative to {@code rootDirectory}.
+	 *
+	 * @param rootDirectory
+	 * 		the directory to use as file system root (e.g., a fake sysfs tree for testing)
+	 */
+	public SysfsDeviceCsvProvider(final File rootDirectory) {
+		this.rootDirectory = checkNotNull(rootDirectory);
+	}
+
+	@Override
+	public String getDeviceCsv() {
+
+		final File[] usbDevices = listUsbDevices();
+		return usbDevices == null ? "" : toCsv(readDevices(Arrays.asList(usbDevices)));
+	}
+
+	@Override
+	public Set<String> getShards() {
+
+		final File[] usbDevices = listUsbDevices();
+		final Set<String> buses = newHashSet();
+
+		if (usbDevices != null) {
+			for (File usbDevice : usbDevices) {
+				final String bus = getBus(usbDevice);
+				if (bus != null) {
+					buses.add(bus);
+				}
+			}
+		}
+
+		shardCsvs.keySet().retainAll(buses);
+		return buses;
+	}
+
+	@Override
+	public String getDeviceCsv(final String shard) {
+
+		checkNotNull(shard);
+
+		final File[] usbDevices = listUsbDevices();
+		if (usbDevices == null) {
+			return "";
+		}
+
+		final List<File> busDevices = newArrayList();
+		for (File usbDevice : usbDevices) {
+			if (shard.equals(getBus(usbDevice))) {
+				busDevices.add(usbDevice);
+			}
+		}
+
+		final String fingerprint = getFingerprint(busDevices);
+		final ShardCsv lastShardCsv = shardCsvs.get(shard);
+
+		if (fingerprint != null && lastShardCsv != null && fingerprint.equals(lastShardCsv.fingerprint)) {
+			return lastShardCsv.csv;
+		}
+
+		final List<UsbSerialDevice> devices = readDevices(busDevices);
+		final String csv = toCsv(devices);
+
+		if (fingerprint != null && isComplete(devices)) {
+			shardCsvs.put(shard, new ShardCsv(fingerprint, csv));
+		} else {
+			shardCsvs.remove(shard);
+		}
+
+		return csv;
+	}
+
+	@Nullable
+	private File[] listUsbDevices() {
+
+		final File[] usbDevices = new File(rootDirectory, USB_DRIVER_PATH).listFiles();
+
+		if (usbDevices == null) {
+			log.warn("Could not list USB devices in {}", new File(rootDirectory, USB_DRIVER_PATH));
+		}
+
+		return usbDevices;
+	}
+
+	private List<UsbSerialDevice> readDevices(final List<File> usbDevices) {
+
+		final List<UsbSerialDevice> devices = newArrayList();
+		for (File usbDevice : usbDevices) {
+			if (isSupportedConverter(usbDevice)) {
+				devices.add(readDevice(usbDevice));
+			}
+		}
+
+		Collections.sort(devices);
+		return devices;
+	}
+
+	private static String toCsv(final List<UsbSerialDevice> devices) {
+		final StringBuilder csv = new StringBuilder();
+		for (UsbSerialDevice device : devices) {
+			csv.append(device.serial).append(',')
+					.append(device.serialDevName).append(',')
+					.append(device.deviceType).append('\n');
+		}
+		return csv.toString();
+	}
+
+	/**
+	 * Returns the bus of a USB device from its sysfs name (e.g., {@code 3} for {@code 3-1.4}).
+	 *
+	 * @return the bus or {@code null} for root hubs and entries that are no USB devices
+	 */
+	@Nullable
+	private static String getBus(final File usbDevice) {
+		final String name = usbDevice.getName();
+		final int dash = name.indexOf('-');
+		return dash > 0 && name.indexOf(':') < 0 ? name.substring(0, dash) : null;
+	}
+
+	/**
+	 * Identifies the devices on a bus by their sysfs names and device numbers. The kernel assigns a new device number
+	 * whenever a device is enumerated, so a device that is replaced between two scans changes the fingerprint.
+	 *
+	 * @return the fingerprint or {@code null} if it cannot be determined
+	 */
+	@Nullable
+	private static String getFingerprint(final List<File> busDevices) {
+
+		final List<String> names = newArrayList();
+		for (File usbDevice : busDevices) {
+			final String devNum = readAttribute(usbDevice, "devnum");
+			if (devNum == null) {
+				return null;
+			}
+			names.add(usbDevice.getName() + '#' + devNum);
+		}
+
+		Collections.sort(names);
+		return Joiner.on(',').join(names);
+	}
+
+	/**
+	 * Checks if all devices have a device node. A device node may be created by udev only after the device appeared in
+	 * sysfs, so a list containing devices without one must not be reused.
+	 */
+	private static boolean isComplete(final List<UsbSerialDevice> devices) {
+		for (UsbSerialDevice device : devices) {
+			if (!device.serialDevName.startsWith("/")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isSupportedConverter(final File usbDevice) {
+
+		final String vendor = readAttribute(usbDevice, "idVendor");
+		if (vendor == null) {
+			return false;
+		}
+
+		final String product = readAttribute(usbDevice, "idProduct");
+		for (String[] converter : SUPPORTED_CONVERTERS) {
+			if (converter[0].equals(vendor) && converter[1].equals(product)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private UsbSerialDevice readDevice(final File usbDevice) {
+
+		final UsbSerialDevice device = new UsbSerialDevice();
+
+		final String product = readAttribute(usbDevice, "product");
+		final String serial = readAttribute(usbDevice, "serial");
+
+		device.serial = serial == null ? "" : serial;
+		device.deviceType = product == null ? "" :
+				PRODUCT_TO_DEVICE_TYPE.containsKey(product) ? PRODUCT_TO_DEVICE_TYPE.get(product) : product;
+
+		final File usbInterface = new File(usbDevice, usbDevice.getName() + ":1.0");
+		final String ttyName = findTtyName(usbInterface);
+
+		if (ttyName != null) {
+			final Matcher matcher = DIGITS.matcher(ttyName);
+			if (matcher.find()) {
+				device.serialDevNum = Integer.parseInt(matcher.group(1));
+			}
+		}
+
+		device.serialDevName = device.serialDevNum == null ? NO_SERIAL_DEVICE : getSerialDevName(device.serialDevNum);
+
+		return device;
+	}
+
+	/**
+	 * Returns the first entry of the interface directory whose name starts with {@code tty}, like the script does. For
+	 * drivers that group their tty devices in a {@code tty} subdirectory (e.g., cdc_acm) this is the subdirectory
+	 * itself, so that these devices are listed without a port just like by the script.
+	 */
+	@Nullable
+	private static String findTtyName(final File usbInterface) {
+
+		final String[] entries = usbInterface.list();
+
+		if (entries != null) {
+
+			Arrays.sort(entries);
+
+			for (String entry : entries) {
+				if (entry.startsWith("tty")) {
+					return entry;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private String getSerialDevName(final int serialDevNum) {
+		for (String prefix : DEV_PREFIXES) {
+			final String devName = prefix + serialDevNum;
+			if (new File(rootDirectory, devName).exists()) {
+				return devName;
+			}
+		}
+		return Integer.toString(serialDevNum);
+	}
+
+	/**
+	 * Reads a sysfs attribute file with its trailing whitespace removed. Opens the file directly instead of checking
+	 * for its existence first to save a system call per attribute.
+	 */
+	@Nullable
+	private static String readAttribute(final File directory, final String attribute) {
+
+		final InputStream inputStream;
+		try {
+			inputStream = new FileInputStream(new File(directory, attribute));
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+
+		try {
+			final String value = new String(ByteStreams.toByteArray(inputStream), Charsets.UTF_8);
+			return CharMatcher.WHITESPACE.trimTrailingFrom(value);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			Closeables.closeQuietly(inputStream);
+		}
+	}
+
+	private static class ShardCsv {
+
+		private final String fingerprint;
+
+		private final String csv;
+
+		private ShardCsv(final String fingerprint, final String csv) {
+			this.fingerprint = fingerprint;
+			this.csv = csv;
+		}
+	}
+
+	private static class UsbSerialDevice implements Comparable<UsbSerialDevice> {
+
+		String serial;
+
+		String serialDevName;
+
+		Integer serialDevNum;
+
+		String deviceType;
+
+		/**
+		 * Same ordering as {@code cmp_usbdev} in the devicelist script: by tty number first, devices without a tty
+		 * last, ordered by serial.
+		 */
+		@Override
+		public int compareTo(final UsbSerialDevice other) {
+			if (serialDevNum != null) {
+				return other.serialDevNum != null ? serialDevNum.compareTo(other.serialDevNum) : -1;
+			}
+			if (other.serialDevNum != null) {
+				return 1;
+			}
+			return serial.compareTo(other.serial);
+		}
+	}
+}
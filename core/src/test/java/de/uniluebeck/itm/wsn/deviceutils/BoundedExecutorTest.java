@@ -0,0 +1,157 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedExecutorTest {
+
+	private ExecutorService executorService;
+
+	private final List<String> started = new CopyOnWriteArrayList<String>();
+
+	@Before
+	public void setUp() throws Exception {
+		executorService = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testQueuedTasksAreStartedInOrderOfPriority() throws Exception {
+
+		final BoundedExecutor executor = new BoundedExecutor(executorService, 1, 1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		executor.submit("isense", task("blocking", release));
+		executor.submit("isense", -2, task("retry-2", null));
+		executor.submit("isense", -1, task("retry-1", null));
+		executor.submit("isense", task("attached", null));
+		final ListenableFuture<String> requested = executor.submit("isense", task("requested", null));
+		assertTrue(executor.setPriority(requested, 1));
+
+		release.countDown();
+		awaitStarted(5);
+
+		assertEquals(ImmutableList.of("blocking", "requested", "attached", "retry-1", "retry-2"), started);
+		assertFalse(executor.setPriority(requested, 2));
+	}
+
+	@Test
+	public void testKeysBelowFairShareAreServedFirst() throws Exception {
+
+		final BoundedExecutor executor = new BoundedExecutor(executorService, 4, 4);
+		final List<CountDownLatch> releases = newLatches(8);
+
+		for (int i = 0; i < 6; i++) {
+			executor.submit("slow", task("slow" + i, releases.get(i)));
+		}
+		awaitStarted(4);
+
+		executor.submit("fast", task("fast0", releases.get(6)));
+		executor.submit("fast", task("fast1", releases.get(7)));
+		assertEquals(4, started.size());
+
+		// the slow type occupies all readers, but the fast type gets the next free ones although it submitted later
+		for (int i = 0; i < 3; i++) {
+			releases.get(i).countDown();
+			awaitStarted(5 + i);
+		}
+
+		assertEquals(ImmutableList.of("fast0", "fast1", "slow4"), started.subList(4, 7));
+
+		for (CountDownLatch release : releases) {
+			release.countDown();
+		}
+		awaitStarted(8);
+	}
+
+	@Test
+	public void testKeyMayExceedFairShareIfOthersAreIdle() throws Exception {
+
+		final BoundedExecutor executor = new BoundedExecutor(executorService, 4, 4);
+		final List<CountDownLatch> releases = newLatches(4);
+
+		executor.submit("fast", task("fast", releases.get(0)));
+		for (int i = 1; i < 4; i++) {
+			executor.submit("slow", task("slow" + i, releases.get(i)));
+		}
+
+		awaitStarted(4);
+		assertEquals(4, executor.getRunningCount());
+
+		for (CountDownLatch release : releases) {
+			release.countDown();
+		}
+	}
+
+	private Callable<String> task(final String name, final CountDownLatch release) {
+		return new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				started.add(name);
+				if (release != null) {
+					release.await();
+				}
+				return name;
+			}
+		};
+	}
+
+	private static List<CountDownLatch> newLatches(final int count) {
+		final ImmutableList.Builder<CountDownLatch> latches = ImmutableList.builder();
+		for (int i = 0; i < count; i++) {
+			latches.add(new CountDownLatch(1));
+		}
+		return latches.build();
+	}
+
+	private void awaitStarted(final int count) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (started.size() < count && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(50);
+		assertEquals(count, started.size());
+	}
+}
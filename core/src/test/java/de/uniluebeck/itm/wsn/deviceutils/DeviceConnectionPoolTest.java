@@ -0,0 +1,311 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.util.Modules;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceCsvProvider;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceEvent;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeviceConnectionPoolTest {
+
+	private static final String PORT = "/dev/ttyUSB0";
+
+	private final AtomicLong nanos = new AtomicLong();
+
+	private final Ticker ticker = new Ticker() {
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+	};
+
+	private final List<Device> devices = newArrayList();
+
+	private ExecutorService executorService;
+
+	private DeviceFactory deviceFactory;
+
+	private DeviceConnectionPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+
+		executorService = Executors.newCachedThreadPool();
+
+		deviceFactory = mock(DeviceFactory.class);
+		when(deviceFactory.create(
+				Matchers.<ExecutorService>any(),
+				Matchers.<DeviceType>any(),
+				Matchers.<Map<String, String>>any()
+		)
+		).thenAnswer(new Answer<Device>() {
+			@Override
+			public Device answer(final InvocationOnMock invocation) throws Throwable {
+				final Device device = mock(Device.class);
+				when(device.isConnected()).thenReturn(true);
+				synchronized (devices) {
+					devices.add(device);
+				}
+				return device;
+			}
+		}
+		);
+
+		pool = new DeviceConnectionPool(deviceFactory, executorService, new DeviceConnectionStrategy(), 1000, ticker);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool.close();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testConnectionIsReused() throws Exception {
+
+		final DeviceLease lease1 = pool.lease(PORT, DeviceType.ISENSE, null, 1000);
+		lease1.close();
+		final DeviceLease lease2 = pool.lease(PORT, DeviceType.ISENSE, null, 1000);
+		lease2.close();
+
+		assertSame(lease1.getDevice(), lease2.getDevice());
+		assertEquals(1, pool.getConnectCount());
+		assertEquals(2, pool.getLeaseCount());
+		verify(lease1.getDevice()).connect(PORT);
+		verify(lease1.getDevice(), never()).close();
+	}
+
+	@Test
+	public void testLeaseIsExclusive() throws Exception {
+
+		final DeviceLease lease = pool.lease(PORT, DeviceType.ISENSE, null, 1000);
+
+		try {
+			pool.lease(PORT, DeviceType.ISENSE, null, 0);
+			fail("Connection should not be leased twice");
+		} catch (TimeoutException expected) {
+			// expected
+		}
+
+		final Future<DeviceLease> waitingLease = executorService.submit(new Callable<DeviceLease>() {
+			@Override
+			public DeviceLease call() throws Exception {
+				return pool.lease(PORT, DeviceType.ISENSE, null, 5000);
+			}
+		}
+		);
+
+		Thread.sleep(100);
+		assertFalse(waitingLease.isDone());
+
+		lease.close();
+		assertSame(lease.getDevice(), waitingLease.get(5, TimeUnit.SECONDS).getDevice());
+	}
+
+	@Test
+	public void testDisconnectedDeviceIsReconnected() throws Exception {
+
+		final DeviceLease lease1 = pool.lease(PORT, DeviceType.ISENSE, null, 1000);
+		lease1.close();
+		when(lease1.getDevice().isConnected()).thenReturn(false);
+
+		final DeviceLease lease2 = pool.lease(PORT, DeviceType.ISENSE, null, 1000);
+
+		assertNotSame(lease1.getDevice(), lease2.getDevice());
+		assertEquals(2, pool.getConnectCount());
+		verify(lease1.getDevice()).close();
+	}
+
+	@Test
+	public void testDeviceTypeChangeReconnects() throws Exception {
+
+		final DeviceLease lease1 = pool.lease(PORT, DeviceType.ISENSE, null, 1000);
+		lease1.close();
+		final DeviceLease lease2 = pool.lease(PORT, DeviceType.PACEMATE, ImmutableMap.of("key", "value"), 1000);
+
+		assertNotSame(lease1.getDevice(), lease2.getDevice());
+		verify(lease1.getDevice()).close();
+	}
+
+	@Test
+	public void testInvalidatedConnectionIsClosed() throws Exception {
+
+		final DeviceLease lease = pool.lease(PORT, DeviceType.ISENSE, null, 1000);
+		lease.invalidate();
+		lease.close();
+
+		verify(lease.getDevice()).close();
+		assertEquals(0, pool.getOpenCount());
+	}
+
+	@Test
+	public void testIdleConnectionsAreEvicted() throws Exception {
+
+		pool.lease(PORT, DeviceType.ISENSE, null, 1000).close();
+		pool.lease("/dev/ttyUSB1", DeviceType.ISENSE, null, 1000);
+
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+		pool.evictIdle();
+		assertEquals(2, pool.getOpenCount());
+
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+		pool.evictIdle();
+		assertEquals(1, pool.getOpenCount());
+		assertEquals(1, pool.getEvictionCount());
+		verify(devices.get(0)).close();
+		verify(devices.get(1), never()).close();
+	}
+
+	@Test
+	public void testRemovedDeviceIsEvictedEvenIfLeased() throws Exception {
+
+		final DeviceLease lease = pool.lease(PORT, DeviceType.ISENSE, null, 1000);
+
+		pool.deviceEvent(new DeviceEvent(DeviceEvent.Type.REMOVED, new DeviceInfo("isense", PORT, "ref", null)));
+		verify(lease.getDevice()).close();
+
+		lease.close();
+		assertEquals(0, pool.getOpenCount());
+
+		final DeviceLease newLease = pool.lease(PORT, DeviceType.ISENSE, null, 1000);
+		assertNotSame(lease.getDevice(), newLease.getDevice());
+		assertEquals(2, pool.getConnectCount());
+	}
+
+	@Test
+	public void testDeviceRemovedWhileConnectingIsNotLeased() throws Exception {
+
+		final Device removedDevice = mock(Device.class);
+		when(removedDevice.isConnected()).thenReturn(true);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) throws Throwable {
+				final DeviceInfo deviceInfo = new DeviceInfo("isense", PORT, "ref", null);
+				pool.deviceEvent(new DeviceEvent(DeviceEvent.Type.REMOVED, deviceInfo));
+				return null;
+			}
+		}
+		).when(removedDevice).connect(PORT);
+
+		final Device attachedDevice = mock(Device.class);
+		when(attachedDevice.isConnected()).thenReturn(true);
+
+		when(deviceFactory.create(
+				Matchers.<ExecutorService>any(),
+				Matchers.<DeviceType>any(),
+				Matchers.<Map<String, String>>any()
+		)
+		).thenReturn(removedDevice, attachedDevice);
+
+		try {
+			pool.lease(PORT, DeviceType.ISENSE, null, 1000);
+			fail("The connection to a removed device should not be leased");
+		} catch (IOException expected) {
+			// expected
+		}
+
+		verify(removedDevice).close();
+		assertEquals(0, pool.getOpenCount());
+		assertEquals(1, pool.getEvictionCount());
+
+		assertSame(attachedDevice, pool.lease(PORT, DeviceType.ISENSE, null, 1000).getDevice());
+	}
+
+	@Test
+	public void testPoolBoundByModuleIsRegisteredWithObservers() throws Exception {
+
+		final DeviceCsvProvider csvProvider = mock(DeviceCsvProvider.class);
+		when(csvProvider.getDeviceCsv()).thenReturn("A1," + PORT + ",telosb\n", "");
+
+		final Injector injector = Guice.createInjector(Modules
+				.override(new DeviceUtilsModule(executorService, null).setConnectionPoolEnabled(true))
+				.with(new Module() {
+					@Override
+					public void configure(final Binder binder) {
+						binder.bind(DeviceFactory.class).toInstance(deviceFactory);
+						binder.bind(DeviceCsvProvider.class).toInstance(csvProvider);
+					}
+				}
+				)
+		);
+
+		final DeviceConnectionPool boundPool = injector.getInstance(DeviceConnectionPool.class);
+		assertSame(boundPool, injector.getInstance(DeviceConnectionPool.class));
+
+		try {
+
+			final DeviceObserver observer = injector.getInstance(DeviceObserver.class);
+			observer.run();
+
+			boundPool.lease(PORT, DeviceType.TELOSB, null, 1000).close();
+			assertEquals(1, boundPool.getOpenCount());
+
+			observer.run();
+			assertEquals(0, boundPool.getOpenCount());
+
+		} finally {
+			boundPool.close();
+		}
+	}
+}
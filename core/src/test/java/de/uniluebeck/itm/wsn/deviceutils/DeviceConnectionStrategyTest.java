@@ -0,0 +1,156 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.collect.ImmutableList;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.exception.PortNotFoundException;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeviceConnectionStrategyTest {
+
+	private static final String PORT = "/dev/ttyUSB0";
+
+	private Device device;
+
+	private DeviceConnectionStrategy strategy;
+
+	@Before
+	public void setUp() throws Exception {
+		device = mock(Device.class);
+		strategy = new DeviceConnectionStrategy()
+				.setInitialBackoffMillis(1)
+				.setMaxBackoffMillis(4)
+				.setRandom(new Random(0));
+	}
+
+	@Test
+	public void testStopsAfterFirstSuccessfulAttempt() throws Exception {
+
+		when(device.isConnected()).thenReturn(true);
+
+		strategy.connect(device, PORT, DeviceType.ISENSE);
+
+		verify(device, times(1)).connect(PORT);
+		assertEquals(1, strategy.getMetrics().get(DeviceType.ISENSE).getConnectionCount());
+		assertEquals(1, strategy.getMetrics().get(DeviceType.ISENSE).getAttemptCount());
+	}
+
+	@Test
+	public void testRetriesRetryableExceptions() throws Exception {
+
+		doThrow(mock(PortNotFoundException.class))
+				.doThrow(mock(PortNotFoundException.class))
+				.doNothing()
+				.when(device).connect(PORT);
+		when(device.isConnected()).thenReturn(true);
+
+		strategy.connect(device, PORT, DeviceType.PACEMATE);
+
+		verify(device, times(3)).connect(PORT);
+		assertEquals(3, strategy.getMetrics().get(DeviceType.PACEMATE).getAttemptCount());
+		assertNull(strategy.getMetrics().get(DeviceType.ISENSE));
+	}
+
+	@Test
+	public void testDoesNotRetryFatalExceptions() throws Exception {
+
+		final IOException fatal = new IOException("wrong device type");
+		doThrow(fatal).when(device).connect(PORT);
+
+		try {
+			strategy.connect(device, PORT, DeviceType.ISENSE);
+			fail("Fatal exception should be rethrown");
+		} catch (IOException e) {
+			assertSame(fatal, e);
+		}
+
+		verify(device, times(1)).connect(PORT);
+		assertEquals(1, strategy.getMetrics().get(DeviceType.ISENSE).getFailedConnectionCount());
+	}
+
+	@Test
+	public void testRetryableExceptionsAreConfigurable() throws Exception {
+
+		doThrow(new IOException("busy")).doNothing().when(device).connect(PORT);
+		when(device.isConnected()).thenReturn(true);
+
+		strategy.setRetryableExceptions(ImmutableList.<Class<? extends Exception>>of(IOException.class));
+		strategy.connect(device, PORT, DeviceType.ISENSE);
+
+		verify(device, times(2)).connect(PORT);
+	}
+
+	@Test
+	public void testGivesUpAfterMaxAttempts() throws Exception {
+
+		doNothing().when(device).connect(PORT);
+		when(device.isConnected()).thenReturn(false);
+
+		try {
+			strategy.setMaxAttempts(4).connect(device, PORT, DeviceType.ISENSE);
+			fail("Connection should have failed");
+		} catch (Exception expected) {
+			// expected
+		}
+
+		verify(device, times(4)).connect(PORT);
+		assertEquals(4, strategy.getMetrics().get(DeviceType.ISENSE).getAttemptCount());
+	}
+
+	@Test
+	public void testGivesUpAfterDeadline() throws Exception {
+
+		when(device.isConnected()).thenReturn(false);
+
+		final long start = System.currentTimeMillis();
+		try {
+			strategy.setMaxAttempts(1000).setInitialBackoffMillis(10).setMaxBackoffMillis(10).setDeadlineMillis(100)
+					.connect(device, PORT, DeviceType.ISENSE);
+			fail("Connection should have failed");
+		} catch (Exception expected) {
+			// expected
+		}
+
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(1, strategy.getMetrics().get(DeviceType.ISENSE).getFailedConnectionCount());
+	}
+}
@@ -0,0 +1,146 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils;
+
+import com.google.common.base.Ticker;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts.Operation.CONNECT;
+import static de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts.Operation.READ_MAC;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeviceOperationTimeoutsTest {
+
+	private final AtomicLong nanos = new AtomicLong();
+
+	private final Ticker ticker = new Ticker() {
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+	};
+
+	private DeviceOperationTimeouts timeouts;
+
+	@Before
+	public void setUp() throws Exception {
+		timeouts = new DeviceOperationTimeouts();
+	}
+
+	@Test
+	public void testMaximumIsUsedUntilEnoughDurationsAreRecorded() throws Exception {
+
+		assertEquals(READ_MAC.getDefaultMaxTimeoutMillis(), timeouts.getTimeoutMillis(DeviceType.PACEMATE, READ_MAC));
+
+		for (int i = 0; i < timeouts.getMinSamples() - 1; i++) {
+			timeouts.recordDuration(DeviceType.PACEMATE, READ_MAC, 2000);
+		}
+		assertEquals(READ_MAC.getDefaultMaxTimeoutMillis(), timeouts.getTimeoutMillis(DeviceType.PACEMATE, READ_MAC));
+
+		timeouts.recordDuration(DeviceType.PACEMATE, READ_MAC, 2000);
+		assertEquals(6000, timeouts.getTimeoutMillis(DeviceType.PACEMATE, READ_MAC));
+	}
+
+	@Test
+	public void testTimeoutFollowsNinetyNinthPercentile() throws Exception {
+
+		for (int i = 1; i <= 100; i++) {
+			timeouts.recordDuration(DeviceType.ISENSE, READ_MAC, i * 100);
+		}
+		assertEquals(3 * 9900, timeouts.getTimeoutMillis(DeviceType.ISENSE, READ_MAC));
+
+		// other device types and operations are not affected
+		assertEquals(READ_MAC.getDefaultMaxTimeoutMillis(), timeouts.getTimeoutMillis(DeviceType.PACEMATE, READ_MAC));
+		assertEquals(CONNECT.getDefaultMaxTimeoutMillis(), timeouts.getTimeoutMillis(DeviceType.ISENSE, CONNECT));
+	}
+
+	@Test
+	public void testTimeoutIsBoundedByMinimumAndMaximum() throws Exception {
+
+		timeouts.setMaxTimeoutMillis(DeviceType.ISENSE, CONNECT, 2000);
+		for (int i = 0; i < timeouts.getMinSamples(); i++) {
+			timeouts.recordDuration(DeviceType.ISENSE, CONNECT, 1000);
+			timeouts.recordDuration(DeviceType.PACEMATE, CONNECT, 1);
+		}
+
+		assertEquals(2000, timeouts.getTimeoutMillis(DeviceType.ISENSE, CONNECT));
+		assertEquals(timeouts.getMinTimeoutMillis(), timeouts.getTimeoutMillis(DeviceType.PACEMATE, CONNECT));
+	}
+
+	@Test
+	public void testDeadlineOfComposedOperationSumsTimeouts() throws Exception {
+
+		timeouts.setMaxTimeoutMillis(CONNECT, 1000).setMaxTimeoutMillis(READ_MAC, 4000);
+		final Deadline deadline = timeouts.newDeadline(ticker, DeviceType.ISENSE, CONNECT, READ_MAC);
+
+		assertEquals(5000, deadline.getRemainingMillis());
+		assertEquals(1000, deadline.getTimeoutMillis(1000, "connecting"));
+
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(3000));
+		assertEquals(2000, deadline.getTimeoutMillis(4000, "reading"));
+		assertFalse(deadline.isExpired());
+
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(2000));
+		assertTrue(deadline.isExpired());
+		try {
+			deadline.getTimeoutMillis(4000, "closing");
+			fail("Deadline should have passed");
+		} catch (TimeoutException expected) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testModuleBindsTheConfiguredTimeoutsAsSingleton() throws Exception {
+
+		final ExecutorService executorService = Executors.newSingleThreadExecutor();
+		try {
+
+			final Injector injector = Guice.createInjector(
+					new DeviceUtilsModule(executorService, null).setOperationTimeouts(timeouts)
+			);
+
+			assertSame(timeouts, injector.getInstance(DeviceOperationTimeouts.class));
+			assertSame(injector.getInstance(DeviceMacReader.class), injector.getInstance(DeviceMacReader.class));
+
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+}
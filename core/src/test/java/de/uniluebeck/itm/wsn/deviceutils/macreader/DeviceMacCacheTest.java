@@ -0,0 +1,196 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceMacCacheTest {
+
+	private final MacAddress macAddress1 = new MacAddress(0x1234);
+
+	private final MacAddress macAddress2 = new MacAddress(0x2345);
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("maccache", ".txt");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testEntriesSurviveRestart() throws Exception {
+
+		final DeviceMacCache cache = new DeviceMacCache(file);
+		cache.put("ref1", macAddress1);
+		cache.put("ref2", macAddress2);
+
+		final DeviceMacCache restartedCache = new DeviceMacCache(file);
+		assertEquals(macAddress1, restartedCache.get("ref1"));
+		assertEquals(macAddress2, restartedCache.get("ref2"));
+		assertNull(restartedCache.get("ref3"));
+	}
+
+	@Test
+	public void testHitsAndMissesAreCounted() throws Exception {
+
+		final DeviceMacCache cache = new DeviceMacCache(file);
+		cache.put("ref1", macAddress1);
+
+		cache.get("ref1");
+		cache.get("ref1");
+		cache.get("ref2");
+		cache.get(null);
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testInvalidationByOtherInstanceIsPickedUp() throws Exception {
+
+		final DeviceMacCache observerCache = new DeviceMacCache(file);
+		observerCache.put("ref1", macAddress1);
+		observerCache.put("ref2", macAddress2);
+
+		new DeviceMacCache(file).invalidate("ref1");
+
+		assertNull(observerCache.get("ref1"));
+		assertEquals(macAddress2, observerCache.get("ref2"));
+		assertNull(new DeviceMacCache(file).get("ref1"));
+	}
+
+	@Test
+	public void testCompactionByOtherInstanceToSameLengthIsPickedUp() throws Exception {
+
+		final DeviceMacCache observerCache = new DeviceMacCache(file);
+		observerCache.put("ref1", macAddress1);
+		final long length = file.length();
+
+		final DeviceMacCache writerCache = new DeviceMacCache(file);
+		writerCache.put("ref2", macAddress2);
+		writerCache.invalidate("ref1");
+		writerCache.compact();
+		assertEquals(length, file.length());
+
+		assertNull(observerCache.get("ref1"));
+		assertEquals(macAddress2, observerCache.get("ref2"));
+	}
+
+	@Test
+	public void testUnchangedFileIsNotReadAgain() throws Exception {
+
+		final DeviceMacCache writerCache = new DeviceMacCache(file);
+		writerCache.put("ref1", macAddress1);
+		final long length = file.length();
+		final long lastModified = file.lastModified() - 60000;
+		assertTrue(file.setLastModified(lastModified));
+
+		final DeviceMacCache observerCache = new DeviceMacCache(file);
+		assertEquals(macAddress1, observerCache.get("ref1"));
+
+		// as long as neither the length nor the modification time changed the file is not opened to see the compaction
+		writerCache.put("ref2", macAddress2);
+		writerCache.invalidate("ref1");
+		writerCache.compact();
+		assertEquals(length, file.length());
+		assertTrue(file.setLastModified(lastModified));
+		assertEquals(macAddress1, observerCache.get("ref1"));
+
+		assertTrue(file.setLastModified(lastModified + 1000));
+		assertNull(observerCache.get("ref1"));
+		assertEquals(macAddress2, observerCache.get("ref2"));
+	}
+
+	@Test
+	public void testRewrittenMacAddressReplacesOldOne() throws Exception {
+
+		final DeviceMacCache cache = new DeviceMacCache(file);
+		cache.put("ref1", macAddress1);
+		cache.put("ref1", macAddress2);
+
+		assertEquals(macAddress2, cache.get("ref1"));
+		assertEquals(macAddress2, new DeviceMacCache(file).get("ref1"));
+	}
+
+	@Test
+	public void testFileIsCompactedAutomatically() throws Exception {
+
+		final DeviceMacCache cache = new DeviceMacCache(file);
+		final DeviceMacCache otherCache = new DeviceMacCache(file);
+
+		for (int i = 0; i < 1000; i++) {
+			cache.put("ref1", new MacAddress(i));
+			cache.invalidate("ref2");
+		}
+		cache.put("ref2", macAddress2);
+
+		final int lines = Files.readLines(file, Charsets.UTF_8).size();
+		assertTrue("file has " + lines + " lines", lines < 200);
+
+		assertEquals(new MacAddress(999), otherCache.get("ref1"));
+		assertEquals(macAddress2, otherCache.get("ref2"));
+		assertEquals(2, otherCache.size());
+	}
+
+	@Test
+	public void testExplicitCompactionKeepsLiveEntriesOnly() throws Exception {
+
+		final DeviceMacCache cache = new DeviceMacCache(file);
+		cache.put("ref1", macAddress1);
+		cache.put("ref2", macAddress2);
+		cache.invalidate("ref2");
+
+		cache.compact();
+
+		assertEquals(2, Files.readLines(file, Charsets.UTF_8).size());
+		assertEquals(macAddress1, new DeviceMacCache(file).get("ref1"));
+		assertNull(new DeviceMacCache(file).get("ref2"));
+	}
+
+	@Test
+	public void testCorruptFileIsIgnored() throws Exception {
+
+		Files.write("garbage\n", file, Charsets.UTF_8);
+
+		final DeviceMacCache cache = new DeviceMacCache(file);
+		assertNull(cache.get("ref1"));
+	}
+}
@@ -0,0 +1,212 @@
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.base.Ticker;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.util.Modules;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceCsvProvider;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceEvent;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DeviceMacReadCacheTest {
+
+	private static final String PORT = "/dev/ttyUSB0";
+
+	private static final String REFERENCE = "XBQTBUB1";
+
+	private static final long TTL_MILLIS = 1000;
+
+	private final MacAddress macAddress = new MacAddress(new byte[]{0x0, 0x0, 0x0, 0x0, 0x0, 0x0, 0x12, 0x34});
+
+	private final AtomicLong nanos = new AtomicLong();
+
+	private final AtomicInteger readCount = new AtomicInteger();
+
+	private final Callable<MacAddress> reader = new Callable<MacAddress>() {
+		@Override
+		public MacAddress call() throws Exception {
+			readCount.incrementAndGet();
+			return macAddress;
+		}
+	};
+
+	private DeviceMacReadCache cache;
+
+	private ExecutorService executorService;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new DeviceMacReadCache(TTL_MILLIS, 2, new Ticker() {
+			@Override
+			public long read() {
+				return nanos.get();
+			}
+		}
+		);
+		executorService = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testMacAddressIsReadOnceUntilItExpires() throws Exception {
+
+		assertEquals(macAddress, cache.get(PORT, DeviceType.ISENSE, REFERENCE, reader));
+		assertEquals(macAddress, cache.get(PORT, DeviceType.ISENSE, REFERENCE, reader));
+		assertEquals(1, readCount.get());
+
+		nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(TTL_MILLIS));
+
+		assertEquals(macAddress, cache.get(PORT, DeviceType.ISENSE, REFERENCE, reader));
+		assertEquals(2, readCount.get());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testDevicesAreDistinguishedByPortTypeAndReference() throws Exception {
+
+		cache.get(PORT, DeviceType.ISENSE, REFERENCE, reader);
+		cache.get(PORT, DeviceType.PACEMATE, REFERENCE, reader);
+		cache.get(PORT, DeviceType.ISENSE, null, reader);
+		cache.get("/dev/ttyUSB1", DeviceType.ISENSE, REFERENCE, reader);
+
+		assertEquals(4, readCount.get());
+	}
+
+	@Test
+	public void testSizeIsBounded() throws Exception {
+
+		cache.get(PORT, DeviceType.ISENSE, "1", reader);
+		cache.get(PORT, DeviceType.ISENSE, "2", reader);
+		cache.get(PORT, DeviceType.ISENSE, "3", reader);
+
+		assertTrue(cache.size() <= 2);
+	}
+
+	@Test
+	public void testRemovedDeviceIsInvalidated() throws Exception {
+
+		cache.get(PORT, DeviceType.ISENSE, REFERENCE, reader);
+		cache.get("/dev/ttyUSB1", DeviceType.ISENSE, "other", reader);
+
+		cache.deviceEvent(new DeviceEvent(DeviceEvent.Type.REMOVED, new DeviceInfo("isense", PORT, REFERENCE, null)));
+
+		cache.get(PORT, DeviceType.ISENSE, REFERENCE, reader);
+		cache.get("/dev/ttyUSB1", DeviceType.ISENSE, "other", reader);
+		assertEquals(3, readCount.get());
+	}
+
+	@Test
+	public void testCacheBoundByModuleIsRegisteredWithObservers() throws Exception {
+
+		final DeviceCsvProvider csvProvider = mock(DeviceCsvProvider.class);
+		when(csvProvider.getDeviceCsv()).thenReturn(REFERENCE + "," + PORT + ",telosb\n", "");
+
+		final Injector injector = Guice.createInjector(Modules
+				.override(new DeviceMacReaderModule(executorService, null).setMacReadCacheEnabled(true))
+				.with(new Module() {
+					@Override
+					public void configure(final Binder binder) {
+						binder.bind(DeviceFactory.class).toInstance(mock(DeviceFactory.class));
+						binder.bind(DeviceCsvProvider.class).toInstance(csvProvider);
+					}
+				}
+				)
+		);
+
+		final DeviceMacReadCache boundCache = injector.getInstance(DeviceMacReadCache.class);
+		assertSame(boundCache, injector.getInstance(DeviceMacReadCache.class));
+
+		final DeviceObserver observer = injector.getInstance(DeviceObserver.class);
+		observer.run();
+
+		boundCache.get(PORT, DeviceType.ISENSE, REFERENCE, reader);
+		assertEquals(1, boundCache.size());
+
+		observer.run();
+		assertEquals(0, boundCache.size());
+	}
+
+	@Test
+	public void testFailedReadsAreNotCached() throws Exception {
+
+		try {
+			cache.get(PORT, DeviceType.ISENSE, REFERENCE, new Callable<MacAddress>() {
+				@Override
+				public MacAddress call() throws Exception {
+					throw new IOException("device not responding");
+				}
+			}
+			);
+			fail("IOException expected");
+		} catch (IOException expected) {
+			// expected
+		}
+
+		assertEquals(macAddress, cache.get(PORT, DeviceType.ISENSE, REFERENCE, reader));
+		assertEquals(1, readCount.get());
+	}
+
+	@Test
+	public void testConcurrentReadsAreCoalesced() throws Exception {
+
+		final CountDownLatch readStarted = new CountDownLatch(1);
+		final CountDownLatch readMayFinish = new CountDownLatch(1);
+		final Callable<MacAddress> slowReader = new Callable<MacAddress>() {
+			@Override
+			public MacAddress call() throws Exception {
+				readCount.incrementAndGet();
+				readStarted.countDown();
+				readMayFinish.await();
+				return macAddress;
+			}
+		};
+		final Callable<MacAddress> get = new Callable<MacAddress>() {
+			@Override
+			public MacAddress call() throws Exception {
+				return cache.get(PORT, DeviceType.ISENSE, REFERENCE, slowReader);
+			}
+		};
+
+		final Future<MacAddress> first = executorService.submit(get);
+		assertTrue(readStarted.await(1, TimeUnit.SECONDS));
+		final Future<MacAddress> second = executorService.submit(get);
+		final Future<MacAddress> third = executorService.submit(get);
+
+		readMayFinish.countDown();
+
+		assertEquals(macAddress, first.get(1, TimeUnit.SECONDS));
+		assertEquals(macAddress, second.get(1, TimeUnit.SECONDS));
+		assertEquals(macAddress, third.get(1, TimeUnit.SECONDS));
+		assertEquals(1, readCount.get());
+	}
+}
@@ -0,0 +1,215 @@
+package de.uniluebeck.itm.wsn.deviceutils.macreader;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+import de.uniluebeck.itm.wsn.drivers.core.Device;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationFuture;
+import de.uniluebeck.itm.wsn.drivers.core.operation.OperationListener;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceFactory;
+import de.uniluebeck.itm.wsn.drivers.factories.DeviceType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DeviceMacReaderBatchTest {
+
+	private final MacAddress macAddress = new MacAddress(0x1234);
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	private final Map<DeviceType, AtomicInteger> runningPerType = ImmutableMap.of(
+			DeviceType.ISENSE, new AtomicInteger(),
+			DeviceType.PACEMATE, new AtomicInteger()
+	);
+
+	private final Map<DeviceType, AtomicInteger> maxRunningPerType = ImmutableMap.of(
+			DeviceType.ISENSE, new AtomicInteger(),
+			DeviceType.PACEMATE, new AtomicInteger()
+	);
+
+	private final CountDownLatch readsReleased = new CountDownLatch(1);
+
+	private ExecutorService executorService;
+
+	private DeviceMacReader deviceMacReader;
+
+	@Before
+	public void setUp() throws Exception {
+
+		executorService = Executors.newCachedThreadPool();
+
+		final DeviceFactory deviceFactory = mock(DeviceFactory.class);
+		when(deviceFactory.create(
+				Matchers.<ExecutorService>any(),
+				Matchers.<DeviceType>any(),
+				Matchers.<Map<String, String>>any()
+		)
+		).thenAnswer(new Answer<Device>() {
+			@Override
+			public Device answer(final InvocationOnMock invocation) throws Throwable {
+				return createDevice((DeviceType) invocation.getArguments()[1]);
+			}
+		}
+		);
+
+		deviceMacReader = Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				binder.bind(ExecutorService.class).toInstance(executorService);
+				binder.bind(DeviceFactory.class).toInstance(deviceFactory);
+				binder.bind(DeviceMacReferenceMap.class).toInstance(new DeviceMacReferenceMap());
+				binder.bind(Boolean.class).annotatedWith(Names.named("use16BitMode")).toInstance(false);
+				binder.bind(DeviceMacReader.class).to(DeviceMacReaderImpl.class);
+			}
+		}
+		).getInstance(DeviceMacReader.class);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		readsReleased.countDown();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testConcurrencyIsLimitedGloballyAndPerDeviceType() throws Exception {
+
+		final ImmutableList.Builder<DeviceMacReadTarget> targets = ImmutableList.builder();
+		for (int i = 0; i < 4; i++) {
+			targets.add(new DeviceMacReadTarget("/dev/ttyUSB" + i, "isense", null));
+			targets.add(new DeviceMacReadTarget("/dev/ttyACM" + i, "pacemate", null));
+		}
+
+		final ImmutableMap<DeviceMacReadTarget, ListenableFuture<MacAddress>> futures = deviceMacReader.readMacs(
+				targets.build(),
+				new DeviceMacBatchReadConfig().setMaxConcurrentReads(3).setMaxConcurrentReadsPerDeviceType(2)
+		);
+
+		Thread.sleep(200);
+		readsReleased.countDown();
+
+		assertEquals(8, futures.size());
+		for (ListenableFuture<MacAddress> future : futures.values()) {
+			assertEquals(macAddress, future.get(5, TimeUnit.SECONDS));
+		}
+
+		assertEquals(3, maxRunning.get());
+		assertTrue(maxRunningPerType.get(DeviceType.ISENSE).get() <= 2);
+		assertTrue(maxRunningPerType.get(DeviceType.PACEMATE).get() <= 2);
+	}
+
+	@Test
+	public void testOtherReadsGoOnAfterFailureWithPartialResults() throws Exception {
+
+		final DeviceMacReadTarget failingTarget = new DeviceMacReadTarget("/dev/ttyUSB0", "nosuchtype", null);
+		final DeviceMacReadTarget target = new DeviceMacReadTarget("/dev/ttyUSB1", "isense", null);
+
+		final ImmutableMap<DeviceMacReadTarget, ListenableFuture<MacAddress>> futures = deviceMacReader.readMacs(
+				ImmutableList.of(failingTarget, target),
+				new DeviceMacBatchReadConfig().setMaxConcurrentReads(1).setPartialResults(true)
+		);
+
+		assertFailed(futures.get(failingTarget));
+		readsReleased.countDown();
+		assertEquals(macAddress, futures.get(target).get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testFailureCancelsOtherReadsWithoutPartialResults() throws Exception {
+
+		final DeviceMacReadTarget failingTarget = new DeviceMacReadTarget("/dev/ttyUSB0", "nosuchtype", null);
+		final DeviceMacReadTarget target1 = new DeviceMacReadTarget("/dev/ttyUSB1", "isense", null);
+		final DeviceMacReadTarget target2 = new DeviceMacReadTarget("/dev/ttyUSB2", "isense", null);
+
+		final ImmutableMap<DeviceMacReadTarget, ListenableFuture<MacAddress>> futures = deviceMacReader.readMacs(
+				ImmutableList.of(failingTarget, target1, target2),
+				new DeviceMacBatchReadConfig().setMaxConcurrentReads(1).setPartialResults(false)
+		);
+
+		assertFailed(futures.get(failingTarget));
+		assertTrue(futures.get(target1).isCancelled());
+		assertTrue(futures.get(target2).isCancelled());
+	}
+
+	@Test
+	public void testDuplicateTargetsAreReadOnce() throws Exception {
+
+		final DeviceMacReadTarget target = new DeviceMacReadTarget("/dev/ttyUSB0", "isense", null);
+		readsReleased.countDown();
+
+		final ImmutableMap<DeviceMacReadTarget, ListenableFuture<MacAddress>> futures = deviceMacReader.readMacs(
+				ImmutableList.of(target, new DeviceMacReadTarget("/dev/ttyUSB0", "isense", null)),
+				new DeviceMacBatchReadConfig()
+		);
+
+		assertEquals(1, futures.size());
+		assertEquals(macAddress, futures.get(target).get(5, TimeUnit.SECONDS));
+	}
+
+	private static void assertFailed(final ListenableFuture<MacAddress> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("Read should have failed");
+		} catch (ExecutionException expected) {
+			// expected
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Device createDevice(final DeviceType deviceType) throws Exception {
+
+		final OperationFuture<MacAddress> future = mock(OperationFuture.class);
+		when(future.get(Matchers.anyLong(), Matchers.<TimeUnit>any())).thenAnswer(new Answer<MacAddress>() {
+			@Override
+			public MacAddress answer(final InvocationOnMock invocation) throws Throwable {
+				updateMax(maxRunning, running.incrementAndGet());
+				updateMax(maxRunningPerType.get(deviceType), runningPerType.get(deviceType).incrementAndGet());
+				try {
+					readsReleased.await();
+					return macAddress;
+				} finally {
+					runningPerType.get(deviceType).decrementAndGet();
+					running.decrementAndGet();
+				}
+			}
+		}
+		);
+
+		final Device device = mock(Device.class);
+		when(device.isConnected()).thenReturn(true);
+		when(device.readMac(Matchers.anyInt(), Matchers.<OperationListener<MacAddress>>any())).thenReturn(future);
+		return device;
+	}
+
+	private static void updateMax(final AtomicInteger max, final int value) {
+		int current;
+		while ((current = max.get()) < value && !max.compareAndSet(current, value)) {
+			// retry
+		}
+	}
+}
@@ -17,10 +17,16 @@ import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -58,6 +64,10 @@ public class DeviceMacReaderTest {
 	private DeviceType deviceType = DeviceType.ISENSE;
 
 	public void setUp(final boolean use16BitMode) throws Exception {
+		setUp(use16BitMode, null);
+	}
+
+	public void setUp(final boolean use16BitMode, @Nullable final DeviceMacReadCache readCache) throws Exception {
 
 		final Injector injector = Guice.createInjector(new Module() {
 			@Override
@@ -67,6 +77,9 @@ public class DeviceMacReaderTest {
 				binder.bind(DeviceMacReferenceMap.class).toInstance(deviceMacReferenceMap);
 				binder.bind(Boolean.class).annotatedWith(Names.named("use16BitMode")).toInstance(use16BitMode);
 				binder.bind(DeviceMacReader.class).to(DeviceMacReaderImpl.class);
+				if (readCache != null) {
+					binder.bind(DeviceMacReadCache.class).toInstance(readCache);
+				}
 			}
 		}
 		);
@@ -77,7 +90,7 @@ public class DeviceMacReaderTest {
 		doNothing().when(device).connect(port);
 		when(device.isConnected()).thenReturn(true);
 		when(device.readMac(Matchers.anyInt(), Matchers.<OperationListener<MacAddress>>any())).thenReturn(future);
-		when(future.get()).thenReturn(device64BitMacAddress);
+		when(future.get(Matchers.anyLong(), Matchers.<TimeUnit>any())).thenReturn(device64BitMacAddress);
 	}
 
 	@Test
@@ -93,4 +106,30 @@ public class DeviceMacReaderTest {
 		final MacAddress macAddress = deviceMacReader.readMac(port, deviceTypeString, null, null);
 		assertEquals(device64BitMacAddress, macAddress);
 	}
+
+	@Test
+	public void testTimedOutReadIsAbortedAndConnectionClosed() throws Exception {
+		setUp(true);
+		when(future.get(Matchers.anyLong(), Matchers.<TimeUnit>any())).thenThrow(new TimeoutException());
+
+		try {
+			deviceMacReader.readMac(port, deviceTypeString, null, null);
+			fail("Read should have timed out");
+		} catch (RuntimeException expected) {
+			// expected
+		}
+
+		verify(future).cancel(true);
+		verify(device).close();
+	}
+
+	@Test
+	public void testCachedMacAddressIsNotReadAgain() throws Exception {
+		setUp(true, new DeviceMacReadCache(60000, 16));
+
+		assertEquals(device16BitMacAddress, deviceMacReader.readMac(port, deviceTypeString, null, "ref"));
+		assertEquals(device16BitMacAddress, deviceMacReader.readMac(port, deviceTypeString, null, "ref"));
+
+		verify(device, times(1)).readMac(Matchers.anyInt(), Matchers.<OperationListener<MacAddress>>any());
+	}
 }
@@ -0,0 +1,176 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdaptiveScanSchedulerTest {
+
+	private final DeviceObserver deviceObserver = mock(DeviceObserver.class);
+
+	private final AtomicReference<ImmutableMap<String, DeviceInfo>> state =
+			new AtomicReference<ImmutableMap<String, DeviceInfo>>(ImmutableMap.<String, DeviceInfo>of());
+
+	/**
+	 * The number of scans that change the state before the state stays the same.
+	 */
+	private final AtomicInteger changingScans = new AtomicInteger();
+
+	private final AtomicInteger runningScans = new AtomicInteger();
+
+	private final AtomicInteger maxRunningScans = new AtomicInteger();
+
+	private volatile long scanDurationMillis;
+
+	private ScheduledExecutorService scheduler;
+
+	private AdaptiveScanScheduler scanScheduler;
+
+	@Before
+	public void setUp() throws Exception {
+
+		scheduler = Executors.newScheduledThreadPool(4);
+
+		when(deviceObserver.getCurrentState()).thenAnswer(new Answer<ImmutableMap<String, DeviceInfo>>() {
+			@Override
+			public ImmutableMap<String, DeviceInfo> answer(final InvocationOnMock invocation) throws Throwable {
+				return state.get();
+			}
+		}
+		);
+
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(final InvocationOnMock invocation) throws Throwable {
+				final int running = runningScans.incrementAndGet();
+				maxRunningScans.set(Math.max(maxRunningScans.get(), running));
+				Thread.sleep(scanDurationMillis);
+				if (changingScans.getAndDecrement() > 0) {
+					state.set(ImmutableMap.of("/dev/ttyUSB0", new DeviceInfo("isense", "/dev/ttyUSB0", "01234", null)));
+				}
+				runningScans.decrementAndGet();
+				return null;
+			}
+		}
+		).when(deviceObserver).run();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		scanScheduler.close();
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public void testScansFastAfterChangeAndSlowWhenIdle() throws Exception {
+
+		changingScans.set(1);
+		start(new DeviceObserverConfig()
+				.setFastScanIntervalMillis(10)
+				.setIdleScanIntervalMillis(500)
+				.setFastScanWindowMillis(200)
+		);
+
+		Thread.sleep(100);
+		assertTrue(scanScheduler.isScanningFast());
+		assertTrue(scanScheduler.getScanCount() >= 4);
+
+		Thread.sleep(300);
+		assertFalse(scanScheduler.isScanningFast());
+
+		final long scanCount = scanScheduler.getScanCount();
+		Thread.sleep(600);
+		assertTrue(scanScheduler.getScanCount() - scanCount <= 2);
+		assertEquals(0, scanScheduler.getOverrunCount());
+	}
+
+	@Test
+	public void testScansNeverOverlapAndOverrunsAreCounted() throws Exception {
+
+		scanDurationMillis = 50;
+		start(new DeviceObserverConfig().setIdleScanIntervalMillis(10));
+
+		Thread.sleep(400);
+		scanScheduler.close();
+		Thread.sleep(100);
+
+		assertEquals(1, maxRunningScans.get());
+		assertTrue(scanScheduler.getScanCount() >= 3);
+		assertEquals(scanScheduler.getScanCount(), scanScheduler.getOverrunCount());
+		assertTrue(scanScheduler.getMaxScanDurationMillis() >= 50);
+	}
+
+	@Test
+	public void testCloseStopsScanning() throws Exception {
+
+		start(new DeviceObserverConfig().setIdleScanIntervalMillis(10));
+		Thread.sleep(100);
+		scanScheduler.close();
+		Thread.sleep(50);
+
+		final long scanCount = scanScheduler.getScanCount();
+		Thread.sleep(100);
+		assertEquals(scanCount, scanScheduler.getScanCount());
+	}
+
+	@Test
+	public void testRequestedScansRunRightAwayWithoutOverlapping() throws Exception {
+
+		scanDurationMillis = 50;
+		start(new DeviceObserverConfig().setIdleScanIntervalMillis(10000));
+		Thread.sleep(100);
+		assertEquals(1, scanScheduler.getScanCount());
+
+		for (int i = 0; i < 10; i++) {
+			scanScheduler.requestScan();
+		}
+		Thread.sleep(300);
+
+		assertTrue(scanScheduler.getScanCount() >= 2);
+		assertTrue(scanScheduler.getScanCount() <= 3);
+		assertEquals(1, maxRunningScans.get());
+	}
+
+	private void start(final DeviceObserverConfig config) {
+		scanScheduler = new AdaptiveScanScheduler(deviceObserver, scheduler, config);
+		scanScheduler.start();
+	}
+}
@@ -0,0 +1,312 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserverConfig.ListenerOverflowPolicy;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AsyncDeviceObserverListenerTest {
+
+	private final DeviceInfo device1Info = new DeviceInfo("isense", "/dev/ttyUSB0", "01234", null);
+
+	private final DeviceInfo device2Info = new DeviceInfo("telosb", "/dev/ttyUSB1", "12345", null);
+
+	private final DeviceEvent device1Attached = new DeviceEvent(DeviceEvent.Type.ATTACHED, device1Info);
+
+	private final DeviceEvent device1Removed = new DeviceEvent(DeviceEvent.Type.REMOVED, device1Info);
+
+	private final DeviceEvent device2Attached = new DeviceEvent(DeviceEvent.Type.ATTACHED, device2Info);
+
+	private final DeviceEvent device2Removed = new DeviceEvent(DeviceEvent.Type.REMOVED, device2Info);
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final List<DeviceEvent> delivered = new CopyOnWriteArrayList<DeviceEvent>();
+
+	/**
+	 * Blocks on delivery of the first event until released.
+	 */
+	private final DeviceObserverListener blockingListener = new DeviceObserverListener() {
+		@Override
+		public void deviceEvent(final DeviceEvent event) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			delivered.add(event);
+		}
+	};
+
+	private AsyncDeviceObserverListener asyncListener;
+
+	@After
+	public void tearDown() throws Exception {
+		release.countDown();
+		if (asyncListener != null) {
+			asyncListener.close();
+		}
+	}
+
+	@Test
+	public void testEventsAreDeliveredInOrder() throws Exception {
+
+		asyncListener = createAsyncListener(10, ListenerOverflowPolicy.BLOCK);
+
+		asyncListener.deviceEvent(device1Attached);
+		asyncListener.deviceEvent(device2Attached);
+		asyncListener.deviceEvent(device1Removed);
+		release.countDown();
+
+		awaitDelivery(3);
+		assertEquals(ImmutableList.of(device1Attached, device2Attached, device1Removed), delivered);
+		assertEquals(3, asyncListener.getMetrics().getDeliveredEventCount());
+	}
+
+	@Test
+	public void testDropOldestDropsEventsWhenQueueIsFull() throws Exception {
+
+		asyncListener = createAsyncListener(2, ListenerOverflowPolicy.DROP_OLDEST);
+
+		asyncListener.deviceEvent(device1Attached);
+		awaitQueueDepth(0); // first event is being delivered
+
+		asyncListener.deviceEvent(device2Attached);
+		asyncListener.deviceEvent(device1Removed);
+		asyncListener.deviceEvent(device2Removed);
+
+		assertEquals(2, asyncListener.getMetrics().getQueueDepth());
+		assertEquals(1, asyncListener.getMetrics().getDroppedEventCount());
+
+		release.countDown();
+		awaitDelivery(3);
+		assertEquals(ImmutableList.of(device1Attached, device1Removed, device2Removed), delivered);
+	}
+
+	@Test
+	public void testCoalesceKeepsNetChangesOnly() throws Exception {
+
+		asyncListener = createAsyncListener(2, ListenerOverflowPolicy.COALESCE);
+
+		asyncListener.deviceEvent(device1Attached);
+		awaitQueueDepth(0); // first event is being delivered
+
+		asyncListener.deviceEvent(device1Removed);
+		asyncListener.deviceEvent(device2Attached);
+		asyncListener.deviceEvent(device1Attached);
+		asyncListener.deviceEvent(device2Removed);
+
+		// device 1 was removed and re-attached unchanged, so only device 2's events remain
+		assertEquals(2, asyncListener.getMetrics().getQueueDepth());
+		assertEquals(2, asyncListener.getMetrics().getCoalescedEventCount());
+
+		// device 2 was attached, removed and attached again, so only the last attach remains
+		asyncListener.deviceEvent(device2Attached);
+		assertEquals(1, asyncListener.getMetrics().getQueueDepth());
+		assertEquals(4, asyncListener.getMetrics().getCoalescedEventCount());
+
+		release.countDown();
+
+		awaitDelivery(2);
+		assertEquals(ImmutableList.of(device1Attached, device2Attached), delivered);
+	}
+
+	@Test
+	public void testCoalesceQueuesBeyondCapacityOnlyIfNothingCanBeMerged() throws Exception {
+
+		asyncListener = createAsyncListener(2, ListenerOverflowPolicy.COALESCE);
+
+		asyncListener.deviceEvent(device1Attached);
+		awaitQueueDepth(0); // first event is being delivered
+
+		final List<DeviceInfo> deviceInfos = Lists.newArrayList();
+		for (int i = 0; i < 10; i++) {
+			final DeviceInfo deviceInfo = new DeviceInfo("isense", "/dev/ttyUSB" + (10 + i), "ref" + i, null);
+			deviceInfos.add(deviceInfo);
+			asyncListener.deviceEvent(new DeviceEvent(DeviceEvent.Type.ATTACHED, deviceInfo));
+		}
+
+		// one attach per port cannot be merged with anything
+		assertEquals(10, asyncListener.getMetrics().getQueueDepth());
+		assertEquals(0, asyncListener.getMetrics().getCoalescedEventCount());
+		assertEquals(8, asyncListener.getMetrics().getOverCapacityEventCount());
+
+		// but a device that is removed again is merged away right away
+		asyncListener.deviceEvent(new DeviceEvent(DeviceEvent.Type.REMOVED, deviceInfos.get(5)));
+		assertEquals(9, asyncListener.getMetrics().getQueueDepth());
+		assertEquals(2, asyncListener.getMetrics().getCoalescedEventCount());
+
+		release.countDown();
+		awaitDelivery(10);
+	}
+
+	@Test
+	public void testCoalesceMergesMacResolvedIntoPrecedingAttach() throws Exception {
+
+		final DeviceInfo device1WithMacAddress = device1Info.withMacAddress(new MacAddress(1));
+		final DeviceInfo device2WithMacAddress = device2Info.withMacAddress(new MacAddress(2));
+
+		asyncListener = createAsyncListener(2, ListenerOverflowPolicy.COALESCE);
+
+		asyncListener.deviceEvent(device1Removed);
+		awaitQueueDepth(0); // first event is being delivered
+
+		asyncListener.deviceEvent(device1Attached);
+		asyncListener.deviceEvent(new DeviceEvent(DeviceEvent.Type.MAC_RESOLVED, device1WithMacAddress));
+		asyncListener.deviceEvent(new DeviceEvent(DeviceEvent.Type.MAC_RESOLVED, device2WithMacAddress));
+
+		// device 1 was attached and its MAC address resolved, device 2 was attached before the queue was filled
+		assertEquals(2, asyncListener.getMetrics().getQueueDepth());
+		assertEquals(1, asyncListener.getMetrics().getCoalescedEventCount());
+
+		release.countDown();
+
+		awaitDelivery(3);
+		assertEquals(ImmutableList.of(
+				device1Removed,
+				new DeviceEvent(DeviceEvent.Type.ATTACHED, device1WithMacAddress),
+				new DeviceEvent(DeviceEvent.Type.MAC_RESOLVED, device2WithMacAddress)
+		), delivered
+		);
+	}
+
+	@Test
+	public void testBlockWaitsForRoomInQueue() throws Exception {
+
+		asyncListener = createAsyncListener(1, ListenerOverflowPolicy.BLOCK);
+
+		asyncListener.deviceEvent(device1Attached);
+		awaitQueueDepth(0);
+		asyncListener.deviceEvent(device2Attached);
+
+		final Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				asyncListener.deviceEvent(device1Removed);
+			}
+		}
+		);
+		producer.start();
+		producer.join(200);
+		assertTrue("producer should block while the queue is full", producer.isAlive());
+
+		release.countDown();
+		producer.join(5000);
+
+		awaitDelivery(3);
+		assertEquals(ImmutableList.of(device1Attached, device2Attached, device1Removed), delivered);
+	}
+
+	@Test
+	public void testSlowListenerDoesNotStallObserver() throws Exception {
+
+		final DeviceCsvProvider csvProvider = mock(DeviceCsvProvider.class);
+		when(csvProvider.getDeviceCsv()).thenReturn("01234,/dev/ttyUSB0,isense");
+
+		final ExtendedDeviceObserver observer = Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				binder.bind(DeviceObserverConfig.class).toInstance(
+						new DeviceObserverConfig().setAsyncListenerDispatch(true)
+				);
+				binder.bind(DeviceMacReader.class).toInstance(mock(DeviceMacReader.class));
+				binder.bind(DeviceCsvProvider.class).toInstance(csvProvider);
+				binder.bind(DeviceInfoCsvParser.class).to(DeviceInfoCsvParserImpl.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				binder.bind(ExtendedDeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		).getInstance(ExtendedDeviceObserver.class);
+
+		final List<DeviceEvent> fastListenerEvents = new CopyOnWriteArrayList<DeviceEvent>();
+		observer.addListener(blockingListener);
+		observer.addListener(new DeviceObserverListener() {
+			@Override
+			public void deviceEvent(final DeviceEvent event) {
+				fastListenerEvents.add(event);
+			}
+		}
+		);
+
+		observer.run();
+		when(csvProvider.getDeviceCsv()).thenReturn("");
+		observer.run();
+
+		// the scan returned although the blocking listener did not yet process a single event
+		for (int i = 0; i < 100 && fastListenerEvents.size() < 2; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(2, fastListenerEvents.size());
+		assertTrue(delivered.isEmpty());
+		assertEquals(1, observer.getListenerMetrics().get(blockingListener).getQueueDepth());
+
+		Thread.sleep(100);
+		release.countDown();
+		awaitDelivery(2);
+
+		assertTrue(observer.getListenerMetrics().get(blockingListener).getMaxDeliveryLagMillis() >= 100);
+
+		observer.removeListener(blockingListener);
+		assertEquals(1, observer.getListenerMetrics().size());
+	}
+
+	private AsyncDeviceObserverListener createAsyncListener(final int capacity,
+															final ListenerOverflowPolicy overflowPolicy) {
+		return new AsyncDeviceObserverListener(blockingListener, capacity, overflowPolicy, Ticker.systemTicker());
+	}
+
+	private void awaitQueueDepth(final int queueDepth) throws InterruptedException {
+		for (int i = 0; i < 100 && asyncListener.getMetrics().getQueueDepth() != queueDepth; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(queueDepth, asyncListener.getMetrics().getQueueDepth());
+	}
+
+	private void awaitDelivery(final int eventCount) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (delivered.size() < eventCount && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(eventCount, delivered.size());
+	}
+}
@@ -0,0 +1,106 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import org.apache.commons.lang.SystemUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the per-scan cost of forking the {@code devicelist-linux} script, asking a {@link ResidentDeviceCsvProvider}
+ * and {@link SysfsDeviceCsvProvider} on a fake sysfs tree resembling a rack with 300 serial ports. Not part of the regular test run, execute manually.
+ */
+public class DeviceCsvProviderBenchmark {
+
+	private static final int DEVICE_COUNT = 300;
+
+	private static final int WARMUP_ITERATIONS = 50;
+
+	private static final int ITERATIONS = 100;
+
+	private FakeSysfs sysfs;
+
+	@Before
+	public void setUp() throws Exception {
+		sysfs = new FakeSysfs();
+		for (int i = 0; i < DEVICE_COUNT; i++) {
+			sysfs.addUsbSerialDevice(1 + i / 50, i, "0403", "6001", "USB <-> Serial", "ISENSE" + i);
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sysfs.delete();
+	}
+
+	@Test
+	public void benchmarkScriptVersusSysfs() throws Exception {
+
+		assumeTrue(SystemUtils.IS_OS_LINUX && new File("/usr/bin/perl").exists());
+
+		final DeviceCsvProviderImpl scriptProvider = new DeviceCsvProviderImpl();
+		final SysfsDeviceCsvProvider sysfsProvider = new SysfsDeviceCsvProvider(sysfs.getRoot());
+		final String root = sysfs.getRoot().getAbsolutePath();
+		final ResidentDeviceCsvProvider residentProvider = new ResidentDeviceCsvProvider("devicelist-linux", "-root", root);
+
+		assertEquals(scriptProvider.getCsv("devicelist-linux", "-root", root), sysfsProvider.getDeviceCsv());
+		assertEquals(sysfsProvider.getDeviceCsv(), residentProvider.getDeviceCsv());
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			scriptProvider.getCsv("devicelist-linux", "-root", root);
+			residentProvider.getDeviceCsv();
+			sysfsProvider.getDeviceCsv();
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			scriptProvider.getCsv("devicelist-linux", "-root", root);
+		}
+		final double scriptMillis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			residentProvider.getDeviceCsv();
+		}
+		final double residentMillis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sysfsProvider.getDeviceCsv();
+		}
+		final double sysfsMillis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+		residentProvider.close();
+
+		System.out.println(String.format("%d devices: script %.2f ms/scan, resident script %.2f ms/scan, " +
+				"sysfs %.2f ms/scan", DEVICE_COUNT, scriptMillis, residentMillis, sysfsMillis
+		));
+	}
+}
@@ -0,0 +1,116 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceEventLogTest {
+
+	private final DeviceInfo device1Info = new DeviceInfo("isense", "/dev/ttyUSB0", "01234", null);
+
+	private final DeviceInfo device2Info = new DeviceInfo("telosb", "/dev/ttyUSB1", "12345", null);
+
+	private final DeviceEvent device1Attached = new DeviceEvent(DeviceEvent.Type.ATTACHED, device1Info);
+
+	private final DeviceEvent device1Removed = new DeviceEvent(DeviceEvent.Type.REMOVED, device1Info);
+
+	private final DeviceEvent device2Attached = new DeviceEvent(DeviceEvent.Type.ATTACHED, device2Info);
+
+	private final DeviceEventLog eventLog = new DeviceEventLog(3);
+
+	@Test
+	public void testEmptyLogReturnsNoEvents() throws Exception {
+
+		final DeviceEventPage page = eventLog.getEventsSince(0);
+
+		assertFalse(page.isResyncRequired());
+		assertTrue(page.getEvents().isEmpty());
+		assertEquals(0, page.getLastSequence());
+	}
+
+	@Test
+	public void testReturnsEventsSinceSequence() throws Exception {
+
+		eventLog.append(ImmutableList.of(device1Attached, device2Attached), ImmutableMap.of(
+				device1Info.getPort(), device1Info,
+				device2Info.getPort(), device2Info
+		)
+		);
+		eventLog.append(ImmutableList.<DeviceEvent>of(), ImmutableMap.of(
+				device1Info.getPort(), device1Info,
+				device2Info.getPort(), device2Info
+		)
+		);
+		eventLog.append(ImmutableList.of(device1Removed), ImmutableMap.of(device2Info.getPort(), device2Info));
+
+		assertEquals(ImmutableList.of(device1Attached, device2Attached, device1Removed),
+				eventLog.getEventsSince(0).getEvents()
+		);
+		assertEquals(ImmutableList.of(device1Removed), eventLog.getEventsSince(2).getEvents());
+		assertTrue(eventLog.getEventsSince(3).getEvents().isEmpty());
+		assertEquals(3, eventLog.getEventsSince(1).getLastSequence());
+		assertNull(eventLog.getEventsSince(1).getResyncState());
+	}
+
+	@Test
+	public void testRequiresResyncIfEventsHaveBeenDropped() throws Exception {
+
+		eventLog.append(ImmutableList.of(device1Attached, device2Attached), ImmutableMap.of(
+				device1Info.getPort(), device1Info,
+				device2Info.getPort(), device2Info
+		)
+		);
+		eventLog.append(ImmutableList.of(device1Removed, device1Attached), ImmutableMap.of(
+				device1Info.getPort(), device1Info,
+				device2Info.getPort(), device2Info
+		)
+		);
+
+		assertEquals(ImmutableList.of(device2Attached, device1Removed, device1Attached),
+				eventLog.getEventsSince(1).getEvents()
+		);
+
+		final DeviceEventPage page = eventLog.getEventsSince(0);
+		assertTrue(page.isResyncRequired());
+		assertTrue(page.getEvents().isEmpty());
+		assertEquals(4, page.getLastSequence());
+		assertEquals(ImmutableMap.of(device1Info.getPort(), device1Info, device2Info.getPort(), device2Info),
+				page.getResyncState()
+		);
+	}
+
+	@Test
+	public void testRequiresResyncForUnknownSequence() throws Exception {
+		eventLog.append(ImmutableList.of(device1Attached), ImmutableMap.of(device1Info.getPort(), device1Info));
+		assertTrue(eventLog.getEventsSince(2).isResyncRequired());
+		assertTrue(eventLog.getEventsSince(-1).isResyncRequired());
+	}
+}
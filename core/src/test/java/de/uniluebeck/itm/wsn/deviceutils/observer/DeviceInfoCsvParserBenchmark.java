@@ -0,0 +1,77 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares {@link DeviceInfoCsvParserImpl} with {@link StreamingDeviceInfoCsvParser} on a device list with 10,000
+ * rows. Not part of the regular test run, execute manually.
+ */
+public class DeviceInfoCsvParserBenchmark {
+
+	private static final int ROW_COUNT = 10000;
+
+	private static final int WARMUP_ITERATIONS = 200;
+
+	private static final int ITERATIONS = 500;
+
+	@Test
+	public void benchmarkSplittingVersusStreamingParser() throws Exception {
+
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < ROW_COUNT; i++) {
+			builder.append("ISENSE").append(i).append(",/dev/ttyUSB").append(i).append(",isense\n");
+		}
+		final String csv = builder.toString();
+
+		final DeviceInfoCsvParserImpl splittingParser = new DeviceInfoCsvParserImpl();
+		final StreamingDeviceInfoCsvParser streamingParser = new StreamingDeviceInfoCsvParser();
+
+		assertEquals(splittingParser.parseCsv(csv), streamingParser.parseCsv(csv));
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			splittingParser.parseCsv(csv);
+			streamingParser.parseCsv(csv);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			splittingParser.parseCsv(csv);
+		}
+		final double splittingMillis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			streamingParser.parseCsv(csv);
+		}
+		final double streamingMillis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+		System.out.println(String.format("%d rows: splitting parser %.2f ms/parse, streaming parser %.2f ms/parse",
+				ROW_COUNT, splittingMillis, streamingMillis
+		));
+	}
+}
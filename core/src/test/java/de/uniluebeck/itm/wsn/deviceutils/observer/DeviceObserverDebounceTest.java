@@ -0,0 +1,167 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeviceObserverDebounceTest {
+
+	private static final long DEBOUNCE_WINDOW_MILLIS = 500;
+
+	private static final String DEVICE1_CSV = "01234,/dev/ttyUSB0,isense";
+
+	private static final String DEVICE1_ON_OTHER_PORT_CSV = "01234,/dev/ttyUSB1,isense";
+
+	private static final String DEVICE2_CSV = "12345,/dev/ttyUSB2,telosb";
+
+	private final DeviceInfo device1Info = new DeviceInfo("isense", "/dev/ttyUSB0", "01234", null);
+
+	private final DeviceInfo device2Info = new DeviceInfo("telosb", "/dev/ttyUSB2", "12345", null);
+
+	private final MacAddress device1MacAddress = new MacAddress(1);
+
+	@Mock
+	private DeviceCsvProvider deviceCsvProvider;
+
+	@Mock
+	private DeviceMacReader deviceMacReader;
+
+	@Mock
+	private DeviceObserverListener deviceObserverListener;
+
+	private final FakeTicker ticker = new FakeTicker();
+
+	private ExtendedDeviceObserver deviceObserver;
+
+	@Before
+	public void setUp() throws Exception {
+
+		final DeviceObserverConfig config = new DeviceObserverConfig().setDebounceWindowMillis(DEBOUNCE_WINDOW_MILLIS);
+
+		deviceObserver = Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				binder.bind(DeviceObserverConfig.class).toInstance(config);
+				binder.bind(Ticker.class).toInstance(ticker);
+				binder.bind(DeviceMacReader.class).toInstance(deviceMacReader);
+				binder.bind(DeviceCsvProvider.class).toInstance(deviceCsvProvider);
+				binder.bind(DeviceInfoCsvParser.class).to(StreamingDeviceInfoCsvParser.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				binder.bind(ExtendedDeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		).getInstance(ExtendedDeviceObserver.class);
+
+		deviceObserver.addListener(deviceObserverListener);
+
+		when(deviceMacReader.readMac("/dev/ttyUSB0", "isense", null, "01234")).thenReturn(device1MacAddress);
+		scan(DEVICE1_CSV);
+		verify(deviceObserverListener).deviceEvent(
+				new DeviceEvent(DeviceEvent.Type.ATTACHED, device1Info.withMacAddress(device1MacAddress))
+		);
+	}
+
+	@Test
+	public void testChangesArePublishedOnceStableForTheWindow() throws Exception {
+
+		scan(DEVICE1_CSV, DEVICE2_CSV);
+		ticker.advance(DEBOUNCE_WINDOW_MILLIS - 1);
+		scan(DEVICE1_CSV, DEVICE2_CSV);
+		verifyEvents(1);
+		assertEquals(1, deviceObserver.getCurrentState().size());
+
+		ticker.advance(1);
+		scan(DEVICE1_CSV, DEVICE2_CSV);
+		verifyEvents(2);
+		verify(deviceObserverListener).deviceEvent(new DeviceEvent(DeviceEvent.Type.ATTACHED, device2Info));
+
+		scan(DEVICE2_CSV);
+		ticker.advance(DEBOUNCE_WINDOW_MILLIS);
+		scan(DEVICE2_CSV);
+		verifyEvents(3);
+		assertEquals(ImmutableMap.of("/dev/ttyUSB2", device2Info), deviceObserver.getCurrentState());
+		assertTrue(deviceObserver.getFlapCounts().isEmpty());
+	}
+
+	@Test
+	public void testFlappingPortIsNotPublishedAndCounted() throws Exception {
+
+		for (int i = 0; i < 5; i++) {
+			scan();
+			ticker.advance(100);
+			scan(DEVICE1_CSV);
+			ticker.advance(100);
+		}
+
+		verifyEvents(1);
+		verify(deviceMacReader, times(1)).readMac(anyString(), anyString(), any(Map.class), anyString());
+		assertEquals(device1MacAddress, deviceObserver.getCurrentState().get("/dev/ttyUSB0").getMacAddress());
+		assertEquals(ImmutableMap.of("/dev/ttyUSB0", 5), deviceObserver.getFlapCounts());
+	}
+
+	@Test
+	public void testDeviceReEnumeratedOnOtherPortKeepsMacAddress() throws Exception {
+
+		scan(DEVICE1_ON_OTHER_PORT_CSV);
+		ticker.advance(DEBOUNCE_WINDOW_MILLIS);
+		scan(DEVICE1_ON_OTHER_PORT_CSV);
+
+		verifyEvents(3);
+		assertEquals(device1MacAddress, deviceObserver.getCurrentState().get("/dev/ttyUSB1").getMacAddress());
+		verify(deviceMacReader, times(1)).readMac(anyString(), anyString(), any(Map.class), anyString());
+	}
+
+	private void scan(final String... csvRows) {
+		when(deviceCsvProvider.getDeviceCsv()).thenReturn(Joiner.on("\n").join(csvRows));
+		deviceObserver.run();
+	}
+
+	private void verifyEvents(final int times) {
+		verify(deviceObserverListener, times(times)).deviceEvent(ArgumentCaptor.forClass(DeviceEvent.class).capture());
+	}
+}
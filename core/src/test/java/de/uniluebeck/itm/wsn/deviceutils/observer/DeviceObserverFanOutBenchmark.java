@@ -0,0 +1,194 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares notifying 1,000 listeners about changes of 500 attached devices by diffing the device state once per
+ * listener (as done before versioned snapshots were introduced) with computing the delta once per scan. Not part of
+ * the regular test run, execute manually.
+ */
+public class DeviceObserverFanOutBenchmark {
+
+	private static final int LISTENER_COUNT = 1000;
+
+	private static final int DEVICE_COUNT = 500;
+
+	private static final int CHANGED_DEVICES_PER_SCAN = 5;
+
+	private static final int WARMUP_ITERATIONS = 50;
+
+	private static final int ITERATIONS = 200;
+
+	@Test
+	public void benchmarkPerListenerDiffVersusSharedDelta() throws Exception {
+
+		final ChangingDeviceCsvProvider csvProvider = new ChangingDeviceCsvProvider();
+		final DeviceObserver observer = createObserver(csvProvider);
+
+		final CountingListener[] listeners = new CountingListener[LISTENER_COUNT];
+		for (int i = 0; i < LISTENER_COUNT; i++) {
+			listeners[i] = new CountingListener();
+			observer.addListener(listeners[i]);
+		}
+
+		// diffing once per listener
+		final List<ImmutableMap<String, DeviceInfo>> lastStates = newArrayList();
+		for (int i = 0; i < LISTENER_COUNT; i++) {
+			lastStates.add(null);
+		}
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			scanAndDiffPerListener(observer, csvProvider, listeners, lastStates);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			scanAndDiffPerListener(observer, csvProvider, listeners, lastStates);
+		}
+		final double perListenerMillis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+		// sharing the delta of the scan
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			csvProvider.changeDevices();
+			observer.run();
+		}
+
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			csvProvider.changeDevices();
+			observer.run();
+		}
+		final double sharedMillis = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+
+		final long expectedEventCount = listeners[0].eventCount;
+		for (CountingListener listener : listeners) {
+			assertEquals(expectedEventCount, listener.eventCount);
+		}
+
+		System.out.println(String.format("%d listeners, %d devices: per-listener diff %.2f ms/scan, " +
+				"shared delta %.2f ms/scan", LISTENER_COUNT, DEVICE_COUNT, perListenerMillis, sharedMillis
+		));
+	}
+
+	private static void scanAndDiffPerListener(final DeviceObserver observer,
+											   final ChangingDeviceCsvProvider csvProvider,
+											   final CountingListener[] listeners,
+											   final List<ImmutableMap<String, DeviceInfo>> lastStates) {
+		csvProvider.changeDevices();
+		final ImmutableMap<String, DeviceInfo> currentState = observer.updateState();
+		for (int i = 0; i < listeners.length; i++) {
+			final ImmutableList<DeviceEvent> events = observer.getEvents(lastStates.get(i));
+			for (DeviceEvent event : events) {
+				listeners[i].deviceEvent(event);
+			}
+			lastStates.set(i, currentState);
+		}
+	}
+
+	private static DeviceObserver createObserver(final DeviceCsvProvider csvProvider) {
+		return Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				binder.bind(DeviceMacReader.class).toInstance(mock(DeviceMacReader.class));
+				binder.bind(DeviceCsvProvider.class).toInstance(csvProvider);
+				binder.bind(DeviceInfoCsvParser.class).to(DeviceInfoCsvParserImpl.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				binder.bind(DeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		).getInstance(DeviceObserver.class);
+	}
+
+	/**
+	 * Reports {@link #DEVICE_COUNT} devices of which a few are replaced by new ones on every call to
+	 * {@link #changeDevices()}.
+	 */
+	private static class ChangingDeviceCsvProvider implements DeviceCsvProvider {
+
+		private final String[] rows = new String[DEVICE_COUNT];
+
+		private int generation;
+
+		private int nextChangedDevice;
+
+		private String deviceCsv;
+
+		private ChangingDeviceCsvProvider() {
+			for (int i = 0; i < DEVICE_COUNT; i++) {
+				rows[i] = row(i);
+			}
+			deviceCsv = join();
+		}
+
+		private void changeDevices() {
+			generation++;
+			for (int i = 0; i < CHANGED_DEVICES_PER_SCAN; i++) {
+				rows[nextChangedDevice] = row(nextChangedDevice);
+				nextChangedDevice = (nextChangedDevice + 1) % DEVICE_COUNT;
+			}
+			deviceCsv = join();
+		}
+
+		private String row(final int device) {
+			return "REF" + device + "-" + generation + ",/dev/ttyUSB" + device + ",isense";
+		}
+
+		private String join() {
+			final StringBuilder builder = new StringBuilder();
+			for (String row : rows) {
+				builder.append(row).append('\n');
+			}
+			return builder.toString();
+		}
+
+		@Override
+		public String getDeviceCsv() {
+			return deviceCsv;
+		}
+	}
+
+	private static class CountingListener implements DeviceObserverListener {
+
+		private long eventCount;
+
+		@Override
+		public void deviceEvent(final DeviceEvent event) {
+			eventCount++;
+		}
+	}
+}
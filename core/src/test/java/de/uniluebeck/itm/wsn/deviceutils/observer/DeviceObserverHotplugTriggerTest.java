@@ -0,0 +1,203 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DeviceObserverHotplugTriggerTest {
+
+	/**
+	 * Upper bound for the attach-to-scan latency. Generous as some platforms (e.g., Mac OS X) emulate the watch service
+	 * by polling every couple of seconds.
+	 */
+	private static final long MAX_LATENCY_MILLIS = 15000;
+
+	private static final long DEBOUNCE_WINDOW_MILLIS = 300;
+
+	private File dev;
+
+	private ScheduledExecutorService scheduler;
+
+	private final Semaphore scans = new Semaphore(0);
+
+	private DeviceObserverHotplugTrigger trigger;
+
+	@Before
+	public void setUp() throws Exception {
+		dev = Files.createTempDir();
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		trigger.close();
+		scheduler.shutdownNow();
+		for (File file : dev.listFiles()) {
+			file.delete();
+		}
+		dev.delete();
+	}
+
+	@Test
+	public void testScanIsTriggeredOnAttachAndRemove() throws Exception {
+
+		startTrigger(TimeUnit.HOURS.toMillis(1));
+		assertTrue("initial scan", scans.tryAcquire(MAX_LATENCY_MILLIS, TimeUnit.MILLISECONDS));
+
+		final File tty = new File(dev, "ttyUSB0");
+
+		Files.touch(tty);
+		assertTrue("scan after attach", scans.tryAcquire(MAX_LATENCY_MILLIS, TimeUnit.MILLISECONDS));
+
+		assertTrue(tty.delete());
+		assertTrue("scan after remove", scans.tryAcquire(MAX_LATENCY_MILLIS, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testNoScanIsTriggeredForIrrelevantEntries() throws Exception {
+
+		startTrigger(TimeUnit.HOURS.toMillis(1));
+		assertTrue("initial scan", scans.tryAcquire(MAX_LATENCY_MILLIS, TimeUnit.MILLISECONDS));
+
+		Files.touch(new File(dev, "null0"));
+		assertFalse(scans.tryAcquire(500, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testBurstOfEventsIsCoalescedIntoOneScan() throws Exception {
+
+		startTrigger(TimeUnit.HOURS.toMillis(1));
+		assertTrue("initial scan", scans.tryAcquire(MAX_LATENCY_MILLIS, TimeUnit.MILLISECONDS));
+
+		for (int i = 0; i < 16; i++) {
+			Files.touch(new File(dev, "ttyUSB" + i));
+		}
+
+		assertTrue(scans.tryAcquire(MAX_LATENCY_MILLIS, TimeUnit.MILLISECONDS));
+		Thread.sleep(500);
+		assertTrue(scans.availablePermits() <= 1);
+	}
+
+	@Test
+	public void testSafetyPollScansWithoutNotifications() throws Exception {
+
+		startTrigger(100);
+
+		assertTrue(scans.tryAcquire(3, 2000, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testDebouncedChangeIsPublishedWithoutFurtherEvents() throws Exception {
+
+		final File tty = new File(dev, "ttyUSB0");
+		final AtomicReference<String> csv = new AtomicReference<String>("");
+
+		final DeviceCsvProvider csvProvider = mock(DeviceCsvProvider.class);
+		when(csvProvider.getDeviceCsv()).thenAnswer(new Answer<String>() {
+			@Override
+			public String answer(final InvocationOnMock invocation) throws Throwable {
+				scans.release();
+				return csv.get();
+			}
+		}
+		);
+
+		final DeviceObserver observer = Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				binder.bind(DeviceObserverConfig.class).toInstance(
+						new DeviceObserverConfig().setDebounceWindowMillis(DEBOUNCE_WINDOW_MILLIS)
+				);
+				binder.bind(DeviceMacReader.class).toInstance(mock(DeviceMacReader.class));
+				binder.bind(DeviceCsvProvider.class).toInstance(csvProvider);
+				binder.bind(DeviceInfoCsvParser.class).to(StreamingDeviceInfoCsvParser.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				binder.bind(DeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		).getInstance(DeviceObserver.class);
+
+		final CountDownLatch attached = new CountDownLatch(1);
+		observer.addListener(new DeviceObserverListener() {
+			@Override
+			public void deviceEvent(final DeviceEvent event) {
+				if (event.getType() == DeviceEvent.Type.ATTACHED) {
+					attached.countDown();
+				}
+			}
+		}
+		);
+
+		// a safety poll far beyond the test, so only the observer's pending change can cause the publishing scan
+		trigger = new DeviceObserverHotplugTrigger(observer, scheduler, ImmutableList.of(dev),
+				TimeUnit.HOURS.toMillis(1), DeviceObserverHotplugTrigger.DEFAULT_SETTLE_DELAY_MILLIS
+		);
+		trigger.start();
+		assertTrue("initial scan", scans.tryAcquire(MAX_LATENCY_MILLIS, TimeUnit.MILLISECONDS));
+
+		csv.set("01234," + tty + ",telosb");
+		Files.touch(tty);
+		assertTrue("scan after attach", scans.tryAcquire(MAX_LATENCY_MILLIS, TimeUnit.MILLISECONDS));
+		assertEquals("attach is debounced", 1, attached.getCount());
+
+		assertTrue("attach published", attached.await(DEBOUNCE_WINDOW_MILLIS + 2000, TimeUnit.MILLISECONDS));
+	}
+
+	private void startTrigger(final long safetyPollIntervalMillis) throws Exception {
+		final Runnable scan = new Runnable() {
+			@Override
+			public void run() {
+				scans.release();
+			}
+		};
+		trigger = new DeviceObserverHotplugTrigger(scan, scheduler, ImmutableList.of(dev), safetyPollIntervalMillis,
+				DeviceObserverHotplugTrigger.DEFAULT_SETTLE_DELAY_MILLIS
+		);
+		trigger.start();
+	}
+}
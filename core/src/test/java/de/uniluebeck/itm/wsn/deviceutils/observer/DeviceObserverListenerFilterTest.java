@@ -0,0 +1,184 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DeviceObserverListenerFilterTest {
+
+	private final String device1Csv = "01234,/dev/ttyUSB0,isense";
+
+	private final String device2Csv = "12345,/dev/ttyUSB1,telosb";
+
+	private final String device3Csv = "23456,/dev/ttyACM0,telosb";
+
+	private final DeviceInfo device1Info = new DeviceInfo("isense", "/dev/ttyUSB0", "01234", null);
+
+	private final DeviceInfo device2Info = new DeviceInfo("telosb", "/dev/ttyUSB1", "12345", null);
+
+	private final DeviceInfo device3Info = new DeviceInfo("telosb", "/dev/ttyACM0", "23456", null);
+
+	private final DeviceCsvProvider deviceCsvProvider = mock(DeviceCsvProvider.class);
+
+	private ExtendedDeviceObserver deviceObserver;
+
+	private ExtendedDeviceObserverListenerManager listenerManager;
+
+	private final RecordingListener telosbListener = new RecordingListener();
+
+	private final RecordingListener usbListener = new RecordingListener();
+
+	private final RecordingListener allListener = new RecordingListener();
+
+	@Before
+	public void setUp() throws Exception {
+
+		final Injector injector = Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				binder.bind(DeviceMacReader.class).toInstance(mock(DeviceMacReader.class));
+				binder.bind(DeviceCsvProvider.class).toInstance(deviceCsvProvider);
+				binder.bind(DeviceInfoCsvParser.class).to(StreamingDeviceInfoCsvParser.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class)
+						.asEagerSingleton();
+				binder.bind(ExtendedDeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		);
+
+		deviceObserver = injector.getInstance(ExtendedDeviceObserver.class);
+		listenerManager = injector.getInstance(ExtendedDeviceObserverListenerManager.class);
+
+		deviceObserver.addListener(telosbListener, DeviceFilters.type("telosb"));
+		deviceObserver.addListener(usbListener, DeviceFilters.portMatching("/dev/ttyUSB.*"));
+		deviceObserver.addListener(allListener);
+	}
+
+	@Test
+	public void testListenersAreOnlyNotifiedAboutMatchingDevices() throws Exception {
+
+		scan(device1Csv, device2Csv, device3Csv);
+		scan(device1Csv);
+
+		assertEquals(
+				newHashSet(attached(device2Info), attached(device3Info), removed(device2Info), removed(device3Info)),
+				newHashSet(telosbListener.events)
+		);
+		assertEquals(newHashSet(attached(device1Info), attached(device2Info), removed(device2Info)),
+				newHashSet(usbListener.events)
+		);
+		assertEquals(4, telosbListener.events.size());
+		assertEquals(3, usbListener.events.size());
+		assertEquals(5, allListener.events.size());
+	}
+
+	@Test
+	public void testOnlyMatchingDevicesAreKeptAsLastState() throws Exception {
+
+		scan(device1Csv, device2Csv, device3Csv);
+
+		assertEquals(2, listenerManager.getLastSnapshot(telosbListener).getState().size());
+		assertFalse(listenerManager.getLastSnapshot(telosbListener).getState().containsKey("/dev/ttyUSB0"));
+		assertEquals(3, listenerManager.getLastSnapshot(allListener).getState().size());
+	}
+
+	@Test
+	public void testFilteredListenerCatchesUpAfterMissedScans() throws Exception {
+
+		scan(device1Csv, device2Csv);
+		telosbListener.events.clear();
+
+		// scans without notifying listeners
+		setState(device1Csv);
+		setState(device1Csv, device3Csv);
+
+		scan(device1Csv, device3Csv);
+
+		assertEquals(ImmutableList.of(attached(device3Info), removed(device2Info)), telosbListener.events);
+	}
+
+	@Test
+	public void testFiltersCanBeCombined() throws Exception {
+
+		final DeviceInfo withMac = device2Info.withMacAddress(new MacAddress(42));
+
+		assertTrue(Predicates.and(DeviceFilters.type("telosb"), DeviceFilters.portMatching("/dev/ttyUSB.*"))
+				.apply(device2Info)
+		);
+		assertFalse(Predicates.and(DeviceFilters.type("telosb"), DeviceFilters.portMatching("/dev/ttyUSB.*"))
+				.apply(device3Info)
+		);
+		assertTrue(DeviceFilters.reference("12345").apply(device2Info));
+		assertFalse(DeviceFilters.macAddress(new MacAddress(42)).apply(device2Info));
+		assertTrue(DeviceFilters.macAddress(new MacAddress(42)).apply(withMac));
+	}
+
+	private void setState(final String... csvRows) {
+		when(deviceCsvProvider.getDeviceCsv()).thenReturn(Joiner.on("\n").join(csvRows));
+		deviceObserver.updateState();
+	}
+
+	private void scan(final String... csvRows) {
+		when(deviceCsvProvider.getDeviceCsv()).thenReturn(Joiner.on("\n").join(csvRows));
+		deviceObserver.run();
+	}
+
+	private static DeviceEvent attached(final DeviceInfo deviceInfo) {
+		return new DeviceEvent(DeviceEvent.Type.ATTACHED, deviceInfo);
+	}
+
+	private static DeviceEvent removed(final DeviceInfo deviceInfo) {
+		return new DeviceEvent(DeviceEvent.Type.REMOVED, deviceInfo);
+	}
+
+	private static class RecordingListener implements DeviceObserverListener {
+
+		private final List<DeviceEvent> events = new CopyOnWriteArrayList<DeviceEvent>();
+
+		@Override
+		public void deviceEvent(final DeviceEvent event) {
+			events.add(event);
+		}
+	}
+}
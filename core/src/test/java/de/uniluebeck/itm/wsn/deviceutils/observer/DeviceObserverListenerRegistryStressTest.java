@@ -0,0 +1,193 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Adds and removes listeners while the observer is scanning and checks that listeners registered all the time got a
+ * consistent stream of events.
+ */
+public class DeviceObserverListenerRegistryStressTest {
+
+	private static final int SCANS = 2000;
+
+	private static final int DEVICES = 20;
+
+	private static final int PERMANENT_LISTENERS = 5;
+
+	private static final int CHURN_THREADS = 4;
+
+	private final AtomicInteger scan = new AtomicInteger();
+
+	private final Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+
+	@Test
+	public void testListenersCanBeAddedAndRemovedWhileScanning() throws Exception {
+
+		final ExtendedDeviceObserver deviceObserver = Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				binder.bind(DeviceMacReader.class).toInstance(mock(DeviceMacReader.class));
+				binder.bind(DeviceCsvProvider.class).toInstance(new DeviceCsvProvider() {
+					@Override
+					public String getDeviceCsv() {
+						return createCsv(scan.get());
+					}
+				}
+				);
+				binder.bind(DeviceInfoCsvParser.class).to(StreamingDeviceInfoCsvParser.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				binder.bind(ExtendedDeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		).getInstance(ExtendedDeviceObserver.class);
+
+		final List<StateTrackingListener> permanentListeners = newArrayList();
+		for (int i = 0; i < PERMANENT_LISTENERS; i++) {
+			final StateTrackingListener listener = new StateTrackingListener();
+			permanentListeners.add(listener);
+			deviceObserver.addListener(listener);
+		}
+
+		final AtomicBoolean scanning = new AtomicBoolean(true);
+		final CountDownLatch done = new CountDownLatch(CHURN_THREADS + 1);
+
+		startThread(done, new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < SCANS; i++) {
+					scan.incrementAndGet();
+					deviceObserver.run();
+				}
+				scanning.set(false);
+			}
+		}
+		);
+
+		final AtomicInteger churnedListeners = new AtomicInteger();
+		for (int t = 0; t < CHURN_THREADS; t++) {
+			final boolean filtered = t % 2 == 0;
+			startThread(done, new Runnable() {
+				@Override
+				public void run() {
+					while (scanning.get()) {
+						final StateTrackingListener listener = new StateTrackingListener();
+						if (filtered) {
+							deviceObserver.addListener(listener, DeviceFilters.type("telosb"));
+						} else {
+							deviceObserver.addListener(listener);
+						}
+						Thread.yield();
+						deviceObserver.removeListener(listener);
+						churnedListeners.incrementAndGet();
+					}
+				}
+			}
+			);
+		}
+
+		done.await();
+
+		for (Throwable failure : failures) {
+			throw new AssertionError(failure);
+		}
+		assertTrue(churnedListeners.get() > 0);
+
+		for (StateTrackingListener listener : permanentListeners) {
+			assertEquals(deviceObserver.getCurrentState().keySet(), listener.state.keySet());
+			assertTrue(listener.failures.isEmpty());
+		}
+	}
+
+	private void startThread(final CountDownLatch done, final Runnable runnable) {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					runnable.run();
+				} catch (Throwable t) {
+					failures.add(t);
+				} finally {
+					done.countDown();
+				}
+			}
+		}
+		).start();
+	}
+
+	/**
+	 * Every scan a few devices are attached and removed in a pattern that repeats every {@link #DEVICES} scans.
+	 */
+	private static String createCsv(final int scan) {
+		final StringBuilder csv = new StringBuilder();
+		for (int device = 0; device < DEVICES; device++) {
+			if ((scan + device) % 3 != 0) {
+				csv.append(device).append(",/dev/ttyUSB").append(device).append(',')
+						.append(device % 2 == 0 ? "isense" : "telosb").append('\n');
+			}
+		}
+		return csv.toString();
+	}
+
+	/**
+	 * Rebuilds the device state from the events it receives and records events that do not fit that state.
+	 */
+	private static class StateTrackingListener implements DeviceObserverListener {
+
+		private final Map<String, DeviceInfo> state = newHashMap();
+
+		private final List<DeviceEvent> failures = newArrayList();
+
+		@Override
+		public synchronized void deviceEvent(final DeviceEvent event) {
+			final String port = event.getDeviceInfo().getPort();
+			if (event.getType() == DeviceEvent.Type.ATTACHED) {
+				if (state.put(port, event.getDeviceInfo()) != null) {
+					failures.add(event);
+				}
+			} else if (state.remove(port) == null) {
+				failures.add(event);
+			}
+		}
+	}
+}
@@ -0,0 +1,359 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacCache;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeviceObserverMacEnrichmentTest {
+
+	private static final int DEVICE_COUNT = 16;
+
+	private static final long MAC_READ_MILLIS = 200;
+
+	@Mock
+	private DeviceCsvProvider deviceCsvProvider;
+
+	@Mock
+	private DeviceMacReader deviceMacReader;
+
+	private ExecutorService executorService;
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private final Map<String, AtomicInteger> runningPerType = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private final Map<String, Integer> maxRunningPerType = new ConcurrentHashMap<String, Integer>();
+
+	private int maxRunning;
+
+	private volatile long macReadMillis = MAC_READ_MILLIS;
+
+	@Before
+	public void setUp() throws Exception {
+
+		executorService = Executors.newCachedThreadPool();
+
+		final StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < DEVICE_COUNT; i++) {
+			csv.append(i).append(",/dev/ttyUSB").append(i).append(",").append(i % 2 == 0 ? "isense" : "telosb")
+					.append("\n");
+		}
+		when(deviceCsvProvider.getDeviceCsv()).thenReturn(csv.toString());
+
+		when(deviceMacReader.readMac(anyString(), anyString(), any(Map.class), anyString())).thenAnswer(
+				new Answer<MacAddress>() {
+					@Override
+					public MacAddress answer(final InvocationOnMock invocation) throws Throwable {
+						final String type = (String) invocation.getArguments()[1];
+						final String reference = (String) invocation.getArguments()[3];
+						enter(type);
+						try {
+							Thread.sleep(macReadMillis);
+						} finally {
+							leave(type);
+						}
+						return new MacAddress(Long.parseLong(reference));
+					}
+				}
+		);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testParallelEnrichmentIsFasterThanSequential() throws Exception {
+
+		final long sequentialMillis = timeScan(new DeviceObserverConfig().setMaxConcurrentMacReads(1));
+		final long parallelMillis = timeScan(new DeviceObserverConfig().setMaxConcurrentMacReads(DEVICE_COUNT)
+				.setMaxConcurrentMacReadsPerDeviceType(DEVICE_COUNT)
+		);
+
+		assertTrue(sequentialMillis >= DEVICE_COUNT * MAC_READ_MILLIS);
+		assertTrue(parallelMillis < sequentialMillis / 4);
+	}
+
+	@Test
+	public void testConcurrencyLimitsAreRespected() throws Exception {
+
+		final ExtendedDeviceObserver observer = createObserver(new DeviceObserverConfig()
+				.setMaxConcurrentMacReads(6)
+				.setMaxConcurrentMacReadsPerDeviceType(2)
+		);
+
+		observer.updateState();
+
+		assertAllMacAddressesRead(observer);
+		assertEquals(4, maxRunning);
+		assertEquals(2, (int) maxRunningPerType.get("isense"));
+		assertEquals(2, (int) maxRunningPerType.get("telosb"));
+	}
+
+	@Test
+	public void testStateIsPublishedWhenDeadlinePassesAndLateResultsAreUsedByNextScan() throws Exception {
+
+		macReadMillis = 1000;
+
+		final ExtendedDeviceObserver observer = createObserver(new DeviceObserverConfig()
+				.setMaxConcurrentMacReads(DEVICE_COUNT)
+				.setMaxConcurrentMacReadsPerDeviceType(DEVICE_COUNT)
+				.setMacReadDeadlineMillis(100)
+		);
+
+		final long start = System.currentTimeMillis();
+		observer.updateState();
+		assertTrue(System.currentTimeMillis() - start < macReadMillis);
+
+		assertEquals(DEVICE_COUNT, observer.getCurrentState().size());
+		for (DeviceInfo deviceInfo : observer.getCurrentState().values()) {
+			assertNull(deviceInfo.getMacAddress());
+		}
+
+		Thread.sleep(macReadMillis + 500);
+		observer.updateState();
+
+		assertAllMacAddressesRead(observer);
+		for (int i = 0; i < DEVICE_COUNT; i++) {
+			verify(deviceMacReader, times(1)).readMac(eq("/dev/ttyUSB" + i), anyString(), any(Map.class), anyString());
+		}
+	}
+
+	@Test
+	public void testLazyResolutionPublishesDevicesRightAwayAndEmitsMacResolvedEvents() throws Exception {
+
+		macReadMillis = 1000;
+
+		final ExtendedDeviceObserver observer = createObserver(new DeviceObserverConfig()
+				.setMaxConcurrentMacReads(DEVICE_COUNT)
+				.setMaxConcurrentMacReadsPerDeviceType(DEVICE_COUNT)
+				.setLazyMacResolution(true)
+		);
+
+		final long start = System.currentTimeMillis();
+		observer.updateState();
+		final List<DeviceEvent> attachedEvents = observer.getCurrentSnapshot().getDelta();
+		assertTrue(System.currentTimeMillis() - start < macReadMillis);
+
+		assertEquals(DEVICE_COUNT, attachedEvents.size());
+		for (DeviceEvent event : attachedEvents) {
+			assertEquals(DeviceEvent.Type.ATTACHED, event.getType());
+			assertNull(event.getDeviceInfo().getMacAddress());
+		}
+
+		Thread.sleep(macReadMillis + 500);
+		observer.updateState();
+		final List<DeviceEvent> resolvedEvents = observer.getCurrentSnapshot().getDelta();
+
+		assertEquals(DEVICE_COUNT, resolvedEvents.size());
+		for (DeviceEvent event : resolvedEvents) {
+			assertEquals(DeviceEvent.Type.MAC_RESOLVED, event.getType());
+		}
+		assertAllMacAddressesRead(observer);
+		observer.updateState();
+		assertTrue(observer.getCurrentSnapshot().getDelta().isEmpty());
+		verify(deviceMacReader, times(DEVICE_COUNT)).readMac(anyString(), anyString(), any(Map.class), anyString());
+	}
+
+	@Test
+	public void testLazyResolutionWithHotplugTriggerPublishesMacAddressesWithoutWaitingForTheNextScan()
+			throws Exception {
+
+		final ExtendedDeviceObserver observer = createObserver(new DeviceObserverConfig()
+				.setMaxConcurrentMacReads(DEVICE_COUNT)
+				.setMaxConcurrentMacReadsPerDeviceType(DEVICE_COUNT)
+				.setLazyMacResolution(true)
+		);
+
+		final CountDownLatch attached = new CountDownLatch(DEVICE_COUNT);
+		final CountDownLatch resolved = new CountDownLatch(DEVICE_COUNT);
+		observer.addListener(new DeviceObserverListener() {
+			@Override
+			public void deviceEvent(final DeviceEvent event) {
+				if (event.getType() == DeviceEvent.Type.ATTACHED) {
+					attached.countDown();
+				} else if (event.getType() == DeviceEvent.Type.MAC_RESOLVED) {
+					resolved.countDown();
+				}
+			}
+		}
+		);
+
+		// no hotplug events and a safety poll far beyond the test, so only the completed reads can cause a scan
+		final File dev = Files.createTempDir();
+		final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		final DeviceObserverHotplugTrigger trigger = new DeviceObserverHotplugTrigger(
+				observer,
+				scheduler,
+				ImmutableList.of(dev),
+				TimeUnit.HOURS.toMillis(1),
+				DeviceObserverHotplugTrigger.DEFAULT_SETTLE_DELAY_MILLIS
+		);
+
+		try {
+			trigger.start();
+			assertTrue(attached.await(macReadMillis, TimeUnit.MILLISECONDS));
+			assertTrue(resolved.await(macReadMillis + 2000, TimeUnit.MILLISECONDS));
+		} finally {
+			trigger.close();
+			scheduler.shutdownNow();
+			dev.delete();
+		}
+
+		assertAllMacAddressesRead(observer);
+	}
+
+	@Test
+	public void testRestartedObserverUsesMacCacheInsteadOfReadingDevices() throws Exception {
+
+		final File macCacheFile = File.createTempFile("maccache", ".txt");
+		macCacheFile.delete();
+
+		try {
+
+			final ExtendedDeviceObserver observer =
+					createObserver(new DeviceObserverConfig(), new DeviceMacCache(macCacheFile));
+			observer.updateState();
+			assertAllMacAddressesRead(observer);
+			verify(deviceMacReader, times(DEVICE_COUNT)).readMac(anyString(), anyString(), any(Map.class), anyString());
+
+			final DeviceMacCache macCache = new DeviceMacCache(macCacheFile);
+			final ExtendedDeviceObserver restartedObserver = createObserver(new DeviceObserverConfig(), macCache);
+			restartedObserver.updateState();
+			assertAllMacAddressesRead(restartedObserver);
+			verify(deviceMacReader, times(DEVICE_COUNT)).readMac(anyString(), anyString(), any(Map.class), anyString());
+
+			assertEquals(DEVICE_COUNT, macCache.getHitCount());
+			assertEquals(0, macCache.getMissCount());
+
+		} finally {
+			macCacheFile.delete();
+		}
+	}
+
+	private long timeScan(final DeviceObserverConfig config) {
+
+		final ExtendedDeviceObserver observer = createObserver(config);
+
+		final long start = System.currentTimeMillis();
+		observer.updateState();
+		final long duration = System.currentTimeMillis() - start;
+
+		assertAllMacAddressesRead(observer);
+		return duration;
+	}
+
+	private void assertAllMacAddressesRead(final ExtendedDeviceObserver observer) {
+		assertEquals(DEVICE_COUNT, observer.getCurrentState().size());
+		for (DeviceInfo deviceInfo : observer.getCurrentState().values()) {
+			assertEquals(new MacAddress(Long.parseLong(deviceInfo.getReference())), deviceInfo.getMacAddress());
+		}
+	}
+
+	private ExtendedDeviceObserver createObserver(final DeviceObserverConfig config) {
+		return createObserver(config, null);
+	}
+
+	private ExtendedDeviceObserver createObserver(final DeviceObserverConfig config,
+												  @Nullable final DeviceMacCache macCache) {
+		return Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				if (macCache != null) {
+					binder.bind(DeviceMacCache.class).toInstance(macCache);
+				}
+				binder.bind(DeviceObserverConfig.class).toInstance(config);
+				binder.bind(ExecutorService.class).toInstance(executorService);
+				binder.bind(DeviceMacReader.class).toInstance(deviceMacReader);
+				binder.bind(DeviceCsvProvider.class).toInstance(deviceCsvProvider);
+				binder.bind(DeviceInfoCsvParser.class).to(DeviceInfoCsvParserImpl.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				binder.bind(ExtendedDeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		).getInstance(ExtendedDeviceObserver.class);
+	}
+
+	private synchronized void enter(final String type) {
+
+		maxRunning = Math.max(maxRunning, running.incrementAndGet());
+
+		AtomicInteger runningForType = runningPerType.get(type);
+		if (runningForType == null) {
+			runningForType = new AtomicInteger();
+			runningPerType.put(type, runningForType);
+		}
+
+		final Integer maxRunningForType = maxRunningPerType.get(type);
+		final int nowRunningForType = runningForType.incrementAndGet();
+		maxRunningPerType.put(type, maxRunningForType == null ?
+				nowRunningForType :
+				Math.max(maxRunningForType, nowRunningForType)
+		);
+	}
+
+	private synchronized void leave(final String type) {
+		running.decrementAndGet();
+		runningPerType.get(type).decrementAndGet();
+	}
+}
@@ -0,0 +1,214 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Ticker;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeviceObserverMacReadBackoffTest {
+
+	private static final String DEVICE_CSV = "01234,/dev/ttyUSB0,isense";
+
+	private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+	private static final long MAX_BACKOFF_MILLIS = 4000;
+
+	private static final int MAX_ATTEMPTS = 5;
+
+	@Mock
+	private DeviceCsvProvider deviceCsvProvider;
+
+	@Mock
+	private DeviceMacReader deviceMacReader;
+
+	private final FakeTicker ticker = new FakeTicker();
+
+	private ExtendedDeviceObserver deviceObserver;
+
+	@Before
+	public void setUp() throws Exception {
+
+		final DeviceObserverConfig config = new DeviceObserverConfig()
+				.setMacReadInitialBackoffMillis(INITIAL_BACKOFF_MILLIS)
+				.setMacReadMaxBackoffMillis(MAX_BACKOFF_MILLIS)
+				.setMacReadMaxAttempts(MAX_ATTEMPTS);
+
+		deviceObserver = Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				binder.bind(DeviceObserverConfig.class).toInstance(config);
+				binder.bind(Ticker.class).toInstance(ticker);
+				binder.bind(DeviceMacReader.class).toInstance(deviceMacReader);
+				binder.bind(DeviceCsvProvider.class).toInstance(deviceCsvProvider);
+				binder.bind(DeviceInfoCsvParser.class).to(DeviceInfoCsvParserImpl.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				binder.bind(ExtendedDeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		).getInstance(ExtendedDeviceObserver.class);
+
+		when(deviceCsvProvider.getDeviceCsv()).thenReturn(DEVICE_CSV);
+		when(deviceMacReader.readMac(anyString(), anyString(), any(Map.class), anyString()))
+				.thenThrow(new RuntimeException("device busy"));
+	}
+
+	@Test
+	public void testFailedReadIsNotRetriedBeforeBackoffElapsed() throws Exception {
+
+		deviceObserver.updateState();
+		deviceObserver.updateState();
+		deviceObserver.updateState();
+
+		verifyReads(1);
+
+		final MacReadBackoffState state = deviceObserver.getMacReadBackoffStates().get("01234");
+		assertEquals(1, state.getFailedAttempts());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(INITIAL_BACKOFF_MILLIS), state.getNextAttemptNanos());
+		assertFalse(state.isExhausted());
+		assertEquals("device busy", state.getLastFailure().getMessage());
+
+		ticker.advance(INITIAL_BACKOFF_MILLIS - 1);
+		deviceObserver.updateState();
+		verifyReads(1);
+
+		ticker.advance(1);
+		deviceObserver.updateState();
+		verifyReads(2);
+	}
+
+	@Test
+	public void testBackoffGrowsExponentiallyUpToMaximum() throws Exception {
+
+		long expectedBackoffMillis = INITIAL_BACKOFF_MILLIS;
+
+		for (int attempt = 1; attempt < MAX_ATTEMPTS; attempt++) {
+
+			deviceObserver.updateState();
+			verifyReads(attempt);
+
+			final MacReadBackoffState state = deviceObserver.getMacReadBackoffStates().get("01234");
+			assertEquals(attempt, state.getFailedAttempts());
+			assertEquals(ticker.read() + TimeUnit.MILLISECONDS.toNanos(expectedBackoffMillis),
+					state.getNextAttemptNanos()
+			);
+
+			ticker.advance(expectedBackoffMillis);
+			expectedBackoffMillis = Math.min(2 * expectedBackoffMillis, MAX_BACKOFF_MILLIS);
+		}
+	}
+
+	@Test
+	public void testReadsStopWhenRetryBudgetIsExhaustedUntilDeviceIsReattached() throws Exception {
+
+		for (int attempt = 0; attempt < 2 * MAX_ATTEMPTS; attempt++) {
+			deviceObserver.updateState();
+			ticker.advance(MAX_BACKOFF_MILLIS);
+		}
+
+		verifyReads(MAX_ATTEMPTS);
+		assertTrue(deviceObserver.getMacReadBackoffStates().get("01234").isExhausted());
+
+		when(deviceCsvProvider.getDeviceCsv()).thenReturn("");
+		deviceObserver.updateState();
+		assertTrue(deviceObserver.getMacReadBackoffStates().isEmpty());
+
+		when(deviceCsvProvider.getDeviceCsv()).thenReturn(DEVICE_CSV);
+		deviceObserver.updateState();
+		verifyReads(MAX_ATTEMPTS + 1);
+	}
+
+	@Test
+	public void testRequestedReadBypassesBackoff() throws Exception {
+
+		deviceObserver.updateState();
+		deviceObserver.updateState();
+		verifyReads(1);
+
+		deviceObserver.requestMacAddressRead("/dev/ttyUSB0");
+		deviceObserver.updateState();
+		verifyReads(2);
+		assertEquals(2, deviceObserver.getMacReadBackoffStates().get("01234").getFailedAttempts());
+
+		// the request is consumed by the scan
+		deviceObserver.updateState();
+		verifyReads(2);
+	}
+
+	@Test
+	public void testSuccessfulReadClearsBackoffState() throws Exception {
+
+		deviceObserver.updateState();
+		assertEquals(1, deviceObserver.getMacReadBackoffStates().size());
+
+		final MacAddress macAddress = new MacAddress(0x1234);
+		reset(deviceMacReader);
+		when(deviceMacReader.readMac(anyString(), anyString(), any(Map.class), anyString())).thenReturn(macAddress);
+
+		ticker.advance(INITIAL_BACKOFF_MILLIS);
+		deviceObserver.updateState();
+
+		assertEquals(macAddress, deviceObserver.getCurrentState().get("/dev/ttyUSB0").getMacAddress());
+		assertTrue(deviceObserver.getMacReadBackoffStates().isEmpty());
+	}
+
+	@Test
+	public void testMissingMacAddressCountsAsFailure() throws Exception {
+
+		reset(deviceMacReader);
+		deviceObserver.updateState();
+
+		final MacReadBackoffState state = deviceObserver.getMacReadBackoffStates().get("01234");
+		assertEquals(1, state.getFailedAttempts());
+		assertNull(state.getLastFailure());
+	}
+
+	private void verifyReads(final int times) throws Exception {
+		verify(deviceMacReader, times(times)).readMac(anyString(), anyString(), any(Map.class), anyString());
+	}
+
+}
@@ -0,0 +1,296 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.Delimiters;
+import org.jboss.netty.handler.codec.string.StringDecoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DeviceObserverServerTest {
+
+	private static final int CLIENT_COUNT = 500;
+
+	private static final String DEVICE1_CSV = "01234,/dev/ttyUSB0,isense";
+
+	private static final String DEVICE2_CSV = "12345,/dev/ttyUSB1,telosb";
+
+	private static final String DEVICE3_CSV = "23456,/dev/ttyUSB2,pacemate";
+
+	private DeviceCsvProvider csvProvider;
+
+	private ExtendedDeviceObserver deviceObserver;
+
+	private DeviceObserverServer server;
+
+	private ClientBootstrap clientBootstrap;
+
+	private final List<TestClient> clients = newArrayList();
+
+	@Before
+	public void setUp() throws Exception {
+
+		csvProvider = mock(DeviceCsvProvider.class);
+
+		deviceObserver = Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				binder.bind(DeviceMacReader.class).toInstance(mock(DeviceMacReader.class));
+				binder.bind(DeviceCsvProvider.class).toInstance(csvProvider);
+				binder.bind(DeviceInfoCsvParser.class).to(StreamingDeviceInfoCsvParser.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				binder.bind(ExtendedDeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		).getInstance(ExtendedDeviceObserver.class);
+
+		server = new DeviceObserverServer(deviceObserver, new InetSocketAddress("127.0.0.1", 0)).start();
+
+		clientBootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(
+				Executors.newCachedThreadPool(),
+				Executors.newCachedThreadPool()
+		)
+		);
+
+		scan(DEVICE1_CSV, DEVICE2_CSV);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (TestClient client : clients) {
+			client.channel.close().awaitUninterruptibly();
+		}
+		server.close();
+		clientBootstrap.releaseExternalResources();
+	}
+
+	@Test
+	public void testClientsReceiveSnapshotAndDeltas() throws Exception {
+
+		connectClients(CLIENT_COUNT);
+		awaitClientsInSync();
+		assertEquals(CLIENT_COUNT, server.getClientCount());
+
+		for (TestClient client : clients) {
+			assertEquals(1, client.snapshotCount);
+		}
+
+		scan(DEVICE2_CSV, DEVICE3_CSV);
+		scan(DEVICE3_CSV);
+
+		awaitClientsInSync();
+
+		for (TestClient client : clients) {
+			assertEquals(1, client.snapshotCount);
+			assertEquals(3, client.eventCount);
+		}
+	}
+
+	@Test
+	public void testLateClientReceivesCurrentState() throws Exception {
+
+		connectClients(1);
+		awaitClientsInSync();
+
+		scan(DEVICE3_CSV);
+		connectClients(1);
+		awaitClientsInSync();
+
+		assertEquals(3, clients.get(0).eventCount);
+		assertEquals(0, clients.get(1).eventCount);
+		assertEquals(clients.get(0).lastSequence, clients.get(1).lastSequence);
+	}
+
+	@Test
+	public void testDisconnectedClientsAreForgotten() throws Exception {
+
+		connectClients(10);
+		awaitClientsInSync();
+
+		for (TestClient client : clients.subList(0, 5)) {
+			client.channel.close().awaitUninterruptibly();
+		}
+
+		for (int i = 0; i < 100 && server.getClientCount() > 5; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(5, server.getClientCount());
+
+		scan(DEVICE3_CSV);
+		clients.subList(0, 5).clear();
+		awaitClientsInSync();
+	}
+
+	private void scan(final String... csvRows) {
+		when(csvProvider.getDeviceCsv()).thenReturn(Joiner.on('\n').join(csvRows));
+		deviceObserver.run();
+	}
+
+	private void connectClients(final int count) {
+
+		clientBootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				return Channels.pipeline(
+						new DelimiterBasedFrameDecoder(1024, Delimiters.lineDelimiter()),
+						new StringDecoder(Charsets.UTF_8),
+						new TestClient()
+				);
+			}
+		}
+		);
+
+		final List<ChannelFuture> connectFutures = newArrayList();
+		for (int i = 0; i < count; i++) {
+			connectFutures.add(clientBootstrap.connect(server.getLocalAddress()));
+		}
+
+		for (ChannelFuture connectFuture : connectFutures) {
+			assertTrue(connectFuture.awaitUninterruptibly().isSuccess());
+			final TestClient client = connectFuture.getChannel().getPipeline().get(TestClient.class);
+			client.channel = connectFuture.getChannel();
+			clients.add(client);
+		}
+	}
+
+	/**
+	 * Waits until all clients know the current state of the observer.
+	 */
+	private void awaitClientsInSync() throws Exception {
+
+		final DeviceEventPage current = deviceObserver.getEventsSince(-1);
+		final Map<String, String> expectedState = toLines(current.getResyncState());
+
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+		for (TestClient client : clients) {
+			while (client.lastSequence != current.getLastSequence() && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(current.getLastSequence(), client.lastSequence);
+			assertEquals(expectedState, client.state);
+		}
+	}
+
+	private static Map<String, String> toLines(final ImmutableMap<String, DeviceInfo> state) {
+		final Map<String, String> lines = new ConcurrentHashMap<String, String>();
+		for (DeviceInfo deviceInfo : state.values()) {
+			lines.put(deviceInfo.getPort(), deviceInfo.getReference() + "," + deviceInfo.getPort() + "," +
+					deviceInfo.getType() + ","
+			);
+		}
+		return lines;
+	}
+
+	/**
+	 * Applies the lines received from the server to its copy of the device state.
+	 */
+	private static class TestClient extends SimpleChannelUpstreamHandler {
+
+		private final Map<String, String> state = new ConcurrentHashMap<String, String>();
+
+		private volatile Channel channel;
+
+		private volatile long lastSequence = -1;
+
+		private volatile int snapshotCount;
+
+		private volatile int eventCount;
+
+		private int pendingSnapshotLines;
+
+		private long snapshotSequence;
+
+		@Override
+		public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent e) throws Exception {
+
+			final String line = (String) e.getMessage();
+
+			if (pendingSnapshotLines > 0) {
+				state.put(line.split(",")[1], line);
+				if (--pendingSnapshotLines == 0) {
+					lastSequence = snapshotSequence;
+				}
+				return;
+			}
+
+			final String[] fields = line.split(" ");
+
+			if ("SNAPSHOT".equals(fields[0])) {
+				state.clear();
+				snapshotCount++;
+				snapshotSequence = Long.parseLong(fields[1]);
+				pendingSnapshotLines = Integer.parseInt(fields[2]);
+				if (pendingSnapshotLines == 0) {
+					lastSequence = snapshotSequence;
+				}
+				return;
+			}
+
+			final long sequence = Long.parseLong(fields[0]);
+			assertEquals(lastSequence + 1, sequence);
+
+			final String port = fields[2].split(",")[1];
+			if (DeviceEvent.Type.REMOVED.name().equals(fields[1])) {
+				state.remove(port);
+			} else {
+				state.put(port, fields[2]);
+			}
+
+			eventCount++;
+			lastSequence = sequence;
+		}
+	}
+}
@@ -45,13 +45,14 @@ import java.util.List;
 
 import static com.google.common.collect.Sets.newHashSet;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
 public class DeviceObserverTest {
 
-	private DeviceObserver deviceObserver;
+	private ExtendedDeviceObserver deviceObserver;
 
 	@Mock
 	private DeviceCsvProvider deviceCsvProvider;
@@ -111,12 +112,12 @@ public class DeviceObserverTest {
 				binder.bind(DeviceMacReader.class).toInstance(deviceMacReader);
 				binder.bind(DeviceCsvProvider.class).toInstance(deviceCsvProvider);
 				binder.bind(DeviceInfoCsvParser.class).to(DeviceInfoCsvParserImpl.class);
-				binder.bind(DeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
-				binder.bind(DeviceObserver.class).to(DeviceObserverImpl.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				binder.bind(ExtendedDeviceObserver.class).to(DeviceObserverImpl.class);
 			}
 		}
 		);
-		deviceObserver = injector.getInstance(DeviceObserver.class);
+		deviceObserver = injector.getInstance(ExtendedDeviceObserver.class);
 	}
 
 	@Test
@@ -326,6 +327,117 @@ public class DeviceObserverTest {
 		assertEquals(argumentCaptor2.getValue(), device1AttachedEvent);
 	}
 
+	@Test
+	public void testEveryScanProducesSnapshotWithDeltaToPreviousScan() throws Exception {
+
+		assertEquals(DeviceStateSnapshot.INITIAL, deviceObserver.getCurrentSnapshot());
+
+		setObserverStateForCsvRows(device1Csv, device2Csv);
+		assertEquals(1, deviceObserver.getCurrentSnapshot().getVersion());
+		assertEqualEvents(deviceObserver.getCurrentSnapshot().getDelta(), device1AttachedEvent, device2AttachedEvent);
+
+		setObserverStateForCsvRows(device2Csv, device3Csv);
+		assertEquals(2, deviceObserver.getCurrentSnapshot().getVersion());
+		assertEquals(deviceObserver.getCurrentState(), deviceObserver.getCurrentSnapshot().getState());
+		assertEqualEvents(deviceObserver.getCurrentSnapshot().getDelta(), device3AttachedEvent, device1RemovedEvent);
+
+		setObserverStateForCsvRows(device2Csv, device3Csv);
+		assertEquals(3, deviceObserver.getCurrentSnapshot().getVersion());
+		assertTrue(deviceObserver.getCurrentSnapshot().getDelta().isEmpty());
+	}
+
+	@Test
+	public void testUpToDateListenersShareTheDeltaOfTheScan() throws Exception {
+
+		deviceObserver.addListener(deviceObserverListener);
+		deviceObserver.addListener(deviceObserverListener2);
+
+		setCsvProviderState(device1Csv);
+		deviceObserver.run();
+		setCsvProviderState(device1Csv, device2Csv);
+		deviceObserver.run();
+
+		ArgumentCaptor<DeviceEvent> argumentCaptor = ArgumentCaptor.forClass(DeviceEvent.class);
+		verify(deviceObserverListener, times(2)).deviceEvent(argumentCaptor.capture());
+		ArgumentCaptor<DeviceEvent> argumentCaptor2 = ArgumentCaptor.forClass(DeviceEvent.class);
+		verify(deviceObserverListener2, times(2)).deviceEvent(argumentCaptor2.capture());
+
+		assertEquals(ImmutableList.of(device1AttachedEvent, device2AttachedEvent), argumentCaptor.getAllValues());
+		assertSame(argumentCaptor.getAllValues().get(1), argumentCaptor2.getAllValues().get(1));
+		assertSame(deviceObserver.getCurrentSnapshot().getDelta().get(0), argumentCaptor.getAllValues().get(1));
+	}
+
+	@Test
+	public void testListenerThatMissedScansGetsCatchUpDiff() throws Exception {
+
+		deviceObserver.addListener(deviceObserverListener);
+
+		setCsvProviderState(device1Csv);
+		deviceObserver.run();
+
+		// scans without notifying listeners
+		setObserverStateForCsvRows(device1Csv, device2Csv);
+		setObserverStateForCsvRows(device2Csv, device3Csv);
+
+		deviceObserver.run();
+
+		ArgumentCaptor<DeviceEvent> argumentCaptor = ArgumentCaptor.forClass(DeviceEvent.class);
+		verify(deviceObserverListener, times(4)).deviceEvent(argumentCaptor.capture());
+		assertEqualEvents(argumentCaptor.getAllValues().subList(1, 4),
+				device2AttachedEvent, device3AttachedEvent, device1RemovedEvent
+		);
+	}
+
+	@Test
+	public void testUnchangedDevicesAreReusedAcrossScans() throws Exception {
+
+		setObserverStateForCsvRows(device1Csv, device2Csv);
+		final ImmutableMap<String, DeviceInfo> lastState = deviceObserver.getCurrentState();
+
+		setObserverStateForCsvRows(device1Csv, device2Csv);
+		assertSame(lastState, deviceObserver.getCurrentState());
+
+		setObserverStateForCsvRows(device1Csv, "99999,/dev/ttyUSB1,telosb", device3Csv);
+		final ImmutableMap<String, DeviceInfo> currentState = deviceObserver.getCurrentState();
+		assertSame(lastState.get("/dev/ttyUSB0"), currentState.get("/dev/ttyUSB0"));
+		assertEquals("99999", currentState.get("/dev/ttyUSB1").getReference());
+		assertEquals(device3Info, currentState.get("/dev/ttyUSB2"));
+	}
+
+	@Test
+	public void testMacAddressIsReadAgainIfDeviceAtPortChanged() throws Exception {
+
+		when(deviceMacReader.readMac("/dev/ttyUSB0", "isense", null, "01234")).thenReturn(device1MacAddress);
+		setObserverStateForCsvRows(device1Csv);
+		final DeviceInfo device1WithMac = deviceObserver.getCurrentState().get("/dev/ttyUSB0");
+		assertEquals(device1MacAddress, device1WithMac.getMacAddress());
+
+		setObserverStateForCsvRows(device1Csv);
+		assertSame(device1WithMac, deviceObserver.getCurrentState().get("/dev/ttyUSB0"));
+
+		setObserverStateForCsvRows("56789,/dev/ttyUSB0,isense");
+		assertEquals(null, deviceObserver.getCurrentState().get("/dev/ttyUSB0").getMacAddress());
+		verify(deviceMacReader, times(1)).readMac("/dev/ttyUSB0", "isense", null, "01234");
+		verify(deviceMacReader, times(1)).readMac("/dev/ttyUSB0", "isense", null, "56789");
+	}
+
+	@Test
+	public void testStatelessConsumerCatchesUpWithEventsSinceSequence() throws Exception {
+
+		final DeviceEventPage initialPage = deviceObserver.getEventsSince(0);
+		assertTrue(initialPage.getEvents().isEmpty());
+
+		setObserverStateForCsvRows(device1Csv, device2Csv);
+		final DeviceEventPage page = deviceObserver.getEventsSince(initialPage.getLastSequence());
+		assertEqualEvents(page.getEvents(), device1AttachedEvent, device2AttachedEvent);
+
+		setObserverStateForCsvRows(device2Csv);
+		setObserverStateForCsvRows(device2Csv, device3Csv);
+		assertEquals(ImmutableList.of(device1RemovedEvent, device3AttachedEvent),
+				deviceObserver.getEventsSince(page.getLastSequence()).getEvents()
+		);
+	}
+
 	private ImmutableList<DeviceEvent> getObserverEventsForCsvRows(
 			@Nullable final ImmutableMap<String, DeviceInfo> lastState,
 			final String... csvRows) {
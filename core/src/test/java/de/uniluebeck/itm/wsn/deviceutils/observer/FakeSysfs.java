@@ -0,0 +1,131 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Builds a minimal fake sysfs and {@code /dev} tree in a temporary directory that can be scanned by both the
+ * {@code devicelist-linux} script and {@link SysfsDeviceCsvProvider}.
+ */
+class FakeSysfs {
+
+	private final File root;
+
+	private final File usbDriverDirectory;
+
+	FakeSysfs() {
+		root = Files.createTempDir();
+		usbDriverDirectory = new File(root, "sys/bus/usb/drivers/usb");
+		if (!usbDriverDirectory.mkdirs() || !new File(root, "dev").mkdirs()) {
+			throw new RuntimeException("Could not create fake sysfs tree in " + root);
+		}
+	}
+
+	File getRoot() {
+		return root;
+	}
+
+	FakeSysfs addUsbSerialDevice(final int bus, final int devNum, final String vendor, final String product,
+								 final String productName, final String serial) throws IOException {
+		addDevice(bus, devNum, vendor, product, productName, serial, "ttyUSB" + devNum);
+		Files.touch(new File(root, "dev/ttyUSB" + devNum));
+		return this;
+	}
+
+	/**
+	 * Adds a device whose driver groups its tty in a {@code tty} subdirectory of the interface, as cdc_acm does.
+	 */
+	FakeSysfs addUsbSerialDeviceWithTtyDirectory(final int bus, final int devNum, final String vendor,
+												 final String product, final String productName, final String serial)
+			throws IOException {
+		addDevice(bus, devNum, vendor, product, productName, serial, "tty/ttyACM" + devNum);
+		Files.touch(new File(root, "dev/ttyACM" + devNum));
+		return this;
+	}
+
+	private void addDevice(final int bus, final int devNum, final String vendor, final String product,
+						   final String productName, final String serial, final String ttyPath) throws IOException {
+
+		final String sysDev = bus + "-" + devNum;
+		final File device = new File(usbDriverDirectory, sysDev);
+		final File tty = new File(device, sysDev + ":1.0/" + ttyPath);
+
+		if (!tty.mkdirs()) {
+			throw new IOException("Could not create " + tty);
+		}
+
+		write(device, "idVendor", vendor);
+		write(device, "idProduct", product);
+		write(device, "product", productName);
+		write(device, "manufacturer", "FTDI");
+		write(device, "serial", serial);
+		write(device, "devnum", Integer.toString(devNum));
+		write(device, "busnum", Integer.toString(bus));
+	}
+
+	FakeSysfs addUsbDevice(final int bus, final int devNum, final String vendor, final String product)
+			throws IOException {
+
+		final File device = new File(usbDriverDirectory, bus + "-" + devNum);
+
+		if (!device.mkdirs()) {
+			throw new IOException("Could not create " + device);
+		}
+
+		write(device, "idVendor", vendor);
+		write(device, "idProduct", product);
+
+		return this;
+	}
+
+	void removeUsbSerialDevice(final int bus, final int devNum) throws IOException {
+		deleteRecursively(new File(usbDriverDirectory, bus + "-" + devNum));
+		deleteRecursively(new File(root, "dev/ttyUSB" + devNum));
+	}
+
+	void delete() throws IOException {
+		deleteRecursively(root);
+	}
+
+	private static void write(final File directory, final String attribute, final String value) throws IOException {
+		Files.write(value + "\n", new File(directory, attribute), Charsets.UTF_8);
+	}
+
+	private static void deleteRecursively(final File file) throws IOException {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Could not delete " + file);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NdjsonDeviceEventWriterTest {
+
+	private static final DeviceInfo DEVICE_INFO = new DeviceInfo("isense", "/dev/ttyUSB0", "01234", null);
+
+	private static final DeviceEvent ATTACHED_EVENT = new DeviceEvent(DeviceEvent.Type.ATTACHED, DEVICE_INFO);
+
+	private static final DeviceEvent MAC_RESOLVED_EVENT = new DeviceEvent(
+			DeviceEvent.Type.MAC_RESOLVED,
+			DEVICE_INFO.withMacAddress(new MacAddress(0x1234))
+	);
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("events", ".ndjson");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (int i = 0; i <= 2; i++) {
+			new File(file.getPath() + (i == 0 ? "" : "." + i)).delete();
+		}
+	}
+
+	@Test
+	public void testEventsAreWrittenAsJsonLines() throws Exception {
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final NdjsonDeviceEventWriter writer = new NdjsonDeviceEventWriter(out);
+
+		writer.deviceEvent(ATTACHED_EVENT);
+		writer.deviceEvent(MAC_RESOLVED_EVENT);
+		writer.flush();
+
+		final String[] lines = new String(out.toByteArray(), Charsets.UTF_8).split("\n");
+		assertEquals(2, lines.length);
+
+		assertTrue(lines[0].matches("\\{\"time\":\\d+,\"type\":\"ATTACHED\",\"port\":\"/dev/ttyUSB0\"," +
+				"\"reference\":\"01234\",\"deviceType\":\"isense\",\"mac\":null}"
+		)
+		);
+		assertTrue(lines[1].contains("\"type\":\"MAC_RESOLVED\""));
+		assertTrue(lines[1].contains("\"mac\":\"" + new MacAddress(0x1234).toHexString() + "\""));
+	}
+
+	@Test
+	public void testEventsAreBufferedUntilFlushed() throws Exception {
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final NdjsonDeviceEventWriter writer = new NdjsonDeviceEventWriter(out);
+
+		writer.deviceEvent(ATTACHED_EVENT);
+		assertEquals(0, out.size());
+
+		writer.flush();
+		assertTrue(out.size() > 0);
+	}
+
+	@Test
+	public void testStringsAreEscaped() throws Exception {
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final NdjsonDeviceEventWriter writer = new NdjsonDeviceEventWriter(out);
+
+		writer.deviceEvent(new DeviceEvent(
+				DeviceEvent.Type.REMOVED,
+				new DeviceInfo("isense", "/dev/\"tty\"\\\u00fc", null, null)
+		)
+		);
+		writer.flush();
+
+		final String line = new String(out.toByteArray(), Charsets.UTF_8);
+		assertTrue(line.contains("\"port\":\"/dev/\\\"tty\\\"\\\\\\u00fc\""));
+		assertTrue(line.contains("\"reference\":null"));
+	}
+
+	@Test
+	public void testFileIsRotatedBeforeExceedingMaximumSize() throws Exception {
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final NdjsonDeviceEventWriter streamWriter = new NdjsonDeviceEventWriter(out);
+		streamWriter.deviceEvent(ATTACHED_EVENT);
+		streamWriter.flush();
+		final int lineLength = out.size();
+
+		final NdjsonDeviceEventWriter writer = new NdjsonDeviceEventWriter(file, 2 * lineLength + 10, 1);
+		for (int i = 0; i < 7; i++) {
+			writer.deviceEvent(ATTACHED_EVENT);
+		}
+		writer.close();
+
+		final List<String> currentLines = Files.readLines(file, Charsets.UTF_8);
+		final List<String> backupLines = Files.readLines(new File(file.getPath() + ".1"), Charsets.UTF_8);
+
+		assertEquals(1, currentLines.size());
+		assertEquals(2, backupLines.size());
+		assertFalse(new File(file.getPath() + ".2").exists());
+
+		for (String line : backupLines) {
+			assertTrue(line.endsWith("}"));
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import org.apache.commons.lang.SystemUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class ResidentDeviceCsvProviderTest {
+
+	private FakeSysfs sysfs;
+
+	private ResidentDeviceCsvProvider provider;
+
+	@Before
+	public void setUp() throws Exception {
+
+		assumeTrue(SystemUtils.IS_OS_LINUX && new File("/usr/bin/perl").exists());
+
+		sysfs = new FakeSysfs()
+				.addUsbSerialDevice(1, 0, "0403", "6001", "USB <-> Serial", "I0")
+				.addUsbSerialDevice(1, 1, "0403", "6001", "Pacemate", "P1");
+
+		provider = new ResidentDeviceCsvProvider(
+				DeviceCsvProviderImpl.SCRIPT_LINUX, "-root", sysfs.getRoot().getAbsolutePath()
+		);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (provider != null) {
+			provider.close();
+		}
+		if (sysfs != null) {
+			sysfs.delete();
+		}
+	}
+
+	@Test
+	public void testSubsequentScansReuseTheHelperAndSeeChanges() throws Exception {
+
+		final String expected = "I0,/dev/ttyUSB0,isense\nP1,/dev/ttyUSB1,pacemate\n";
+
+		assertEquals(expected, provider.getDeviceCsv());
+		assertEquals(expected, provider.getDeviceCsv());
+
+		sysfs.removeUsbSerialDevice(1, 0);
+		assertEquals("P1,/dev/ttyUSB1,pacemate\n", provider.getDeviceCsv());
+
+		sysfs.removeUsbSerialDevice(1, 1);
+		assertEquals("", provider.getDeviceCsv());
+
+		assertEquals(1, provider.getHelperStartCount());
+	}
+
+	@Test
+	public void testOutputIsIdenticalToForkingProvider() throws Exception {
+		assertEquals(
+				new DeviceCsvProviderImpl().getCsv(
+						DeviceCsvProviderImpl.SCRIPT_LINUX, "-root", sysfs.getRoot().getAbsolutePath()
+				),
+				provider.getDeviceCsv()
+		);
+	}
+
+	@Test
+	public void testDeadHelperIsRestarted() throws Exception {
+
+		provider.getDeviceCsv();
+		assertEquals(1, provider.getHelperStartCount());
+
+		final Process helper = provider.getHelperProcess();
+		helper.destroy();
+		helper.waitFor();
+
+		assertEquals("I0,/dev/ttyUSB0,isense\nP1,/dev/ttyUSB1,pacemate\n", provider.getDeviceCsv());
+		assertEquals(2, provider.getHelperStartCount());
+	}
+}
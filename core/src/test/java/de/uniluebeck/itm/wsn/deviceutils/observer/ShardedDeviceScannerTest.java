@@ -0,0 +1,114 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableMap;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ShardedDeviceScannerTest {
+
+	private FakeSysfs sysfs;
+
+	private SysfsDeviceCsvProvider csvProvider;
+
+	private ExecutorService executorService;
+
+	private ShardedDeviceScanner scanner;
+
+	@Before
+	public void setUp() throws Exception {
+
+		sysfs = new FakeSysfs();
+		for (int i = 0; i < 12; i++) {
+			sysfs.addUsbSerialDevice(1 + i % 3, i, "0403", "6001", "USB <-> Serial", "ISENSE" + i);
+		}
+
+		csvProvider = new SysfsDeviceCsvProvider(sysfs.getRoot());
+		executorService = Executors.newCachedThreadPool();
+		scanner = new ShardedDeviceScanner(csvProvider, new StreamingDeviceInfoCsvParser(), executorService);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executorService.shutdownNow();
+		sysfs.delete();
+	}
+
+	@Test
+	public void testStateIsIdenticalToMonolithicScan() throws Exception {
+		assertEquals(
+				new StreamingDeviceInfoCsvParser().parseCsv(csvProvider.getDeviceCsv()),
+				scanner.scan(ImmutableMap.<String, DeviceInfo>of())
+		);
+		assertEquals(3, scanner.getParsedShardCount());
+	}
+
+	@Test
+	public void testOnlyChangedShardIsParsedAgain() throws Exception {
+
+		final ImmutableMap<String, DeviceInfo> firstState =
+				ImmutableMap.copyOf(scanner.scan(ImmutableMap.<String, DeviceInfo>of()));
+
+		sysfs.removeUsbSerialDevice(2, 1);
+		final Map<String, DeviceInfo> secondState = scanner.scan(firstState);
+
+		assertEquals(11, secondState.size());
+		assertEquals(4, scanner.getParsedShardCount());
+		assertEquals(2, scanner.getSkippedShardCount());
+
+		for (Map.Entry<String, DeviceInfo> entry : secondState.entrySet()) {
+			assertSame(firstState.get(entry.getKey()), entry.getValue());
+		}
+	}
+
+	@Test
+	public void testDevicesOfUnchangedShardsKeepTheirMacAddress() throws Exception {
+
+		final Map<String, DeviceInfo> enrichedState = scanner.scan(ImmutableMap.<String, DeviceInfo>of());
+		for (Map.Entry<String, DeviceInfo> entry : enrichedState.entrySet()) {
+			final long reference = Long.parseLong(entry.getValue().getReference().substring("ISENSE".length()));
+			entry.setValue(entry.getValue().withMacAddress(new MacAddress(reference)));
+		}
+
+		final ImmutableMap<String, DeviceInfo> firstState = ImmutableMap.copyOf(enrichedState);
+		final Map<String, DeviceInfo> secondState = scanner.scan(firstState);
+
+		assertEquals(3, scanner.getParsedShardCount());
+		assertEquals(3, scanner.getSkippedShardCount());
+		assertEquals(firstState, secondState);
+		for (Map.Entry<String, DeviceInfo> entry : secondState.entrySet()) {
+			assertSame(firstState.get(entry.getKey()), entry.getValue());
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.inject.Binder;
+import com.google.inject.Guice;
+import com.google.inject.Module;
+import de.uniluebeck.itm.wsn.deviceutils.macreader.DeviceMacReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares scanning a fake sysfs tree resembling a host with 8 USB buses and 400 serial ports at once with scanning it
+ * bus by bus (see {@link DeviceObserverConfig#isShardedScanning()}), both while nothing changes and while a device on
+ * one bus is attached and removed on every scan. Not part of the regular test run, execute manually.
+ */
+public class ShardedScanBenchmark {
+
+	private static final int BUS_COUNT = 8;
+
+	private static final int DEVICES_PER_BUS = 50;
+
+	private static final int WARMUP_ITERATIONS = 50;
+
+	private static final int ITERATIONS = 200;
+
+	private FakeSysfs sysfs;
+
+	private ExecutorService executorService;
+
+	private int nextDevNum = BUS_COUNT * DEVICES_PER_BUS;
+
+	@Before
+	public void setUp() throws Exception {
+		sysfs = new FakeSysfs();
+		for (int i = 0; i < BUS_COUNT * DEVICES_PER_BUS; i++) {
+			sysfs.addUsbSerialDevice(1 + i % BUS_COUNT, i, "0403", "6001", "USB <-> Serial", "ISENSE" + i);
+		}
+		executorService = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		executorService.shutdownNow();
+		sysfs.delete();
+	}
+
+	@Test
+	public void benchmarkMonolithicVersusShardedScan() throws Exception {
+
+		final DeviceObserver monolithicObserver = createObserver(false);
+		final DeviceObserver shardedObserver = createObserver(true);
+
+		monolithicObserver.updateState(false);
+		shardedObserver.updateState(false);
+		assertEquals(BUS_COUNT * DEVICES_PER_BUS, shardedObserver.getCurrentState().size());
+		assertEquals(monolithicObserver.getCurrentState(), shardedObserver.getCurrentState());
+
+		final double monolithicIdleMillis = timeScans(monolithicObserver, false);
+		final double shardedIdleMillis = timeScans(shardedObserver, false);
+		final double monolithicChangingMillis = timeScans(monolithicObserver, true);
+		final double shardedChangingMillis = timeScans(shardedObserver, true);
+
+		System.out.println(String.format("%d buses with %d devices each: nothing changed: monolithic %.2f ms/scan, " +
+				"sharded %.2f ms/scan; one bus changed: monolithic %.2f ms/scan, sharded %.2f ms/scan",
+				BUS_COUNT, DEVICES_PER_BUS, monolithicIdleMillis, shardedIdleMillis, monolithicChangingMillis,
+				shardedChangingMillis
+		));
+	}
+
+	private double timeScans(final DeviceObserver observer, final boolean changing) throws Exception {
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			scan(observer, changing);
+		}
+
+		final long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			scan(observer, changing);
+		}
+		return (System.nanoTime() - start) / 1e6 / ITERATIONS;
+	}
+
+	private void scan(final DeviceObserver observer, final boolean changing) throws Exception {
+
+		if (changing) {
+			// a device is attached to bus 1 on every scan and removed on the next, with a new device number every time
+			// just like the kernel enumerates devices
+			if (nextDevNum > BUS_COUNT * DEVICES_PER_BUS) {
+				sysfs.removeUsbSerialDevice(1, nextDevNum - 1);
+			}
+			sysfs.addUsbSerialDevice(1, nextDevNum, "0403", "6001", "USB <-> Serial", "ISENSE" + nextDevNum);
+			nextDevNum++;
+		}
+
+		observer.updateState(false);
+	}
+
+	private DeviceObserver createObserver(final boolean sharded) {
+
+		final DeviceObserverConfig config = new DeviceObserverConfig().setShardedScanning(sharded);
+
+		return Guice.createInjector(new Module() {
+			@Override
+			public void configure(final Binder binder) {
+				binder.bind(DeviceObserverConfig.class).toInstance(config);
+				binder.bind(ExecutorService.class).toInstance(executorService);
+				binder.bind(DeviceMacReader.class).toInstance(mock(DeviceMacReader.class));
+				binder.bind(DeviceCsvProvider.class).toInstance(new SysfsDeviceCsvProvider(sysfs.getRoot()));
+				binder.bind(DeviceInfoCsvParser.class).to(StreamingDeviceInfoCsvParser.class);
+				binder.bind(ExtendedDeviceObserverListenerManager.class).to(DeviceObserverListenerManagerImpl.class);
+				binder.bind(DeviceObserver.class).to(DeviceObserverImpl.class);
+			}
+		}
+		).getInstance(DeviceObserver.class);
+	}
+}
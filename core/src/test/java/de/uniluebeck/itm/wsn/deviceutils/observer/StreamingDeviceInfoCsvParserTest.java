@@ -0,0 +1,150 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import de.uniluebeck.itm.wsn.drivers.core.MacAddress;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingDeviceInfoCsvParserTest {
+
+	private static final String CSV = "01234,/dev/ttyUSB0,isense\n" +
+			" 12345 , /dev/ttyUSB1 , telosb \r\n" +
+			"\n" +
+			",/dev/ttyUSB2,pacemate\n" +
+			"34567,/dev/ttyUSB3,isense";
+
+	private final StreamingDeviceInfoCsvParser parser = new StreamingDeviceInfoCsvParser();
+
+	@Test
+	public void testParsesSameDevicesAsSplittingParser() throws Exception {
+		assertEquals(new DeviceInfoCsvParserImpl().parseCsv(CSV), parser.parseCsv(CSV));
+		assertEquals(0, parser.getMalformedRowCount());
+	}
+
+	@Test
+	public void testParsesEmptyInput() throws Exception {
+		assertTrue(parser.parseCsv("").isEmpty());
+		assertTrue(parser.parseCsv("\n \n").isEmpty());
+		assertEquals(0, parser.getMalformedRowCount());
+	}
+
+	@Test
+	public void testSkipsAndCountsMalformedRows() throws Exception {
+
+		final Map<String, DeviceInfo> devices = parser.parseCsv("01234,/dev/ttyUSB0,isense\n" +
+				"garbage\n" +
+				"12345,/dev/ttyUSB1\n" +
+				"23456,/dev/ttyUSB2,pacemate,extra\n" +
+				"34567,,isense\n" +
+				"45678,/dev/ttyUSB4,telosb"
+		);
+
+		assertEquals(ImmutableMap.of(
+				"/dev/ttyUSB0", new DeviceInfo("isense", "/dev/ttyUSB0", "01234", null),
+				"/dev/ttyUSB4", new DeviceInfo("telosb", "/dev/ttyUSB4", "45678", null)
+		), devices
+		);
+		assertEquals(4, parser.getMalformedRowCount());
+
+		parser.parseCsv("garbage");
+		assertEquals(5, parser.getMalformedRowCount());
+	}
+
+	@Test
+	public void testParsesRowsSplitAcrossReads() throws Exception {
+		assertEquals(new DeviceInfoCsvParserImpl().parseCsv(CSV), parser.parseCsv(new OneCharAtATimeReader(CSV), null));
+	}
+
+	@Test
+	public void testParsesRowsLongerThanBuffer() throws Exception {
+
+		final String reference = Strings.repeat("0123456789", 2000);
+		final String csv = "01234,/dev/ttyUSB0,isense\n" + reference + ",/dev/ttyUSB1,telosb\n";
+
+		final Map<String, DeviceInfo> devices = parser.parseCsv(csv);
+
+		assertEquals(2, devices.size());
+		assertEquals(reference, devices.get("/dev/ttyUSB1").getReference());
+	}
+
+	@Test
+	public void testReusesInstancesOfUnchangedDevices() throws Exception {
+
+		final Map<String, DeviceInfo> lastState = parser.parseCsv(CSV);
+		final DeviceInfo device1WithMac = lastState.get("/dev/ttyUSB0").withMacAddress(new MacAddress(1));
+		lastState.put("/dev/ttyUSB0", device1WithMac);
+
+		final Map<String, DeviceInfo> newState = parser.parseCsv(CSV.replace("34567", "45678"), lastState);
+
+		assertEquals(lastState.keySet(), newState.keySet());
+		assertSame(device1WithMac, newState.get("/dev/ttyUSB0"));
+		assertSame(lastState.get("/dev/ttyUSB1"), newState.get("/dev/ttyUSB1"));
+		assertNotSame(lastState.get("/dev/ttyUSB3"), newState.get("/dev/ttyUSB3"));
+		assertEquals("45678", newState.get("/dev/ttyUSB3").getReference());
+	}
+
+	@Test
+	public void testInstancesAreReusedForParsersThatDoNotReuseThemThemselves() throws Exception {
+
+		final DeviceInfoCsvParser plainParser = new DeviceInfoCsvParserImpl();
+		final Map<String, DeviceInfo> lastState = plainParser.parseCsv(CSV);
+
+		final Map<String, DeviceInfo> newState =
+				DeviceInfoCsvParsers.parseCsv(plainParser, CSV.replace("34567", "45678"), lastState);
+
+		assertSame(lastState.get("/dev/ttyUSB1"), newState.get("/dev/ttyUSB1"));
+		assertNotSame(lastState.get("/dev/ttyUSB3"), newState.get("/dev/ttyUSB3"));
+	}
+
+	private static class OneCharAtATimeReader extends Reader {
+
+		private final StringReader reader;
+
+		private OneCharAtATimeReader(final String s) {
+			this.reader = new StringReader(s);
+		}
+
+		@Override
+		public int read(final char[] buffer, final int offset, final int length) throws IOException {
+			return reader.read(buffer, offset, Math.min(1, length));
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+}
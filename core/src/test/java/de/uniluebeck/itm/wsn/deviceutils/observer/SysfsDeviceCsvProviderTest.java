@@ -0,0 +1,125 @@
+/**********************************************************************************************************************
+ * Copyright (c) 2010, Institute of Telematics, University of Luebeck                                                 *
+ * All rights reserved.                                                                                               *
+ *                                                                                                                    *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the   *
+ * following conditions are met:                                                                                      *
+ *                                                                                                                    *
+ * - Redistributions of source code must retain the above copyright notice, this list of conditions and the following *
+ *   disclaimer.                                                                                                      *
+ * - Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the        *
+ *   following disclaimer in the documentation and/or other materials provided with the distribution.                 *
+ * - Neither the name of the University of Luebeck nor the names of its contributors may be used to endorse or        *
+ *   promote products derived from this software without specific prior written permission.                           *
+ *                                                                                                                    *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, *
+ * INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE      *
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,         *
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE *
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF    *
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY   *
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.                                *
+ **********************************************************************************************************************/
+
+package de.uniluebeck.itm.wsn.deviceutils.observer;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.lang.SystemUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+public class SysfsDeviceCsvProviderTest {
+
+	private FakeSysfs sysfs;
+
+	private SysfsDeviceCsvProvider provider;
+
+	@Before
+	public void setUp() throws Exception {
+		sysfs = new FakeSysfs()
+				.addUsbSerialDevice(1, 10, "0403", "6001", "Pacemate", "P10")
+				.addUsbSerialDevice(1, 2, "0403", "6001", "USB <-> Serial", "I2")
+				.addUsbSerialDevice(2, 3, "10c4", "ea60", "MTM-CM5000MSP", "T3")
+				.addUsbSerialDevice(2, 4, "0403", "6010", "FT2232", "X4")
+				.addUsbDevice(3, 5, "046d", "c52b");
+		provider = new SysfsDeviceCsvProvider(sysfs.getRoot());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sysfs.delete();
+	}
+
+	@Test
+	public void testOnlySupportedConvertersAreListedInTtyOrder() throws Exception {
+		assertEquals(
+				"I2,/dev/ttyUSB2,isense\n" +
+						"T3,/dev/ttyUSB3,telosb\n" +
+						"P10,/dev/ttyUSB10,pacemate\n",
+				provider.getDeviceCsv()
+		);
+	}
+
+	@Test
+	public void testRemovedDeviceIsNotListedAnymore() throws Exception {
+		sysfs.removeUsbSerialDevice(1, 2);
+		assertEquals(
+				"T3,/dev/ttyUSB3,telosb\n" +
+						"P10,/dev/ttyUSB10,pacemate\n",
+				provider.getDeviceCsv()
+		);
+	}
+
+	@Test
+	public void testDevicesAreListedPerBus() throws Exception {
+
+		assertEquals(ImmutableSet.of("1", "2", "3"), provider.getShards());
+		assertEquals("I2,/dev/ttyUSB2,isense\n" + "P10,/dev/ttyUSB10,pacemate\n", provider.getDeviceCsv("1"));
+		assertEquals("T3,/dev/ttyUSB3,telosb\n", provider.getDeviceCsv("2"));
+		assertEquals("", provider.getDeviceCsv("3"));
+		assertEquals("", provider.getDeviceCsv("4"));
+	}
+
+	@Test
+	public void testUnchangedBusIsNotReadAgain() throws Exception {
+
+		final String bus1Csv = provider.getDeviceCsv("1");
+		final String bus2Csv = provider.getDeviceCsv("2");
+
+		sysfs.removeUsbSerialDevice(1, 2);
+		sysfs.addUsbSerialDevice(1, 6, "0403", "6001", "USB <-> Serial", "I6");
+
+		assertEquals("I6,/dev/ttyUSB6,isense\n" + "P10,/dev/ttyUSB10,pacemate\n", provider.getDeviceCsv("1"));
+		assertNotSame(bus1Csv, provider.getDeviceCsv("1"));
+		assertSame(bus2Csv, provider.getDeviceCsv("2"));
+	}
+
+	@Test
+	public void testMissingSysfsYieldsEmptyCsv() throws Exception {
+		assertEquals("", new SysfsDeviceCsvProvider(new File(sysfs.getRoot(), "nonexisting")).getDeviceCsv());
+	}
+
+	@Test
+	public void testDeviceWithTtyDirectoryIsListedWithoutPort() throws Exception {
+		sysfs.addUsbSerialDeviceWithTtyDirectory(3, 7, "0403", "6001", "USB <-> Serial", "A7");
+		assertEquals("A7,  (none),isense\n", provider.getDeviceCsv("3"));
+	}
+
+	@Test
+	public void testOutputIsIdenticalToDevicelistScript() throws Exception {
+		assumeTrue(SystemUtils.IS_OS_LINUX && new File("/usr/bin/perl").exists());
+		sysfs.addUsbSerialDeviceWithTtyDirectory(3, 7, "0403", "6001", "USB <-> Serial", "A7");
+		assertEquals(
+				new DeviceCsvProviderImpl().getCsv("devicelist-linux", "-root", sysfs.getRoot().getAbsolutePath()),
+				provider.getDeviceCsv()
+		);
+	}
+}
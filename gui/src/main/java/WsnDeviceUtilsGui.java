@@ -1,6 +1,7 @@
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Closeables;
 import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -8,6 +9,7 @@ import de.uniluebeck.itm.util.StringUtils;
 import de.uniluebeck.itm.util.concurrent.ExecutorUtils;
 import de.uniluebeck.itm.util.logging.LogLevel;
 import de.uniluebeck.itm.util.logging.Logging;
+import de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts;
 import de.uniluebeck.itm.wsn.deviceutils.DeviceUtilsModule;
 import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceInfo;
 import de.uniluebeck.itm.wsn.deviceutils.observer.DeviceObserver;
@@ -38,6 +40,11 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import static de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts.Operation.PROGRAM;
+import static de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts.Operation.READ_MAC;
+import static de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts.Operation.RESET;
+import static de.uniluebeck.itm.wsn.deviceutils.DeviceOperationTimeouts.Operation.WRITE_MAC;
+
 public class WsnDeviceUtilsGui {
 
 	static {
@@ -54,6 +61,13 @@ public class WsnDeviceUtilsGui {
 
 	private Device device;
 
+	/**
+	 * The type of the connected device.
+	 */
+	private DeviceType deviceType;
+
+	private final DeviceOperationTimeouts operationTimeouts;
+
 	private DeviceFactory deviceFactory = Guice
 			.createInjector(new DeviceFactoryModule())
 			.getInstance(DeviceFactory.class);
@@ -68,7 +82,16 @@ public class WsnDeviceUtilsGui {
 
 		this.executorService = executorService;
 
-		final Injector deviceUtilsInjector = Guice.createInjector(new DeviceUtilsModule(executorService, null));
+		// the timeouts the GUI used before they were taken from the policy, so that a hung device is given up on early
+		operationTimeouts = new DeviceOperationTimeouts()
+				.setMaxTimeoutMillis(PROGRAM, 120000)
+				.setMaxTimeoutMillis(RESET, 1000)
+				.setMaxTimeoutMillis(READ_MAC, 5000)
+				.setMaxTimeoutMillis(WRITE_MAC, 120000);
+
+		final Injector deviceUtilsInjector = Guice.createInjector(
+				new DeviceUtilsModule(executorService, null).setOperationTimeouts(operationTimeouts)
+		);
 		deviceObserver = deviceUtilsInjector.getInstance(DeviceObserver.class);
 	}
 
@@ -165,16 +188,20 @@ public class WsnDeviceUtilsGui {
 						return;
 					}
 
-					device.program(selectedFileBytes, 120000, new DevicePaneOperationListener<Void>(devicePane) {
+					device.program(selectedFileBytes, getTimeoutMillis(PROGRAM),
+							new DevicePaneOperationListener<Void>(devicePane, PROGRAM) {
 								@Override
 								public void onSuccess(final Void result) {
 									super.onSuccess(result);
 									// simulate reconnect
 									String devicePort = (String) devicePane.selectionComboBox.getSelectedItem();
 									connect(getDeviceType(devicePort), devicePort, deviceConfiguration);
-									device.reset(1000, new DevicePaneOperationListener<Void>(devicePane));
+									device.reset(getTimeoutMillis(RESET),
+											new DevicePaneOperationListener<Void>(devicePane, RESET)
+									);
 								}
-							});
+							}
+					);
 				}
 			}
 		}
@@ -183,7 +210,7 @@ public class WsnDeviceUtilsGui {
 		devicePane.resetButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(final ActionEvent e) {
-				device.reset(1000, new DevicePaneOperationListener<Void>(devicePane));
+				device.reset(getTimeoutMillis(RESET), new DevicePaneOperationListener<Void>(devicePane, RESET));
 			}
 		}
 		);
@@ -192,14 +219,14 @@ public class WsnDeviceUtilsGui {
 			@Override
 			public void actionPerformed(final ActionEvent e) {
 				DevicePaneOperationListener<MacAddress> callback =
-						new DevicePaneOperationListener<MacAddress>(devicePane) {
+						new DevicePaneOperationListener<MacAddress>(devicePane, READ_MAC) {
 							@Override
 							public void onSuccess(final MacAddress result) {
 								super.onSuccess(result);
 								JOptionPane.showMessageDialog(frame, "MAC address: " + result.toHexString());
 							}
 						};
-				device.readMac(5000, callback);
+				device.readMac(getTimeoutMillis(READ_MAC), callback);
 			}
 		}
 		);
@@ -214,7 +241,9 @@ public class WsnDeviceUtilsGui {
 				String macAddressString = JOptionPane.showInputDialog("Please enter MAC address to write:");
 				MacAddress macAddress = new MacAddress(macAddressString);
 
-				device.writeMac(macAddress, 120000, new DevicePaneOperationListener<Void>(devicePane));
+				device.writeMac(macAddress, getTimeoutMillis(WRITE_MAC),
+						new DevicePaneOperationListener<Void>(devicePane, WRITE_MAC)
+				);
 			}
 		}
 		);
@@ -253,17 +282,31 @@ public class WsnDeviceUtilsGui {
 		frame.setVisible(true);
 	}
 
+	/**
+	 * Updates the device pane while an operation runs and records the durations of successful operations with the
+	 * operation timeouts.
+	 */
 	private class DevicePaneOperationListener<T> extends OperationAdapter<T> {
 
 		private final DevicePane devicePane;
 
-		private DevicePaneOperationListener(final DevicePane devicePane) {
+		private final DeviceType deviceType = WsnDeviceUtilsGui.this.deviceType;
+
+		private final DeviceOperationTimeouts.Operation operation;
+
+		private long executeNanos;
+
+		private DevicePaneOperationListener(final DevicePane devicePane,
+											final DeviceOperationTimeouts.Operation operation) {
 			this.devicePane = devicePane;
+			this.operation = operation;
 		}
 
 		@Override
 		public void onExecute() {
 
+			executeNanos = System.nanoTime();
+
 			devicePane.progressBar.setValue(0);
 			devicePane.progressBar.setEnabled(true);
 
@@ -273,6 +316,10 @@ public class WsnDeviceUtilsGui {
 		@Override
 		public void onSuccess(final T result) {
 
+			operationTimeouts.recordDuration(deviceType, operation,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - executeNanos)
+			);
+
 			devicePane.progressBar.setValue(100);
 			devicePane.progressBar.setEnabled(false);
 
@@ -310,6 +357,7 @@ public class WsnDeviceUtilsGui {
 		disconnect();
 
 		device = deviceFactory.create(executorService, deviceType, configuration);
+		this.deviceType = DeviceType.fromString(deviceType);
 
 		try {
 			device.connect(devicePort);
@@ -383,6 +431,13 @@ public class WsnDeviceUtilsGui {
 		devicePane.setStatusText("Connected to " + deviceType + " device at port " + devicePort);
 	}
 
+	/**
+	 * Returns the timeout of an operation on the connected device.
+	 */
+	private int getTimeoutMillis(final DeviceOperationTimeouts.Operation operation) {
+		return Ints.saturatedCast(operationTimeouts.getTimeoutMillis(deviceType, operation));
+	}
+
 	private String getDeviceType(final String devicePort) {
 		return deviceObserver.getCurrentState().get(devicePort).getType();
 	}